@@ -111,6 +111,25 @@ public static Boolean getBooleanInitParameter(final ServletConfig servletConfig,
 		return string != null ? Booleans.parseBoolean(string) : null;
 	}
 
+	/**
+	 * Retrieves the configured long integer init parameter, if any.
+	 * @param servletConfig The servlet configuration.
+	 * @param name The name of the init parameter.
+	 * @return The configured long init parameter, either from the servlet config or the servlet context, or <code>null</code> if the indicated init param was not
+	 *         found.
+	 * @throws NullPointerException if the given servlet config and/or name is <code>null</code>.
+	 * @throws IllegalArgumentException if the stored value is not a valid representation of a long integer.
+	 * @see #getStringInitParameter(ServletConfig, String)
+	 */
+	public static Long getLongInitParameter(final ServletConfig servletConfig, final String name) {
+		final String string = getStringInitParameter(servletConfig, name);
+		try {
+			return string != null ? Long.valueOf(string.trim()) : null;
+		} catch(final NumberFormatException numberFormatException) {
+			throw new IllegalArgumentException("Invalid long value for init parameter " + name + ": " + string, numberFormatException);
+		}
+	}
+
 	/**
 	 * Retrieves the configured enum init parameter, if any.
 	 * @param <E> The type of enum to retrieve.
@@ -178,6 +197,30 @@ public static File getDataDirectory(final ServletContext context, final String i
 		}
 	}
 
+	/**
+	 * Determines the correct data subdirectory for a servlet. The data directory is determined in this order:
+	 * <ol>
+	 * <li>The file for the value of the given init parameter of the servlet config or, if not present, of the servlet context.</li>
+	 * <li>The file for the default child directory of the data directory.</li>
+	 * </ol>
+	 * @param servletConfig The servlet configuration.
+	 * @param initParameter The init parameter containing the directory name
+	 * @param defaultDirectoryName The default name to use for the directory if there is no init parameter value.
+	 * @return A file representing the preferred directory, or <code>null</code> if the directory is not available (if a <code>WEB-INF</code>-based directory is
+	 *         requested and the application is being served from a .war file, for instance).
+	 * @see #getStringInitParameter(ServletConfig, String)
+	 * @see #getDataDirectory(ServletContext)
+	 */
+	public static File getDataDirectory(final ServletConfig servletConfig, final String initParameter, final String defaultDirectoryName) {
+		final String path = getStringInitParameter(servletConfig, initParameter);
+		if(path != null) {
+			return new File(path);
+		} else {
+			final File dataDirectory = getDataDirectory(servletConfig.getServletContext());
+			return dataDirectory != null ? new File(dataDirectory, defaultDirectoryName) : null;
+		}
+	}
+
 	/**
 	 * Determines the log directory. The log directory is determined in this order:
 	 * <ol>
@@ -20,7 +20,9 @@
 import java.net.*;
 import java.security.Principal;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
+import java.util.zip.*;
 
 import javax.servlet.*;
 import javax.servlet.http.*;
@@ -32,6 +34,7 @@
 import static com.globalmentor.net.HTTP.*;
 import static com.globalmentor.net.URIs.*;
 import static com.globalmentor.net.http.webdav.WebDAV.*;
+import static com.globalmentor.servlet.Servlets.*;
 import static com.globalmentor.servlet.http.HTTPServlets.*;
 import static com.globalmentor.text.Text.*;
 import static java.nio.charset.StandardCharsets.*;
@@ -41,6 +44,7 @@
 import com.globalmentor.java.Characters;
 import com.globalmentor.net.*;
 import com.globalmentor.net.http.*;
+import com.globalmentor.net.mime.ContentDispositionType;
 import com.globalmentor.text.SyntaxException;
 import com.globalmentor.xml.XMLSerializer;
 import com.globalmentor.xml.spec.XML;
@@ -49,7 +53,27 @@
 import org.xml.sax.SAXException;
 
 /**
- * The base servlet class for implementing an HTTP server that access resources.
+ * The base servlet class for implementing an HTTP server that access resources. This servlet supports the following initialization parameters in addition to
+ * those of its parent classes:
+ * <dl>
+ * <dt>{@value #ARCHIVE_INIT_PARAMETER}</dt>
+ * <dd>Whether a collection may be downloaded as a ZIP archive by requesting <code>application/zip</code> in the <code>Accept</code> header or by using the
+ * {@value #ARCHIVE_PARAMETER} query parameter with the value {@value #ZIP_ARCHIVE}; should be "true" or "false". Defaults to "false". Only resources the
+ * principal is authorized to retrieve are included.</dd>
+ * <dt>{@value #ARCHIVE_MAX_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The maximum total number of content bytes in a collection archive; defaults to {@value #DEFAULT_ARCHIVE_MAX_SIZE}.</dd>
+ * <dt>{@value #ARCHIVE_MAX_ENTRIES_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of entries in a collection archive.</dd>
+ * <dt>{@value #ARCHIVE_MAX_DEPTH_INIT_PARAMETER}</dt>
+ * <dd>The maximum depth of the collection tree included in an archive.</dd>
+ * <dt>{@value #LOAD_TIMEOUT_INIT_PARAMETER}</dt>
+ * <dd>The number of milliseconds a request will wait for content already being loaded or generated by another request before giving up.</dd>
+ * <dt>{@value #PRELOAD_INIT_PARAMETER}</dt>
+ * <dd>Whether the sub-resources of HTML and XHTML pages are learned from requests and pushed to HTTP/2 clients or announced to other clients using
+ * <code>Link</code> preload headers; should be "true" or "false".</dd>
+ * <dt>{@value #PRELOAD_MANIFEST_INIT_PARAMETER}</dt>
+ * <dd>The context-relative path of a manifest listing the sub-resources of pages to push or preload; implies {@value #PRELOAD_INIT_PARAMETER}.</dd>
+ * </dl>
  * @see <a href="https://www.ietf.org/rfc/rfc2616.txt">RFC 2616</a>
  * @see <a href="https://www.mnot.net/cache_docs/">Caching Tutorial</a>
  * @author Garret Wilson
@@ -61,6 +85,100 @@
 	/** Whether a directory listing is allowed for <code>GET</code> on a collection. */
 	protected static final boolean LIST_DIRECTORIES = false; //TODO fix
 
+	/** The init parameter, {@value #ARCHIVE_INIT_PARAMETER}, used to specify whether collections may be downloaded as ZIP archives; should be "true" or "false". */
+	public static final String ARCHIVE_INIT_PARAMETER = "archive";
+
+	/** The init parameter, {@value #ARCHIVE_MAX_SIZE_INIT_PARAMETER}, used to specify the maximum total number of content bytes in a collection archive. */
+	public static final String ARCHIVE_MAX_SIZE_INIT_PARAMETER = "archiveMaxSize";
+
+	/** The default maximum total number of content bytes in a collection archive. */
+	public static final long DEFAULT_ARCHIVE_MAX_SIZE = 100L * 1024 * 1024;
+
+	/** The init parameter, {@value #ARCHIVE_MAX_ENTRIES_INIT_PARAMETER}, used to specify the maximum number of entries in a collection archive. */
+	public static final String ARCHIVE_MAX_ENTRIES_INIT_PARAMETER = "archiveMaxEntries";
+
+	/** The default maximum number of entries in a collection archive. */
+	public static final long DEFAULT_ARCHIVE_MAX_ENTRIES = 10000;
+
+	/** The init parameter, {@value #ARCHIVE_MAX_DEPTH_INIT_PARAMETER}, used to specify the maximum depth of the collection tree included in an archive. */
+	public static final String ARCHIVE_MAX_DEPTH_INIT_PARAMETER = "archiveMaxDepth";
+
+	/** The default maximum depth of the collection tree included in an archive. */
+	public static final long DEFAULT_ARCHIVE_MAX_DEPTH = 32;
+
+	/** The init parameter, {@value #LOAD_TIMEOUT_INIT_PARAMETER}, used to specify the number of milliseconds to wait for content being loaded by another request. */
+	public static final String LOAD_TIMEOUT_INIT_PARAMETER = "loadTimeout";
+
+	/** The init parameter, {@value #PRELOAD_INIT_PARAMETER}, used to specify whether page sub-resources are pushed or preloaded; should be "true" or "false". */
+	public static final String PRELOAD_INIT_PARAMETER = "preload";
+
+	/** The init parameter, {@value #PRELOAD_MANIFEST_INIT_PARAMETER}, used to specify the context-relative path of the manifest of page sub-resources. */
+	public static final String PRELOAD_MANIFEST_INIT_PARAMETER = "preloadManifest";
+
+	/** The query parameter, {@value #ARCHIVE_PARAMETER}, used to request a collection as an archive. */
+	public static final String ARCHIVE_PARAMETER = "archive";
+
+	/** The {@value #ARCHIVE_PARAMETER} query parameter value requesting a ZIP archive. */
+	public static final String ZIP_ARCHIVE = "zip";
+
+	/** The media type of a ZIP archive. */
+	private static final MediaType ZIP_MEDIA_TYPE = MediaType.of("application", "zip");
+
+	/** The context-relative paths of the directories, such as <code>WEB-INF</code>, that are never served. */
+	private static final String[] HIDDEN_PATHS = {PATH_SEPARATOR + WEB_INF_DIRECTORY_NAME, PATH_SEPARATOR + "META-INF"};
+
+	/** The largest already-compressed resource that will be buffered in memory so that it can be stored in an archive without compression. */
+	private static final int MAX_STORED_ARCHIVE_ENTRY_SIZE = 1024 * 1024;
+
+	/** The base media types of content that is already compressed, other than images, audio, and video. */
+	private static final Set<String> COMPRESSED_MEDIA_TYPES = new HashSet<String>(Arrays.asList("application/zip", "application/gzip", "application/x-gzip",
+			"application/x-bzip2", "application/x-xz", "application/x-7z-compressed", "application/x-rar-compressed", "application/java-archive",
+			"application/epub+zip", "application/pdf"));
+
+	/** The media subtypes of images, audio, and video that are not compressed. */
+	private static final Set<String> UNCOMPRESSED_MEDIA_SUBTYPES = new HashSet<String>(
+			Arrays.asList("bmp", "x-ms-bmp", "svg+xml", "tiff", "x-icon", "vnd.microsoft.icon", "wav", "x-wav", "vnd.wave"));
+
+	/** The <code>ETag</code> header. */
+	private static final String ETAG_HEADER = "ETag";
+
+	/** The <code>If-None-Match</code> header. */
+	private static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+	/** The prefix indicating a weak entity tag. */
+	private static final String WEAK_ETAG_PREFIX = "W/";
+
+	/** Whether collections may be downloaded as ZIP archives. */
+	private boolean archiveEnabled = false;
+
+	/** The maximum total number of content bytes in a collection archive. */
+	private long archiveMaxSize = DEFAULT_ARCHIVE_MAX_SIZE;
+
+	/** The maximum number of entries in a collection archive. */
+	private long archiveMaxEntries = DEFAULT_ARCHIVE_MAX_ENTRIES;
+
+	/** The maximum depth of the collection tree included in an archive. */
+	private long archiveMaxDepth = DEFAULT_ARCHIVE_MAX_DEPTH;
+
+	/** The number of milliseconds to wait for content being loaded by another request. */
+	private long loadTimeout = SingleFlight.DEFAULT_TIMEOUT;
+
+	/**
+	 * @return The number of milliseconds to wait for content being loaded by another request.
+	 * @see SingleFlight
+	 */
+	protected long getLoadTimeout() {
+		return loadTimeout;
+	}
+
+	/** The preloader of page sub-resources, or <code>null</code> if sub-resources are not pushed or preloaded. */
+	private Preloader preloader = null;
+
+	/** @return The preloader of page sub-resources, or <code>null</code> if sub-resources are not pushed or preloaded. */
+	protected Preloader getPreloader() {
+		return preloader;
+	}
+
 	/** Whether access is restricted to read methods. */
 	private boolean readOnly = false;
 
@@ -95,6 +213,38 @@ protected void setReadOnly(final boolean readOnly) {
 			Pattern.compile("^WebDrive.*") //http://lists.w3.org/Archives/Public/w3c-dist-auth/2002AprJun/0190.html
 	};
 
+	/**
+	 * Initializes the servlet. This version configures the downloading of collections as archives, the timeout for coalesced loads, and the preloading of
+	 * page sub-resources.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if there is a problem initializing.
+	 */
+	@Override
+	public void initialize(final ServletConfig servletConfig) throws ServletException, IllegalArgumentException, IllegalStateException {
+		super.initialize(servletConfig);
+		archiveEnabled = Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, ARCHIVE_INIT_PARAMETER)); //archives must be explicitly enabled
+		final Long archiveMaxSize = getLongInitParameter(servletConfig, ARCHIVE_MAX_SIZE_INIT_PARAMETER);
+		this.archiveMaxSize = archiveMaxSize != null ? archiveMaxSize.longValue() : DEFAULT_ARCHIVE_MAX_SIZE;
+		final Long archiveMaxEntries = getLongInitParameter(servletConfig, ARCHIVE_MAX_ENTRIES_INIT_PARAMETER);
+		this.archiveMaxEntries = archiveMaxEntries != null ? archiveMaxEntries.longValue() : DEFAULT_ARCHIVE_MAX_ENTRIES;
+		final Long archiveMaxDepth = getLongInitParameter(servletConfig, ARCHIVE_MAX_DEPTH_INIT_PARAMETER);
+		this.archiveMaxDepth = archiveMaxDepth != null ? archiveMaxDepth.longValue() : DEFAULT_ARCHIVE_MAX_DEPTH;
+		final Long loadTimeout = getLongInitParameter(servletConfig, LOAD_TIMEOUT_INIT_PARAMETER);
+		this.loadTimeout = loadTimeout != null ? loadTimeout.longValue() : SingleFlight.DEFAULT_TIMEOUT;
+		final String preloadManifest = servletConfig.getInitParameter(PRELOAD_MANIFEST_INIT_PARAMETER);
+		if(preloadManifest != null || Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, PRELOAD_INIT_PARAMETER))) {
+			final Preloader preloader = new Preloader(true);
+			if(preloadManifest != null) {
+				try {
+					preloader.loadManifest(getServletContext(), preloadManifest);
+				} catch(final IOException ioException) {
+					throw new ServletException(ioException);
+				}
+			}
+			this.preloader = preloader;
+		}
+	}
+
 	/**
 	 * Determines if the user agent sending the request supports redirects. An agent is assumed to support redirects unless its name is recognized as an agent not
 	 * supporting redirects.
@@ -122,8 +272,7 @@ protected static boolean isRedirectSupported(final HttpServletRequest request) {
 	public void doOptions(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
 		//TODO del getLogger().trace("doing options for URI {}", resourceURI);
-		final Set<String> allowedMethodSet = getAllowedMethods(request, resourceURI); //get the allowed methods
-		response.addHeader(ALLOW_HEADER, Collections.toString(allowedMethodSet, COMMA_CHAR)); //put the allowed methods in the "allow" header, separated by commas
+		response.addHeader(ALLOW_HEADER, getStateAllowedMethods(request, resourceURI).getAllowHeaderValue()); //put the allowed methods in the "allow" header, separated by commas
 		response.setContentLength(0); //set the content length to zero, according to the HTTP specification for OPTIONS
 	}
 
@@ -173,12 +322,12 @@ public void doPut(final HttpServletRequest request, final HttpServletResponse re
 		//	TODO del getLogger().trace("getting resource URI");
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
 		getLogger().trace("checking destination existence");
-		final boolean exists = exists(request, resourceURI); //see whether the resource already exists
+		final boolean exists = existsCached(request, resourceURI); //see whether the resource already exists
 		getLogger().trace("exists? {}", exists);
 		final InputStream inputStream = request.getInputStream(); //get an input stream from the request
 		final OutputStream outputStream; //we'll determine the output stream to use
 		if(exists) { //if this resource exists
-			final R resource = getResource(request, resourceURI); //get the resource information
+			final R resource = getResourceCached(request, resourceURI); //get the resource information
 			outputStream = getOutputStream(request, resource); //get an output stream to the resource
 		} else { //if the resource doesn't exist
 			try {
@@ -268,6 +417,7 @@ public void doPut(final HttpServletRequest request, final HttpServletResponse re
 			throw ioException;	//rethrow the exception
 		}
 		*/
+		resourceChanged(request, resourceURI, exists ? ResourceChange.MODIFIED : ResourceChange.CREATED); //let caches and indexes know the resource changed
 		getLogger().trace("done PUT; determining response");
 		if(exists) { //if the resource already existed
 			getLogger().trace("PUT already existed; returning SC_NO_CONTENT");
@@ -289,11 +439,12 @@ public void doPut(final HttpServletRequest request, final HttpServletResponse re
 	 */
 	public void doDelete(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
-		final boolean exists = exists(request, resourceURI); //see whether the resource already exists
+		final boolean exists = existsCached(request, resourceURI); //see whether the resource already exists
 		final R resource; //we'll get the existing resource, if there is one 
 		if(exists) { //if this resource exists
-			resource = getResource(request, resourceURI); //get the resource information
+			resource = getResourceCached(request, resourceURI); //get the resource information
 			deleteResource(request, resource); //delete the resource
+			resourceChanged(request, resourceURI, ResourceChange.DELETED); //let caches and indexes know the resource is gone
 		} else { //if the resource does not exist
 			throw new HTTPNotFoundException(resourceURI.toString()); //show that we didn't find a resource for which to find properties					
 		}
@@ -312,14 +463,41 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 			throws ServletException, IOException {
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
 		//	TODO del getLogger().trace("serving resource {}", resourceURI);
-		if(exists(request, resourceURI)) { //if this resource exists
+		if(!isHiddenResource(resourceURI) && existsCached(request, resourceURI)) { //if this resource exists and may be served
 			//TODO del getLogger().trace("resource exists? {}", resourceURI);
 			//TODO check if headers
-			final R resource = getResource(request, resourceURI); //get a resource description
+			final R resource = getResourceCached(request, resourceURI); //get a resource description
 			serveResource(request, response, resource, serveContent); //serve the resource
 		} else { //if the resource does not exist
-			throw new HTTPNotFoundException(resourceURI.toString()); //show that we didn't find a resource for which to find properties					
+			sendNotFound(request, response); //show that we didn't find a resource, without the expense of an exception for such a common response
+		}
+	}
+
+	/**
+	 * Determines whether a resource is never to be served, such as the private data of the web application. A hidden resource is reported as not found when
+	 * retrieved, and is left out of collection archives. This version hides the <code>WEB-INF</code> and <code>META-INF</code> directories of the servlet
+	 * context and their contents.
+	 * @param resourceURI The URI of the resource.
+	 * @return <code>true</code> if the resource should not be served.
+	 */
+	protected boolean isHiddenResource(final URI resourceURI) {
+		final String path = resourceURI.getPath();
+		if(path == null) {
+			return false;
+		}
+		final String resourceContextAbsolutePath;
+		try {
+			resourceContextAbsolutePath = getResourceContextAbsolutePath(path);
+		} catch(final IllegalArgumentException illegalArgumentException) { //the resource isn't in this context
+			return false;
+		}
+		for(final String hiddenPath : HIDDEN_PATHS) { //compare case-insensitively, as the file system may not distinguish case
+			if(resourceContextAbsolutePath.regionMatches(true, 0, hiddenPath, 0, hiddenPath.length()) && (resourceContextAbsolutePath.length() == hiddenPath.length()
+					|| resourceContextAbsolutePath.charAt(hiddenPath.length()) == PATH_SEPARATOR)) {
+				return true;
+			}
 		}
+		return false;
 	}
 
 	/**
@@ -333,8 +511,12 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 	 */
 	protected void serveResource(final HttpServletRequest request, final HttpServletResponse response, final R resource, final boolean serveContent)
 			throws ServletException, IOException {
-		if(isCollection(request, resource.getURI())) { //if the resource is a collection
+		if(isCollectionCached(request, resource.getURI())) { //if the resource is a collection
 			//TODO del getLogger().trace("is collection {}", resourceURI);
+			if(isArchiveRequested(request)) { //if the collection was requested as an archive
+				serveArchive(request, response, resource, serveContent);
+				return;
+			}
 			if(LIST_DIRECTORIES) { //if we should list directories
 				final Writer writer = response.getWriter();
 				response.setContentType("text/plain");
@@ -354,8 +536,21 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 		//TODO del check; prevents default resources being returned; maybe throw not found exception somewhere here if it's clear there's nothing there  	else	//if this resource is not a collection
 		{
 			//TODO del getLogger().trace("is not a collection; ready to send back file {}", resourceURI);
+			final Preloader preloader = getPreloader();
+			if(preloader != null) { //learn about sub-resources even if the client already has them
+				preloader.learn(request);
+			}
+			final String eTag = getEntityTag(request, resource); //get the entity tag of the resource, if any
+			final String ifNoneMatch = eTag != null ? request.getHeader(IF_NONE_MATCH_HEADER) : null;
+			if(eTag != null) {
+				response.setHeader(ETAG_HEADER, eTag); //a 304 response should include the entity tag as well (RFC 7232 4.1)
+				if(ifNoneMatch != null && matchesEntityTag(ifNoneMatch, eTag)) {
+					sendNotModified(response);
+					return;
+				}
+			}
 			final Date lastModifiedDate = getLastModifiedDate(request, resource); //get the last modified date of the resource
-			if(lastModifiedDate != null) { //if we know when the resource was last modified; check this before adding headers, especially because we use weak validators (RFC 2616 10.3.5)---Last-Modified time is implicitly weak (RDF 2616 13.3.3)
+			if(lastModifiedDate != null && ifNoneMatch == null) { //If-Modified-Since is ignored if If-None-Match is present (RFC 7232 3.3) //if we know when the resource was last modified; check this before adding headers, especially because we use weak validators (RFC 2616 10.3.5)---Last-Modified time is implicitly weak (RDF 2616 13.3.3)
 				//TODO del getLogger().trace("last modified date: {}", new HTTPDateFormat().format(lastModifiedDate));
 				final Date roundedLastModifiedDate = new Date((lastModifiedDate.getTime() / 1000) * 1000); //round the date to the nearest millisecond before using it to compare, because the incoming date only has a one-second precision and comparing with the incoming rounded date would result in data being sent back unnecessarily; see Hunter, Jason, _Java Servlet Programming_, Second Edition, page 59
 				try {
@@ -369,7 +564,8 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 					*/
 					if(ifModifiedSinceDate != null && ifModifiedSinceDate.compareTo(roundedLastModifiedDate) <= 0) { //if there is an If-Modified-Since date and the resource was not modified since that date
 						//TODO del getLogger().trace("Not modified---use the value in the cache!");
-						throw new HTTPNotModifiedException(); //stop serving content and indicate that the resource has not been modified
+						sendNotModified(response); //stop serving content and indicate that the resource has not been modified
+						return;
 					}
 					//TODO add support for If-Unmodified-Since
 				} catch(final SyntaxException syntaxException) { //TODO fix better
@@ -394,6 +590,12 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 			if(lastModifiedDate != null) { //if we know when the resource was last modified
 				setLastModified(response, lastModifiedDate); //set the last modified date header
 			}
+			if(preloader != null && contentType != null && isPage(contentType)) {
+				preloader.recordPage(request); //allow sub-resources requested from this page to be learned
+				if(serveContent) { //tell the client about sub-resources before sending the page
+					preloader.preload(request, response);
+				}
+			}
 			if(serveContent) { //if we should serve content
 				//TODO fix ranges
 				final OutputStream outputStream; //we'll determine the output stream
@@ -412,6 +614,253 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 		}
 	}
 
+	/**
+	 * Determines whether content is a page that may have sub-resources to preload.
+	 * @param contentType The type of the content.
+	 * @return <code>true</code> if the content is HTML or XHTML.
+	 */
+	private static boolean isPage(final MediaType contentType) {
+		final String baseType = contentType.toBaseTypeString();
+		return baseType.equals("text/html") || baseType.equals("application/xhtml+xml");
+	}
+
+	/**
+	 * Determines whether an <code>If-None-Match</code> header matches an entity tag using weak comparison, as required for GET and HEAD by
+	 * <a href="https://tools.ietf.org/html/rfc7232#section-3.2">RFC 7232 3.2</a>.
+	 * @param ifNoneMatch The value of the <code>If-None-Match</code> header.
+	 * @param eTag The current entity tag of the resource.
+	 * @return <code>true</code> if the header is <code>*</code> or lists the given entity tag.
+	 */
+	private static boolean matchesEntityTag(final String ifNoneMatch, final String eTag) {
+		final String opaqueTag = eTag.startsWith(WEAK_ETAG_PREFIX) ? eTag.substring(WEAK_ETAG_PREFIX.length()) : eTag;
+		for(final String listedETag : ifNoneMatch.split(",")) {
+			final String trimmedETag = listedETag.trim();
+			if(trimmedETag.equals("*") || (trimmedETag.startsWith(WEAK_ETAG_PREFIX) ? trimmedETag.substring(WEAK_ETAG_PREFIX.length()) : trimmedETag).equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines whether a collection was requested as a ZIP archive, either by the {@value #ARCHIVE_PARAMETER} query parameter or by explicitly accepting
+	 * <code>application/zip</code>.
+	 * @param request The HTTP request.
+	 * @return <code>true</code> if archives are enabled and the request asks for a ZIP archive.
+	 */
+	protected boolean isArchiveRequested(final HttpServletRequest request) {
+		if(!archiveEnabled) {
+			return false;
+		}
+		if(ZIP_ARCHIVE.equals(request.getParameter(ARCHIVE_PARAMETER))) {
+			return true;
+		}
+		return request.getHeader(ACCEPT_HEADER) != null && isAcceptedContentType(request, ZIP_MEDIA_TYPE, false); //don't count wildcards, which browsers always send
+	}
+
+	/**
+	 * Serves a collection as a ZIP archive of its entire subtree. The tree is first enumerated, without reading any content, to enforce the configured limits;
+	 * the content of each resource is then streamed directly into the response, so that no temporary file is needed. Content that is already compressed is
+	 * stored rather than being compressed again. Hidden resources, and resources the principal making the request is not authorized to retrieve, are left out
+	 * along with their descendants.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @param resource The collection being served.
+	 * @param serveContent <code>true</code> if the contents of the archive should be returned.
+	 * @throws HTTPForbiddenException if the archive would exceed the configured size, entry, or depth limits.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 * @see #isCompressedContentType(MediaType)
+	 * @see #isHiddenResource(URI)
+	 * @see #isAuthorizedCached(HttpServletRequest, URI, String, Principal, String)
+	 */
+	protected void serveArchive(final HttpServletRequest request, final HttpServletResponse response, final R resource, final boolean serveContent)
+			throws ServletException, IOException {
+		final String collectionName = getArchiveEntryName(resource.getURI());
+		final String rootName = !collectionName.isEmpty() ? collectionName : "archive";
+		final List<ArchiveEntry<R>> archiveEntries = new ArrayList<ArchiveEntry<R>>();
+		final long size = addArchiveEntries(request, resource, rootName + PATH_SEPARATOR, 1, archiveEntries, 0);
+		getLogger().debug("Serving archive of {} with {} entries and {} bytes.", resource.getURI(), archiveEntries.size(), size);
+		response.setContentType(ZIP_MEDIA_TYPE.toString());
+		setContentDisposition(response, ContentDispositionType.ATTACHMENT, rootName + ".zip");
+		if(serveContent) { //if we should serve content
+			final ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()), UTF_8);
+			final CRC32 crc = new CRC32();
+			for(final ArchiveEntry<R> archiveEntry : archiveEntries) {
+				final ZipEntry zipEntry = new ZipEntry(archiveEntry.getName());
+				final Date lastModifiedDate = getLastModifiedDate(request, archiveEntry.getResource());
+				if(lastModifiedDate != null) {
+					zipEntry.setTime(lastModifiedDate.getTime());
+				}
+				if(archiveEntry.isCollection()) { //directory entries have no content
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(0);
+					zipEntry.setCrc(0);
+					zipOutputStream.putNextEntry(zipEntry);
+				} else if(archiveEntry.isCompressed() && archiveEntry.getSize() >= 0 && archiveEntry.getSize() <= MAX_STORED_ARCHIVE_ENTRY_SIZE) { //small compressed content can be stored
+					final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream((int)archiveEntry.getSize()); //a stored entry needs its size and checksum before its content, so read the content into memory
+					try (final InputStream inputStream = getInputStream(request, archiveEntry.getResource())) {
+						IOStreams.copy(inputStream, byteArrayOutputStream);
+					}
+					final byte[] bytes = byteArrayOutputStream.toByteArray();
+					crc.reset();
+					crc.update(bytes);
+					zipEntry.setMethod(ZipEntry.STORED);
+					zipEntry.setSize(bytes.length);
+					zipEntry.setCompressedSize(bytes.length);
+					zipEntry.setCrc(crc.getValue());
+					zipOutputStream.putNextEntry(zipEntry);
+					zipOutputStream.write(bytes);
+				} else { //stream everything else in a single pass
+					zipEntry.setMethod(ZipEntry.DEFLATED);
+					zipOutputStream.setLevel(archiveEntry.isCompressed() ? Deflater.NO_COMPRESSION : Deflater.DEFAULT_COMPRESSION); //don't waste time compressing large compressed content
+					zipOutputStream.putNextEntry(zipEntry);
+					try (final InputStream inputStream = getInputStream(request, archiveEntry.getResource())) {
+						IOStreams.copy(inputStream, zipOutputStream);
+					}
+				}
+				zipOutputStream.closeEntry();
+			}
+			zipOutputStream.close(); //finish the archive and close the response
+		}
+	}
+
+	/**
+	 * Recursively adds entries for the children of a collection to be archived, enforcing the configured limits. Children that are hidden or that the principal
+	 * making the request is not authorized to retrieve are skipped.
+	 * @param request The HTTP request.
+	 * @param collection The collection the children of which should be added.
+	 * @param collectionName The name of the collection entry in the archive, ending in a slash.
+	 * @param depth The depth of the collection, with the archived collection at depth one.
+	 * @param archiveEntries The list to which entries should be added.
+	 * @param size The total content size of the entries added so far.
+	 * @return The total content size of the entries added, including the given size.
+	 * @throws HTTPForbiddenException if the archive would exceed the configured size, entry, or depth limits.
+	 * @throws IOException if there is an error accessing the resources.
+	 */
+	private long addArchiveEntries(final HttpServletRequest request, final R collection, final String collectionName, final long depth,
+			final List<ArchiveEntry<R>> archiveEntries, long size) throws IOException {
+		if(depth > archiveMaxDepth) {
+			throw new HTTPForbiddenException("Archive of " + collection.getURI() + " would exceed the maximum depth of " + archiveMaxDepth + ".");
+		}
+		archiveEntries.add(new ArchiveEntry<R>(collection, collectionName, true, 0, false));
+		for(final R childResource : getChildResources(request, collection)) {
+			if(archiveEntries.size() >= archiveMaxEntries) {
+				throw new HTTPForbiddenException("Archive of " + collection.getURI() + " would exceed the maximum of " + archiveMaxEntries + " entries.");
+			}
+			final URI childURI = childResource.getURI();
+			final String childName = getArchiveEntryName(childURI);
+			if(childName.isEmpty() || isHiddenResource(childURI)
+					|| !isAuthorizedCached(request, childURI, GET_METHOD, getAuthorizedPrincipal(request), getRealm(childURI))) { //access to the collection doesn't imply access to its members
+				continue;
+			}
+			if(isCollection(request, childResource.getURI())) {
+				size = addArchiveEntries(request, childResource, collectionName + childName + PATH_SEPARATOR, depth + 1, archiveEntries, size);
+			} else {
+				final long contentLength = getContentLength(request, childResource);
+				size += Math.max(contentLength, 0);
+				if(size > archiveMaxSize) {
+					throw new HTTPForbiddenException("Archive of " + collection.getURI() + " would exceed the maximum size of " + archiveMaxSize + " bytes.");
+				}
+				final MediaType contentType = getContentType(request, childResource);
+				archiveEntries.add(new ArchiveEntry<R>(childResource, collectionName + childName, false, contentLength,
+						contentType != null && isCompressedContentType(contentType)));
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Determines the name of a resource for use in an archive.
+	 * @param resourceURI The URI of the resource.
+	 * @return The decoded last path segment of the resource URI, without any trailing slash, or the empty string if the URI has no path segments.
+	 */
+	private static String getArchiveEntryName(final URI resourceURI) {
+		String path = resourceURI.getPath();
+		if(path == null) {
+			return "";
+		}
+		if(path.endsWith(String.valueOf(PATH_SEPARATOR))) {
+			path = path.substring(0, path.length() - 1);
+		}
+		return path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1);
+	}
+
+	/**
+	 * Determines whether content of the given type is already compressed, so that compressing it again would be a waste of time. This version recognizes most
+	 * image, audio, and video types as well as common archive formats.
+	 * @param contentType The content type to check.
+	 * @return <code>true</code> if content of the given type is already compressed.
+	 */
+	protected boolean isCompressedContentType(final MediaType contentType) {
+		final String primaryType = contentType.getPrimaryType();
+		final String subType = contentType.getSubType();
+		if("image".equals(primaryType) || "audio".equals(primaryType) || "video".equals(primaryType)) {
+			return !UNCOMPRESSED_MEDIA_SUBTYPES.contains(subType);
+		}
+		return COMPRESSED_MEDIA_TYPES.contains(contentType.toBaseTypeString()) || subType.endsWith("+zip")
+				|| subType.startsWith("vnd.openxmlformats-officedocument.") || subType.startsWith("vnd.oasis.opendocument.");
+	}
+
+	/**
+	 * A resource to be included in an archive.
+	 * @param <R> The type of resource.
+	 * @author Garret Wilson
+	 */
+	private static class ArchiveEntry<R extends Resource> {
+
+		private final R resource;
+
+		/** @return The resource to include. */
+		public R getResource() {
+			return resource;
+		}
+
+		private final String name;
+
+		/** @return The name of the entry in the archive. */
+		public String getName() {
+			return name;
+		}
+
+		private final boolean collection;
+
+		/** @return Whether the resource is a collection. */
+		public boolean isCollection() {
+			return collection;
+		}
+
+		private final long size;
+
+		/** @return The content length of the resource, or <code>-1</code> if not known. */
+		public long getSize() {
+			return size;
+		}
+
+		private final boolean compressed;
+
+		/** @return Whether the content of the resource is already compressed. */
+		public boolean isCompressed() {
+			return compressed;
+		}
+
+		/**
+		 * Constructor.
+		 * @param resource The resource to include.
+		 * @param name The name of the entry in the archive.
+		 * @param collection Whether the resource is a collection.
+		 * @param size The content length of the resource, or <code>-1</code> if not known.
+		 * @param compressed Whether the content of the resource is already compressed.
+		 */
+		public ArchiveEntry(final R resource, final String name, final boolean collection, final long size, final boolean compressed) {
+			this.resource = resource;
+			this.name = name;
+			this.collection = collection;
+			this.size = size;
+			this.compressed = compressed;
+		}
+	}
+
 	/**
 	 * Determines the URI of the requested resource.
 	 * <p>
@@ -425,13 +874,19 @@ protected void serveResource(final HttpServletRequest request, final HttpServlet
 	 * @see HttpServletRequest#getRequestURL()
 	 */
 	protected URI getResourceURI(final HttpServletRequest request) throws HTTPRedirectException {
+		final RequestResolution resolution = getRequestResolution(request);
+		final URI resolvedResourceURI = resolution.getResourceURI(); //see if we already determined the resource URI during this request
+		if(resolvedResourceURI != null) {
+			return resolvedResourceURI;
+		}
 		final URI requestedResourceURI = super.getResourceURI(request); //get the default resource URI for this request
-		final URI resourceURI = getResourceURI(request, requestedResourceURI, request.getMethod(), null); //get the correct URI for the resource
+		final URI resourceURI = getResourceURICached(request, requestedResourceURI, request.getMethod(), null); //get the correct URI for the resource
 		if(!resourceURI.equals(requestedResourceURI)) { //if the real resource URI is different from the one requested
 			if(isRedirectSupported(request)) { //if redirection is supported by the user agent sending the request
 				throw new HTTPMovedPermanentlyException(resourceURI); //report back that this resource has permanently moved to its correct location URI
 			}
 		}
+		resolution.setResourceURI(resourceURI); //remember the resource URI for the rest of the request
 		return resourceURI; //return the resource URI
 	}
 
@@ -510,7 +965,7 @@ protected URI getResourceURI(final HttpServletRequest request, final URI request
 	protected boolean canSubstitute(final HttpServletRequest request, final URI requestedResourceURI, final URI substituteResourceURI) throws IOException {
 		//getLogger().trace("requested resource exists: {}", exists(request, requestedResourceURI));
 		//getLogger().trace("substitute resource is collection: {}", isCollection(request, substituteResourceURI));
-		return !exists(request, requestedResourceURI) && isCollection(request, substituteResourceURI); //if the resource doesn't exist, but the substitute resource is a collection, we can substitute
+		return !existsCached(request, requestedResourceURI) && isCollectionCached(request, substituteResourceURI); //if the resource doesn't exist, but the substitute resource is a collection, we can substitute
 	}
 
 	/**
@@ -600,41 +1055,143 @@ else if(contentLength<0) {	//if no content length was given
 	 * @throws IOException if there is an error writing the XML.
 	 */
 	protected void setXML(final HttpServletRequest request, final HttpServletResponse response, final Document document) throws IOException {
+		setXML(request, response, getXMLBytes(document)); //serialize the document and send it back
+	}
+
+	/**
+	 * Places already serialized XML into the body of an HTTP response. The XML will be sent back compressed if supported by the user agent.
+	 * @param request The request for which this XML represents a response.
+	 * @param response The response into which to place the XML document.
+	 * @param bytes The XML document serialized in UTF-8 with no byte order mark.
+	 * @throws IOException if there is an error writing the XML.
+	 * @see #getXMLBytes(Document)
+	 */
+	protected void setXML(final HttpServletRequest request, final HttpServletResponse response, final byte[] bytes) throws IOException {
+		//set the content type to text/xml; charset=UTF-8
+		response.setContentType(XML.MEDIA_TYPE.withCharset(UTF_8).toString());
+		//TODO del; this prevents compression			response.setContentLength(bytes.length);	//tell the response how many bytes to expect
+		final OutputStream outputStream = getCompressedOutputStream(request, response); //get an output stream to the response, compressing the output if possible
+		outputStream.write(bytes); //write the bytes to the response
+		outputStream.close(); //if there are no errors, close the output stream, which will write the remaining compressed data, if this is a compressed output stream
+	}
+
+	/**
+	 * Serializes an XML document for sending in a response.
+	 * @param document The XML document to serialize.
+	 * @return The XML document serialized in UTF-8 with no byte order mark.
+	 * @throws IOException if there is an error serializing the XML.
+	 */
+	protected byte[] getXMLBytes(final Document document) throws IOException {
 		try (final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream()) { //create a byte array output stream to hold our outgoing data
 			new XMLSerializer(true).serialize(document, byteArrayOutputStream, UTF_8); //serialize the document to the byte array with no byte order mark
-			final byte[] bytes = byteArrayOutputStream.toByteArray(); //get the bytes we serialized
-			//set the content type to text/xml; charset=UTF-8
-			response.setContentType(XML.MEDIA_TYPE.withCharset(UTF_8).toString());
-			//TODO del; this prevents compression			response.setContentLength(bytes.length);	//tell the response how many bytes to expect
-			final OutputStream outputStream = getCompressedOutputStream(request, response); //get an output stream to the response, compressing the output if possible
-			try (final InputStream inputStream = new ByteArrayInputStream(bytes)) { //get an input stream to the bytes
-				IOStreams.copy(inputStream, outputStream); //write the bytes to the response
-			}
-			outputStream.close(); //if there are no errors, close the output stream, which will write the remaining compressed data, if this is a compressed output stream
+			return byteArrayOutputStream.toByteArray(); //return the bytes we serialized
+		}
+	}
+
+	/** The kind of change made to a resource by a request. */
+	public enum ResourceChange {
+		/** The resource did not exist before and was created. */
+		CREATED,
+		/** The content of an existing resource was replaced. */
+		MODIFIED,
+		/** The resource, along with any children, was removed. */
+		DELETED
+	}
+
+	/**
+	 * Called after a request has successfully changed a resource, so that any cached information about the resource may be updated. For collections, the change
+	 * applies to all child resources as well. This version forgets the resources and their attributes resolved so far during the request.
+	 * @param request The HTTP request that made the change.
+	 * @param resourceURI The URI of the resource that changed.
+	 * @param change The kind of change that was made.
+	 * @throws IOException if there is an error updating information about the resource.
+	 */
+	protected void resourceChanged(final HttpServletRequest request, final URI resourceURI, final ResourceChange change) throws IOException {
+		getRequestResolution(request).invalidateResources();
+	}
+
+	/** The allowed methods for each resource state, indexed by {@link #getResourceState(boolean, boolean, boolean)} and determined when first needed. */
+	private final AtomicReferenceArray<AllowedMethods> stateAllowedMethods = new AtomicReferenceArray<AllowedMethods>(8);
+
+	/**
+	 * Determines the index of a resource state.
+	 * @param exists Whether the resource exists.
+	 * @param collection Whether the resource is a collection.
+	 * @param readOnly Whether the servlet is read-only.
+	 * @return The index of the resource state.
+	 */
+	private static int getResourceState(final boolean exists, final boolean collection, final boolean readOnly) {
+		return (exists ? 1 : 0) | (collection ? 2 : 0) | (readOnly ? 4 : 0);
+	}
+
+	/**
+	 * Retrieves the precomputed HTTP methods allowed for the requested resource, based upon the state of the resource.
+	 * @param request The HTTP request indicating the requested resource.
+	 * @param resourceURI The URI of a resource for which options should be obtained.
+	 * @return The methods allowed for this resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	private AllowedMethods getStateAllowedMethods(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		final boolean exists = existsCached(request, resourceURI);
+		final boolean collection = exists && isCollectionCached(request, resourceURI); //only existing resources can be collections
+		final boolean readOnly = isReadOnly();
+		final int state = getResourceState(exists, collection, readOnly);
+		AllowedMethods allowedMethods = stateAllowedMethods.get(state);
+		if(allowedMethods == null) { //if we haven't yet determined the methods allowed in this state, do so; it doesn't matter if another thread does the same
+			allowedMethods = new AllowedMethods(getAllowedMethods(exists, collection, readOnly));
+			stateAllowedMethods.set(state, allowedMethods);
 		}
+		return allowedMethods;
+	}
+
+	/**
+	 * Determines the HTTP methods allowed for the requested resource. The methods are determined by {@link #getAllowedMethods(boolean, boolean, boolean)} once for
+	 * each resource state and reused thereafter. This method cannot be overridden, as the allowed methods are consulted without it when servicing requests;
+	 * child classes should instead override {@link #getAllowedMethods(boolean, boolean, boolean)}.
+	 * @param request The HTTP request indicating the requested resource.
+	 * @param resourceURI The URI of a resource for which options should be obtained.
+	 * @return A new modifiable set of methods allowed for this resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected final Set<String> getAllowedMethods(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		return new LinkedHashSet<String>(getStateAllowedMethods(request, resourceURI).getMethods());
 	}
 
 	/**
-	 * Determines the HTTP methods allowed for the requested resource.
+	 * Determines whether an HTTP method is allowed for the requested resource.
 	 * @param request The HTTP request indicating the requested resource.
 	 * @param resourceURI The URI of a resource for which options should be obtained.
-	 * @return A set of methods allowed for this resource.
+	 * @param method The HTTP method.
+	 * @return <code>true</code> if the method is allowed for this resource.
 	 * @throws IOException if there is an error accessing the resource.
+	 * @see #getAllowedMethods(HttpServletRequest, URI)
 	 */
-	protected Set<String> getAllowedMethods(final HttpServletRequest request, final URI resourceURI) throws IOException {
-		final Set<String> allowedMethods = new HashSet<String>(); //create a new set of method strings
+	protected boolean isAllowedMethod(final HttpServletRequest request, final URI resourceURI, final String method) throws IOException {
+		return getStateAllowedMethods(request, resourceURI).contains(getMethodIndex(method), method);
+	}
+
+	/**
+	 * Determines the HTTP methods allowed for a resource in a particular state. This method is only called once for each state, so the result must depend only
+	 * on the given state and the configuration of the servlet, not on any particular resource.
+	 * @param exists Whether the resource exists.
+	 * @param collection Whether the resource is a collection.
+	 * @param readOnly Whether the servlet is read-only.
+	 * @return A modifiable set of methods allowed for a resource in the given state, to which child classes may add methods.
+	 */
+	protected Set<String> getAllowedMethods(final boolean exists, final boolean collection, final boolean readOnly) {
+		final Set<String> allowedMethods = new LinkedHashSet<String>(); //create a new set of method strings
 		allowedMethods.add(OPTIONS_METHOD); //we always allow options
-		if(exists(request, resourceURI)) { //if the resource exists
+		if(exists) { //if the resource exists
 			allowedMethods.add(GET_METHOD);
 			allowedMethods.add(HEAD_METHOD);
 			allowedMethods.add(POST_METHOD);
 			if(LIST_DIRECTORIES) { //if we allow directory listings
 				//		TODO implement  			methodSet.add(PROPFIND);
 			}
-			if(!isCollection(request, resourceURI)) { //if the resource is not a collection
+			if(!collection && !readOnly) { //if the resource is not a collection and can be written
 				allowedMethods.add(PUT_METHOD); //allow saving a resource to this location  			
 			}
-		} else { //if the resource does not exist
+		} else if(!readOnly) { //if the resource does not exist but can be created
 			//  	TODO implement  		methodSet.add(LOCK);
 			allowedMethods.add(PUT_METHOD);
 		}
@@ -642,6 +1199,58 @@ protected Set<String> getAllowedMethods(final HttpServletRequest request, final
 		return allowedMethods; //return the allowed methods
 	}
 
+	/**
+	 * The methods allowed for resources in a particular state, with the methods having handlers also represented as bits indexed by
+	 * {@link #getMethodIndex(String)}, and the value of the <code>Allow</code> header already formatted.
+	 * @author Garret Wilson
+	 */
+	private class AllowedMethods {
+
+		private final Set<String> methods;
+
+		/** @return The read-only set of allowed methods. */
+		public Set<String> getMethods() {
+			return methods;
+		}
+
+		/** The bits of the allowed methods having method indexes that fit in a long. */
+		private final long bits;
+
+		private final String allowHeaderValue;
+
+		/** @return The value of the <code>Allow</code> header listing the allowed methods. */
+		public String getAllowHeaderValue() {
+			return allowHeaderValue;
+		}
+
+		/**
+		 * Constructor.
+		 * @param methods The allowed methods.
+		 */
+		public AllowedMethods(final Set<String> methods) {
+			this.methods = java.util.Collections.unmodifiableSet(new LinkedHashSet<String>(methods));
+			long bits = 0;
+			for(final String method : methods) {
+				final int methodIndex = getMethodIndex(method);
+				if(methodIndex >= 0 && methodIndex < Long.SIZE) {
+					bits |= 1L << methodIndex;
+				}
+			}
+			this.bits = bits;
+			this.allowHeaderValue = Collections.toString(methods, COMMA_CHAR);
+		}
+
+		/**
+		 * Determines whether a method is allowed.
+		 * @param methodIndex The index of the method, or -1 if no handler is registered for the method.
+		 * @param method The method token.
+		 * @return <code>true</code> if the method is allowed.
+		 */
+		public boolean contains(final int methodIndex, final String method) {
+			return methodIndex >= 0 && methodIndex < Long.SIZE ? (bits & 1L << methodIndex) != 0 : methods.contains(method);
+		}
+	}
+
 	/**
 	 * Checks whether the given principal is authorized to invoke the given method on the given resource. This version restricts the HTTP methods PUT and DELETE
 	 * if the servlet is read-only.
@@ -708,6 +1317,92 @@ protected String getRealm(final URI resourceURI) throws HTTPInternalServerErrorE
 	 */
 	protected abstract R getResource(final HttpServletRequest request, final URI resourceURI) throws IllegalArgumentException, IOException;
 
+	/**
+	 * Returns the resolution context of a request, in which resolutions are remembered for the rest of the request.
+	 * @param request The HTTP request.
+	 * @return The resolution context of the request for this servlet.
+	 */
+	protected RequestResolution getRequestResolution(final HttpServletRequest request) {
+		return RequestResolution.get(request, this);
+	}
+
+	/**
+	 * Determines the canonical URI of a requested resource, using the resolution already made during this request if there is one.
+	 * @param request The HTTP request indicating the requested resource.
+	 * @param requestedResourceURI The requested absolute URI of the resource.
+	 * @param method The HTTP request method.
+	 * @param analogousResourceURI The URI of a resource to use by analogy, or <code>null</code> if no analogous resource is known.
+	 * @return The canonical URI of the requested resource, which may be different than the requested resource URI.
+	 * @see #getResourceURI(HttpServletRequest, URI, String, URI)
+	 */
+	protected URI getResourceURICached(final HttpServletRequest request, final URI requestedResourceURI, final String method, final URI analogousResourceURI) {
+		final RequestResolution resolution = getRequestResolution(request);
+		URI resourceURI = resolution.getResolvedURI(requestedResourceURI, method, analogousResourceURI);
+		if(resourceURI == null) {
+			resourceURI = getResourceURI(request, requestedResourceURI, method, analogousResourceURI);
+			resolution.setResolvedURI(requestedResourceURI, method, analogousResourceURI, resourceURI);
+		}
+		return resourceURI;
+	}
+
+	/**
+	 * Determines if the resource at a given URI exists, using the determination already made during this request if there is one.
+	 * @param request The HTTP request in response to which existence of the resource is being determined.
+	 * @param resourceURI The URI of the requested resource.
+	 * @return <code>true</code> if the resource exists, else <code>false</code>.
+	 * @throws IOException if there is an error accessing the resource.
+	 * @see #exists(HttpServletRequest, URI)
+	 */
+	protected boolean existsCached(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		final RequestResolution resolution = getRequestResolution(request);
+		final Boolean cachedExists = resolution.getExists(resourceURI);
+		if(cachedExists != null) {
+			return cachedExists.booleanValue();
+		}
+		final boolean exists = exists(request, resourceURI);
+		resolution.setExists(resourceURI, exists);
+		return exists;
+	}
+
+	/**
+	 * Determines if the resource at a given URI is an existing collection, using the determination already made during this request if there is one.
+	 * @param request The HTTP request in response to which the collection is being checked.
+	 * @param resourceURI The URI of the requested resource.
+	 * @return <code>true</code> if the resource is a collection, else <code>false</code>.
+	 * @throws IOException if there is an error accessing the resource.
+	 * @see #isCollection(HttpServletRequest, URI)
+	 */
+	protected boolean isCollectionCached(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		final RequestResolution resolution = getRequestResolution(request);
+		final Boolean cachedCollection = resolution.getCollection(resourceURI);
+		if(cachedCollection != null) {
+			return cachedCollection.booleanValue();
+		}
+		final boolean collection = isCollection(request, resourceURI);
+		resolution.setCollection(resourceURI, collection);
+		return collection;
+	}
+
+	/**
+	 * Determines the requested resource, using the resource already retrieved during this request if there is one.
+	 * @param request The HTTP request in response to which the resource is being retrieved.
+	 * @param resourceURI The URI of the requested resource.
+	 * @return An object providing an encapsulation of the requested resource, but not necessarily the contents of the resource.
+	 * @throws IllegalArgumentException if the given resource URI does not represent a valid resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 * @see #getResource(HttpServletRequest, URI)
+	 */
+	@SuppressWarnings("unchecked")
+	protected R getResourceCached(final HttpServletRequest request, final URI resourceURI) throws IllegalArgumentException, IOException {
+		final RequestResolution resolution = getRequestResolution(request);
+		R resource = (R)resolution.getResource(resourceURI);
+		if(resource == null) {
+			resource = getResource(request, resourceURI);
+			resolution.setResource(resourceURI, resource);
+		}
+		return resource;
+	}
+
 	/**
 	 * Determines the content type of the given resource. This default version returns the MIME content type servlet known by the servlet context.
 	 * @param request The HTTP request in response to which the content type is being retrieved.
@@ -721,6 +1416,18 @@ protected MediaType getContentType(final HttpServletRequest request, final R res
 				.map(MediaType::parse).orElse(null); //create a content type object if a content type string was returned
 	}
 
+	/**
+	 * Determines the entity tag of the given resource, which will be sent in the <code>ETag</code> header and used to evaluate <code>If-None-Match</code>. This
+	 * version returns <code>null</code>, indicating that no entity tag is known.
+	 * @param request The HTTP request in response to which the entity tag is being retrieved.
+	 * @param resource The resource for which the entity tag should be determined.
+	 * @return The entity tag of the given resource, including quotes, or <code>null</code> if no entity tag could be determined.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected String getEntityTag(final HttpServletRequest request, final R resource) throws IOException {
+		return null;
+	}
+
 	/**
 	 * Determines the content length of the given resource.
 	 * @param request The HTTP request in response to which the content length is being retrieved.
@@ -0,0 +1,405 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.io.*;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.servlet.http.*;
+
+import io.clogr.Clogged;
+
+import static com.globalmentor.net.HTTP.*;
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+/**
+ * Records completed requests in a log file without making request threads wait for any I/O. Request threads place records in a bounded lock-free ring buffer,
+ * and a single background thread writes them to the file in batches. If the buffer is full, the record is dropped and counted rather than blocking the request.
+ * <p>
+ * A new log file is started each day (UTC), named <code>access-<var>name</var>-<var>yyyy-MM-dd</var>.log</code>. Records are written one per line in the W3C
+ * extended log file format, with the fields listed in a <code>#Fields</code> directive at the beginning of each file. A field that is not known, such as the
+ * number of bytes of a response without a content length, is written as <code>-</code>. The time taken to service each request is recorded in milliseconds.
+ * </p>
+ * <p>
+ * Records of successful requests may be sampled, so that only one in a given number is logged; requests resulting in an error status are always logged.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class AccessLog implements Clogged {
+
+	/** The default number of records the buffer can hold. */
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	/** The number of nanoseconds the writer waits before checking for more records after finding the buffer empty. */
+	private static final long WRITE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(500);
+
+	/** The fields of each record, as listed in the <code>#Fields</code> directive. */
+	private static final String FIELDS = "date time c-ip cs-method cs-uri s-status sc-bytes x-milliseconds cs-username x-authorization";
+
+	/** The number of milliseconds in a day. */
+	private static final long DAY_DURATION = TimeUnit.DAYS.toMillis(1);
+
+	/** The formatter of record dates and times. */
+	private static final DateTimeFormatter DATE_TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneOffset.UTC);
+
+	/** The outcome of checking whether a request was authorized. */
+	public enum AuthorizationOutcome {
+		/** Authorization was not checked, as for an <code>OPTIONS</code> request. */
+		NONE,
+		/** The request was authorized. */
+		AUTHORIZED,
+		/** The principal could not be authenticated. */
+		UNAUTHENTICATED,
+		/** The principal was authenticated but not authorized. */
+		UNAUTHORIZED
+	}
+
+	private final File directory;
+
+	/** @return The directory in which log files are written. */
+	public File getDirectory() {
+		return directory;
+	}
+
+	private final String name;
+
+	/** @return The name identifying the log files, such as the name of the servlet. */
+	public String getName() {
+		return name;
+	}
+
+	private final int sampling;
+
+	/** @return The number of successful requests for each one logged; <code>1</code> if all requests are logged. */
+	public int getSampling() {
+		return sampling;
+	}
+
+	/** The records waiting to be written, with empty slots <code>null</code>. */
+	private final AtomicReferenceArray<Record> buffer;
+
+	/** The mask for converting a sequence number to a buffer index. */
+	private final int mask;
+
+	/** The sequence number of the next record to be added; only updated by request threads. */
+	private final AtomicLong tail = new AtomicLong(0);
+
+	/** The sequence number of the next record to be written; only updated by the writer thread. */
+	private volatile long head = 0;
+
+	/** The number of records dropped because the buffer was full. */
+	private final AtomicLong droppedCount = new AtomicLong(0);
+
+	/** @return The number of records dropped because the buffer was full. */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/** The number of records written to the log. */
+	private final AtomicLong writtenCount = new AtomicLong(0);
+
+	/** @return The number of records written to the log. */
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	/** The thread writing records to the log. */
+	private final Thread writerThread;
+
+	/** Whether the log has been closed. */
+	private volatile boolean closed = false;
+
+	/** The writer of the current log file, or <code>null</code> if no file is open; only accessed by the writer thread. */
+	private Writer writer = null;
+
+	/** The day, in days since the epoch, of the current log file; only accessed by the writer thread. */
+	private long day = Long.MIN_VALUE;
+
+	/**
+	 * Constructor. The writer thread is started immediately.
+	 * @param directory The directory in which log files are written.
+	 * @param name The name identifying the log files, such as the name of the servlet.
+	 * @param capacity The minimum number of records the buffer can hold; rounded up to a power of two.
+	 * @param sampling The number of successful requests for each one logged; <code>1</code> if all requests should be logged.
+	 * @throws NullPointerException if the given directory and/or name is <code>null</code>.
+	 * @throws IllegalArgumentException if the given capacity and/or sampling is not positive.
+	 */
+	public AccessLog(final File directory, final String name, final int capacity, final int sampling) {
+		if(capacity <= 0 || capacity > 1 << 30 || sampling <= 0) {
+			throw new IllegalArgumentException("Invalid access log configuration: capacity " + capacity + ", sampling " + sampling + ".");
+		}
+		this.directory = requireNonNull(directory);
+		this.name = requireNonNull(name);
+		this.sampling = sampling;
+		final int bufferSize = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+		this.buffer = new AtomicReferenceArray<Record>(bufferSize);
+		this.mask = bufferSize - 1;
+		writerThread = new Thread(this::write, getClass().getSimpleName() + "-" + name);
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	/**
+	 * Logs a completed request. This method never blocks; if the buffer is full the record is dropped.
+	 * @param request The HTTP request.
+	 * @param status The status code sent, which may differ from that of the response if the request failed with an exception.
+	 * @param duration The number of nanoseconds taken to service the request.
+	 * @param byteCount The number of response content bytes actually written, or -1 if not known.
+	 * @param principalID The ID of the principal making the request, or <code>null</code> if the principal is not known.
+	 * @param authorizationOutcome The outcome of checking whether the request was authorized.
+	 * @return <code>true</code> if the request was logged or not sampled, or <code>false</code> if the record was dropped.
+	 */
+	public boolean log(final HttpServletRequest request, final int status, final long duration, final long byteCount, final String principalID,
+			final AuthorizationOutcome authorizationOutcome) {
+		if(sampling > 1 && status < SC_BAD_REQUEST && ThreadLocalRandom.current().nextInt(sampling) != 0) { //only sample successful requests
+			return true;
+		}
+		if(closed) {
+			return false;
+		}
+		final String queryString = request.getQueryString();
+		final String requestURI = queryString != null ? request.getRequestURI() + '?' + queryString : request.getRequestURI();
+		final Record record = new Record(System.currentTimeMillis(), request.getRemoteAddr(), request.getMethod(), requestURI, status,
+				byteCount, TimeUnit.NANOSECONDS.toMillis(duration), principalID, authorizationOutcome); //create the record before claiming a slot, so that a claimed slot is always filled
+		long tail;
+		do {
+			tail = this.tail.get();
+			if(tail - head > mask) { //if the buffer is full, drop the record rather than waiting
+				droppedCount.incrementAndGet();
+				return false;
+			}
+		} while(!this.tail.compareAndSet(tail, tail + 1));
+		buffer.lazySet((int)tail & mask, record);
+		return true;
+	}
+
+	/** Writes records in batches until the log is closed, then writes any remaining records. */
+	private void write() {
+		final StringBuilder batch = new StringBuilder();
+		long reportedDroppedCount = 0;
+		while(!closed) {
+			final long droppedCount = getDroppedCount();
+			if(droppedCount != reportedDroppedCount) { //note in the log itself that records are missing
+				batch.append("#Dropped: ").append(droppedCount - reportedDroppedCount).append('\n');
+				reportedDroppedCount = droppedCount;
+			}
+			if(drain(batch) == 0) {
+				LockSupport.parkNanos(this, WRITE_INTERVAL);
+			}
+		}
+		drain(batch);
+		closeFile();
+	}
+
+	/**
+	 * Writes all records currently in the buffer, along with any text already in the batch.
+	 * @param batch The buffer in which to collect the text of the records.
+	 * @return The number of records written.
+	 */
+	private int drain(final StringBuilder batch) {
+		int count = 0;
+		Record record;
+		while((record = poll()) != null) {
+			final long recordDay = Math.floorDiv(record.time, DAY_DURATION);
+			if(recordDay != day) { //if this record belongs in a new file, finish the current file first
+				flush(batch);
+				closeFile();
+				openFile(recordDay);
+			}
+			record.appendTo(batch);
+			++count;
+		}
+		flush(batch);
+		writtenCount.addAndGet(count);
+		return count;
+	}
+
+	/** @return The next record in the buffer, or <code>null</code> if there are no more records ready. */
+	private Record poll() {
+		final long head = this.head;
+		final int index = (int)head & mask;
+		final Record record = buffer.get(index);
+		if(record != null) {
+			buffer.lazySet(index, null);
+			this.head = head + 1; //make room for another record only after the slot is cleared
+		}
+		return record;
+	}
+
+	/**
+	 * Opens the log file for a day, writing the header if the file is new.
+	 * @param day The day, in days since the epoch.
+	 */
+	private void openFile(final long day) {
+		this.day = day;
+		final LocalDate date = LocalDate.ofEpochDay(day);
+		final File file = new File(directory, "access-" + name + "-" + date + ".log");
+		final boolean exists = file.exists();
+		try {
+			writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), UTF_8));
+			if(!exists) {
+				writer.write("#Version: 1.0\n#Date: " + date + "\n#Fields: " + FIELDS + "\n");
+			}
+		} catch(final IOException ioException) {
+			getLogger().warn("Unable to open access log file {}.", file, ioException);
+			writer = null;
+		}
+	}
+
+	/** Closes the current log file, if one is open. */
+	private void closeFile() {
+		if(writer != null) {
+			try {
+				writer.close();
+			} catch(final IOException ioException) {
+				getLogger().warn("Unable to close access log {}.", name, ioException);
+			}
+			writer = null;
+		}
+	}
+
+	/**
+	 * Writes the batch to the current log file, if any, and clears it.
+	 * @param batch The text to write.
+	 */
+	private void flush(final StringBuilder batch) {
+		if(batch.length() == 0) {
+			return;
+		}
+		if(writer != null) {
+			try {
+				writer.append(batch);
+				writer.flush();
+			} catch(final IOException ioException) {
+				getLogger().warn("Unable to write access log {}.", name, ioException);
+			}
+		}
+		batch.setLength(0);
+	}
+
+	/**
+	 * Closes the log, writing any records remaining in the buffer. Records logged after the log is closed are dropped.
+	 * @throws InterruptedException if interrupted while waiting for the remaining records to be written.
+	 */
+	public void close() throws InterruptedException {
+		closed = true;
+		LockSupport.unpark(writerThread);
+		writerThread.join();
+	}
+
+	@Override
+	public String toString() {
+		return "written: " + getWrittenCount() + ", dropped: " + getDroppedCount();
+	}
+
+	/**
+	 * The record of a completed request.
+	 * @author Garret Wilson
+	 */
+	private static class Record {
+
+		private final long time;
+		private final String remoteAddress;
+		private final String method;
+		private final String requestURI;
+		private final int status;
+		private final long byteCount;
+		private final long duration;
+		private final String principalID;
+		private final AuthorizationOutcome authorizationOutcome;
+
+		/**
+		 * Constructor.
+		 * @param time The time the request completed, in milliseconds since the epoch.
+		 * @param remoteAddress The address of the client.
+		 * @param method The HTTP method.
+		 * @param requestURI The request URI, including any query.
+		 * @param status The status code sent.
+		 * @param byteCount The number of content bytes sent, or -1 if not known.
+		 * @param duration The number of milliseconds taken to service the request.
+		 * @param principalID The ID of the principal making the request, or <code>null</code> if the principal is not known.
+		 * @param authorizationOutcome The outcome of checking whether the request was authorized.
+		 */
+		private Record(final long time, final String remoteAddress, final String method, final String requestURI, final int status, final long byteCount,
+				final long duration, final String principalID, final AuthorizationOutcome authorizationOutcome) {
+			this.time = time;
+			this.remoteAddress = remoteAddress;
+			this.method = method;
+			this.requestURI = requestURI;
+			this.status = status;
+			this.byteCount = byteCount;
+			this.duration = duration;
+			this.principalID = principalID;
+			this.authorizationOutcome = authorizationOutcome;
+		}
+
+		/**
+		 * Appends the record as a line of the log.
+		 * @param builder The builder to which the record should be appended.
+		 */
+		private void appendTo(final StringBuilder builder) {
+			DATE_TIME_FORMATTER.formatTo(Instant.ofEpochMilli(time), builder);
+			builder.append(' ').append(field(remoteAddress));
+			builder.append(' ').append(field(method));
+			builder.append(' ').append(field(requestURI));
+			builder.append(' ').append(status);
+			builder.append(' ');
+			if(byteCount >= 0) {
+				builder.append(byteCount);
+			} else {
+				builder.append('-');
+			}
+			builder.append(' ').append(duration);
+			builder.append(' ').append(field(principalID));
+			builder.append(' ').append(authorizationOutcome != null ? authorizationOutcome.name() : "-");
+			builder.append('\n');
+		}
+
+		/**
+		 * Formats a field value, so that it cannot be mistaken for several fields or several lines.
+		 * @param value The value of the field, or <code>null</code> if the value is not known.
+		 * @return The value with any whitespace or control characters replaced by <code>+</code>, or <code>-</code> if the value is not known.
+		 */
+		private static String field(final String value) {
+			if(value == null || value.isEmpty()) {
+				return "-";
+			}
+			final int length = value.length();
+			for(int i = 0; i < length; ++i) {
+				if(value.charAt(i) <= ' ') { //only copy the value if something needs replacing
+					final char[] chars = value.toCharArray();
+					for(int j = i; j < length; ++j) {
+						if(chars[j] <= ' ') {
+							chars[j] = '+';
+						}
+					}
+					return new String(chars);
+				}
+			}
+			return value;
+		}
+	}
+
+}
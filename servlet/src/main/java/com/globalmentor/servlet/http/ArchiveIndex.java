@@ -0,0 +1,468 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.time.*;
+import java.util.*;
+import java.util.zip.*;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Collections.*;
+import static java.util.Objects.*;
+
+/**
+ * An index of the entries of a ZIP archive such as a JAR or WAR file, built once from the central directory of the archive. The entries can then be looked up
+ * and read without opening a {@link java.net.URLConnection} or {@link ZipFile} for each access. The content of stored entries is read directly from the
+ * archive; the content of deflated entries is inflated as it is read.
+ * <p>
+ * ZIP64 archives are not supported.
+ * </p>
+ * <p>
+ * The archive is read through a single channel shared by all readers. If the channel is closed because a reading thread was interrupted, it is reopened so that
+ * other readers are not affected.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class ArchiveIndex implements Closeable {
+
+	/** The compression method of entries that are stored without compression. */
+	public static final int STORED = ZipEntry.STORED;
+
+	/** The compression method of entries that are compressed using the deflate algorithm. */
+	public static final int DEFLATED = ZipEntry.DEFLATED;
+
+	/** The signature of the end of central directory record. */
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+	/** The length of the end of central directory record, without the comment. */
+	private static final int END_OF_CENTRAL_DIRECTORY_LENGTH = 22;
+
+	/** The signature of a central directory file header. */
+	private static final int CENTRAL_DIRECTORY_HEADER_SIGNATURE = 0x02014b50;
+
+	/** The length of a central directory file header, without the variable-length fields. */
+	private static final int CENTRAL_DIRECTORY_HEADER_LENGTH = 46;
+
+	/** The signature of a local file header. */
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+
+	/** The length of a local file header, without the variable-length fields. */
+	private static final int LOCAL_HEADER_LENGTH = 30;
+
+	/** The value of a 32-bit field indicating that the actual value is in a ZIP64 extra field. */
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private final Path file;
+
+	/** @return The archive file. */
+	public Path getFile() {
+		return file;
+	}
+
+	/** The channel for reading the archive, shared among all readers using positional reads. */
+	private volatile FileChannel channel;
+
+	/** Whether the index has been closed. */
+	private volatile boolean closed = false;
+
+	/** The entries of the archive, keyed to entry name. */
+	private final Map<String, Entry> entries;
+
+	/**
+	 * Opens an archive and indexes its entries. The archive remains open until the index is closed.
+	 * @param file The archive file.
+	 * @throws NullPointerException if the given file is <code>null</code>.
+	 * @throws IOException if the archive could not be read, is not a valid ZIP archive, or is a ZIP64 archive.
+	 */
+	public ArchiveIndex(final Path file) throws IOException {
+		this.file = requireNonNull(file);
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		try {
+			this.entries = unmodifiableMap(readCentralDirectory());
+		} catch(final IOException | RuntimeException exception) {
+			channel.close();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Retrieves an entry of the archive.
+	 * @param name The name of the entry, such as <code>META-INF/resources/example.css</code>.
+	 * @return The entry with the given name, or <code>null</code> if there is no such entry.
+	 */
+	public Entry getEntry(final String name) {
+		return entries.get(name);
+	}
+
+	/** @return The number of entries in the archive. */
+	public int getEntryCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Opens an entry for reading. The content of a {@link #STORED} entry is read directly from its location in the archive.
+	 * @param entry The entry to read.
+	 * @return A new input stream to the uncompressed content of the entry.
+	 * @throws IllegalArgumentException if the entry uses a compression method other than {@link #STORED} or {@link #DEFLATED}.
+	 * @throws IOException if there is an error reading the archive.
+	 */
+	public InputStream newInputStream(final Entry entry) throws IOException {
+		final InputStream rawInputStream = new RangeInputStream(getDataOffset(entry), entry.getCompressedSize());
+		switch(entry.getMethod()) {
+			case STORED:
+				return rawInputStream;
+			case DEFLATED:
+				final Inflater inflater = new Inflater(true); //ZIP entries have no zlib header
+				return new InflaterInputStream(rawInputStream, inflater) {
+					private boolean closed = false;
+
+					/** Whether the end of the compressed data has been reached. */
+					private boolean eof = false;
+
+					@Override
+					protected void fill() throws IOException {
+						if(eof) {
+							throw new EOFException("Unexpected end of compressed archive entry " + entry.getName() + ".");
+						}
+						len = in.read(buf, 0, buf.length);
+						if(len == -1) { //a nowrap inflater may need an extra dummy byte at the end of the input, as ZipFile provides
+							buf[0] = 0;
+							len = 1;
+							eof = true;
+						}
+						inf.setInput(buf, 0, len);
+					}
+
+					@Override
+					public void close() throws IOException {
+						if(!closed) {
+							closed = true;
+							inflater.end(); //our inflater isn't ended automatically, because we supplied it
+							super.close();
+						}
+					}
+				};
+			default:
+				throw new IllegalArgumentException("Unsupported compression method " + entry.getMethod() + " for archive entry " + entry.getName() + ".");
+		}
+	}
+
+	/**
+	 * Determines the offset of the data of an entry, reading its local header the first time.
+	 * @param entry The entry.
+	 * @return The offset within the archive at which the entry data begins.
+	 * @throws IOException if the local header could not be read or is invalid.
+	 */
+	private long getDataOffset(final Entry entry) throws IOException {
+		long dataOffset = entry.dataOffset;
+		if(dataOffset < 0) {
+			final ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(header, entry.getLocalHeaderOffset());
+			if(header.getInt(0) != LOCAL_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid local header for archive entry " + entry.getName() + " in " + file + ".");
+			}
+			dataOffset = entry.getLocalHeaderOffset() + LOCAL_HEADER_LENGTH + Short.toUnsignedInt(header.getShort(26)) + Short.toUnsignedInt(header.getShort(28));
+			entry.dataOffset = dataOffset; //the local extra field may differ from the central one, so it can't be calculated in advance
+		}
+		return dataOffset;
+	}
+
+	/**
+	 * Reads the central directory of the archive.
+	 * @return The entries of the archive, keyed to entry name.
+	 * @throws IOException if the archive could not be read or is not supported.
+	 */
+	private Map<String, Entry> readCentralDirectory() throws IOException {
+		final long size = channel.size();
+		final int tailLength = (int)Math.min(size, END_OF_CENTRAL_DIRECTORY_LENGTH + 0xFFFF); //the record is followed by a comment of up to 64K
+		final ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(tail, size - tailLength);
+		int endIndex = -1;
+		for(int i = tailLength - END_OF_CENTRAL_DIRECTORY_LENGTH; i >= 0; --i) {
+			if(tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE) {
+				endIndex = i;
+				break;
+			}
+		}
+		if(endIndex < 0) {
+			throw new ZipException("No end of central directory found in " + file + ".");
+		}
+		final int entryCount = Short.toUnsignedInt(tail.getShort(endIndex + 10));
+		final long directoryLength = Integer.toUnsignedLong(tail.getInt(endIndex + 12));
+		final long directoryOffset = Integer.toUnsignedLong(tail.getInt(endIndex + 16));
+		if(entryCount == 0xFFFF || directoryOffset == ZIP64_MAGIC || directoryLength > Integer.MAX_VALUE) {
+			throw new ZipException("ZIP64 archive " + file + " not supported.");
+		}
+		final ByteBuffer directory = ByteBuffer.allocate((int)directoryLength).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(directory, directoryOffset);
+		final Map<String, Entry> entries = new HashMap<String, Entry>(entryCount * 4 / 3 + 1);
+		int position = 0;
+		for(int i = 0; i < entryCount; ++i) {
+			if(position + CENTRAL_DIRECTORY_HEADER_LENGTH > directory.limit() || directory.getInt(position) != CENTRAL_DIRECTORY_HEADER_SIGNATURE) {
+				throw new ZipException("Invalid central directory in " + file + ".");
+			}
+			final int method = Short.toUnsignedInt(directory.getShort(position + 10));
+			final int dosTime = directory.getInt(position + 12);
+			final long compressedSize = Integer.toUnsignedLong(directory.getInt(position + 20));
+			final long uncompressedSize = Integer.toUnsignedLong(directory.getInt(position + 24));
+			final int nameLength = Short.toUnsignedInt(directory.getShort(position + 28));
+			final int extraLength = Short.toUnsignedInt(directory.getShort(position + 30));
+			final int commentLength = Short.toUnsignedInt(directory.getShort(position + 32));
+			final long localHeaderOffset = Integer.toUnsignedLong(directory.getInt(position + 42));
+			if(compressedSize == ZIP64_MAGIC || uncompressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+				throw new ZipException("ZIP64 archive " + file + " not supported.");
+			}
+			final String name = new String(directory.array(), position + CENTRAL_DIRECTORY_HEADER_LENGTH, nameLength, UTF_8); //Java writes UTF-8 names
+			entries.put(name, new Entry(name, method, compressedSize, uncompressedSize, toMillis(dosTime), localHeaderOffset));
+			position += CENTRAL_DIRECTORY_HEADER_LENGTH + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	/**
+	 * Reads bytes from the archive at a given position until the buffer is full.
+	 * @param buffer The buffer to fill.
+	 * @param position The position in the archive from which to read.
+	 * @throws EOFException if the end of the archive was reached before the buffer was filled.
+	 * @throws IOException if there is an error reading the archive.
+	 */
+	private void readFully(final ByteBuffer buffer, long position) throws IOException {
+		while(buffer.hasRemaining()) {
+			final int count = read(buffer, position);
+			if(count < 0) {
+				throw new EOFException("Unexpected end of archive " + file + ".");
+			}
+			position += count;
+		}
+	}
+
+	/**
+	 * Reads bytes from the archive at a given position. If the channel was closed because some thread was interrupted while reading, the channel is reopened;
+	 * the read is retried unless it was the current thread that was interrupted.
+	 * @param buffer The buffer into which bytes are to be transferred.
+	 * @param position The position in the archive from which to read.
+	 * @return The number of bytes read, or <code>-1</code> if the position is at or beyond the end of the archive.
+	 * @throws ClosedChannelException if the index has been closed, or the current thread was interrupted.
+	 * @throws IOException if there is an error reading the archive.
+	 */
+	private int read(final ByteBuffer buffer, final long position) throws IOException {
+		while(true) {
+			final FileChannel channel = this.channel;
+			try {
+				return channel.read(buffer, position);
+			} catch(final ClosedChannelException closedChannelException) {
+				reopen(channel, closedChannelException);
+				if(closedChannelException instanceof ClosedByInterruptException || Thread.currentThread().isInterrupted()) { //don't keep closing the channel
+					throw closedChannelException;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces a channel that was closed other than by closing the index.
+	 * @param closedChannel The channel that was found to be closed.
+	 * @param closedChannelException The exception indicating that the channel was closed.
+	 * @throws ClosedChannelException if the index has been closed.
+	 * @throws IOException if the archive could not be reopened.
+	 */
+	private synchronized void reopen(final FileChannel closedChannel, final ClosedChannelException closedChannelException) throws IOException {
+		if(closed) {
+			throw closedChannelException;
+		}
+		if(channel == closedChannel) { //if another thread hasn't already reopened the channel
+			channel = FileChannel.open(file, StandardOpenOption.READ);
+		}
+	}
+
+	/**
+	 * Converts an MS-DOS date and time, as stored in ZIP archives, to milliseconds since the epoch. As with {@link ZipEntry#getTime()}, the time is interpreted in
+	 * the default time zone.
+	 * @param dosTime The MS-DOS date in the high 16 bits and the time in the low 16 bits.
+	 * @return The time in milliseconds, or <code>-1</code> if the date and time are not valid.
+	 */
+	private static long toMillis(final int dosTime) {
+		try {
+			final LocalDateTime dateTime = LocalDateTime.of(((dosTime >> 25) & 0x7f) + 1980, (dosTime >> 21) & 0x0f, (dosTime >> 16) & 0x1f, (dosTime >> 11) & 0x1f,
+					(dosTime >> 5) & 0x3f, (dosTime << 1) & 0x3e);
+			return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+		} catch(final DateTimeException dateTimeException) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Closes the archive. Entries can no longer be read after the index is closed.
+	 * @throws IOException if there is an error closing the archive.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		channel.close();
+	}
+
+	/**
+	 * The metadata of an archive entry.
+	 * @author Garret Wilson
+	 */
+	public static class Entry {
+
+		private final String name;
+
+		/** @return The name of the entry. */
+		public String getName() {
+			return name;
+		}
+
+		private final int method;
+
+		/** @return The compression method of the entry, such as {@link ArchiveIndex#STORED} or {@link ArchiveIndex#DEFLATED}. */
+		public int getMethod() {
+			return method;
+		}
+
+		private final long compressedSize;
+
+		/** @return The number of bytes the entry data occupies in the archive. */
+		public long getCompressedSize() {
+			return compressedSize;
+		}
+
+		private final long size;
+
+		/** @return The uncompressed size of the entry. */
+		public long getSize() {
+			return size;
+		}
+
+		private final long lastModified;
+
+		/** @return The modification time of the entry in milliseconds since the epoch, or <code>-1</code> if the time is not known. */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		private final long localHeaderOffset;
+
+		/** @return The offset within the archive of the local header of the entry. */
+		public long getLocalHeaderOffset() {
+			return localHeaderOffset;
+		}
+
+		/** The offset within the archive of the entry data, or <code>-1</code> if the local header has not yet been read. */
+		private volatile long dataOffset = -1;
+
+		/**
+		 * Constructor.
+		 * @param name The name of the entry.
+		 * @param method The compression method of the entry.
+		 * @param compressedSize The number of bytes the entry data occupies in the archive.
+		 * @param size The uncompressed size of the entry.
+		 * @param lastModified The modification time of the entry, or <code>-1</code> if the time is not known.
+		 * @param localHeaderOffset The offset within the archive of the local header of the entry.
+		 */
+		private Entry(final String name, final int method, final long compressedSize, final long size, final long lastModified, final long localHeaderOffset) {
+			this.name = name;
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+
+		/** @return <code>true</code> if the entry represents a directory. */
+		public boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		/** @return <code>true</code> if the entry is stored without compression. */
+		public boolean isStored() {
+			return method == STORED;
+		}
+
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * An input stream reading a range of bytes of the archive using positional reads, so that any number of streams may read the archive concurrently.
+	 * @author Garret Wilson
+	 */
+	private class RangeInputStream extends InputStream {
+
+		/** The current position in the archive. */
+		private long position;
+
+		/** The position in the archive at which the range ends. */
+		private final long end;
+
+		/**
+		 * Constructor.
+		 * @param offset The offset in the archive at which the range begins.
+		 * @param length The number of bytes in the range.
+		 */
+		public RangeInputStream(final long offset, final long length) {
+			this.position = offset;
+			this.end = offset + length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] bytes = new byte[1];
+			return read(bytes, 0, 1) > 0 ? bytes[0] & 0xff : -1;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+			if(length == 0) {
+				return 0;
+			}
+			final long remaining = end - position;
+			if(remaining <= 0) {
+				return -1;
+			}
+			final int count = ArchiveIndex.this.read(ByteBuffer.wrap(bytes, offset, (int)Math.min(length, remaining)), position);
+			if(count < 0) {
+				throw new EOFException("Unexpected end of archive " + file + ".");
+			}
+			position += count;
+			return count;
+		}
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long count = Math.max(0, Math.min(n, end - position));
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int)Math.min(end - position, Integer.MAX_VALUE);
+		}
+	}
+
+}
@@ -17,13 +17,17 @@
 package com.globalmentor.servlet.http;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
 import java.net.URI;
 import java.security.*;
 import java.text.DateFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import static java.util.Collections.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import static java.nio.charset.StandardCharsets.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
@@ -64,6 +68,60 @@
  * <dd>Whether HTTP communication is logged.</dd>
  * <dt>{@value #PROFILE_INIT_PARAMETER}</dt>
  * <dd>Whether profiling should occur; should be "true" or "false".</dd>
+ * <dt>{@value #WARM_UP_MANIFEST_INIT_PARAMETER}</dt>
+ * <dd>The context-relative path of a manifest listing the context-relative paths of resources to warm up on startup, one per line; blank lines and lines
+ * beginning with <code>#</code> are ignored.</dd>
+ * <dt>{@value #WARM_UP_RECORD_INIT_PARAMETER}</dt>
+ * <dd>Whether the most requested paths should be recorded in the data directory when the servlet is destroyed, and warmed up on the next startup; should be
+ * "true" or "false".</dd>
+ * <dt>{@value #WARM_UP_PARALLELISM_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of resources warmed up concurrently. Defaults to {@value #DEFAULT_WARM_UP_PARALLELISM}.</dd>
+ * <dt>{@value #WARM_UP_BLOCKING_INIT_PARAMETER}</dt>
+ * <dd>Whether initialization should wait until warming up is finished before the servlet accepts requests; should be "true" or "false". Otherwise warming up
+ * continues in the background.</dd>
+ * <dt>{@value #NONCE_STORE_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of digest authentication nonces and their principal associations retained. Defaults to {@value NonceStore#DEFAULT_MAX_SIZE}.</dd>
+ * <dt>{@value #STATELESS_NONCES_INIT_PARAMETER}</dt>
+ * <dd>Whether digest authentication nonces are signed using the nonce private key and verified without being stored, so that a nonce issued by one server can
+ * be used with any other server sharing the same private key; should be "true" or "false". Servlets deployed on multiple servers should specify a shared
+ * {@value #NONCE_SECRET_INIT_PARAMETER}.</dd>
+ * <dt>{@value #NONCE_SECRET_INIT_PARAMETER}</dt>
+ * <dd>The secret used as the nonce private key, which must be shared by all servers accepting stateless nonces. If not specified, a random secret is
+ * generated, so that nonces are only accepted by the server that issued them until it is restarted.</dd>
+ * <dt>{@value #NONCE_REPLAY_CACHE_INIT_PARAMETER}</dt>
+ * <dd>Whether, when using stateless nonces, the nonce counts used with each nonce are remembered to detect replayed requests; should be "true" or "false".
+ * Defaults to "true". Replays are only detected by the server that first saw the nonce; if turned off, a captured request may be replayed until its nonce
+ * expires.</dd>
+ * <dt>{@value #CREDENTIAL_CACHE_MAX_AGE_INIT_PARAMETER}</dt>
+ * <dd>The number of milliseconds principals and their digest credentials are cached after being looked up. Credentials are not cached unless this is
+ * specified.</dd>
+ * <dt>{@value #CREDENTIAL_CACHE_NEGATIVE_MAX_AGE_INIT_PARAMETER}</dt>
+ * <dd>The number of milliseconds the absence of a principal or its credentials is cached. Defaults to {@value #DEFAULT_CREDENTIAL_CACHE_NEGATIVE_MAX_AGE},
+ * or the credential cache maximum age if that is shorter.</dd>
+ * <dt>{@value #AUTHORIZATION_CACHE_MAX_AGE_INIT_PARAMETER}</dt>
+ * <dd>The number of milliseconds authorization decisions are cached. Authorization decisions are not cached unless this is specified, and then only those the
+ * servlet declares cacheable using {@link #getAuthorizationScope(HttpServletRequest, URI, String, Principal, String)}.</dd>
+ * <dt>{@value #SESSION_TOKEN_INIT_PARAMETER}</dt>
+ * <dd>Whether a signed session token is issued in a <code>SameSite</code> cookie after successful digest authentication, and accepted in place of digest
+ * credentials until it expires; should be "true" or "false".</dd>
+ * <dt>{@value #SESSION_TOKEN_MAX_AGE_INIT_PARAMETER}</dt>
+ * <dd>The number of milliseconds a session token is valid. Defaults to {@value #DEFAULT_SESSION_TOKEN_MAX_AGE}.</dd>
+ * <dt>{@value #SESSION_TOKEN_SECRET_INIT_PARAMETER}</dt>
+ * <dd>The secret with which session tokens are signed, which must be shared by all servers accepting the tokens. If not specified, a random secret is
+ * generated, so that tokens are only accepted by the server that issued them until it is restarted.</dd>
+ * <dt>{@value #SESSION_TOKEN_EPOCH_INIT_PARAMETER}</dt>
+ * <dd>The epoch covered by the signatures of session tokens; changing the epoch revokes all tokens issued in other epochs. Defaults to 0.</dd>
+ * <dt>{@value #ACCESS_LOG_INIT_PARAMETER}</dt>
+ * <dd>Whether completed requests are recorded in daily access log files in the log directory, written in the background; should be "true" or "false".</dd>
+ * <dt>{@value #ACCESS_LOG_SAMPLING_INIT_PARAMETER}</dt>
+ * <dd>The number of successful requests for each one recorded in the access log; requests resulting in an error are always recorded. Defaults to 1, recording
+ * all requests.</dd>
+ * <dt>{@value #ACCESS_LOG_CAPACITY_INIT_PARAMETER}</dt>
+ * <dd>The number of access log records that can wait to be written; further records are dropped and counted rather than delaying requests. Defaults to
+ * {@value AccessLog#DEFAULT_CAPACITY}.</dd>
+ * <dt>{@value #METRICS_INIT_PARAMETER}</dt>
+ * <dd>Whether request counts, latency histograms, and cache statistics are kept and exported over JMX as an {@link HTTPMetricsMXBean} in the
+ * {@value #METRICS_DOMAIN} domain; should be "true" or "false".</dd>
  * </dl>
  * @author Garret Wilson
  */
@@ -86,6 +144,144 @@ public class BaseHTTPServlet extends HttpServlet implements Clogged {
 	/** The init parameter, {@value #PROFILE_INIT_PARAMETER}, used to specify whether profiling should occur; should be "true" or "false". */
 	public static final String PROFILE_INIT_PARAMETER = "profile";
 
+	/**
+	 * The init parameter, {@value #WARM_UP_MANIFEST_INIT_PARAMETER}, used to specify the context-relative path of a manifest listing resources to warm up on
+	 * startup.
+	 */
+	public static final String WARM_UP_MANIFEST_INIT_PARAMETER = "warmUpManifest";
+
+	/**
+	 * The init parameter, {@value #WARM_UP_RECORD_INIT_PARAMETER}, used to specify whether the most requested paths are recorded and warmed up on the next
+	 * startup; should be "true" or "false".
+	 */
+	public static final String WARM_UP_RECORD_INIT_PARAMETER = "warmUpRecord";
+
+	/** The init parameter, {@value #WARM_UP_PARALLELISM_INIT_PARAMETER}, used to specify the maximum number of resources warmed up concurrently. */
+	public static final String WARM_UP_PARALLELISM_INIT_PARAMETER = "warmUpParallelism";
+
+	/** The default maximum number of resources warmed up concurrently. */
+	public static final int DEFAULT_WARM_UP_PARALLELISM = 4;
+
+	/**
+	 * The init parameter, {@value #WARM_UP_BLOCKING_INIT_PARAMETER}, used to specify whether initialization waits until warming up is finished; should be "true"
+	 * or "false".
+	 */
+	public static final String WARM_UP_BLOCKING_INIT_PARAMETER = "warmUpBlocking";
+
+	/**
+	 * The init parameter, {@value #NONCE_STORE_SIZE_INIT_PARAMETER}, used to specify the maximum number of digest authentication nonces and their principal
+	 * associations retained.
+	 */
+	public static final String NONCE_STORE_SIZE_INIT_PARAMETER = "nonceStoreSize";
+
+	/**
+	 * The init parameter, {@value #STATELESS_NONCES_INIT_PARAMETER}, used to specify whether digest authentication nonces are signed and verified without being
+	 * stored; should be "true" or "false".
+	 */
+	public static final String STATELESS_NONCES_INIT_PARAMETER = "statelessNonces";
+
+	/** The init parameter, {@value #NONCE_SECRET_INIT_PARAMETER}, used to specify the secret used as the nonce private key. */
+	public static final String NONCE_SECRET_INIT_PARAMETER = "nonceSecret";
+
+	/**
+	 * The init parameter, {@value #NONCE_REPLAY_CACHE_INIT_PARAMETER}, used to specify whether the nonce counts of stateless nonces are remembered to detect
+	 * replayed requests; should be "true" or "false".
+	 */
+	public static final String NONCE_REPLAY_CACHE_INIT_PARAMETER = "nonceReplayCache";
+
+	/**
+	 * The init parameter, {@value #CREDENTIAL_CACHE_MAX_AGE_INIT_PARAMETER}, used to specify the number of milliseconds principals and their digest credentials
+	 * are cached.
+	 */
+	public static final String CREDENTIAL_CACHE_MAX_AGE_INIT_PARAMETER = "credentialCacheMaxAge";
+
+	/**
+	 * The init parameter, {@value #CREDENTIAL_CACHE_NEGATIVE_MAX_AGE_INIT_PARAMETER}, used to specify the number of milliseconds the absence of a principal or its
+	 * credentials is cached.
+	 */
+	public static final String CREDENTIAL_CACHE_NEGATIVE_MAX_AGE_INIT_PARAMETER = "credentialCacheNegativeMaxAge";
+
+	/** The default number of milliseconds the absence of a principal or its credentials is cached. */
+	public static final long DEFAULT_CREDENTIAL_CACHE_NEGATIVE_MAX_AGE = 5 * 1000;
+
+	/** The init parameter, {@value #AUTHORIZATION_CACHE_MAX_AGE_INIT_PARAMETER}, used to specify the number of milliseconds authorization decisions are cached. */
+	public static final String AUTHORIZATION_CACHE_MAX_AGE_INIT_PARAMETER = "authorizationCacheMaxAge";
+
+	/**
+	 * The init parameter, {@value #SESSION_TOKEN_INIT_PARAMETER}, used to specify whether a signed session token is issued after successful digest
+	 * authentication; should be "true" or "false".
+	 */
+	public static final String SESSION_TOKEN_INIT_PARAMETER = "sessionToken";
+
+	/** The init parameter, {@value #SESSION_TOKEN_MAX_AGE_INIT_PARAMETER}, used to specify the number of milliseconds a session token is valid. */
+	public static final String SESSION_TOKEN_MAX_AGE_INIT_PARAMETER = "sessionTokenMaxAge";
+
+	/** The default number of milliseconds a session token is valid. */
+	public static final long DEFAULT_SESSION_TOKEN_MAX_AGE = 10 * 60 * 1000;
+
+	/** The init parameter, {@value #SESSION_TOKEN_SECRET_INIT_PARAMETER}, used to specify the secret with which session tokens are signed. */
+	public static final String SESSION_TOKEN_SECRET_INIT_PARAMETER = "sessionTokenSecret";
+
+	/** The init parameter, {@value #SESSION_TOKEN_EPOCH_INIT_PARAMETER}, used to specify the epoch covered by the signatures of session tokens. */
+	public static final String SESSION_TOKEN_EPOCH_INIT_PARAMETER = "sessionTokenEpoch";
+
+	/**
+	 * The init parameter, {@value #ACCESS_LOG_INIT_PARAMETER}, used to specify whether completed requests are recorded in an access log; should be "true" or
+	 * "false".
+	 */
+	public static final String ACCESS_LOG_INIT_PARAMETER = "accessLog";
+
+	/** The init parameter, {@value #ACCESS_LOG_SAMPLING_INIT_PARAMETER}, used to specify the number of successful requests for each one recorded. */
+	public static final String ACCESS_LOG_SAMPLING_INIT_PARAMETER = "accessLogSampling";
+
+	/** The init parameter, {@value #ACCESS_LOG_CAPACITY_INIT_PARAMETER}, used to specify the number of access log records that can wait to be written. */
+	public static final String ACCESS_LOG_CAPACITY_INIT_PARAMETER = "accessLogCapacity";
+
+	/**
+	 * The init parameter, {@value #METRICS_INIT_PARAMETER}, used to specify whether request metrics are kept and exported over JMX; should be "true" or
+	 * "false".
+	 */
+	public static final String METRICS_INIT_PARAMETER = "metrics";
+
+	/** The JMX domain in which request metrics are registered. */
+	public static final String METRICS_DOMAIN = "com.globalmentor.servlet";
+
+	/** The name of the cookie holding the session token. */
+	public static final String SESSION_TOKEN_COOKIE_NAME = "sessionToken";
+
+	/** The request attribute holding the verified session token, if the request was authenticated using a session token. */
+	public static final String SESSION_TOKEN_ATTRIBUTE = SessionTokenSigner.Token.class.getName();
+
+	/** The request attribute holding a newly issued session token to be sent to the client. */
+	private static final String ISSUED_SESSION_TOKEN_ATTRIBUTE = SessionTokenSigner.class.getName() + ".issued";
+
+	/** The <code>Content-Length</code> header. */
+	private static final String CONTENT_LENGTH_HEADER = "Content-Length";
+
+	/** The <code>Set-Cookie</code> header. */
+	private static final String SET_COOKIE_HEADER = "Set-Cookie";
+
+	/** The <code>SameSite</code> attribute of the session token cookie, keeping browsers from sending it with cross-site subrequests and posts. */
+	private static final String SESSION_TOKEN_COOKIE_SAME_SITE = "Lax";
+
+	/** The request attribute holding the outcome of checking whether the request was authorized, for the access log. */
+	private static final String AUTHORIZATION_OUTCOME_ATTRIBUTE = AccessLog.AuthorizationOutcome.class.getName();
+
+	/** The request attribute holding the principal whose authorization was checked, for the access log and for checking access to other resources. */
+	private static final String AUTHORIZATION_PRINCIPAL_ATTRIBUTE = AccessLog.AuthorizationOutcome.class.getName() + ".principal";
+
+	/** The maximum number of authorization decisions cached. */
+	private static final int AUTHORIZATION_CACHE_SIZE = 10000;
+
+	/** The maximum number of principals, and separately of digest credentials, cached. */
+	private static final int CREDENTIAL_CACHE_SIZE = 10000;
+
+	/** The maximum number of distinct paths for which requests are counted. */
+	private static final int MAX_RECORDED_PATH_COUNT = 10000;
+
+	/** The number of most requested paths recorded for warming up on the next startup. */
+	private static final int WARM_UP_RECORD_SIZE = 200;
+
 	/** The cached shared default log file, or <code>null</code> if it has not yet been initialized. */
 	private static File logFile = null;
 
@@ -118,6 +314,9 @@ protected boolean isProfiled() {
 	/** Whether debugging is enabled for this servlet. */
 	private boolean debug = false;
 
+	/** The number of successful <code>GET</code> requests, keyed to context-relative path, or <code>null</code> if requests are not being recorded. */
+	private ConcurrentMap<String, AtomicLong> requestCounts = null;
+
 	/** @return Whether debugging is enabled for this servlet. */
 	protected boolean isDebug() {
 		return debug;
@@ -148,11 +347,228 @@ public final void init(final ServletConfig servletConfig) throws ServletExceptio
 		} catch(final IllegalStateException illegalStateException) {
 			throw new ServletException(illegalStateException);
 		}
+		final Map<String, MethodHandler> methodHandlers = new LinkedHashMap<String, MethodHandler>();
+		registerMethodHandlers(methodHandlers); //now that the servlet is configured, determine which methods it handles
+		this.methodHandlers = Collections.unmodifiableMap(methodHandlers);
+		final Map<String, Integer> methodIndexes = new HashMap<String, Integer>();
+		for(final String method : methodHandlers.keySet()) {
+			methodIndexes.put(method, Integer.valueOf(methodIndexes.size()));
+		}
+		this.methodIndexes = Collections.unmodifiableMap(methodIndexes);
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, METRICS_INIT_PARAMETER))) { //if metrics should be kept
+			startMetrics(servletConfig);
+		}
+		warmUp(servletConfig); //now that the servlet is completely initialized, warm up its caches
+	}
+
+	/** The request metrics, or <code>null</code> if metrics are not kept. */
+	private HTTPMetrics metrics = null;
+
+	/** @return The request metrics, or <code>null</code> if metrics are not kept. */
+	protected HTTPMetrics getMetrics() {
+		return metrics;
+	}
+
+	/** The name under which the request metrics are registered with the platform MBean server, or <code>null</code> if they are not registered. */
+	private ObjectName metricsObjectName = null;
+
+	/**
+	 * Starts keeping request metrics and registers them with the platform MBean server. If the metrics cannot be registered, they are still kept.
+	 * @param servletConfig The servlet configuration.
+	 * @see #registerMetrics(HTTPMetrics)
+	 */
+	private void startMetrics(final ServletConfig servletConfig) {
+		final HTTPMetrics metrics = new HTTPMetrics(servletConfig.getServletName(), getMethodHandlers().keySet());
+		registerMetrics(metrics);
+		this.metrics = metrics;
+		try {
+			final ObjectName objectName = new ObjectName(METRICS_DOMAIN + ":type=" + HTTPMetrics.class.getSimpleName() + ",context="
+					+ ObjectName.quote(getServletContext().getContextPath()) + ",servlet=" + ObjectName.quote(servletConfig.getServletName()));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+			metricsObjectName = objectName;
+		} catch(final JMException jmException) {
+			getLogger().warn("Unable to register metrics of servlet {}.", servletConfig.getServletName(), jmException);
+		}
+	}
+
+	/** Unregisters the request metrics from the platform MBean server, if they were registered. */
+	private void stopMetrics() {
+		final ObjectName objectName = metricsObjectName;
+		if(objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch(final JMException jmException) {
+				getLogger().warn("Unable to unregister metrics {}.", objectName, jmException);
+			}
+			metricsObjectName = null;
+		}
+	}
+
+	/**
+	 * Adds measurements such as cache statistics to the request metrics. This method is called once after the servlet has been initialized, if metrics are kept.
+	 * Any subclass with caches of its own should call this version and then add its own measurements. This version adds the statistics of the nonce store, the
+	 * credential and authorization caches if enabled, and the access log if enabled.
+	 * @param metrics The request metrics to which measurements should be added.
+	 */
+	protected void registerMetrics(final HTTPMetrics metrics) {
+		final NonceStore nonceStore = getNonceStore();
+		metrics.addGauge("nonceStore.size", nonceStore::size);
+		metrics.addGauge("nonceStore.evictions", nonceStore::getEvictionCount);
+		metrics.addGauge("nonceStore.itemEvictions", nonceStore::getItemEvictionCount);
+		metrics.addGauge("nonceStore.refused", nonceStore::getRefusedCount);
+		if(principalCache != null) {
+			metrics.addCache("principalCache", principalCache);
+		}
+		if(ha1Cache != null) {
+			metrics.addCache("ha1Cache", ha1Cache);
+		}
+		if(authorizationCache != null) {
+			metrics.addCache("authorizationCache", authorizationCache);
+		}
+		final AccessLog accessLog = getAccessLog();
+		if(accessLog != null) {
+			metrics.addGauge("accessLog.written", accessLog::getWrittenCount);
+			metrics.addGauge("accessLog.dropped", accessLog::getDroppedCount);
+		}
+	}
+
+	/**
+	 * Warms up resources listed in the warm-up manifest and those recorded as most requested during the previous run, using a bounded number of threads. If
+	 * warming up is blocking, this method waits until all resources have been warmed up; otherwise warming up continues in the background.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if the warm-up manifest could not be read, or blocking warm-up was interrupted.
+	 * @see #warmUp(String)
+	 */
+	private void warmUp(final ServletConfig servletConfig) throws ServletException {
+		final Set<String> paths = new LinkedHashSet<String>();
+		final String manifestPath = servletConfig.getInitParameter(WARM_UP_MANIFEST_INIT_PARAMETER);
+		if(manifestPath != null) {
+			try (final InputStream inputStream = getServletContext().getResourceAsStream(manifestPath)) {
+				if(inputStream != null) {
+					readWarmUpPaths(inputStream, paths);
+				} else {
+					getLogger().warn("Warm-up manifest {} not found.", manifestPath);
+				}
+			} catch(final IOException ioException) {
+				throw new ServletException(ioException);
+			}
+		}
+		final File warmUpRecordFile = requestCounts != null ? getWarmUpRecordFile() : null;
+		if(warmUpRecordFile != null && warmUpRecordFile.isFile()) {
+			try (final InputStream inputStream = new FileInputStream(warmUpRecordFile)) {
+				readWarmUpPaths(inputStream, paths);
+			} catch(final IOException ioException) { //the record is only a hint
+				getLogger().warn("Unable to read warm-up record {}.", warmUpRecordFile, ioException);
+			}
+		}
+		if(paths.isEmpty()) {
+			return;
+		}
+		final Long parallelism = getLongInitParameter(servletConfig, WARM_UP_PARALLELISM_INIT_PARAMETER);
+		final ExecutorService executor = Executors.newFixedThreadPool(parallelism != null ? parallelism.intValue() : DEFAULT_WARM_UP_PARALLELISM, runnable -> {
+			final Thread thread = new Thread(runnable, getClass().getSimpleName() + "-warmup");
+			thread.setDaemon(true);
+			return thread;
+		});
+		final long startTime = System.currentTimeMillis();
+		final AtomicInteger warmedCount = new AtomicInteger(0);
+		final CompletableFuture<?>[] warmUps = paths.stream().map(path -> CompletableFuture.runAsync(() -> {
+			try {
+				warmUp(path);
+				warmedCount.incrementAndGet();
+			} catch(final IOException | RuntimeException exception) { //a resource that can't be warmed up will simply be loaded on demand
+				getLogger().debug("Unable to warm up {}.", path, exception);
+			}
+		}, executor)).toArray(CompletableFuture<?>[]::new);
+		executor.shutdown(); //the threads will end when all resources are warmed up
+		final CompletableFuture<Void> warmUp = CompletableFuture.allOf(warmUps).thenRun(() -> getLogger().info("Warmed up {} of {} resources for servlet {} in {}ms.",
+				warmedCount.get(), paths.size(), servletConfig.getServletName(), System.currentTimeMillis() - startTime));
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, WARM_UP_BLOCKING_INIT_PARAMETER))) { //if the servlet shouldn't be ready until warmed up
+			try {
+				warmUp.get();
+			} catch(final InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+				throw new ServletException(interruptedException);
+			} catch(final ExecutionException executionException) {
+				throw new ServletException(executionException.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Reads the paths listed in a warm-up manifest, one per line. Blank lines and lines beginning with <code>#</code> are ignored.
+	 * @param inputStream The input stream from which to read the manifest.
+	 * @param paths The set to which to add the paths read.
+	 * @throws IOException if there is an error reading the manifest.
+	 */
+	private static void readWarmUpPaths(final InputStream inputStream, final Set<String> paths) throws IOException {
+		final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+		String line;
+		while((line = reader.readLine()) != null) {
+			line = line.trim();
+			if(!line.isEmpty() && line.charAt(0) != '#') {
+				paths.add(line);
+			}
+		}
+	}
+
+	/**
+	 * Warms up a resource on startup, so that the first request for it is as fast as later requests; for example by loading it into caches. This version does
+	 * nothing.
+	 * @param path The context-relative absolute path of the resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected void warmUp(final String path) throws IOException {
+	}
+
+	/** @return The file in which the most requested paths are recorded, or <code>null</code> if there is no data directory. */
+	private File getWarmUpRecordFile() {
+		final File dataDirectory = getDataDirectory(getServletContext());
+		return dataDirectory != null ? new File(dataDirectory, "warmup-" + getServletConfig().getServletName() + ".txt") : null;
+	}
+
+	/**
+	 * Records a successful request for use in warming up the next time the servlet starts, if requests are being recorded. Requests that resulted in an error
+	 * status without throwing an exception, such as a routine 404 Not Found, are not recorded.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 */
+	private void recordRequest(final HttpServletRequest request, final HttpServletResponse response) {
+		final ConcurrentMap<String, AtomicLong> requestCounts = this.requestCounts;
+		if(requestCounts != null && GET_METHOD.equals(request.getMethod()) && response.getStatus() < SC_BAD_REQUEST) {
+			final String pathInfo = request.getPathInfo();
+			final String path = pathInfo != null ? request.getServletPath() + pathInfo : request.getServletPath();
+			AtomicLong requestCount = requestCounts.get(path);
+			if(requestCount == null && requestCounts.size() < MAX_RECORDED_PATH_COUNT) { //don't let a crawler fill memory with rarely requested paths
+				requestCount = requestCounts.computeIfAbsent(path, __ -> new AtomicLong(0));
+			}
+			if(requestCount != null) {
+				requestCount.incrementAndGet();
+			}
+		}
+	}
+
+	/** Stores the most requested paths so that they can be warmed up on the next startup. */
+	private void storeWarmUpRecord() {
+		final File warmUpRecordFile = getWarmUpRecordFile();
+		if(warmUpRecordFile == null) {
+			return;
+		}
+		final StringBuilder record = new StringBuilder("#most requested paths of servlet ").append(getServletConfig().getServletName()).append('\n');
+		requestCounts.entrySet().stream().sorted((entry1, entry2) -> Long.compare(entry2.getValue().get(), entry1.getValue().get())).limit(WARM_UP_RECORD_SIZE)
+				.forEach(entry -> record.append(entry.getKey()).append('\n'));
+		try (final Writer writer = new OutputStreamWriter(new FileOutputStream(warmUpRecordFile), UTF_8)) {
+			writer.write(record.toString());
+		} catch(final IOException ioException) {
+			getLogger().warn("Unable to store warm-up record {}.", warmUpRecordFile, ioException);
+		}
 	}
 
 	/**
 	 * Initializes the servlet. Child classes should call this version. This version ensures the log directory exists. This version configures logging. This
-	 * version configures HTTP logging.
+	 * version configures HTTP logging. This version starts recording requests for warming up, if requested. Warming up itself occurs after initialization. This
+	 * version creates the nonce store and, if stateless nonces are requested, the nonce signer. This version creates the credential and authorization caches, if
+	 * requested. This version creates the session token signer, if requested. This version starts the access log, if requested.
 	 * @param servletConfig The servlet configuration.
 	 * @throws ServletException if there is a problem initializing.
 	 */
@@ -183,13 +599,72 @@ public void initialize(final ServletConfig servletConfig) throws ServletExceptio
 		}
 		//configure profiling
 		this.profiled = Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, PROFILE_INIT_PARAMETER)); //get the profile setting from the init parameters
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, WARM_UP_RECORD_INIT_PARAMETER))) { //if we should record the paths to warm up next time
+			requestCounts = new ConcurrentHashMap<String, AtomicLong>();
+		}
+		final Long nonceStoreSize = getLongInitParameter(servletConfig, NONCE_STORE_SIZE_INIT_PARAMETER);
+		nonceStore = new NonceStore(NONCE_EXPIRATION_DURATION, NonceStore.DEFAULT_GENERATION_COUNT,
+				nonceStoreSize != null ? nonceStoreSize.intValue() : NonceStore.DEFAULT_MAX_SIZE);
+		final String nonceSecret = getStringInitParameter(servletConfig, NONCE_SECRET_INIT_PARAMETER);
+		if(nonceSecret != null) {
+			noncePrivateKey = nonceSecret;
+		}
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, STATELESS_NONCES_INIT_PARAMETER))) { //if nonces should be verified rather than stored
+			if(nonceSecret == null) {
+				getLogger().info("No nonce secret configured for servlet {}; stateless nonces will only be valid on this server until restarted.",
+						servletConfig.getServletName());
+			}
+			nonceSigner = new NonceSigner(getNoncePrivateKey());
+			nonceReplayCached = !Boolean.FALSE.equals(getBooleanInitParameter(servletConfig, NONCE_REPLAY_CACHE_INIT_PARAMETER));
+			if(!nonceReplayCached) {
+				getLogger().warn("Nonce replay cache disabled for servlet {}; replayed requests will be accepted until their nonces expire.",
+						servletConfig.getServletName());
+			}
+		}
+		final Long credentialCacheMaxAge = getLongInitParameter(servletConfig, CREDENTIAL_CACHE_MAX_AGE_INIT_PARAMETER);
+		if(credentialCacheMaxAge != null && credentialCacheMaxAge.longValue() > 0) { //if credentials should be cached
+			this.credentialCacheMaxAge = credentialCacheMaxAge.longValue();
+			final Long credentialCacheNegativeMaxAge = getLongInitParameter(servletConfig, CREDENTIAL_CACHE_NEGATIVE_MAX_AGE_INIT_PARAMETER);
+			this.credentialCacheNegativeMaxAge = credentialCacheNegativeMaxAge != null ? credentialCacheNegativeMaxAge.longValue()
+					: Math.min(DEFAULT_CREDENTIAL_CACHE_NEGATIVE_MAX_AGE, this.credentialCacheMaxAge);
+			principalCache = new TimedCache<String, Optional<Principal>>(CREDENTIAL_CACHE_SIZE);
+			ha1Cache = new TimedCache<String, Optional<String>>(CREDENTIAL_CACHE_SIZE);
+		}
+		final Long authorizationCacheMaxAge = getLongInitParameter(servletConfig, AUTHORIZATION_CACHE_MAX_AGE_INIT_PARAMETER);
+		if(authorizationCacheMaxAge != null && authorizationCacheMaxAge.longValue() > 0) { //if authorization decisions should be cached
+			this.authorizationCacheMaxAge = authorizationCacheMaxAge.longValue();
+			authorizationCache = new TimedCache<String, Boolean>(AUTHORIZATION_CACHE_SIZE);
+		}
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, SESSION_TOKEN_INIT_PARAMETER))) { //if session tokens should be issued
+			String sessionTokenSecret = getStringInitParameter(servletConfig, SESSION_TOKEN_SECRET_INIT_PARAMETER);
+			if(sessionTokenSecret == null) { //never sign with a predictable key
+				getLogger().info("No session token secret configured for servlet {}; session tokens will only be valid on this server until restarted.",
+						servletConfig.getServletName());
+				sessionTokenSecret = SessionTokenSigner.generatePrivateKey();
+			}
+			final Long sessionTokenEpoch = getLongInitParameter(servletConfig, SESSION_TOKEN_EPOCH_INIT_PARAMETER);
+			sessionTokenSigner = new SessionTokenSigner(sessionTokenSecret, sessionTokenEpoch != null ? sessionTokenEpoch.longValue() : 0);
+			final Long sessionTokenMaxAge = getLongInitParameter(servletConfig, SESSION_TOKEN_MAX_AGE_INIT_PARAMETER);
+			this.sessionTokenMaxAge = sessionTokenMaxAge != null ? sessionTokenMaxAge.longValue() : DEFAULT_SESSION_TOKEN_MAX_AGE;
+		}
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, ACCESS_LOG_INIT_PARAMETER))) { //if requests should be logged
+			final File logDirectory = getLogDirectory(getServletContext());
+			if(logDirectory != null) {
+				final Long accessLogCapacity = getLongInitParameter(servletConfig, ACCESS_LOG_CAPACITY_INIT_PARAMETER);
+				final Long accessLogSampling = getLongInitParameter(servletConfig, ACCESS_LOG_SAMPLING_INIT_PARAMETER);
+				accessLog = new AccessLog(logDirectory, servletConfig.getServletName(),
+						accessLogCapacity != null ? accessLogCapacity.intValue() : AccessLog.DEFAULT_CAPACITY, accessLogSampling != null ? accessLogSampling.intValue() : 1);
+			} else {
+				getLogger().warn("No log directory is available for the access log of servlet {}.", servletConfig.getServletName());
+			}
+		}
 		getLogger().info("Initializing servlet {}.", servletConfig.getServletName());
 		if(isProfiled()) { //if we are being profiled, configure the stack probe
 			Profiler.setStackProbeOperation(StackProbeOperation.forServer()); //configure the stack probe for use on a server
 		}
 	}
 
-	/** Destroys the servlet. */
+	/** Destroys the servlet. This version writes any access log records still waiting to be written. This version unregisters the request metrics. */
 	public void destroy() {
 		if(isProfiled()) { //if we are profiling the servlet, print out stack probe counts
 			try {
@@ -199,6 +674,19 @@ public void destroy() {
 			}
 		}
 		getLogger().info("Destroying servlet {}.", getServletConfig().getServletName());
+		if(requestCounts != null) {
+			storeWarmUpRecord();
+		}
+		stopMetrics();
+		final AccessLog accessLog = this.accessLog;
+		if(accessLog != null) {
+			try {
+				accessLog.close();
+			} catch(final InterruptedException interruptedException) {
+				Thread.currentThread().interrupt();
+			}
+			getLogger().debug("Access log for servlet {}: {}.", getServletConfig().getServletName(), accessLog);
+		}
 		/*TODO destroy the log configuration if needed
 		if(logConfiguration != null) { //if we initialized a log configuration
 			logConfiguration.dispose(); //dispose of the log configuration
@@ -207,36 +695,79 @@ public void destroy() {
 		super.destroy();
 	}
 
-	/** A thread-safe map of nonces, keyed to nonce ID strings. */
-	private final Map<String, Nonce> nonceMap = new ConcurrentHashMap<String, Nonce>();
+	/** The log of completed requests, or <code>null</code> if requests are not logged. */
+	private AccessLog accessLog = null;
+
+	/** @return The log of completed requests, or <code>null</code> if requests are not logged. */
+	protected AccessLog getAccessLog() {
+		return accessLog;
+	}
 
 	/**
-	 * Stores a nonce for later retrieval.
+	 * The bounded store of nonces and the principals associated with them, or <code>null</code> if the servlet has not yet been initialized. Nonces expire in
+	 * generations of {@link #NONCE_EXPIRATION_DURATION}.
+	 */
+	private NonceStore nonceStore = null;
+
+	/** @return The bounded store of nonces and the principals associated with them. */
+	protected NonceStore getNonceStore() {
+		return nonceStore;
+	}
+
+	/** The signer of stateless nonces, or <code>null</code> if nonces are stored. */
+	private NonceSigner nonceSigner = null;
+
+	/** @return The signer of stateless nonces, or <code>null</code> if nonces are stored. */
+	protected NonceSigner getNonceSigner() {
+		return nonceSigner;
+	}
+
+	/** Whether the nonce counts used with stateless nonces are remembered to detect replays. */
+	private boolean nonceReplayCached = true;
+
+	/**
+	 * Stores a nonce for later retrieval. If the nonce store is full, the nonce is not stored and the client will be challenged again. Stateless nonces are
+	 * never stored.
 	 * @param nonceID The ID of the nonce; usually a hash of the nonce information.
 	 * @param nonce The nonce to store, keyed to its ID.
 	 */
 	protected void storeNonce(final String nonceID, final Nonce nonce) {
-		nonceMap.put(nonceID, nonce); //store the nonce in the map
+		if(nonce instanceof NonceSigner.SignedNonce) { //signed nonces are verified rather than looked up
+			return;
+		}
+		if(!getNonceStore().put(nonceID, nonce)) { //store the nonce in the nonce store
+			getLogger().warn("Nonce store full; {}.", getNonceStore());
+		}
 	}
 
 	/**
-	 * Retrieves a nonce by its ID. This implementation takes the time to clear old nonces.
+	 * Retrieves a nonce by its ID. Old nonces are discarded by the nonce store as they expire. If stateless nonces are used, the ID is the signed nonce itself,
+	 * which is verified without any lookup.
 	 * @param nonceID The ID of the nonce to retrieve.
 	 * @return The nonce with the given ID, or <code>null</code> if there is no matching nonce.
 	 */
 	protected Nonce getNonce(final String nonceID) {
-		final Nonce nonce = nonceMap.get(nonceID); //get the nonce with the given ID
-		final long currentTimeMillis = System.currentTimeMillis(); //get the current time
-		for(final Map.Entry<String, Nonce> nonceEntry : nonceMap.entrySet()) { //for each nonce entry in the map TODO remove old nonces some other way, perhaps in a separate thread
-			if(currentTimeMillis - nonceEntry.getValue().getTime().getTime() >= 60 * 60 * 1000) { //if the nonce has been around for an hour
-				nonceMap.remove(nonceEntry.getKey()); //remove this ultra-stale nonce
-			}
+		final NonceSigner nonceSigner = getNonceSigner();
+		if(nonceSigner != null) {
+			return nonceSigner.verify(nonceID); //verify the signature of the nonce
 		}
-		return nonce; //return the nonce with the given ID
+		return getNonceStore().get(nonceID); //get the nonce with the given ID
 	}
 
-	/** The thread-safe map of principal IDs weakly keyed to nonces. */
-	private final Map<Nonce, String> noncePrincipalIDMap = synchronizedMap(new WeakHashMap<Nonce, String>());
+	/**
+	 * Records the use of a nonce with a nonce count, to detect replayed requests. Stateless nonces are remembered for this purpose only on first use, and only if
+	 * the replay cache is enabled.
+	 * @param nonceID The ID of the nonce.
+	 * @param nonce The nonce.
+	 * @param nonceCount The nonce count sent by the client.
+	 * @return <code>true</code> if the nonce count has not been used before with the nonce.
+	 */
+	protected boolean updateNonceCount(final String nonceID, final Nonce nonce, final long nonceCount) {
+		if(nonce instanceof NonceSigner.SignedNonce) {
+			return !nonceReplayCached || getNonceStore().updateNonceCount(nonceID, nonce, nonceCount);
+		}
+		return getNonceStore().updateNonceCount(nonceID, nonceCount);
+	}
 
 	/**
 	 * Associates a principal with a nonce.
@@ -244,7 +775,7 @@ protected Nonce getNonce(final String nonceID) {
 	 * @param principalID The ID of the principal to associate with the nonce.
 	 */
 	protected void setNoncePrincipalID(final Nonce nonce, final String principalID) {
-		noncePrincipalIDMap.put(nonce, principalID); //associate the principal with the nonce
+		getNonceStore().setPrincipalID(nonce, principalID); //associate the principal with the nonce
 	}
 
 	/**
@@ -253,7 +784,7 @@ protected void setNoncePrincipalID(final Nonce nonce, final String principalID)
 	 * @return The ID of the principal associated with the given nonce, or <code>null</code> if there is no principal associated with the given nonce.
 	 */
 	protected String getNoncePrincipalID(final Nonce nonce) {
-		return noncePrincipalIDMap.get(nonce); //return the ID of the principal associated with this nonce, if there is one
+		return getNonceStore().getPrincipalID(nonce); //return the ID of the principal associated with this nonce, if there is one
 	}
 
 	/** Whether this servlet has been initialized from an incoming request. */
@@ -322,15 +853,16 @@ public void initialize(final HttpServletRequest request) throws ServletException
 
 	/**
 	 * Services an HTTP request. This version checks authorization for all requests. This version provides support for special exceptions. Adding support for new
-	 * HTTP methods must be done via the <code>doMethod()</code> method.
+	 * HTTP methods must be done via the <code>doMethod()</code> method. If metrics or the access log are enabled, the response is wrapped so that the content
+	 * bytes actually sent can be counted.
 	 * @param request The HTTP request.
-	 * @param response The HTTP response.
+	 * @param servletResponse The HTTP response.
 	 * @throws ServletException if there is a problem servicing the request.
 	 * @throws IOException if there is an error reading or writing data.
 	 * @see #checkAuthorization(HttpServletRequest)
 	 * @see #doMethod(String, HttpServletRequest, HttpServletResponse)
 	 */
-	protected final void service(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+	protected final void service(final HttpServletRequest request, final HttpServletResponse servletResponse) throws ServletException, IOException {
 		/*TODO del
 		getLogger().trace("servicing method {}", request.getMethod());
 		getLogger().trace("servlet path: {}", request.getServletPath());
@@ -338,8 +870,11 @@ protected final void service(final HttpServletRequest request, final HttpServlet
 		getLogger().trace("request URL: {}", request.getRequestURL());
 		getLogger().trace("path info: {}", request.getPathInfo());
 		*/
-		getLogger().info("({}) {} {} {} {}", request.getRemoteAddr(), request.getMethod(), request.getRequestURL(), request.getQueryString(),
-				request.getContentType()); //log the request
+		final long startTime = System.nanoTime();
+		if(getLogger().isDebugEnabled()) { //completed requests are recorded in the access log, if enabled
+			getLogger().debug("({}) {} {} {} {}", request.getRemoteAddr(), request.getMethod(), request.getRequestURL(), request.getQueryString(),
+					request.getContentType()); //log the request
+		}
 		if(!isInitializedFromRequest) { //if we haven't initialized from a request, yet TODO fix race condition here
 			initialize(request); //initialize from this request
 			isInitializedFromRequest = true; //show that we have initialized from a request
@@ -356,15 +891,28 @@ protected final void service(final HttpServletRequest request, final HttpServlet
 		if(isProfiled()) { //if we are being profiled, make sure a stack probe is started
 			Profiler.startStackProbe();
 		}
+		final HTTPMetrics metrics = this.metrics;
+		if(metrics != null) {
+			metrics.requestStarted(request.getContentLengthLong());
+		}
+		final ByteCountingResponse byteCountingResponse = metrics != null || accessLog != null ? new ByteCountingResponse(servletResponse) : null;
+		final HttpServletResponse response = byteCountingResponse != null ? byteCountingResponse : servletResponse;
+		boolean failed = false; //whether an exception is being left to the container
 		try {
 			if(!OPTIONS_METHOD.equals(request.getMethod())) { //TODO testing
 				checkAuthorization(request); //check to see if the request is authorized
+				final String issuedSessionToken = (String)request.getAttribute(ISSUED_SESSION_TOKEN_ATTRIBUTE);
+				if(issuedSessionToken != null) { //if authentication resulted in a new session token, send it to the client
+					addSessionTokenCookie(request, response, issuedSessionToken);
+				}
 			}
 			doMethod(request.getMethod(), request, response); //allow the subclass to do special processing if needed
+			recordRequest(request, response);
 		} catch(final OutOfMemoryError outOfMemoryError) { //if there was an out-of-memory error, log the info before rethrowing the error
 			final Runtime runtime = Runtime.getRuntime(); //get the runtime instance
 			getLogger().warn("Out of memory. memory max: {}, total: {}, free: {}, used: {}", runtime.maxMemory(), runtime.totalMemory(), runtime.freeMemory(),
 					runtime.totalMemory() - runtime.freeMemory(), outOfMemoryError);
+			failed = true;
 			throw outOfMemoryError; //rethrow the error
 		} catch(final AssertionError assertionError) { //if there was an assertion error, that's a serious internal server error
 			getLogger().warn("Assertion error.", assertionError); //log the problem
@@ -385,19 +933,15 @@ protected final void service(final HttpServletRequest request, final HttpServlet
 			getLogger().warn("Unsupported operation.", unsupportedOperationException); //log the problem
 			response.sendError(SC_NOT_IMPLEMENTED, unsupportedOperationException.getMessage()); //send back a 401 Not Implemented error
 		} catch(final HTTPMovedPermanentlyException movedPermanentlyException) { //if a permanent redirect was requested (301)
-			final URI locationURI = movedPermanentlyException.getLocation(); //get the redirect location
-			if(locationURI != null) { //if a location was given
-				setLocation(response, locationURI); //set the redirect location
-			}
-			response.sendError(movedPermanentlyException.getStatusCode()); //send back the redirect status code as an error
+			sendRedirect(request, response, movedPermanentlyException.getStatusCode(), movedPermanentlyException.getLocation());
 		} catch(final HTTPMovedTemporarilyException movedTemporarilyException) { //if a temporary redirect was requested (302)
-			final URI locationURI = movedTemporarilyException.getLocation(); //get the redirect location
-			if(locationURI != null) { //if a location was given
-				setLocation(response, locationURI); //set the redirect location
-			}
-			response.sendError(movedTemporarilyException.getStatusCode()); //send back the redirect status code as an error
+			sendRedirect(request, response, movedTemporarilyException.getStatusCode(), movedTemporarilyException.getLocation());
 		} catch(final HTTPRedirectException redirectException) { //if a general redirect was requested (3xx)
-			response.sendError(redirectException.getStatusCode()); //send back the redirect status code as an error
+			if(redirectException.getStatusCode() == HttpServletResponse.SC_NOT_MODIFIED) { //304 Not Modified has no body
+				sendNotModified(response);
+			} else {
+				sendStatus(request, response, redirectException.getStatusCode());
+			}
 		} catch(final HTTPUnauthorizedException unauthorizedException) { //401 Unauthorized
 			//TODO testing
 			response.setHeader(DAV_HEADER, "1,2"); //we support WebDAV levels 1 and 2
@@ -405,7 +949,7 @@ protected final void service(final HttpServletRequest request, final HttpServlet
 			setWWWAuthenticate(response, unauthorizedException.getAuthenticateChallenge());
 			response.sendError(unauthorizedException.getStatusCode()); //send back the status code as an error
 		} catch(final HTTPNotFoundException httpNotFoundException) { //404 Not Found
-			response.sendError(httpNotFoundException.getStatusCode(), httpNotFoundException.getMessage()); //send back the status code as an error, but don't bother logging the error
+			sendStatus(request, response, httpNotFoundException.getStatusCode()); //send back the status code, but don't bother logging the error
 		} catch(final HTTPMethodNotAllowedException methodNotAllowedException) { //405 Method Not Allowed
 			getLogger().warn("HTTP method not allowed.", methodNotAllowedException); //log the problem
 			setAllow(response, methodNotAllowedException.getAllowedMethods()); //report the allowed methods
@@ -415,6 +959,7 @@ protected final void service(final HttpServletRequest request, final HttpServlet
 			response.sendError(httpException.getStatusCode(), httpException.getMessage()); //send back the status code as an error
 		} catch(final IOException ioException) { //if there is some other I/O error
 			getLogger().error("I/O error.", ioException); //log the problem
+			failed = true;
 			throw ioException; //rethrow the exception to let the container handle it
 		} catch(final MissingResourceException missingResourceException) { //if there is a resource missing, the server isn't property configured
 			getLogger().warn("Missing resource", missingResourceException); //log the problem
@@ -422,28 +967,194 @@ protected final void service(final HttpServletRequest request, final HttpServlet
 			response.sendError(SC_INTERNAL_SERVER_ERROR, missingResourceException.getMessage()); //send back a 500 Internal Server Error			
 		} catch(final RuntimeException runtimeException) { //if there are any other runtime exceptions
 			getLogger().error("Runtime exception.", runtimeException); //log the error
+			failed = true;
 			throw runtimeException; //let the container take care of the error
 		} catch(final Error error) { //if there are any other errors
 			getLogger().error("Error.", error); //log the error
+			failed = true;
 			throw error; //let the container take care of the error
 		} finally {
 			if(isProfiled()) { //if we are being profiled, make sure we stop the stack probe (if no other stack probes are running)
 				Profiler.stopStackProbe();
 			}
+			final int status = failed ? SC_INTERNAL_SERVER_ERROR : response.getStatus();
+			final long duration = System.nanoTime() - startTime;
+			final long byteCount = byteCountingResponse != null ? byteCountingResponse.getByteCount() : -1;
+			if(metrics != null) {
+				metrics.requestCompleted(request.getMethod(), status, duration, byteCount);
+			}
+			final AccessLog accessLog = this.accessLog;
+			if(accessLog != null) { //record the completed request; this never blocks
+				final Principal principal = (Principal)request.getAttribute(AUTHORIZATION_PRINCIPAL_ATTRIBUTE);
+				final AccessLog.AuthorizationOutcome authorizationOutcome = (AccessLog.AuthorizationOutcome)request.getAttribute(AUTHORIZATION_OUTCOME_ATTRIBUTE);
+				accessLog.log(request, status, duration, byteCount, principal != null ? principal.getName() : null,
+						authorizationOutcome != null ? authorizationOutcome : AccessLog.AuthorizationOutcome.NONE);
+			}
+		}
+	}
+
+	/** The content type of the bodies sent with routine responses. */
+	private static final String STATUS_BODY_CONTENT_TYPE = "text/plain; charset=UTF-8";
+
+	/** The small bodies sent with routine responses, keyed to status code, so that the container's error page handling is not needed. */
+	private static final Map<Integer, byte[]> STATUS_BODIES;
+
+	static {
+		final Map<Integer, byte[]> statusBodies = new HashMap<Integer, byte[]>();
+		statusBodies.put(Integer.valueOf(HttpServletResponse.SC_MOVED_PERMANENTLY), "301 Moved Permanently\n".getBytes(UTF_8));
+		statusBodies.put(Integer.valueOf(HttpServletResponse.SC_FOUND), "302 Found\n".getBytes(UTF_8));
+		statusBodies.put(Integer.valueOf(HttpServletResponse.SC_SEE_OTHER), "303 See Other\n".getBytes(UTF_8));
+		statusBodies.put(Integer.valueOf(HttpServletResponse.SC_TEMPORARY_REDIRECT), "307 Temporary Redirect\n".getBytes(UTF_8));
+		statusBodies.put(Integer.valueOf(HttpServletResponse.SC_NOT_FOUND), "404 Not Found\n".getBytes(UTF_8));
+		statusBodies.put(Integer.valueOf(HttpServletResponse.SC_GONE), "410 Gone\n".getBytes(UTF_8));
+		STATUS_BODIES = Collections.unmodifiableMap(statusBodies);
+	}
+
+	/**
+	 * Sends a 304 Not Modified response. This is equivalent to throwing {@link HTTPNotModifiedException}, but as one of the most common responses it avoids
+	 * creating an exception and filling in its stack trace. The caller should return without sending content.
+	 * @param response The HTTP response.
+	 */
+	protected static void sendNotModified(final HttpServletResponse response) {
+		response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+	}
+
+	/**
+	 * Sends a 404 Not Found response with a small precomputed body. This is equivalent to throwing {@link HTTPNotFoundException}, but avoids creating an
+	 * exception and going through the container's error page handling. The caller should return without sending content.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws IOException if there is an error writing the body.
+	 * @see #sendStatus(HttpServletRequest, HttpServletResponse, int)
+	 */
+	protected static void sendNotFound(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+		sendStatus(request, response, HttpServletResponse.SC_NOT_FOUND);
+	}
+
+	/**
+	 * Sends a redirect response with a small precomputed body. This is equivalent to throwing {@link HTTPRedirectException}, but avoids creating an exception
+	 * and going through the container's error page handling. The caller should return without sending content.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @param statusCode The redirect status code, such as 301 Moved Permanently.
+	 * @param locationURI The location to which to redirect, or <code>null</code> if no location should be indicated.
+	 * @throws IOException if there is an error writing the body.
+	 * @see #sendStatus(HttpServletRequest, HttpServletResponse, int)
+	 */
+	protected static void sendRedirect(final HttpServletRequest request, final HttpServletResponse response, final int statusCode, final URI locationURI)
+			throws IOException {
+		if(locationURI != null) { //if a location was given
+			setLocation(response, locationURI); //set the redirect location
+		}
+		sendStatus(request, response, statusCode);
+	}
+
+	/**
+	 * Sends a response with the given status code. For routine status codes such as 404 Not Found and the redirects, a small precomputed body is written
+	 * directly, without going through the container's error page handling; any content already buffered is discarded, as {@link HttpServletResponse#sendError(int)}
+	 * would do. For other status codes, or if the response body is already being written as characters, this method delegates to
+	 * {@link HttpServletResponse#sendError(int)}. No body is written in response to a HEAD request.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @param statusCode The status code to send.
+	 * @throws IllegalStateException if the response has already been committed.
+	 * @throws IOException if there is an error writing the body.
+	 */
+	protected static void sendStatus(final HttpServletRequest request, final HttpServletResponse response, final int statusCode) throws IOException {
+		final byte[] body = STATUS_BODIES.get(Integer.valueOf(statusCode));
+		if(body == null) { //if this status has no precomputed body, let the container provide one
+			response.sendError(statusCode);
+			return;
+		}
+		response.resetBuffer(); //discard any content already buffered
+		final OutputStream outputStream;
+		try {
+			outputStream = response.getOutputStream();
+		} catch(final IllegalStateException illegalStateException) { //if a writer has already been retrieved, we can't write bytes
+			response.sendError(statusCode);
+			return;
+		}
+		response.setStatus(statusCode);
+		response.setContentType(STATUS_BODY_CONTENT_TYPE);
+		response.setContentLength(body.length);
+		if(!HEAD_METHOD.equals(request.getMethod())) { //a HEAD response has no body
+			outputStream.write(body);
 		}
 	}
 
+	/** The handlers of the HTTP methods serviced directly, keyed to method token. */
+	private Map<String, MethodHandler> methodHandlers = Collections.emptyMap();
+
+	/** @return The read-only map of handlers of the HTTP methods serviced directly, keyed to method token. */
+	protected Map<String, MethodHandler> getMethodHandlers() {
+		return methodHandlers;
+	}
+
+	/** The index of each method token in the order the method handlers were registered, allowing sets of methods to be represented as bits. */
+	private Map<String, Integer> methodIndexes = Collections.emptyMap();
+
+	/**
+	 * Determines the index of an HTTP method, in the order the method handlers were registered. The indexes are stable for the life of the servlet, so that a set
+	 * of methods may be represented as bits.
+	 * @param method The HTTP method token.
+	 * @return The index of the method, or -1 if no handler is registered for the method.
+	 */
+	protected int getMethodIndex(final String method) {
+		final Integer methodIndex = methodIndexes.get(method);
+		return methodIndex != null ? methodIndex.intValue() : -1;
+	}
+
+	/**
+	 * Registers the handlers of the HTTP methods this servlet services directly. This method is called once after the servlet has been initialized, and the
+	 * resulting table is used for dispatching every request. Any subclass servicing additional methods should call this version and then add its own handlers.
+	 * This version registers the standard HTTP methods GET, HEAD, POST, PUT, DELETE, and OPTIONS; other methods are left to the default servicing.
+	 * @param methodHandlers The map in which to register method handlers, keyed to method token.
+	 * @see #doMethod(String, HttpServletRequest, HttpServletResponse)
+	 */
+	protected void registerMethodHandlers(final Map<String, MethodHandler> methodHandlers) {
+		methodHandlers.put(GET_METHOD, this::doGet);
+		methodHandlers.put(HEAD_METHOD, this::doHead);
+		methodHandlers.put(POST_METHOD, this::doPost);
+		methodHandlers.put(PUT_METHOD, this::doPut);
+		methodHandlers.put(DELETE_METHOD, this::doDelete);
+		methodHandlers.put(OPTIONS_METHOD, this::doOptions);
+	}
+
 	/**
 	 * Services an HTTP request based upon its method. Any subclass overriding this method must call the superclass version for normal handling of the standard
-	 * HTTP methods.
+	 * HTTP methods. This version looks up the handler registered for the method, and leaves methods without a handler, such as TRACE and unknown methods, to the
+	 * default servicing.
 	 * @param method The HTTP method being serviced.
 	 * @param request The HTTP request.
 	 * @param response The HTTP response.
 	 * @throws ServletException if there is a problem servicing the request.
 	 * @throws IOException if there is an error reading or writing data.
+	 * @see #registerMethodHandlers(Map)
 	 */
 	protected void doMethod(final String method, final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
-		super.service(request, response); //do the default servicing of this method
+		final MethodHandler methodHandler = methodHandlers.get(method);
+		if(methodHandler != null) {
+			methodHandler.handle(request, response);
+		} else {
+			super.service(request, response); //do the default servicing of this method
+		}
+	}
+
+	/**
+	 * Services requests for an HTTP method.
+	 * @author Garret Wilson
+	 */
+	@FunctionalInterface
+	protected interface MethodHandler {
+
+		/**
+		 * Services a request.
+		 * @param request The HTTP request.
+		 * @param response The HTTP response.
+		 * @throws ServletException if there is a problem servicing the request.
+		 * @throws IOException if there is an error reading or writing data.
+		 */
+		public void handle(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException;
 	}
 
 	/**
@@ -463,15 +1174,23 @@ protected URI getResourceURI(final HttpServletRequest request) throws HTTPRedire
 		return URI.create(requestURIString); //create a URI from the full request URL
 	}
 
+	/** The private key used in generating and validating nonces; random unless configured. */
+	private String noncePrivateKey = NonceSigner.generatePrivateKey();
+
 	/**
-	 * @return A private key used in generating and validating nonces. This implementation returns the name of the servlet class.
+	 * @return A private key used in generating and validating nonces. This implementation returns the configured {@value #NONCE_SECRET_INIT_PARAMETER}, or a
+	 *         random key generated for this servlet instance if none was configured.
 	 */
 	protected String getNoncePrivateKey() {
-		return getClass().getName(); //return the name of the implementing servlet class
+		return noncePrivateKey;
 	}
 
-	/** @return A newly generated nonce. */
+	/** @return A newly generated nonce, which is a signed nonce if stateless nonces are used. */
 	protected Nonce createNonce() {
+		final NonceSigner nonceSigner = getNonceSigner();
+		if(nonceSigner != null) {
+			return nonceSigner.createNonce(); //create a stateless nonce signed with our private key
+		}
 		return new DefaultNonce(getNoncePrivateKey()); //create a default nonce using our private key
 	}
 
@@ -509,12 +1228,14 @@ protected boolean isValid(final HttpServletRequest request, final Nonce nonce) {
 	/**
 	 * Determines if the given nonce is stale.
 	 * @param nonce The nonce to check for staleness.
-	 * @return <code>true</code> if the nonce time has lapsed beyond the maximum allowed.
+	 * @return <code>true</code> if the nonce time has lapsed beyond the maximum allowed, or is in the future beyond the allowed clock skew.
 	 * @see #NONCE_EXPIRATION_DURATION
+	 * @see NonceSigner#MAX_CLOCK_SKEW
 	 */
 	protected boolean isStale(final Nonce nonce) {
 		//TODO del getLogger().trace("checking staleness of nonce {} with time {}", nonce, nonce.getTime().getTime());
-		return System.currentTimeMillis() - nonce.getTime().getTime() > NONCE_EXPIRATION_DURATION; //see if the difference between now and then is longer than we allow
+		final long age = System.currentTimeMillis() - nonce.getTime().getTime();
+		return age > NONCE_EXPIRATION_DURATION || age < -NonceSigner.MAX_CLOCK_SKEW; //see if the difference between now and then is longer than we allow
 	}
 
 	/**
@@ -552,22 +1273,29 @@ protected void checkAuthorization(final HttpServletRequest request)
 	 * @see #isAuthenticated(HttpServletRequest, URI, String, String, Principal, String, AuthenticateCredentials)
 	 * @see #isAuthorized(HttpServletRequest, URI, String, Principal, String)
 	 * @see #createAuthenticateChallenge(URI, String, Principal, String, AuthenticateCredentials, Nonce, boolean)
+	 * @see #getSessionTokenPrincipal(HttpServletRequest, String, AuthenticateCredentials)
 	 */
 	protected void checkAuthorization(final HttpServletRequest request, final URI resourceURI, final String method, final String requestURI,
 			final AuthenticateCredentials credentials) throws HTTPInternalServerErrorException, HTTPForbiddenException, HTTPUnauthorizedException {
-		final Principal principal = getPrincipal(credentials); //get the principal providing credentials
 		final String realm = getRealm(resourceURI); //get the realm for this resource
+		final Principal sessionTokenPrincipal = getSessionTokenPrincipal(request, realm, credentials); //see if the principal already authenticated in this realm
+		final Principal principal = sessionTokenPrincipal != null ? sessionTokenPrincipal : getPrincipal(credentials); //get the principal providing credentials
 		boolean isAuthenticated = false; //every principal by default is unauthenticated
-		if(isAuthenticated(request, resourceURI, method, requestURI, principal, realm, credentials)) { //if this principal is authenticated
+		if(sessionTokenPrincipal != null || isAuthenticated(request, resourceURI, method, requestURI, principal, realm, credentials)) { //if this principal is authenticated
 			isAuthenticated = true; //the request is authenticated
 		}
 		authenticated(request, resourceURI, method, requestURI, principal, realm, credentials, isAuthenticated); //indicate whether the principal has been authenticated
 		boolean isAuthorized = false; //every principal by default is unauthorized
-		if(isAuthenticated && isAuthorized(request, resourceURI, method, principal, realm)) { //if this principal is authorized
+		if(isAuthenticated && isAuthorizedCached(request, resourceURI, method, principal, realm)) { //if this principal is authorized
 			isAuthorized = true; //the request is both authenticated and authorized
 		}
-		if(credentials != null) { //if credentials were provided
-			getLogger().info("authorized {} {} {} {} {}", isAuthorized, resourceURI, method, principal, realm); //log the authorization result
+		request.setAttribute(AUTHORIZATION_OUTCOME_ATTRIBUTE, isAuthorized ? AccessLog.AuthorizationOutcome.AUTHORIZED
+				: isAuthenticated ? AccessLog.AuthorizationOutcome.UNAUTHORIZED : AccessLog.AuthorizationOutcome.UNAUTHENTICATED); //record the result in the access log
+		if(principal != null) {
+			request.setAttribute(AUTHORIZATION_PRINCIPAL_ATTRIBUTE, principal);
+		}
+		if(credentials != null && getLogger().isDebugEnabled()) { //if credentials were provided
+			getLogger().debug("authorized {} {} {} {} {}", isAuthorized, resourceURI, method, principal, realm); //log the authorization result
 		}
 		if(!isAuthorized) { //if authentication and authorization didn't succeed, throw an exception
 			if(realm != null) { //if we have a realm to authenticate
@@ -580,7 +1308,99 @@ protected void checkAuthorization(final HttpServletRequest request, final URI re
 	}
 
 	/**
-	 * Called when a principal has went through authentication and indicates the result of authentication.
+	 * Determines the principal whose authorization was checked for a request, however the principal was authenticated, such as by credentials or by a session
+	 * token. This allows access to other resources involved in the request to be checked for the same principal.
+	 * @param request The HTTP request.
+	 * @return The principal making the request, or <code>null</code> if authorization has not been checked or the principal is not known.
+	 * @see #checkAuthorization(HttpServletRequest, URI, String, String, AuthenticateCredentials)
+	 */
+	protected Principal getAuthorizedPrincipal(final HttpServletRequest request) {
+		return (Principal)request.getAttribute(AUTHORIZATION_PRINCIPAL_ATTRIBUTE);
+	}
+
+	/** The signer of session tokens, or <code>null</code> if session tokens are not issued. */
+	private SessionTokenSigner sessionTokenSigner = null;
+
+	/** @return The signer of session tokens, or <code>null</code> if session tokens are not issued. */
+	protected SessionTokenSigner getSessionTokenSigner() {
+		return sessionTokenSigner;
+	}
+
+	/** The number of milliseconds a session token is valid. */
+	private long sessionTokenMaxAge = DEFAULT_SESSION_TOKEN_MAX_AGE;
+
+	/**
+	 * Revokes all session tokens issued so far by this server, such as after credentials have been changed. Other servers sharing the session token secret
+	 * continue to accept the tokens unless their epoch is changed as well.
+	 * @see #SESSION_TOKEN_EPOCH_INIT_PARAMETER
+	 */
+	protected void revokeSessionTokens() {
+		final SessionTokenSigner sessionTokenSigner = getSessionTokenSigner();
+		if(sessionTokenSigner != null) {
+			sessionTokenSigner.revokeAll();
+		}
+	}
+
+	/**
+	 * Determines the principal vouched for by a valid session token sent with the request, if session tokens are issued. The token is only accepted for the
+	 * realm in which it was issued, and only if any credentials sent with the request are for the same principal. If the token is accepted, it is stored in the
+	 * {@value #SESSION_TOKEN_ATTRIBUTE} request attribute.
+	 * @param request The HTTP request.
+	 * @param realm The realm for the requested resource.
+	 * @param credentials The principal's credentials, or <code>null</code> if no credentials are available.
+	 * @return The principal that has already authenticated in the realm, or <code>null</code> if there is no valid session token.
+	 * @throws HTTPInternalServerErrorException if there is an error getting the principal.
+	 */
+	protected Principal getSessionTokenPrincipal(final HttpServletRequest request, final String realm, final AuthenticateCredentials credentials)
+			throws HTTPInternalServerErrorException {
+		final SessionTokenSigner sessionTokenSigner = getSessionTokenSigner();
+		if(sessionTokenSigner == null || realm == null) {
+			return null;
+		}
+		final Cookie cookie = Cookies.getCookie(request.getCookies(), SESSION_TOKEN_COOKIE_NAME);
+		if(cookie == null || cookie.getValue() == null) {
+			return null;
+		}
+		final SessionTokenSigner.Token token = sessionTokenSigner.verify(cookie.getValue()); //a single MAC check
+		if(token == null || !realm.equals(token.getRealm())) {
+			return null;
+		}
+		if(credentials != null) { //if the client is also sending credentials, make sure they are for the same principal
+			final String principalID = credentials.getPrincipalID();
+			if(principalID == null || !(principalID.equals(token.getPrincipalID()) || principalID.endsWith('\\' + token.getPrincipalID()))) {
+				return null;
+			}
+		}
+		final Principal principal = getCachedPrincipal(token.getPrincipalID());
+		if(principal != null) {
+			request.setAttribute(SESSION_TOKEN_ATTRIBUTE, token);
+		}
+		return principal;
+	}
+
+	/**
+	 * Adds a cookie containing a session token to the response. The cookie is written directly as a header, as the servlet API provides no way to set the
+	 * <code>SameSite</code> attribute.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @param sessionToken The string form of the session token, which contains only URL-safe base64 characters and periods.
+	 */
+	private void addSessionTokenCookie(final HttpServletRequest request, final HttpServletResponse response, final String sessionToken) {
+		final String contextPath = request.getContextPath();
+		final StringBuilder cookie = new StringBuilder(SESSION_TOKEN_COOKIE_NAME).append('=').append(sessionToken);
+		cookie.append("; Path=").append(contextPath.isEmpty() ? "/" : contextPath);
+		cookie.append("; Max-Age=").append(sessionTokenMaxAge / 1000);
+		cookie.append("; HttpOnly");
+		if(request.isSecure()) {
+			cookie.append("; Secure");
+		}
+		cookie.append("; SameSite=").append(SESSION_TOKEN_COOKIE_SAME_SITE);
+		response.addHeader(SET_COOKIE_HEADER, cookie.toString());
+	}
+
+	/**
+	 * Called when a principal has went through authentication and indicates the result of authentication. If session tokens are issued, this version issues a
+	 * session token after successful digest authentication, unless the request was authenticated using a session token. Any child class must call this method.
 	 * @param request The HTTP request.
 	 * @param resourceURI The URI of the resource requested.
 	 * @param method The HTTP method requested on the resource.
@@ -592,6 +1412,12 @@ protected void checkAuthorization(final HttpServletRequest request, final URI re
 	 */
 	protected void authenticated(final HttpServletRequest request, final URI resourceURI, final String method, final String requestURI, final Principal principal,
 			final String realm, final AuthenticateCredentials credentials, final boolean authenticated) {
+		final SessionTokenSigner sessionTokenSigner = getSessionTokenSigner();
+		if(sessionTokenSigner != null && authenticated && credentials instanceof DigestAuthenticateCredentials && principal != null && realm != null
+				&& request.getAttribute(SESSION_TOKEN_ATTRIBUTE) == null) {
+			request.setAttribute(ISSUED_SESSION_TOKEN_ATTRIBUTE,
+					sessionTokenSigner.createToken(principal.getName(), realm, System.currentTimeMillis() + sessionTokenMaxAge));
+		}
 	}
 
 	/**
@@ -606,9 +1432,9 @@ protected Principal getPrincipal(final AuthenticateCredentials credentials) thro
 			final String principalID = credentials.getPrincipalID(); //get the ID of the principal
 			final int separatorIndex = CharSequences.indexOf(principalID, '\\'); //TODO testing
 			if(separatorIndex >= 0) {
-				return getPrincipal(principalID.substring(separatorIndex + 1)); //TODO testing
+				return getCachedPrincipal(principalID.substring(separatorIndex + 1)); //TODO testing
 			} else {
-				return getPrincipal(principalID);
+				return getCachedPrincipal(principalID);
 			}
 		} else { //if we have no credentials
 			return null; //there is no principal
@@ -616,6 +1442,93 @@ protected Principal getPrincipal(final AuthenticateCredentials credentials) thro
 		//TODO del		return credentials!=null ? getPrincipal(credentials.getPrincipalID()) : null;	//get the principal providing credentials, if there are credentials
 	}
 
+	/** The cache of principals, including those not found, keyed to principal ID; or <code>null</code> if credentials are not cached. */
+	private TimedCache<String, Optional<Principal>> principalCache = null;
+
+	/** @return The cache of principals, keyed to principal ID; or <code>null</code> if credentials are not cached. */
+	protected TimedCache<String, Optional<Principal>> getPrincipalCache() {
+		return principalCache;
+	}
+
+	/**
+	 * The cache of digest credentials in the form of HA1 values, including principals with no credentials, keyed to the principal name, realm, and user name
+	 * separated by newlines; or <code>null</code> if credentials are not cached.
+	 */
+	private TimedCache<String, Optional<String>> ha1Cache = null;
+
+	/** @return The cache of digest credentials in the form of HA1 values; or <code>null</code> if credentials are not cached. */
+	protected TimedCache<String, Optional<String>> getHA1Cache() {
+		return ha1Cache;
+	}
+
+	/** The number of milliseconds principals and their credentials are cached. */
+	private long credentialCacheMaxAge = 0;
+
+	/** The number of milliseconds the absence of a principal or its credentials is cached. */
+	private long credentialCacheNegativeMaxAge = 0;
+
+	/** The generation of cached credentials, advanced whenever credentials are invalidated. */
+	private final AtomicLong credentialGeneration = new AtomicLong(0);
+
+	/**
+	 * Looks up a principal from the given ID, using the principal cache if credentials are cached.
+	 * @param id The ID of the principal.
+	 * @return The principal corresponding to the given ID, or <code>null</code> if no principal could be determined.
+	 * @throws HTTPInternalServerErrorException if there is an error getting the principal.
+	 * @see #getPrincipal(String)
+	 */
+	private Principal getCachedPrincipal(final String id) throws HTTPInternalServerErrorException {
+		final TimedCache<String, Optional<Principal>> principalCache = getPrincipalCache();
+		if(principalCache == null) {
+			return getPrincipal(id);
+		}
+		final Optional<Principal> cachedPrincipal = principalCache.get(id);
+		if(cachedPrincipal != null) {
+			return cachedPrincipal.orElse(null);
+		}
+		final long generation = credentialGeneration.get(); //so that a principal looked up during invalidation is discarded
+		final Principal principal = getPrincipal(id);
+		principalCache.put(id, Optional.ofNullable(principal), principal != null ? credentialCacheMaxAge : credentialCacheNegativeMaxAge);
+		if(credentialGeneration.get() != generation) { //if the credentials were invalidated while we were looking up the principal, don't undo the invalidation
+			principalCache.invalidate(id);
+		}
+		return principal;
+	}
+
+	/**
+	 * Removes a principal and its credentials from the credential caches, so that they will be looked up again on the next request. This should be called when
+	 * a principal or its password is changed or removed. Lookups in progress when this method is called will not cache their results.
+	 * @param principalID The ID of the principal, as passed to {@link #getPrincipal(String)} and returned by {@link Principal#getName()}.
+	 */
+	protected void invalidateCredentials(final String principalID) {
+		credentialGeneration.incrementAndGet(); //advance the generation before removing, so that lookups in progress discard what they cache
+		final TimedCache<String, Optional<Principal>> principalCache = getPrincipalCache();
+		if(principalCache != null) {
+			principalCache.invalidate(principalID);
+		}
+		final TimedCache<String, Optional<String>> ha1Cache = getHA1Cache();
+		if(ha1Cache != null) {
+			final String keyPrefix = principalID + '\n';
+			ha1Cache.invalidateIf(key -> key.startsWith(keyPrefix));
+		}
+	}
+
+	/**
+	 * Removes all principals and their credentials from the credential caches, so that they will be looked up again. Lookups in progress when this method is
+	 * called will not cache their results.
+	 */
+	protected void invalidateCredentials() {
+		credentialGeneration.incrementAndGet(); //advance the generation before removing, so that lookups in progress discard what they cache
+		final TimedCache<String, Optional<Principal>> principalCache = getPrincipalCache();
+		if(principalCache != null) {
+			principalCache.invalidateAll();
+		}
+		final TimedCache<String, Optional<String>> ha1Cache = getHA1Cache();
+		if(ha1Cache != null) {
+			ha1Cache.invalidateAll();
+		}
+	}
+
 	/**
 	 * Looks up a principal from the given ID. This version returns <code>null</code>.
 	 * @param id The ID of the principal.
@@ -636,6 +1549,100 @@ protected char[] getPassword(final Principal principal) throws HTTPInternalServe
 		return null; //the basic HTTP servlet doesn't know any passwords
 	}
 
+	/**
+	 * Looks up the precomputed digest authentication HA1 value, the lowercase hex MD5 hash of <code><var>username</var>:<var>realm</var>:<var>password</var></code>,
+	 * for the given principal. Servlets that store HA1 values rather than passwords should override this method, so that passwords are never needed. This
+	 * version returns <code>null</code>, so that the HA1 value is computed from the password.
+	 * @param principal The principal for which an HA1 value should be returned.
+	 * @param realm The realm for which the principal is being authenticated.
+	 * @return The HA1 value associated with the given principal and realm, or <code>null</code> if no HA1 value is available.
+	 * @throws HTTPInternalServerErrorException if there is an error getting the principal's HA1 value.
+	 * @see #getPassword(Principal)
+	 */
+	protected String getHA1(final Principal principal, final String realm) throws HTTPInternalServerErrorException {
+		return null;
+	}
+
+	/**
+	 * Determines the digest authentication HA1 value for the given principal, using the HA1 cache if credentials are cached. The HA1 value is provided by
+	 * {@link #getHA1(Principal, String)}, or if that is not available, computed from the password provided by {@link #getPassword(Principal)}.
+	 * @param principal The principal for which an HA1 value should be returned.
+	 * @param realm The realm for which the principal is being authenticated.
+	 * @param username The user name provided by the client, which may differ from the principal name.
+	 * @return The HA1 value associated with the given principal and realm, or <code>null</code> if the principal has no credentials.
+	 * @throws HTTPInternalServerErrorException if there is an error getting the principal's credentials.
+	 */
+	private String getCachedHA1(final Principal principal, final String realm, final String username) throws HTTPInternalServerErrorException {
+		final TimedCache<String, Optional<String>> ha1Cache = getHA1Cache();
+		final String key = principal.getName() + '\n' + realm + '\n' + username;
+		if(ha1Cache != null) {
+			final Optional<String> cachedHA1 = ha1Cache.get(key);
+			if(cachedHA1 != null) {
+				return cachedHA1.orElse(null);
+			}
+		}
+		final long generation = credentialGeneration.get(); //so that credentials looked up during invalidation are discarded
+		String ha1 = getHA1(principal, realm);
+		if(ha1 == null) { //if there is no precomputed HA1, compute it from the password
+			final char[] password = getPassword(principal);
+			if(password != null) {
+				ha1 = md5Hex(username + ':' + realm + ':' + new String(password));
+			}
+		}
+		if(ha1Cache != null) {
+			ha1Cache.put(key, Optional.ofNullable(ha1), ha1 != null ? credentialCacheMaxAge : credentialCacheNegativeMaxAge);
+			if(credentialGeneration.get() != generation) { //if the credentials were invalidated while we were looking them up, don't undo the invalidation
+				ha1Cache.invalidate(key);
+			}
+		}
+		return ha1;
+	}
+
+	/**
+	 * Determines whether digest credentials are valid, using the HA1 value rather than the password of the principal.
+	 * @param credentials The digest credentials to check.
+	 * @param method The HTTP method of the request.
+	 * @param ha1 The HA1 value of the principal.
+	 * @return <code>true</code> if the response of the credentials matches the response computed from the HA1 value.
+	 * @throws IllegalArgumentException if the credentials use the <code>auth-int</code> quality of protection, which requires the request body.
+	 */
+	protected static boolean isValid(final DigestAuthenticateCredentials credentials, final String method, final String ha1) {
+		final QOP qop = credentials.getQOP();
+		checkArgument(qop != QOP.AUTH_INT, "Quality of protection %s not supported with HA1 validation.", qop);
+		final String algorithm = credentials.getAlgorithm();
+		final String sessionHA1 = algorithm != null && algorithm.equalsIgnoreCase("MD5-sess") ? md5Hex(ha1 + ':' + credentials.getNonce() + ':' + credentials.getCNonce())
+				: ha1;
+		final String ha2 = md5Hex(method + ':' + credentials.getURI());
+		final String response;
+		if(qop != null) {
+			response = md5Hex(sessionHA1 + ':' + credentials.getNonce() + ':' + String.format("%08x", credentials.getNonceCount()) + ':' + credentials.getCNonce()
+					+ ':' + qop.toString().toLowerCase(Locale.ROOT).replace('_', '-') + ':' + ha2);
+		} else {
+			response = md5Hex(sessionHA1 + ':' + credentials.getNonce() + ':' + ha2);
+		}
+		final String credentialsResponse = credentials.getResponse();
+		return credentialsResponse != null && MessageDigest.isEqual(response.getBytes(US_ASCII), credentialsResponse.toLowerCase(Locale.ROOT).getBytes(US_ASCII)); //compare in constant time
+	}
+
+	/**
+	 * Computes the MD5 hash of a string as used in digest authentication.
+	 * @param string The string to hash, which is encoded in UTF-8.
+	 * @return The lowercase hex MD5 hash of the string.
+	 */
+	private static String md5Hex(final String string) {
+		final byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("MD5").digest(string.getBytes(UTF_8));
+		} catch(final NoSuchAlgorithmException noSuchAlgorithmException) { //MD5 is always supported
+			throw unexpected(noSuchAlgorithmException);
+		}
+		final StringBuilder hex = new StringBuilder(hash.length * 2);
+		for(final byte b : hash) {
+			hex.append(Character.forDigit((b >> 4) & 0x0f, 16)).append(Character.forDigit(b & 0x0f, 16));
+		}
+		return hex.toString();
+	}
+
 	/**
 	 * Checks whether the given credentials provide authentication for the given URI and method. This version does basic authenticity checks on the credentials,
 	 * if provided, so any subclass should first call this method.
@@ -681,10 +1688,19 @@ protected boolean isAuthenticated(final HttpServletRequest request, final URI re
 				if(principal == null) { //if no principal was given
 					return false; //an anonymous principal cannot authenticate against given credentials
 				}
-				final char[] password = getPassword(principal); //get the password for the principal
-				//TODO del getLogger().trace("got password {} for credentials", new String(password));
-				if(password == null || !digestCredentials.isValid(method, password)) { //see if the credentials are valid for this principal's password
-					return false; //indicate that the credentials have an invalid password
+				if(digestCredentials.getQOP() == QOP.AUTH_INT) { //integrity protection requires the request body, so defer to the credentials themselves
+					final char[] password = getPassword(principal); //get the password for the principal
+					if(password == null || !digestCredentials.isValid(method, password)) { //see if the credentials are valid for this principal's password
+						return false; //indicate that the credentials have an invalid password
+					}
+				} else {
+					final String ha1 = getCachedHA1(principal, digestCredentials.getRealm(), digestCredentials.getPrincipalID()); //get the hashed credentials for the principal
+					if(ha1 == null || !isValid(digestCredentials, method, ha1)) { //see if the credentials are valid for this principal's HA1
+						return false; //indicate that the credentials have an invalid password
+					}
+				}
+				if(digestCredentials.getQOP() != null && !updateNonceCount(digestCredentials.getNonce(), nonce, digestCredentials.getNonceCount())) { //if this nonce count was already used
+					return false; //don't allow replayed requests
 				}
 				setNoncePrincipalID(nonce, principal.getName()); //associate this principal with the nonce
 				//			TODO del getLogger().trace("checking staleness");
@@ -721,9 +1737,94 @@ protected boolean isAuthorized(final HttpServletRequest request, final URI resou
 		return true; //default to authorizing access
 	}
 
+	/** The cache of authorization decisions, or <code>null</code> if authorization decisions are not cached. */
+	private TimedCache<String, Boolean> authorizationCache = null;
+
+	/** @return The cache of authorization decisions, or <code>null</code> if authorization decisions are not cached. */
+	protected TimedCache<String, Boolean> getAuthorizationCache() {
+		return authorizationCache;
+	}
+
+	/** The number of milliseconds authorization decisions are cached. */
+	private long authorizationCacheMaxAge = 0;
+
+	/** The generation of authorization decisions; decisions cached in earlier generations are no longer used. */
+	private final AtomicLong authorizationGeneration = new AtomicLong(0);
+
+	/**
+	 * Discards all cached authorization decisions, so that authorization will be checked again. This should be called whenever access control information
+	 * changes. Rather than clearing the cache, this version starts a new generation of decisions, so that no decision made under the old access control
+	 * information can be cached after this method returns; the decisions of earlier generations age out of the cache.
+	 */
+	protected void invalidateAuthorizations() {
+		authorizationGeneration.incrementAndGet();
+	}
+
+	/**
+	 * Determines the scope to which an authorization decision applies, that is, the path prefix of all resources for which the principal would receive the same
+	 * decision for the same class of method in the same realm. A servlet that declares a scope allows the decision to be cached and reused for any resource in the
+	 * scope; for example a servlet whose access control is per collection might return the path of the collection. Decisions that depend on more than the
+	 * principal, realm, method class, and resource path, such as on other request headers, must not be declared cacheable. This version returns
+	 * <code>null</code>, so that no decisions are cached.
+	 * @param request The HTTP request.
+	 * @param resourceURI The URI of the resource requested.
+	 * @param method The HTTP method requested on the resource.
+	 * @param principal The principal requesting authentication, or <code>null</code> if the principal is not known.
+	 * @param realm The realm with which the resource is associated, or <code>null</code> if the realm is not known.
+	 * @return The path prefix to which the authorization decision applies, or <code>null</code> if the decision should not be cached.
+	 * @throws HTTPInternalServerErrorException if there is an error determining the scope.
+	 * @see #getAuthorizationMethodClass(String)
+	 */
+	protected String getAuthorizationScope(final HttpServletRequest request, final URI resourceURI, final String method, final Principal principal,
+			final String realm) throws HTTPInternalServerErrorException {
+		return null;
+	}
+
+	/**
+	 * Determines the class of a method for the purpose of caching authorization decisions. Methods of the same class always receive the same authorization
+	 * decision. This version considers <code>HEAD</code> to be of the same class as <code>GET</code>, and each other method to be of its own class.
+	 * @param method The HTTP method.
+	 * @return The class of the method.
+	 */
+	protected String getAuthorizationMethodClass(final String method) {
+		return HEAD_METHOD.equals(method) ? GET_METHOD : method;
+	}
+
+	/**
+	 * Checks whether the given principal is authorized to invoke the given method on the given resource, using the authorization cache if the decision is
+	 * cacheable.
+	 * @param request The HTTP request.
+	 * @param resourceURI The URI of the resource requested.
+	 * @param method The HTTP method requested on the resource.
+	 * @param principal The principal requesting authentication, or <code>null</code> if the principal is not known.
+	 * @param realm The realm with which the resource is associated, or <code>null</code> if the realm is not known.
+	 * @return <code>true</code> if the given principal is authorized to perform the given method on the resource represented by the given URI.
+	 * @throws HTTPInternalServerErrorException if there is an error determining if the principal is authorized.
+	 * @see #isAuthorized(HttpServletRequest, URI, String, Principal, String)
+	 * @see #getAuthorizationScope(HttpServletRequest, URI, String, Principal, String)
+	 */
+	protected boolean isAuthorizedCached(final HttpServletRequest request, final URI resourceURI, final String method, final Principal principal,
+			final String realm) throws HTTPInternalServerErrorException {
+		final TimedCache<String, Boolean> authorizationCache = getAuthorizationCache();
+		final String scope = authorizationCache != null ? getAuthorizationScope(request, resourceURI, method, principal, realm) : null;
+		if(scope == null) { //if the decision isn't cacheable
+			return isAuthorized(request, resourceURI, method, principal, realm);
+		}
+		final long generation = authorizationGeneration.get(); //get the generation before deciding, so that a decision made during invalidation is discarded
+		final String key = new StringBuilder().append(generation).append('\n').append(principal != null ? principal.getName() : "").append('\n').append(realm)
+				.append('\n').append(getAuthorizationMethodClass(method)).append('\n').append(scope).toString();
+		final Boolean cachedAuthorized = authorizationCache.get(key);
+		if(cachedAuthorized != null) {
+			return cachedAuthorized.booleanValue();
+		}
+		final boolean authorized = isAuthorized(request, resourceURI, method, principal, realm);
+		authorizationCache.put(key, Boolean.valueOf(authorized), authorizationCacheMaxAge);
+		return authorized;
+	}
+
 	/**
 	 * Creates an authentication challenge for the given resource This creates a digest authenticate challenge so any subclass should first call this method. This
-	 * version stores the given nonce under a nonce ID digest generated by the credentials.
+	 * version stores the given nonce under a nonce ID digest generated by the credentials. A signed nonce is instead sent to the client as is and not stored.
 	 * @param resourceURI The URI of the resource requested.
 	 * @param method The HTTP method requested on the resource.
 	 * @param principal The principal requesting authentication, or <code>null</code> if the principal is not known.
@@ -737,6 +1838,9 @@ protected boolean isAuthorized(final HttpServletRequest request, final URI resou
 	protected AuthenticateChallenge createAuthenticateChallenge(final URI resourceURI, final String method, final Principal principal, final String realm,
 			final AuthenticateCredentials credentials, final Nonce nonce, final boolean stale) throws HTTPInternalServerErrorException {
 		try {
+			if(nonce instanceof NonceSigner.SignedNonce) { //a signed nonce needs no digest, as it reveals nothing but its time
+				return new SignedNonceDigestAuthenticateChallenge(realm, nonce.toString(), stale);
+			}
 			final DigestAuthenticateChallenge challenge = new DigestAuthenticateChallenge(realm, nonce.toString(), stale); //create a new digest authenticate challenge for the resource's realm, using the given nonce
 			storeNonce(challenge.getNonceDigest(), nonce); //store the nonce under its digest value
 			return challenge; //return the challenge
@@ -755,4 +1859,32 @@ protected String getRealm(final URI resourceURI) throws HTTPInternalServerErrorE
 		return null;
 	}
 
+	/**
+	 * A digest authenticate challenge that sends a signed nonce to the client as is rather than a digest of it, so that the nonce can later be verified.
+	 * @author Garret Wilson
+	 */
+	private static class SignedNonceDigestAuthenticateChallenge extends DigestAuthenticateChallenge {
+
+		/** The signed nonce. */
+		private final String signedNonce;
+
+		/**
+		 * Constructor.
+		 * @param realm The realm in which the resource is located.
+		 * @param signedNonce The string form of the signed nonce.
+		 * @param stale Whether the previous request from the client was rejected because the nonce value was stale.
+		 * @throws NoSuchAlgorithmException if the default digest algorithm is not supported.
+		 */
+		public SignedNonceDigestAuthenticateChallenge(final String realm, final String signedNonce, final boolean stale) throws NoSuchAlgorithmException {
+			super(realm, signedNonce, stale);
+			this.signedNonce = signedNonce;
+		}
+
+		/** {@inheritDoc} This version returns the signed nonce itself. */
+		@Override
+		public String getNonceDigest() {
+			return signedNonce;
+		}
+	}
+
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.io.*;
+import java.nio.CharBuffer;
+import java.nio.charset.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * A response that counts the bytes of content actually written to it, whether through its output stream or its writer, regardless of any declared
+ * <code>Content-Length</code>. Characters written to the writer are counted as the bytes they encode to in the character encoding of the response. Content
+ * written by the container itself, such as error pages, is not counted; nor is content discarded by resetting the buffer subtracted.
+ * <p>
+ * This class is not thread-safe; the count is only reliable once the request has been serviced.
+ * </p>
+ * @author Garret Wilson
+ */
+public class ByteCountingResponse extends HttpServletResponseWrapper {
+
+	/** The number of content bytes written. */
+	private long byteCount = 0;
+
+	/** @return The number of content bytes written so far. */
+	public long getByteCount() {
+		return byteCount;
+	}
+
+	/** The counting output stream, or <code>null</code> if the output stream has not been requested. */
+	private ServletOutputStream outputStream = null;
+
+	/** The counting writer, or <code>null</code> if the writer has not been requested. */
+	private PrintWriter writer = null;
+
+	/**
+	 * Constructor.
+	 * @param response The response to wrap.
+	 * @throws IllegalArgumentException if the given response is <code>null</code>.
+	 */
+	public ByteCountingResponse(final HttpServletResponse response) {
+		super(response);
+	}
+
+	/** {@inheritDoc} This version returns a stream that counts the bytes written to the wrapped response's output stream. */
+	@Override
+	public ServletOutputStream getOutputStream() throws IOException {
+		if(outputStream == null) {
+			outputStream = new CountingOutputStream(super.getOutputStream());
+		}
+		return outputStream;
+	}
+
+	/** {@inheritDoc} This version returns a writer that counts the encoded bytes of the characters written to the wrapped response's writer. */
+	@Override
+	public PrintWriter getWriter() throws IOException {
+		if(writer == null) {
+			final PrintWriter responseWriter = super.getWriter(); //get the writer first, so that the character encoding is fixed
+			final String characterEncoding = getCharacterEncoding();
+			Charset charset;
+			try {
+				charset = characterEncoding != null ? Charset.forName(characterEncoding) : ISO_8859_1; //ISO-8859-1 is the servlet default
+			} catch(final IllegalArgumentException illegalArgumentException) { //the container accepted the encoding, so this would be unusual
+				charset = ISO_8859_1;
+			}
+			writer = new CountingWriter(responseWriter, charset);
+		}
+		return writer;
+	}
+
+	/**
+	 * Determines the number of bytes a sequence of characters encodes to in a charset.
+	 * @param charSequence The characters.
+	 * @param charset The charset used to encode the characters.
+	 * @return The number of bytes of the encoded characters.
+	 */
+	private static long getEncodedLength(final CharSequence charSequence, final Charset charset) {
+		final int length = charSequence.length();
+		if(charset.equals(ISO_8859_1) || charset.equals(US_ASCII)) { //single-byte encodings
+			return length;
+		}
+		if(charset.equals(UTF_8)) { //avoid encoding for the most common multi-byte encoding
+			long byteCount = 0;
+			for(int i = 0; i < length; ++i) {
+				final char c = charSequence.charAt(i);
+				if(c < 0x80) {
+					byteCount += 1;
+				} else if(c < 0x800) {
+					byteCount += 2;
+				} else if(Character.isSurrogate(c)) { //each half of a surrogate pair contributes half of the four bytes
+					byteCount += 2;
+				} else {
+					byteCount += 3;
+				}
+			}
+			return byteCount;
+		}
+		return charset.encode(CharBuffer.wrap(charSequence)).remaining();
+	}
+
+	/**
+	 * An output stream that counts the bytes written to the decorated stream.
+	 * @author Garret Wilson
+	 */
+	private class CountingOutputStream extends ServletOutputStream {
+
+		/** The decorated output stream. */
+		private final ServletOutputStream outputStream;
+
+		/**
+		 * Constructor.
+		 * @param outputStream The output stream to decorate.
+		 */
+		public CountingOutputStream(final ServletOutputStream outputStream) {
+			this.outputStream = outputStream;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			outputStream.write(b);
+			++byteCount;
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			outputStream.write(bytes, offset, length);
+			byteCount += length;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			outputStream.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			outputStream.close();
+		}
+
+		@Override
+		public boolean isReady() {
+			return outputStream.isReady();
+		}
+
+		@Override
+		public void setWriteListener(final WriteListener writeListener) {
+			outputStream.setWriteListener(writeListener);
+		}
+	}
+
+	/**
+	 * A writer that counts the encoded bytes of the characters written to the decorated writer. All other writing methods of {@link PrintWriter} delegate to
+	 * the methods overridden here.
+	 * @author Garret Wilson
+	 */
+	private class CountingWriter extends PrintWriter {
+
+		/** The charset in which the characters are encoded. */
+		private final Charset charset;
+
+		/**
+		 * Constructor.
+		 * @param writer The writer to decorate.
+		 * @param charset The charset in which the characters are encoded.
+		 */
+		public CountingWriter(final PrintWriter writer, final Charset charset) {
+			super(writer);
+			this.charset = charset;
+		}
+
+		@Override
+		public void write(final int c) {
+			super.write(c);
+			byteCount += getEncodedLength(String.valueOf((char)c), charset);
+		}
+
+		@Override
+		public void write(final char[] chars, final int offset, final int length) {
+			super.write(chars, offset, length);
+			byteCount += getEncodedLength(CharBuffer.wrap(chars, offset, length), charset);
+		}
+
+		@Override
+		public void write(final String string, final int offset, final int length) {
+			super.write(string, offset, length);
+			byteCount += getEncodedLength(string.subSequence(offset, offset + length), charset);
+		}
+
+		/** {@inheritDoc} This version counts the line separator, which {@link PrintWriter} writes directly to the decorated writer. */
+		@Override
+		public void println() {
+			super.println();
+			byteCount += getEncodedLength(System.lineSeparator(), charset);
+		}
+	}
+
+}
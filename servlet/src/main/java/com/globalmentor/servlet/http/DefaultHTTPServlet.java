@@ -18,26 +18,160 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import static java.util.Collections.*;
 
-import javax.servlet.http.HttpServletRequest;
+import javax.servlet.*;
+import javax.servlet.http.*;
 
 import com.globalmentor.net.*;
 import com.globalmentor.net.http.HTTPConflictException;
 
+import static com.globalmentor.net.HTTP.*;
+import static com.globalmentor.servlet.Servlets.*;
 import static java.util.Objects.*;
 
 /**
  * The default implementation of an HTTP servlet that accesses files in the web application. This servlet may access files within a War file because it uses
  * general servlet routines for resource access. For this reason the servlet is read-only by default, because the servlet context does not offer any writing
  * methods.
+ * <p>
+ * Resources within a JAR or WAR file are served using an {@link ArchiveIndex} of the archive built the first time the archive is accessed, rather than by
+ * opening a {@link URLConnection} for every request. Stored entries are read directly from the archive; deflated entries are inflated once and kept in a
+ * byte cache of limited total size, except that large entries are inflated each time they are served. Resources on the file system are likewise accessed
+ * directly as files.
+ * </p>
+ * <p>
+ * Other resources, which may reside on slow storage such as a network file system, may be kept in a resource cache. A cached resource is served without
+ * checking the underlying resource until its maximum age passes. If stale-while-revalidate is enabled, for a further period the stale resource is still served
+ * immediately while it is revalidated in the background; only after that is revalidation performed before responding. If requested, the same periods are
+ * announced to downstream caches using <code>Cache-Control</code>. This servlet supports the following initialization parameters in addition to those of its
+ * parent classes:
+ * </p>
+ * <dl>
+ * <dt>{@value #RESOURCE_INDEX_INIT_PARAMETER}</dt>
+ * <dd>Whether resources should be accessed directly from archives and files rather than through URL connections; should be "true" or "false". Defaults to
+ * "true".</dd>
+ * <dt>{@value #RESOURCE_CACHE_INIT_PARAMETER}</dt>
+ * <dd>Whether resources not accessed from archives should be cached; should be "true" or "false". Defaults to "false".</dd>
+ * <dt>{@value #RESOURCE_CACHE_MAX_AGE_INIT_PARAMETER}</dt>
+ * <dd>The number of seconds a cached resource is used without being revalidated. Defaults to {@value #DEFAULT_RESOURCE_CACHE_MAX_AGE}.</dd>
+ * <dt>{@value #STALE_WHILE_REVALIDATE_INIT_PARAMETER}</dt>
+ * <dd>The number of seconds after the maximum age during which a stale cached resource is served while it is revalidated in the background. Defaults to 0,
+ * meaning that stale resources are always revalidated before being served.</dd>
+ * <dt>{@value #RESOURCE_CACHE_CONTROL_INIT_PARAMETER}</dt>
+ * <dd>Whether the maximum age and stale-while-revalidate period of the resource cache should be announced to downstream caches using
+ * <code>Cache-Control</code>; should be "true" or "false". Defaults to "false". Has no effect unless resources are cached.</dd>
+ * </dl>
  * @author Garret Wilson
  */
 public class DefaultHTTPServlet extends AbstractHTTPServlet<DefaultHTTPServlet.HTTPServletResource> { //TODO implement writing using the resource URL methods
 
 	private static final long serialVersionUID = -1448413574818504869L;
 
+	/**
+	 * The init parameter, {@value #RESOURCE_INDEX_INIT_PARAMETER}, used to specify whether resources should be accessed directly from archives and files; should
+	 * be "true" or "false".
+	 */
+	public static final String RESOURCE_INDEX_INIT_PARAMETER = "resourceIndex";
+
+	/** The init parameter, {@value #RESOURCE_CACHE_INIT_PARAMETER}, used to specify whether resources not in archives are cached; should be "true" or "false". */
+	public static final String RESOURCE_CACHE_INIT_PARAMETER = "resourceCache";
+
+	/** The init parameter, {@value #RESOURCE_CACHE_MAX_AGE_INIT_PARAMETER}, used to specify the number of seconds a cached resource is used without revalidation. */
+	public static final String RESOURCE_CACHE_MAX_AGE_INIT_PARAMETER = "resourceCacheMaxAge";
+
+	/** The default number of seconds a cached resource is used without revalidation. */
+	public static final long DEFAULT_RESOURCE_CACHE_MAX_AGE = 10;
+
+	/**
+	 * The init parameter, {@value #STALE_WHILE_REVALIDATE_INIT_PARAMETER}, used to specify the number of seconds after the maximum age during which a stale
+	 * cached resource is served while being revalidated in the background.
+	 */
+	public static final String STALE_WHILE_REVALIDATE_INIT_PARAMETER = "staleWhileRevalidate";
+
+	/**
+	 * The init parameter, {@value #RESOURCE_CACHE_CONTROL_INIT_PARAMETER}, used to specify whether the resource cache periods are announced to downstream
+	 * caches; should be "true" or "false".
+	 */
+	public static final String RESOURCE_CACHE_CONTROL_INIT_PARAMETER = "resourceCacheControl";
+
+	/** The maximum number of resources in the resource cache. */
+	private static final int RESOURCE_CACHE_SIZE = 1000;
+
+	/** The largest resource that will be kept in the resource cache; larger resources are always served from the underlying resource. */
+	private static final int MAX_CACHED_CONTENT_LENGTH = 256 * 1024;
+
+	/** The maximum total uncompressed size of the deflated archive entries the inflated content of which is cached. */
+	private static final long INFLATED_CACHE_MAX_LENGTH = 64L * 1024 * 1024;
+
+	/** The largest deflated archive entry the inflated content of which will be cached; larger entries are inflated as they are served. */
+	private static final long MAX_INFLATED_CONTENT_LENGTH = 4L * 1024 * 1024;
+
+	/** The <code>Cache-Control</code> directive indicating how long a response is fresh. */
+	private static final String MAX_AGE_CACHE_CONTROL = "max-age";
+
+	/** The <code>Cache-Control</code> directive defined by RFC 5861 allowing a stale response to be served while it is revalidated. */
+	private static final String STALE_WHILE_REVALIDATE_CACHE_CONTROL = "stale-while-revalidate";
+
+	/** The separator between the archive URL and the entry name in a <code>jar:</code> URL. */
+	private static final String JAR_URL_SEPARATOR = "!/";
+
+	/** Whether resources are accessed directly from archives and files. */
+	private boolean resourceIndexEnabled = true;
+
+	/** @return Whether resources are accessed directly from archives and files rather than through URL connections. */
+	protected boolean isResourceIndexEnabled() {
+		return resourceIndexEnabled;
+	}
+
+	/** The indexes of archives containing resources, keyed to archive file; an empty index indicates an archive that could not be indexed. */
+	private final ConcurrentMap<Path, Optional<ArchiveIndex>> archiveIndexes = new ConcurrentHashMap<Path, Optional<ArchiveIndex>>();
+
+	/** The resources caching the inflated content of deflated archive entries in access order, keyed to resource URL; access is synchronized on the map. */
+	private final Map<String, InflatedArchiveEntryResource> inflatedResources = new LinkedHashMap<String, InflatedArchiveEntryResource>(16, 0.75f, true);
+
+	/** The total uncompressed size of the entries of the inflated resources; access is synchronized on {@link #inflatedResources}. */
+	private long inflatedResourcesLength = 0;
+
+	/** The loads of cached resource bytes in flight, so that concurrent requests for the same uncached resource load it only once. */
+	private SingleFlight<URI, byte[]> resourceLoads = new SingleFlight<URI, byte[]>();
+
+	/** @return The loads of cached resource bytes in flight, along with statistics about coalesced loads. */
+	protected SingleFlight<URI, byte[]> getResourceLoads() {
+		return resourceLoads;
+	}
+
+	/** The cached resources, keyed to resource URL, or <code>null</code> if resources are not cached. */
+	private Map<String, CachedResource> resourceCache = null;
+
+	/** The number of requests served from the resource cache without revalidating first. */
+	private final LongAdder resourceCacheHitCount = new LongAdder();
+
+	/** The number of requests for which the resource was not cached or had to be revalidated first. */
+	private final LongAdder resourceCacheMissCount = new LongAdder();
+
+	/** The revalidations of cached resources in flight, so that concurrent requests for a stale resource revalidate it only once. */
+	private SingleFlight<String, CachedResource> resourceValidations = new SingleFlight<String, CachedResource>();
+
+	/** The URLs of the cached resources being revalidated in the background. */
+	private final Set<String> backgroundValidations = ConcurrentHashMap.newKeySet();
+
+	/** The executor for revalidating stale resources in the background, or <code>null</code> if stale resources are not served. */
+	private ExecutorService validationExecutor = null;
+
+	/** The number of milliseconds a cached resource is used without being revalidated. */
+	private long resourceCacheMaxAge = DEFAULT_RESOURCE_CACHE_MAX_AGE * 1000;
+
+	/** The number of milliseconds after the maximum age during which a stale resource is served while being revalidated in the background. */
+	private long staleWhileRevalidate = 0;
+
+	/** Whether the resource cache periods are announced to downstream caches. */
+	private boolean resourceCacheControlEnabled = false;
+
 	//TODO fix checks for WEB-INF
 
 	/**
@@ -47,6 +181,90 @@ public DefaultHTTPServlet() {
 		setReadOnly(true); //default to being read-only, because the servlet context only provides read methods
 	}
 
+	/**
+	 * Initializes the servlet. This version determines whether resources are accessed using indexes, sets up the coalescing of resource loads, and configures
+	 * the resource cache.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if there is a problem initializing.
+	 */
+	@Override
+	public void initialize(final ServletConfig servletConfig) throws ServletException, IllegalArgumentException, IllegalStateException {
+		super.initialize(servletConfig);
+		resourceIndexEnabled = !Boolean.FALSE.equals(getBooleanInitParameter(servletConfig, RESOURCE_INDEX_INIT_PARAMETER)); //indexes are enabled unless turned off
+		resourceLoads = new SingleFlight<URI, byte[]>(getLoadTimeout());
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, RESOURCE_CACHE_INIT_PARAMETER))) { //if resource caching is requested
+			final Long resourceCacheMaxAge = getLongInitParameter(servletConfig, RESOURCE_CACHE_MAX_AGE_INIT_PARAMETER);
+			this.resourceCacheMaxAge = (resourceCacheMaxAge != null ? resourceCacheMaxAge.longValue() : DEFAULT_RESOURCE_CACHE_MAX_AGE) * 1000;
+			final Long staleWhileRevalidate = getLongInitParameter(servletConfig, STALE_WHILE_REVALIDATE_INIT_PARAMETER);
+			this.staleWhileRevalidate = staleWhileRevalidate != null ? staleWhileRevalidate.longValue() * 1000 : 0;
+			resourceCacheControlEnabled = Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, RESOURCE_CACHE_CONTROL_INIT_PARAMETER));
+			resourceCache = Collections.synchronizedMap(new LinkedHashMap<String, CachedResource>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, CachedResource> eldest) {
+					return size() > RESOURCE_CACHE_SIZE;
+				}
+			});
+			resourceValidations = new SingleFlight<String, CachedResource>(getLoadTimeout());
+			if(this.staleWhileRevalidate > 0) {
+				validationExecutor = Executors.newFixedThreadPool(2, runnable -> {
+					final Thread thread = new Thread(runnable, getClass().getSimpleName() + "-revalidate");
+					thread.setDaemon(true);
+					return thread;
+				});
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This version adds the statistics of the resource cache, if enabled, and of coalesced resource loads.
+	 */
+	@Override
+	protected void registerMetrics(final HTTPMetrics metrics) {
+		super.registerMetrics(metrics);
+		final Map<String, CachedResource> resourceCache = this.resourceCache;
+		if(resourceCache != null) {
+			metrics.addGauge("resourceCache.hits", resourceCacheHitCount::sum);
+			metrics.addGauge("resourceCache.misses", resourceCacheMissCount::sum);
+			metrics.addGauge("resourceCache.size", resourceCache::size);
+		}
+		metrics.addGauge("resourceLoads.loads", () -> getResourceLoads().getLoadCount());
+		metrics.addGauge("resourceLoads.coalesced", () -> getResourceLoads().getCoalescedCount());
+	}
+
+	/**
+	 * Destroys the servlet. This version stops background revalidation, closes all archive indexes, and discards cached resource content.
+	 */
+	@Override
+	public void destroy() {
+		final ExecutorService validationExecutor = this.validationExecutor;
+		if(validationExecutor != null) {
+			validationExecutor.shutdownNow();
+		}
+		final Map<String, CachedResource> resourceCache = this.resourceCache;
+		if(resourceCache != null) {
+			resourceCache.clear();
+		}
+		getLogger().debug("Resource loads for servlet {}: {}.", getServletConfig().getServletName(), getResourceLoads());
+		synchronized(inflatedResources) {
+			inflatedResources.clear();
+			inflatedResourcesLength = 0;
+		}
+		for(final Optional<ArchiveIndex> archiveIndex : archiveIndexes.values()) {
+			if(archiveIndex.isPresent()) {
+				try {
+					archiveIndex.get().close();
+				} catch(final IOException ioException) {
+					getLogger().warn("Unable to close archive {}.", archiveIndex.get().getFile(), ioException);
+				}
+			}
+		}
+		archiveIndexes.clear();
+		super.destroy();
+	}
+
 	/**
 	 * Determines if the resource at a given URI exists.
 	 * @param request The HTTP request in response to which which existence of the resource is being determined.
@@ -84,12 +302,293 @@ protected HTTPServletResource getResource(final HttpServletRequest request, fina
 		final String resourceContextAbsolutePath = getResourceContextAbsolutePath(resourceURI.getPath()); //get the absolute path relative to the context
 		try {
 			final URL resourceURL = getServletContext().getResource(resourceContextAbsolutePath); //get the URL of the resource
-			return new DefaultHTTPServletResource(resourceURI, resourceURL); //create a new default resource
+			return getResource(resourceURI, resourceURL);
 		} catch(final MalformedURLException malformedURLException) { //if the path was not well-formed
 			throw new IllegalArgumentException(malformedURLException);
 		}
 	}
 
+	/**
+	 * Determines the resource at a URL, using the resource cache if appropriate.
+	 * @param resourceURI The URI of the requested resource.
+	 * @param resourceURL The URL of the resource as provided by the servlet context.
+	 * @return An object providing an encapsulation of the requested resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	private HTTPServletResource getResource(final URI resourceURI, final URL resourceURL) throws IOException {
+		final HTTPServletResource resource = createResource(resourceURI, resourceURL);
+		if(resourceCache != null && resourceURL != null && isRevalidated(resource)) { //archive entries don't need revalidation, so they are never cached here
+			return getCachedResource(resourceURI, resourceURL, resource);
+		}
+		return resource;
+	}
+
+	/**
+	 * {@inheritDoc} This version indexes the archive containing the resource, if any, and loads the resource into the byte cache or resource cache as
+	 * appropriate.
+	 */
+	@Override
+	protected void warmUp(final String path) throws IOException {
+		final URL resourceURL = getServletContext().getResource(path);
+		if(resourceURL == null) { //ignore resources that no longer exist
+			return;
+		}
+		final URI resourceURI;
+		try {
+			resourceURI = new URI(null, null, getServletContext().getContextPath() + path, null); //there is no request from which to determine the full URI
+		} catch(final URISyntaxException uriSyntaxException) {
+			throw new IllegalArgumentException(uriSyntaxException);
+		}
+		final HTTPServletResource resource = getResource(resourceURI, resourceURL);
+		resource.getContentLength(null);
+		resource.getLastModified(null);
+		if(resource instanceof AbstractByteCacheDecoratorResource) {
+			((AbstractByteCacheDecoratorResource)resource).getBytes(null);
+		}
+	}
+
+	/**
+	 * Creates a resource for accessing the resource at a URL, using an index or direct file access if possible.
+	 * @param resourceURI The URI of the requested resource.
+	 * @param resourceURL The URL of the resource as provided by the servlet context.
+	 * @return A new resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected HTTPServletResource createResource(final URI resourceURI, final URL resourceURL) throws IOException {
+		if(resourceURL != null && isResourceIndexEnabled()) {
+			final HTTPServletResource indexedResource = getIndexedResource(resourceURI, resourceURL);
+			if(indexedResource != null) {
+				return indexedResource;
+			}
+		}
+		return new DefaultHTTPServletResource(resourceURI, resourceURL); //create a new default resource
+	}
+
+	/**
+	 * Determines whether a resource must be checked against its underlying storage to know whether it has changed, and thus may benefit from caching.
+	 * @param resource The resource to check.
+	 * @return <code>true</code> if the resource is a file or is accessed through a URL connection.
+	 */
+	protected boolean isRevalidated(final HTTPServletResource resource) {
+		return resource instanceof FileHTTPServletResource || resource instanceof AbstractURLHTTPServletResource;
+	}
+
+	/**
+	 * Retrieves a resource from the resource cache, caching or revalidating it as needed. A fresh resource is returned from the cache. A stale resource within
+	 * the stale-while-revalidate period is returned from the cache and revalidated in the background. Otherwise the resource is revalidated before being
+	 * returned; concurrent revalidations of the same resource are coalesced.
+	 * @param resourceURI The URI of the requested resource.
+	 * @param resourceURL The URL of the resource.
+	 * @param resource The uncached resource.
+	 * @return A resource served from the cache.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected HTTPServletResource getCachedResource(final URI resourceURI, final URL resourceURL, final HTTPServletResource resource) throws IOException {
+		final String key = resourceURL.toExternalForm();
+		final CachedResource cachedResource = resourceCache.get(key);
+		if(cachedResource != null) {
+			final long age = System.currentTimeMillis() - cachedResource.getValidatedTime();
+			if(age <= resourceCacheMaxAge) { //fresh
+				resourceCacheHitCount.increment();
+				return new CachedHTTPServletResource(resourceURI, cachedResource);
+			}
+			if(age <= resourceCacheMaxAge + staleWhileRevalidate && validationExecutor != null) { //stale, but we can revalidate later
+				if(backgroundValidations.add(key)) { //if no one else is revalidating it in the background
+					try {
+						validationExecutor.execute(() -> {
+							try {
+								resourceValidations.load(key, () -> revalidate(key, createResource(resourceURI, resourceURL), cachedResource));
+							} catch(final IOException ioException) { //the next request will revalidate it again
+								getLogger().debug("Unable to revalidate cached resource {}.", key, ioException);
+								resourceCache.remove(key);
+							} finally {
+								backgroundValidations.remove(key);
+							}
+						});
+					} catch(final RejectedExecutionException rejectedExecutionException) { //if the servlet is being destroyed
+						backgroundValidations.remove(key);
+					}
+				}
+				resourceCacheHitCount.increment();
+				return new CachedHTTPServletResource(resourceURI, cachedResource);
+			}
+		}
+		resourceCacheMissCount.increment();
+		final CachedResource validatedResource = resourceValidations.load(key, () -> revalidate(key, resource, cachedResource));
+		return validatedResource != null ? new CachedHTTPServletResource(resourceURI, validatedResource) : resource;
+	}
+
+	/**
+	 * Revalidates a cached resource against the underlying resource, reloading it if it has changed, and updates the cache.
+	 * @param key The key of the resource in the cache.
+	 * @param resource The underlying resource.
+	 * @param cachedResource The currently cached resource, or <code>null</code> if the resource is not cached.
+	 * @return The validated cached resource, or <code>null</code> if the resource cannot be cached because its content length or modification time is unknown,
+	 *         or because it is too large.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	private CachedResource revalidate(final String key, final HTTPServletResource resource, final CachedResource cachedResource) throws IOException {
+		final long validatedTime = System.currentTimeMillis();
+		final long contentLength;
+		final long lastModified;
+		try {
+			contentLength = resource.getContentLength(null);
+			lastModified = resource.getLastModified(null);
+		} catch(final IOException ioException) { //the resource may have been removed
+			resourceCache.remove(key);
+			throw ioException;
+		}
+		if(contentLength < 0 || lastModified <= 0 || contentLength > MAX_CACHED_CONTENT_LENGTH) { //without validators we can't tell if the resource changes
+			resourceCache.remove(key); //and the metadata of large resources must come from the same place as the content they are served with
+			return null;
+		}
+		final CachedResource validatedResource;
+		if(cachedResource != null && cachedResource.getContentLength() == contentLength && cachedResource.getLastModified() == lastModified) { //unchanged
+			validatedResource = cachedResource.validated(validatedTime);
+		} else {
+			final byte[] bytes = new byte[(int)contentLength];
+			try (final DataInputStream inputStream = new DataInputStream(resource.getInputStream(null))) {
+				inputStream.readFully(bytes);
+			}
+			validatedResource = new CachedResource(resource.getContentType(null), contentLength, lastModified, bytes, validatedTime);
+		}
+		resourceCache.put(key, validatedResource);
+		return validatedResource;
+	}
+
+	/**
+	 * Serves a resource. This version announces the freshness of the resource to downstream caches if resources are being cached and announcing the cache
+	 * periods was requested; otherwise the cache headers are left to the parent class.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @param resource The resource being served.
+	 * @param serveContent <code>true</code> if the contents of the resource should be returned.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 */
+	@Override
+	protected void serveResource(final HttpServletRequest request, final HttpServletResponse response, final HTTPServletResource resource,
+			final boolean serveContent) throws ServletException, IOException {
+		if(resourceCache != null && resourceCacheControlEnabled) {
+			final StringBuilder cacheControl = new StringBuilder(MAX_AGE_CACHE_CONTROL).append('=').append(resourceCacheMaxAge / 1000);
+			if(staleWhileRevalidate > 0) {
+				cacheControl.append(", ").append(STALE_WHILE_REVALIDATE_CACHE_CONTROL).append('=').append(staleWhileRevalidate / 1000); //RFC 5861 3
+			}
+			response.setHeader(CACHE_CONTROL_HEADER, cacheControl.toString());
+		}
+		super.serveResource(request, response, resource, serveContent);
+	}
+
+	/**
+	 * Determines a resource that can be accessed directly rather than through a URL connection. Files in a file system are accessed as files; entries in an
+	 * archive on the file system are accessed using the index of the archive.
+	 * @param resourceURI The URI of the requested resource.
+	 * @param resourceURL The URL of the resource as provided by the servlet context.
+	 * @return A resource accessed directly, or <code>null</code> if the resource cannot be accessed directly, such as for a directory in an archive.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected HTTPServletResource getIndexedResource(final URI resourceURI, final URL resourceURL) throws IOException {
+		switch(resourceURL.getProtocol()) {
+			case "file":
+				{
+					final File file;
+					try {
+						file = new File(resourceURL.toURI());
+					} catch(final URISyntaxException | IllegalArgumentException exception) { //if the URL is not a valid file URI, let the URL connection handle it
+						return null;
+					}
+					return file.isFile() ? new FileHTTPServletResource(resourceURI, file) : null;
+				}
+			case "jar":
+				{
+					final String path = resourceURL.getPath(); //e.g. file:/.../example.jar!/META-INF/resources/example.css
+					final int separatorIndex = path.indexOf(JAR_URL_SEPARATOR);
+					if(separatorIndex < 0 || path.indexOf(JAR_URL_SEPARATOR, separatorIndex + JAR_URL_SEPARATOR.length()) >= 0) { //nested archives aren't indexed
+						return null;
+					}
+					final Path archiveFile;
+					try {
+						final URI archiveURI = new URI(path.substring(0, separatorIndex));
+						if(!"file".equals(archiveURI.getScheme())) {
+							return null;
+						}
+						archiveFile = Paths.get(archiveURI);
+					} catch(final URISyntaxException | IllegalArgumentException | FileSystemNotFoundException exception) {
+						return null;
+					}
+					final ArchiveIndex archiveIndex = getArchiveIndex(archiveFile);
+					if(archiveIndex == null) {
+						return null;
+					}
+					String entryName = path.substring(separatorIndex + JAR_URL_SEPARATOR.length());
+					if(entryName.indexOf('%') >= 0) { //entry names in URLs may be encoded
+						entryName = URLDecoder.decode(entryName.replace("+", "%2B"), "UTF-8");
+					}
+					final ArchiveIndex.Entry entry = archiveIndex.getEntry(entryName);
+					if(entry == null || entry.isDirectory()) {
+						return null;
+					}
+					final ArchiveEntryHTTPServletResource archiveEntryResource = new ArchiveEntryHTTPServletResource(resourceURI, archiveIndex, entry);
+					if(entry.isStored() || entry.getSize() > MAX_INFLATED_CONTENT_LENGTH) { //stored entries are read directly; large ones are inflated as read
+						return archiveEntryResource;
+					}
+					return getInflatedResource(resourceURL.toExternalForm(), archiveEntryResource);
+				}
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * Retrieves the resource caching the inflated content of a deflated archive entry, creating it if needed. The least recently used inflated resources are
+	 * discarded so that the total size of the entries cached does not exceed {@value #INFLATED_CACHE_MAX_LENGTH} bytes.
+	 * @param key The key of the resource, such as its URL.
+	 * @param archiveEntryResource The resource of the archive entry.
+	 * @return The resource caching the inflated content of the entry.
+	 */
+	private InflatedArchiveEntryResource getInflatedResource(final String key, final ArchiveEntryHTTPServletResource archiveEntryResource) {
+		final ArchiveIndex.Entry entry = archiveEntryResource.getEntry();
+		synchronized(inflatedResources) {
+			InflatedArchiveEntryResource inflatedResource = inflatedResources.get(key);
+			if(inflatedResource == null || inflatedResource.getResource().getEntry() != entry) { //if the entry isn't cached, or the archive was reindexed
+				inflatedResource = new InflatedArchiveEntryResource(archiveEntryResource, getResourceLoads());
+				final InflatedArchiveEntryResource oldInflatedResource = inflatedResources.put(key, inflatedResource);
+				if(oldInflatedResource != null) {
+					inflatedResourcesLength -= oldInflatedResource.getResource().getEntry().getSize();
+				}
+				inflatedResourcesLength += entry.getSize();
+				final Iterator<InflatedArchiveEntryResource> eldestResources = inflatedResources.values().iterator();
+				while(inflatedResourcesLength > INFLATED_CACHE_MAX_LENGTH && eldestResources.hasNext()) {
+					final InflatedArchiveEntryResource eldestResource = eldestResources.next();
+					if(eldestResource == inflatedResource) { //the new resource is the most recently used, so there is nothing left to discard
+						break;
+					}
+					eldestResources.remove(); //requests already using the resource can still finish with it
+					inflatedResourcesLength -= eldestResource.getResource().getEntry().getSize();
+				}
+			}
+			return inflatedResource;
+		}
+	}
+
+	/**
+	 * Retrieves the index of an archive, indexing the archive the first time it is accessed.
+	 * @param archiveFile The archive file.
+	 * @return The index of the archive, or <code>null</code> if the archive could not be indexed.
+	 */
+	protected ArchiveIndex getArchiveIndex(final Path archiveFile) {
+		return archiveIndexes.computeIfAbsent(archiveFile, file -> {
+			try {
+				final ArchiveIndex archiveIndex = new ArchiveIndex(file);
+				getLogger().debug("Indexed {} entries of archive {}.", archiveIndex.getEntryCount(), file);
+				return Optional.of(archiveIndex);
+			} catch(final IOException ioException) { //fall back to URL connections for archives we can't index
+				getLogger().warn("Unable to index archive {}; resources will be accessed through URL connections.", file, ioException);
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
 	/**
 	 * Determines the content type of the given resource.
 	 * @param request The HTTP request in response to which the content type is being retrieved.
@@ -359,7 +858,272 @@ public DefaultHTTPServletResource(final URI referenceURI, final URL resourceURL)
 	}
 
 	/**
-	 * A resource that decorates an existing resource, caching the resource bytes for later. This class supports multithreaded resource access.
+	 * The cached information and content of a resource as of its last validation. Instances are immutable.
+	 * @author Garret Wilson
+	 */
+	private static class CachedResource {
+
+		private final MediaType contentType;
+
+		/** @return The content type of the resource, or <code>null</code> if the content type is not known. */
+		public MediaType getContentType() {
+			return contentType;
+		}
+
+		private final long contentLength;
+
+		/** @return The content length of the resource. */
+		public long getContentLength() {
+			return contentLength;
+		}
+
+		private final long lastModified;
+
+		/** @return The modification time of the resource. */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/** The content of the resource. */
+		private final byte[] bytes;
+
+		private final long validatedTime;
+
+		/** @return The time the resource was last validated against the underlying resource. */
+		public long getValidatedTime() {
+			return validatedTime;
+		}
+
+		/**
+		 * Constructor.
+		 * @param contentType The content type of the resource, or <code>null</code> if the content type is not known.
+		 * @param contentLength The content length of the resource.
+		 * @param lastModified The modification time of the resource.
+		 * @param bytes The content of the resource.
+		 * @param validatedTime The time the resource was last validated against the underlying resource.
+		 */
+		public CachedResource(final MediaType contentType, final long contentLength, final long lastModified, final byte[] bytes, final long validatedTime) {
+			this.contentType = contentType;
+			this.contentLength = contentLength;
+			this.lastModified = lastModified;
+			this.bytes = bytes;
+			this.validatedTime = validatedTime;
+		}
+
+		/**
+		 * Returns a copy of this cached resource that was found to be unchanged at a later time.
+		 * @param validatedTime The time the resource was validated.
+		 * @return The revalidated cached resource.
+		 */
+		public CachedResource validated(final long validatedTime) {
+			return new CachedResource(contentType, contentLength, lastModified, bytes, validatedTime);
+		}
+
+		/** @return The content of the resource. */
+		public byte[] getBytes() {
+			return bytes;
+		}
+	}
+
+	/**
+	 * A resource served from the resource cache.
+	 * @author Garret Wilson
+	 */
+	protected static class CachedHTTPServletResource extends DefaultResource implements HTTPServletResource {
+
+		private final CachedResource cachedResource;
+
+		/**
+		 * Constructs a resource with a reference URI and cached information.
+		 * @param referenceURI The reference URI for the new resource.
+		 * @param cachedResource The cached information and content of the resource.
+		 * @throws NullPointerException if the reference URI and/or cached resource is <code>null</code>.
+		 */
+		private CachedHTTPServletResource(final URI referenceURI, final CachedResource cachedResource) {
+			super(requireNonNull(referenceURI, "HTTP resource reference URI cannot be null."));
+			this.cachedResource = requireNonNull(cachedResource);
+		}
+
+		@Override
+		public MediaType getContentType(final HttpServletRequest request) throws IOException {
+			return cachedResource.getContentType();
+		}
+
+		@Override
+		public long getContentLength(final HttpServletRequest request) throws IOException {
+			return cachedResource.getContentLength();
+		}
+
+		@Override
+		public long getLastModified(final HttpServletRequest request) throws IOException {
+			return cachedResource.getLastModified();
+		}
+
+		@Override
+		public InputStream getInputStream(final HttpServletRequest request) throws IOException {
+			return new ByteArrayInputStream(cachedResource.getBytes()); //the content always matches the metadata
+		}
+	}
+
+	/**
+	 * A resource in the file system, accessed directly as a file.
+	 * @author Garret Wilson
+	 */
+	protected static class FileHTTPServletResource extends DefaultResource implements HTTPServletResource {
+
+		private final File file;
+
+		/** @return The file of the resource. */
+		public File getFile() {
+			return file;
+		}
+
+		/**
+		 * Constructs a resource with a reference URI and a file.
+		 * @param referenceURI The reference URI for the new resource.
+		 * @param file The file containing the resource content.
+		 * @throws NullPointerException if the reference URI and/or file <code>null</code>.
+		 */
+		public FileHTTPServletResource(final URI referenceURI, final File file) {
+			super(requireNonNull(referenceURI, "HTTP resource reference URI cannot be null."));
+			this.file = requireNonNull(file, "HTTP resource file cannot be null.");
+		}
+
+		/**
+		 * {@inheritDoc} This version returns <code>null</code>, allowing the content type to be determined from the name of the resource.
+		 */
+		@Override
+		public MediaType getContentType(final HttpServletRequest request) throws IOException {
+			return null;
+		}
+
+		@Override
+		public long getContentLength(final HttpServletRequest request) throws IOException {
+			return getFile().length();
+		}
+
+		@Override
+		public long getLastModified(final HttpServletRequest request) throws IOException {
+			final long lastModified = getFile().lastModified();
+			return lastModified != 0 ? lastModified : -1; //File returns 0 if the time is not known
+		}
+
+		/**
+		 * {@inheritDoc} This version returns a new input stream each time it is called.
+		 */
+		@Override
+		public InputStream getInputStream(final HttpServletRequest request) throws IOException {
+			return new FileInputStream(getFile());
+		}
+	}
+
+	/**
+	 * A resource in an archive, accessed using the index of the archive.
+	 * @author Garret Wilson
+	 */
+	protected static class ArchiveEntryHTTPServletResource extends DefaultResource implements HTTPServletResource {
+
+		private final ArchiveIndex archiveIndex;
+
+		/** @return The index of the archive containing the resource. */
+		public ArchiveIndex getArchiveIndex() {
+			return archiveIndex;
+		}
+
+		private final ArchiveIndex.Entry entry;
+
+		/** @return The archive entry of the resource. */
+		public ArchiveIndex.Entry getEntry() {
+			return entry;
+		}
+
+		/**
+		 * Constructs a resource with a reference URI and an archive entry.
+		 * @param referenceURI The reference URI for the new resource.
+		 * @param archiveIndex The index of the archive containing the resource.
+		 * @param entry The archive entry of the resource.
+		 * @throws NullPointerException if the reference URI, archive index, and/or entry <code>null</code>.
+		 */
+		public ArchiveEntryHTTPServletResource(final URI referenceURI, final ArchiveIndex archiveIndex, final ArchiveIndex.Entry entry) {
+			super(requireNonNull(referenceURI, "HTTP resource reference URI cannot be null."));
+			this.archiveIndex = requireNonNull(archiveIndex);
+			this.entry = requireNonNull(entry);
+		}
+
+		/**
+		 * {@inheritDoc} This version returns <code>null</code>, allowing the content type to be determined from the name of the resource.
+		 */
+		@Override
+		public MediaType getContentType(final HttpServletRequest request) throws IOException {
+			return null;
+		}
+
+		@Override
+		public long getContentLength(final HttpServletRequest request) throws IOException {
+			return getEntry().getSize();
+		}
+
+		@Override
+		public long getLastModified(final HttpServletRequest request) throws IOException {
+			return getEntry().getLastModified();
+		}
+
+		/**
+		 * {@inheritDoc} This version returns a new input stream each time it is called.
+		 */
+		@Override
+		public InputStream getInputStream(final HttpServletRequest request) throws IOException {
+			return getArchiveIndex().newInputStream(getEntry());
+		}
+	}
+
+	/**
+	 * A resource caching the inflated content of a compressed archive entry, so that the entry is only inflated once.
+	 * @author Garret Wilson
+	 */
+	protected static class InflatedArchiveEntryResource extends AbstractByteCacheDecoratorResource {
+
+		/**
+		 * Archive entry resource constructor.
+		 * @param resource The decorated archive entry resource.
+		 * @param loads The loads in flight, shared with other resources, through which concurrent loads of the same resource are coalesced.
+		 * @throws NullPointerException if the given resource and/or loads is <code>null</code>.
+		 */
+		public InflatedArchiveEntryResource(final ArchiveEntryHTTPServletResource resource, final SingleFlight<URI, byte[]> loads) {
+			super(resource, loads);
+		}
+
+		@Override
+		protected ArchiveEntryHTTPServletResource getResource() {
+			return (ArchiveEntryHTTPServletResource)super.getResource();
+		}
+
+		@Override
+		protected byte[] loadBytes(final HttpServletRequest request) throws IOException {
+			final long size = getResource().getEntry().getSize();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException("Archive entry " + getResource().getEntry() + " is too large to cache.");
+			}
+			final byte[] bytes = new byte[(int)size];
+			try (final DataInputStream inputStream = new DataInputStream(getResource().getInputStream(request))) {
+				inputStream.readFully(bytes);
+			}
+			return bytes;
+		}
+
+		/**
+		 * {@inheritDoc} This version returns the size recorded in the archive index, so that the entry need not be inflated just to determine its length.
+		 */
+		@Override
+		public long getContentLength(final HttpServletRequest request) throws IOException {
+			return getResource().getContentLength(request);
+		}
+	}
+
+	/**
+	 * A resource that decorates an existing resource, caching the resource bytes for later. This class supports multithreaded resource access. Concurrent
+	 * requests for bytes not yet cached wait for a single load rather than each loading the bytes; loads may be coalesced across resources with the same URI by
+	 * sharing a {@link SingleFlight}.
 	 * @author Garret Wilson
 	 */
 	protected static abstract class AbstractByteCacheDecoratorResource extends DefaultResource implements HTTPServletResource {
@@ -372,8 +1136,11 @@ protected HTTPServletResource getResource() {
 			return resource;
 		}
 
+		/** The loads in flight, through which concurrent loads of the resource are coalesced. */
+		private final SingleFlight<URI, byte[]> loads;
+
 		/** The bytes that constitute the resource, or <code>null</code> if the resource has not yet been retrieved. */
-		private byte[] bytes = null;
+		private volatile byte[] bytes = null;
 
 		/**
 		 * Loads bytes from the requested resource.
@@ -391,12 +1158,15 @@ protected HTTPServletResource getResource() {
 		 * @throws IOException if there is an error retrieving the bytes.
 		 */
 		protected byte[] getBytes(final HttpServletRequest request) throws IOException {
-			synchronized(resource) {
-				if(bytes == null) { //if no bytes are available
-					bytes = loadBytes(request); //load the bytes
-				}
-				return bytes; //return the resource bytes
+			byte[] bytes = this.bytes;
+			if(bytes == null) { //if no bytes are available, load them or wait for them to be loaded
+				bytes = loads.load(getURI(), () -> {
+					final byte[] loadedBytes = this.bytes; //the bytes may have been loaded after we checked
+					return loadedBytes != null ? loadedBytes : loadBytes(request);
+				});
+				this.bytes = bytes;
 			}
+			return bytes; //return the resource bytes
 		}
 
 		/**
@@ -440,13 +1210,24 @@ public InputStream getInputStream(final HttpServletRequest request) throws IOExc
 		}
 
 		/**
-		 * HTTP servlet resource constructor.
+		 * HTTP servlet resource constructor. Only concurrent loads of this resource instance are coalesced.
 		 * @param resource The decorated HTTP servlet resource.
 		 * @throws IllegalArgumentException if the given resource is <code>null</code>.
 		 */
 		public AbstractByteCacheDecoratorResource(final HTTPServletResource resource) {
+			this(resource, new SingleFlight<URI, byte[]>());
+		}
+
+		/**
+		 * HTTP servlet resource and loads constructor.
+		 * @param resource The decorated HTTP servlet resource.
+		 * @param loads The loads in flight, possibly shared with other resources, through which concurrent loads of the same resource URI are coalesced.
+		 * @throws IllegalArgumentException if the given resource and/or loads is <code>null</code>.
+		 */
+		public AbstractByteCacheDecoratorResource(final HTTPServletResource resource, final SingleFlight<URI, byte[]> loads) {
 			super(requireNonNull(resource, "Resource cannot be null.").getURI()); //construct the parent class
 			this.resource = resource; //save the decorated resource
+			this.loads = requireNonNull(loads, "Loads cannot be null.");
 		}
 	}
 
@@ -0,0 +1,250 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.*;
+
+/**
+ * The request counts, latencies, and other measurements of an HTTP servlet, for export as an MXBean. Counters are striped so that concurrent requests do not
+ * contend on updating them.
+ * <p>
+ * Latencies are kept for all requests, for each HTTP method the servlet handles, and for each status class. Requests using methods the servlet does not handle
+ * are grouped under {@value #OTHER_METHOD}, so that arbitrary method tokens cannot create unbounded numbers of histograms.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class HTTPMetrics implements HTTPMetricsMXBean {
+
+	/** The name under which requests using methods not otherwise measured are grouped. */
+	public static final String OTHER_METHOD = "OTHER";
+
+	/** The names of the status classes, indexed by the first digit of the status code; index 0 is used for invalid status codes. */
+	private static final String[] STATUS_CLASS_NAMES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+	private final String servletName;
+
+	@Override
+	public String getServletName() {
+		return servletName;
+	}
+
+	/** The number of requests completed. */
+	private final LongAdder requestCount = new LongAdder();
+
+	/** The number of requests currently being serviced. */
+	private final LongAdder inFlightRequestCount = new LongAdder();
+
+	/** The number of request content bytes received. */
+	private final LongAdder bytesIn = new LongAdder();
+
+	/** The number of response content bytes sent. */
+	private final LongAdder bytesOut = new LongAdder();
+
+	/** The number of requests completed, indexed by status class. */
+	private final LongAdder[] statusClassCounts = new LongAdder[STATUS_CLASS_NAMES.length];
+
+	/** The latencies of all requests. */
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/** The latencies of requests, keyed to HTTP method. */
+	private final Map<String, LatencyHistogram> methodLatencies;
+
+	/** The latencies of requests, indexed by status class. */
+	private final LatencyHistogram[] statusClassLatencies = new LatencyHistogram[STATUS_CLASS_NAMES.length];
+
+	/** The suppliers of other measurements, keyed to name. */
+	private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<String, LongSupplier>();
+
+	/**
+	 * Constructor.
+	 * @param servletName The name of the servlet being measured.
+	 * @param methods The HTTP methods for which latencies should be kept separately.
+	 * @throws NullPointerException if the given servlet name and/or methods is <code>null</code>.
+	 */
+	public HTTPMetrics(final String servletName, final Collection<String> methods) {
+		this.servletName = requireNonNull(servletName);
+		final Map<String, LatencyHistogram> methodLatencies = new TreeMap<String, LatencyHistogram>();
+		for(final String method : methods) {
+			methodLatencies.put(method, new LatencyHistogram());
+		}
+		methodLatencies.put(OTHER_METHOD, new LatencyHistogram());
+		this.methodLatencies = Collections.unmodifiableMap(methodLatencies);
+		for(int i = 0; i < STATUS_CLASS_NAMES.length; ++i) {
+			statusClassCounts[i] = new LongAdder();
+			statusClassLatencies[i] = new LatencyHistogram();
+		}
+	}
+
+	/**
+	 * Adds a measurement to be reported along with the request metrics.
+	 * @param name The name of the measurement, such as <code>resourceCache.hits</code>.
+	 * @param gauge The supplier of the current value of the measurement.
+	 * @throws NullPointerException if the given name and/or gauge is <code>null</code>.
+	 */
+	public void addGauge(final String name, final LongSupplier gauge) {
+		gauges.put(requireNonNull(name), requireNonNull(gauge));
+	}
+
+	/**
+	 * Adds the hit, miss, and size measurements of a cache.
+	 * @param name The name of the cache, used as a prefix of the measurement names.
+	 * @param cache The cache to measure.
+	 * @throws NullPointerException if the given name and/or cache is <code>null</code>.
+	 */
+	public void addCache(final String name, final TimedCache<?, ?> cache) {
+		requireNonNull(cache);
+		addGauge(name + ".hits", cache::getHitCount);
+		addGauge(name + ".misses", cache::getMissCount);
+		addGauge(name + ".evictions", cache::getEvictionCount);
+		addGauge(name + ".size", cache::size);
+	}
+
+	/**
+	 * Determines the status class index of a status code.
+	 * @param status The status code.
+	 * @return The index of the status class, or 0 if the status code is invalid.
+	 */
+	private static int getStatusClassIndex(final int status) {
+		final int statusClassIndex = status / 100;
+		return statusClassIndex > 0 && statusClassIndex < STATUS_CLASS_NAMES.length ? statusClassIndex : 0;
+	}
+
+	/**
+	 * Records the start of a request.
+	 * @param contentLength The declared length of the request content, or -1 if not known.
+	 */
+	public void requestStarted(final long contentLength) {
+		inFlightRequestCount.increment();
+		if(contentLength > 0) {
+			bytesIn.add(contentLength);
+		}
+	}
+
+	/**
+	 * Records the completion of a request.
+	 * @param method The HTTP method of the request.
+	 * @param status The status code sent.
+	 * @param duration The number of nanoseconds taken to service the request.
+	 * @param byteCount The number of response content bytes actually written, or -1 if not known.
+	 */
+	public void requestCompleted(final String method, final int status, final long duration, final long byteCount) {
+		inFlightRequestCount.decrement();
+		requestCount.increment();
+		if(byteCount > 0) {
+			bytesOut.add(byteCount);
+		}
+		final int statusClassIndex = getStatusClassIndex(status);
+		statusClassCounts[statusClassIndex].increment();
+		latency.record(duration);
+		statusClassLatencies[statusClassIndex].record(duration);
+		LatencyHistogram methodLatency = methodLatencies.get(method);
+		if(methodLatency == null) {
+			methodLatency = methodLatencies.get(OTHER_METHOD);
+		}
+		methodLatency.record(duration);
+	}
+
+	@Override
+	public long getRequestCount() {
+		return requestCount.sum();
+	}
+
+	@Override
+	public long getInFlightRequestCount() {
+		return inFlightRequestCount.sum();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public Map<String, Long> getStatusClassCounts() {
+		final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for(int i = 0; i < STATUS_CLASS_NAMES.length; ++i) {
+			counts.put(STATUS_CLASS_NAMES[i], Long.valueOf(statusClassCounts[i].sum()));
+		}
+		return counts;
+	}
+
+	@Override
+	public LatencyHistogram.Snapshot getLatency() {
+		return latency.getSnapshot();
+	}
+
+	@Override
+	public Map<String, LatencyHistogram.Snapshot> getMethodLatencies() {
+		final Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+		for(final Map.Entry<String, LatencyHistogram> methodLatency : methodLatencies.entrySet()) {
+			snapshots.put(methodLatency.getKey(), methodLatency.getValue().getSnapshot());
+		}
+		return snapshots;
+	}
+
+	@Override
+	public Map<String, LatencyHistogram.Snapshot> getStatusClassLatencies() {
+		final Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+		for(int i = 0; i < STATUS_CLASS_NAMES.length; ++i) {
+			snapshots.put(STATUS_CLASS_NAMES[i], statusClassLatencies[i].getSnapshot());
+		}
+		return snapshots;
+	}
+
+	@Override
+	public Map<String, Long> getGauges() {
+		final Map<String, Long> values = new LinkedHashMap<String, Long>();
+		for(final Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+			values.put(gauge.getKey(), Long.valueOf(gauge.getValue().getAsLong()));
+		}
+		return values;
+	}
+
+	@Override
+	public void reset() {
+		requestCount.reset();
+		bytesIn.reset();
+		bytesOut.reset();
+		for(int i = 0; i < STATUS_CLASS_NAMES.length; ++i) {
+			statusClassCounts[i].reset();
+			statusClassLatencies[i].reset();
+		}
+		latency.reset();
+		for(final LatencyHistogram methodLatency : methodLatencies.values()) {
+			methodLatency.reset();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "requests: " + getRequestCount() + ", in flight: " + getInFlightRequestCount() + ", latency: " + latency;
+	}
+
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.util.Map;
+
+/**
+ * The management interface of the metrics of an HTTP servlet. Latencies are in microseconds.
+ * @author Garret Wilson
+ * @see HTTPMetrics
+ */
+public interface HTTPMetricsMXBean {
+
+	/** @return The name of the servlet being measured. */
+	public String getServletName();
+
+	/** @return The number of requests completed. */
+	public long getRequestCount();
+
+	/** @return The number of requests currently being serviced. */
+	public long getInFlightRequestCount();
+
+	/** @return The number of request content bytes received, as declared by the requests. */
+	public long getBytesIn();
+
+	/** @return The number of response content bytes actually written, not including content generated by the container such as error pages. */
+	public long getBytesOut();
+
+	/** @return The number of requests completed, keyed to status class such as <code>2xx</code>. */
+	public Map<String, Long> getStatusClassCounts();
+
+	/** @return A snapshot of the latencies of all requests. */
+	public LatencyHistogram.Snapshot getLatency();
+
+	/** @return Snapshots of the latencies of requests, keyed to HTTP method. */
+	public Map<String, LatencyHistogram.Snapshot> getMethodLatencies();
+
+	/** @return Snapshots of the latencies of requests, keyed to status class such as <code>2xx</code>. */
+	public Map<String, LatencyHistogram.Snapshot> getStatusClassLatencies();
+
+	/** @return The current values of other measurements, such as cache hits and misses, keyed to name. */
+	public Map<String, Long> getGauges();
+
+	/** Discards the counts and latencies recorded so far. The number of requests in flight and other gauges are not affected. */
+	public void reset();
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.*;
+
+/**
+ * A histogram of latencies in microseconds with a fixed relative precision over a wide range, in the manner of an HDR histogram. Values are counted in buckets
+ * that are exact up to {@value #LINEAR_LIMIT} microseconds; above that each power of two is divided into {@value #SUB_BUCKET_COUNT} buckets, so that any
+ * reported value is within about three percent of the values it represents. Recording a value takes a few atomic increments and never allocates memory.
+ * <p>
+ * This class is thread-safe. Snapshots and resets are not atomic with respect to values being recorded concurrently, so a snapshot may be off by the few
+ * values recorded while it was taken.
+ * </p>
+ * @author Garret Wilson
+ */
+public class LatencyHistogram {
+
+	/** The number of bits dividing each power of two into buckets. */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/** The number of buckets into which each power of two is divided. */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/** The value below which each bucket holds a single value. */
+	private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT << 1;
+
+	/** The highest value recorded, about twelve days in microseconds; higher values are recorded as this value. */
+	public static final long MAX_VALUE = (1L << 40) - 1;
+
+	/** The number of buckets. */
+	private static final int BUCKET_COUNT = getBucketIndex(MAX_VALUE) + 1;
+
+	/** The number of values recorded in each bucket. */
+	private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+
+	/** The number of values recorded. */
+	private final LongAdder count = new LongAdder();
+
+	/** The sum of the values recorded. */
+	private final LongAdder sum = new LongAdder();
+
+	/** The highest value recorded. */
+	private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Determines the bucket of a value.
+	 * @param value The value, which must not be negative.
+	 * @return The index of the bucket holding the value.
+	 */
+	private static int getBucketIndex(final long value) {
+		if(value < LINEAR_LIMIT) {
+			return (int)value;
+		}
+		final int shift = (63 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+		return (shift << SUB_BUCKET_BITS) + (int)(value >>> shift);
+	}
+
+	/**
+	 * Determines the highest value a bucket holds.
+	 * @param bucketIndex The index of the bucket.
+	 * @return The highest value counted in the bucket.
+	 */
+	private static long getHighestValue(final int bucketIndex) {
+		if(bucketIndex < LINEAR_LIMIT) {
+			return bucketIndex;
+		}
+		final int shift = (bucketIndex >>> SUB_BUCKET_BITS) - 1;
+		final long subBucket = bucketIndex - (shift << SUB_BUCKET_BITS);
+		return ((subBucket + 1) << shift) - 1;
+	}
+
+	/**
+	 * Records a latency.
+	 * @param duration The number of nanoseconds taken.
+	 */
+	public void record(final long duration) {
+		final long value = Math.min(Math.max(TimeUnit.NANOSECONDS.toMicros(duration), 0), MAX_VALUE);
+		bucketCounts.incrementAndGet(getBucketIndex(value));
+		count.increment();
+		sum.add(value);
+		max.accumulate(value);
+	}
+
+	/** @return The number of values recorded. */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/** @return A snapshot of the values recorded so far. */
+	public Snapshot getSnapshot() {
+		final long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for(int i = 0; i < BUCKET_COUNT; ++i) {
+			counts[i] = bucketCounts.get(i);
+			total += counts[i];
+		}
+		final long count = getCount();
+		return new Snapshot(count, count > 0 ? (double)sum.sum() / count : 0, max.get(), getPercentile(counts, total, 50), getPercentile(counts, total, 90),
+				getPercentile(counts, total, 99), getPercentile(counts, total, 99.9));
+	}
+
+	/**
+	 * Determines a percentile from bucket counts.
+	 * @param counts The number of values in each bucket.
+	 * @param total The total number of values in all buckets.
+	 * @param percentile The percentile, between 0 and 100.
+	 * @return The highest value of the bucket in which the percentile lies, or 0 if there are no values.
+	 */
+	private static long getPercentile(final long[] counts, final long total, final double percentile) {
+		if(total == 0) {
+			return 0;
+		}
+		final long target = Math.max((long)Math.ceil(total * percentile / 100), 1);
+		long cumulative = 0;
+		for(int i = 0; i < counts.length; ++i) {
+			cumulative += counts[i];
+			if(cumulative >= target) {
+				return getHighestValue(i);
+			}
+		}
+		return MAX_VALUE;
+	}
+
+	/** Discards all values recorded. */
+	public void reset() {
+		for(int i = 0; i < BUCKET_COUNT; ++i) {
+			bucketCounts.set(i, 0);
+		}
+		count.reset();
+		sum.reset();
+		max.reset();
+	}
+
+	@Override
+	public String toString() {
+		return getSnapshot().toString();
+	}
+
+	/**
+	 * The latencies recorded in a histogram at some point in time, in microseconds.
+	 * @author Garret Wilson
+	 */
+	public static class Snapshot {
+
+		private final long count;
+
+		/** @return The number of values recorded. */
+		public long getCount() {
+			return count;
+		}
+
+		private final double mean;
+
+		/** @return The mean of the values recorded. */
+		public double getMean() {
+			return mean;
+		}
+
+		private final long max;
+
+		/** @return The highest value recorded. */
+		public long getMax() {
+			return max;
+		}
+
+		private final long p50;
+
+		/** @return The median value. */
+		public long getP50() {
+			return p50;
+		}
+
+		private final long p90;
+
+		/** @return The 90th percentile value. */
+		public long getP90() {
+			return p90;
+		}
+
+		private final long p99;
+
+		/** @return The 99th percentile value. */
+		public long getP99() {
+			return p99;
+		}
+
+		private final long p999;
+
+		/** @return The 99.9th percentile value. */
+		public long getP999() {
+			return p999;
+		}
+
+		/**
+		 * Constructor.
+		 * @param count The number of values recorded.
+		 * @param mean The mean of the values recorded.
+		 * @param max The highest value recorded.
+		 * @param p50 The median value.
+		 * @param p90 The 90th percentile value.
+		 * @param p99 The 99th percentile value.
+		 * @param p999 The 99.9th percentile value.
+		 */
+		public Snapshot(final long count, final double mean, final long max, final long p50, final long p90, final long p99, final long p999) {
+			this.count = count;
+			this.mean = mean;
+			this.max = max;
+			this.p50 = p50;
+			this.p90 = p90;
+			this.p99 = p99;
+			this.p999 = p999;
+		}
+
+		@Override
+		public String toString() {
+			return "count: " + count + ", mean: " + Math.round(mean) + "µs, p50: " + p50 + "µs, p90: " + p90 + "µs, p99: " + p99 + "µs, p99.9: " + p999
+					+ "µs, max: " + max + "µs";
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.util.*;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.globalmentor.security.Nonce;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+/**
+ * Creates and verifies stateless nonces. Each nonce carries its creation time and random bits, signed with an HMAC keyed by a private key, so that any server
+ * sharing the private key can verify a nonce it did not create without keeping any record of it.
+ * <p>
+ * The string form of a nonce is the URL-safe base64 encoding, without padding, of the eight-byte creation time in milliseconds, {@value #RANDOM_LENGTH} random
+ * bytes, and the HMAC of those bytes. The HMAC key is derived from the private key for this purpose alone, so that nonces can never be mistaken for anything
+ * else signed with the same private key. Nonces claiming to have been created more than {@value #MAX_CLOCK_SKEW} milliseconds in the future are rejected, so
+ * that a nonce cannot be made to outlive its expiration.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class NonceSigner {
+
+	/** The HMAC algorithm used to sign nonces. */
+	public static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	/** The number of milliseconds the clocks of servers sharing a private key may differ; nonces created further in the future than this are rejected. */
+	public static final long MAX_CLOCK_SKEW = 5 * 1000;
+
+	/** The string used to derive the signing key from the private key. */
+	private static final String KEY_PURPOSE = "digest-nonce:";
+
+	/** The number of random bytes in each nonce. */
+	private static final int RANDOM_LENGTH = 8;
+
+	/** The number of random bytes in a generated private key. */
+	private static final int PRIVATE_KEY_LENGTH = 32;
+
+	/** The source of random bytes for nonces. */
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	private final String privateKey;
+
+	/** @return The private key with which nonces are signed. */
+	public String getPrivateKey() {
+		return privateKey;
+	}
+
+	/** The MAC of each thread, as MAC instances are not thread-safe. */
+	private final ThreadLocal<Mac> macs;
+
+	/**
+	 * Generates a random private key, for use by a single server. Nonces signed with the key cannot be verified by other servers, or after a restart.
+	 * @return A new private key.
+	 */
+	public static String generatePrivateKey() {
+		final byte[] bytes = new byte[PRIVATE_KEY_LENGTH];
+		RANDOM.nextBytes(bytes);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	/**
+	 * Constructor.
+	 * @param privateKey The private key with which nonces are signed, which must be shared by all servers verifying the nonces.
+	 * @throws NullPointerException if the given private key is <code>null</code>.
+	 * @throws IllegalStateException if the {@value #HMAC_ALGORITHM} algorithm is not supported.
+	 */
+	public NonceSigner(final String privateKey) {
+		this.privateKey = requireNonNull(privateKey);
+		final SecretKeySpec key = new SecretKeySpec((KEY_PURPOSE + privateKey).getBytes(UTF_8), HMAC_ALGORITHM);
+		createMac(key); //make sure the algorithm is supported now rather than on the first request
+		this.macs = ThreadLocal.withInitial(() -> createMac(key));
+	}
+
+	/**
+	 * Creates a MAC for signing nonces.
+	 * @param key The key of the MAC.
+	 * @return A new MAC initialized with the key.
+	 * @throws IllegalStateException if the {@value #HMAC_ALGORITHM} algorithm is not supported.
+	 */
+	private static Mac createMac(final SecretKeySpec key) {
+		try {
+			final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch(final NoSuchAlgorithmException | InvalidKeyException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	/**
+	 * Signs the time and random bits of a nonce.
+	 * @param bytes The bytes to sign.
+	 * @param length The number of bytes to sign.
+	 * @return The signature.
+	 */
+	private byte[] sign(final byte[] bytes, final int length) {
+		final Mac mac = macs.get();
+		mac.update(bytes, 0, length);
+		return mac.doFinal();
+	}
+
+	/** @return A newly created nonce for the current time. */
+	public SignedNonce createNonce() {
+		final long time = System.currentTimeMillis();
+		final byte[] random = new byte[RANDOM_LENGTH];
+		RANDOM.nextBytes(random);
+		final ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES + RANDOM_LENGTH);
+		buffer.putLong(time).put(random);
+		final byte[] unsigned = buffer.array();
+		final byte[] signature = sign(unsigned, unsigned.length);
+		final byte[] signed = Arrays.copyOf(unsigned, unsigned.length + signature.length);
+		System.arraycopy(signature, 0, signed, unsigned.length, signature.length);
+		return new SignedNonce(time, Base64.getUrlEncoder().withoutPadding().encodeToString(signed));
+	}
+
+	/**
+	 * Verifies the signature of a nonce in string form. No record of the nonce is needed.
+	 * @param nonceString The string form of the nonce, as sent to and returned by the client.
+	 * @return The verified nonce, or <code>null</code> if the string is not a nonce signed with this signer's private key, or claims to have been created in
+	 *         the future beyond the allowed clock skew.
+	 */
+	public SignedNonce verify(final String nonceString) {
+		final byte[] signed;
+		try {
+			signed = Base64.getUrlDecoder().decode(nonceString);
+		} catch(final IllegalArgumentException illegalArgumentException) {
+			return null;
+		}
+		final int unsignedLength = Long.BYTES + RANDOM_LENGTH;
+		if(signed.length <= unsignedLength) {
+			return null;
+		}
+		final byte[] signature = sign(signed, unsignedLength);
+		if(!MessageDigest.isEqual(signature, Arrays.copyOfRange(signed, unsignedLength, signed.length))) { //compare in constant time
+			return null;
+		}
+		final long time = ByteBuffer.wrap(signed).getLong();
+		if(time - System.currentTimeMillis() > MAX_CLOCK_SKEW) { //a nonce from the future would never become stale
+			return null;
+		}
+		return new SignedNonce(time, nonceString);
+	}
+
+	/**
+	 * A nonce signed by a nonce signer. The string form of the nonce is the signed value sent to the client.
+	 * @author Garret Wilson
+	 */
+	public class SignedNonce implements Nonce {
+
+		private final long time;
+
+		private final String string;
+
+		/**
+		 * Constructor.
+		 * @param time The creation time of the nonce in milliseconds.
+		 * @param string The signed string form of the nonce.
+		 */
+		private SignedNonce(final long time, final String string) {
+			this.time = time;
+			this.string = string;
+		}
+
+		@Override
+		public String getPrivateKey() {
+			return privateKey;
+		}
+
+		@Override
+		public Date getTime() {
+			return new Date(time);
+		}
+
+		@Override
+		public int hashCode() {
+			return string.hashCode();
+		}
+
+		@Override
+		public boolean equals(final Object object) {
+			return object instanceof SignedNonce && string.equals(((SignedNonce)object).string);
+		}
+
+		/** @return The signed string form of the nonce. */
+		@Override
+		public String toString() {
+			return string;
+		}
+	}
+
+}
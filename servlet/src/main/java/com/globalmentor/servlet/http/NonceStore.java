@@ -0,0 +1,394 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.globalmentor.security.Nonce;
+
+import static java.util.Objects.*;
+
+/**
+ * A bounded store of the nonces issued in digest authentication challenges, along with the principals associated with them and the highest nonce count each
+ * has been used with.
+ * <p>
+ * Nonces expire in generations: time is divided into slices of equal duration, and each slice has its own generation of nonces. When a new slice begins, the
+ * oldest generation is discarded in its entirety, so nonces are retained for between <var>generationCount</var>-1 and <var>generationCount</var> slices
+ * without ever scanning individual nonces. The store also has a hard limit on its size; if the limit is reached the oldest generation is discarded early, and
+ * if only the current generation remains, an arbitrary item of the current generation is discarded to make room. The memory used by the store therefore stays
+ * flat however many challenges are issued, and a flood of challenges cannot prevent new nonces from being issued; at worst some clients must retry with a
+ * new nonce.
+ * </p>
+ * <p>
+ * This class is thread-safe. Lookups and nonce count updates do not lock; only the rare discarding of a generation is synchronized.
+ * </p>
+ * @author Garret Wilson
+ */
+public class NonceStore {
+
+	/** The default number of generations retained. */
+	public static final int DEFAULT_GENERATION_COUNT = 5;
+
+	/** The default maximum number of nonces and principal associations retained. */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+
+	private final long generationDuration;
+
+	/** @return The number of milliseconds covered by each generation. */
+	public long getGenerationDuration() {
+		return generationDuration;
+	}
+
+	private final int generationCount;
+
+	/** @return The number of generations retained. */
+	public int getGenerationCount() {
+		return generationCount;
+	}
+
+	private final int maxSize;
+
+	/** @return The maximum number of nonces and principal associations retained. */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** The generations retained, newest first. */
+	private volatile Generation[] generations;
+
+	/** The number of nonces refused because the store was full. */
+	private final AtomicLong refusedCount = new AtomicLong(0);
+
+	/** @return The number of nonces refused because the store was full. */
+	public long getRefusedCount() {
+		return refusedCount.get();
+	}
+
+	/** The number of generations discarded early because the store was full. */
+	private final AtomicLong evictionCount = new AtomicLong(0);
+
+	/** @return The number of generations discarded early because the store was full. */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/** The number of items of the current generation discarded because the store was full. */
+	private final AtomicLong itemEvictionCount = new AtomicLong(0);
+
+	/** @return The number of items of the current generation discarded because the store was full. */
+	public long getItemEvictionCount() {
+		return itemEvictionCount.get();
+	}
+
+	/**
+	 * Generation duration constructor with a default generation count and maximum size.
+	 * @param generationDuration The number of milliseconds covered by each generation.
+	 * @throws IllegalArgumentException if the given generation duration is not positive.
+	 */
+	public NonceStore(final long generationDuration) {
+		this(generationDuration, DEFAULT_GENERATION_COUNT, DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 * @param generationDuration The number of milliseconds covered by each generation.
+	 * @param generationCount The number of generations retained.
+	 * @param maxSize The maximum number of nonces and principal associations retained.
+	 * @throws IllegalArgumentException if the given generation duration, generation count, and/or maximum size is not positive.
+	 */
+	public NonceStore(final long generationDuration, final int generationCount, final int maxSize) {
+		if(generationDuration <= 0 || generationCount <= 0 || maxSize <= 0) {
+			throw new IllegalArgumentException("Invalid nonce store configuration: " + generationDuration + "ms, " + generationCount + " generations, " + maxSize
+					+ " maximum.");
+		}
+		this.generationDuration = generationDuration;
+		this.generationCount = generationCount;
+		this.maxSize = maxSize;
+		this.generations = new Generation[] {new Generation(System.currentTimeMillis() / generationDuration)};
+	}
+
+	/** @return The generation for the current time slice, discarding expired generations if a new time slice has begun. */
+	private Generation getCurrentGeneration() {
+		final long number = System.currentTimeMillis() / generationDuration;
+		final Generation generation = generations[0];
+		return generation.number >= number ? generation : advance(number);
+	}
+
+	/**
+	 * Starts a new generation and discards those that have expired.
+	 * @param number The number of the new generation.
+	 * @return The current generation.
+	 */
+	private synchronized Generation advance(final long number) {
+		final Generation[] generations = this.generations;
+		if(generations[0].number >= number) { //another thread already advanced
+			return generations[0];
+		}
+		int retainedCount = 0;
+		while(retainedCount < generations.length && retainedCount < generationCount - 1 && generations[retainedCount].number > number - generationCount) {
+			++retainedCount;
+		}
+		final Generation[] newGenerations = new Generation[retainedCount + 1];
+		newGenerations[0] = new Generation(number);
+		System.arraycopy(generations, 0, newGenerations, 1, retainedCount);
+		this.generations = newGenerations;
+		return newGenerations[0];
+	}
+
+	/**
+	 * Discards the oldest generation to make room, unless it is the only generation.
+	 * @return <code>true</code> if a generation was discarded.
+	 */
+	private synchronized boolean evict() {
+		final Generation[] generations = this.generations;
+		if(generations.length == 1) {
+			return false;
+		}
+		final Generation[] newGenerations = new Generation[generations.length - 1];
+		System.arraycopy(generations, 0, newGenerations, 0, newGenerations.length);
+		this.generations = newGenerations;
+		evictionCount.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Discards an item of the current generation to make room, for use when the current generation is the only one. The item discarded is the first found in the
+	 * unordered maps of the generation, which depends on the hash of its key, so that clients cannot choose which nonces are displaced.
+	 * @return <code>true</code> if an item was discarded.
+	 */
+	private boolean evictItem() {
+		final Generation generation = generations[0];
+		for(final String nonceID : generation.entries.keySet()) {
+			if(generation.entries.remove(nonceID) != null) {
+				generation.size.decrementAndGet();
+				itemEvictionCount.incrementAndGet();
+				return true;
+			}
+		}
+		for(final Nonce nonce : generation.principalIDs.keySet()) {
+			if(generation.principalIDs.remove(nonce) != null) {
+				generation.size.decrementAndGet();
+				itemEvictionCount.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return The number of nonces and principal associations currently retained. */
+	public int size() {
+		int size = 0;
+		for(final Generation generation : generations) {
+			size += generation.size.get();
+		}
+		return size;
+	}
+
+	/**
+	 * Makes room for another item if the store is full, discarding the oldest generation or, if only the current generation remains, an item from it.
+	 * @return <code>true</code> if there is room for another item.
+	 */
+	private boolean reserve() {
+		while(size() >= maxSize) {
+			if(!evict() && !evictItem()) { //the store may only be full of items being added concurrently
+				refusedCount.incrementAndGet();
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stores a nonce.
+	 * @param nonceID The ID of the nonce; usually a hash of the nonce information.
+	 * @param nonce The nonce to store.
+	 * @return <code>true</code> if the nonce was stored, or <code>false</code> if the store was full.
+	 * @throws NullPointerException if the given nonce ID and/or nonce is <code>null</code>.
+	 */
+	public boolean put(final String nonceID, final Nonce nonce) {
+		requireNonNull(nonceID);
+		requireNonNull(nonce);
+		final Generation generation = getCurrentGeneration();
+		if(!reserve()) {
+			return false;
+		}
+		if(generation.entries.put(nonceID, new Entry(nonce)) == null) {
+			generation.size.incrementAndGet();
+		}
+		return true;
+	}
+
+	/**
+	 * Finds the entry of a nonce.
+	 * @param nonceID The ID of the nonce.
+	 * @return The entry for the nonce, or <code>null</code> if the nonce is unknown or has expired.
+	 */
+	private Entry getEntry(final String nonceID) {
+		getCurrentGeneration(); //make sure expired generations are discarded
+		for(final Generation generation : generations) {
+			final Entry entry = generation.entries.get(nonceID);
+			if(entry != null) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves a nonce.
+	 * @param nonceID The ID of the nonce.
+	 * @return The nonce with the given ID, or <code>null</code> if the nonce is unknown or has expired.
+	 */
+	public Nonce get(final String nonceID) {
+		final Entry entry = getEntry(nonceID);
+		return entry != null ? entry.nonce : null;
+	}
+
+	/**
+	 * Records a use of a nonce with a nonce count, as sent by the client in the <code>nc</code> digest parameter. Each use of a nonce must have a higher count
+	 * than all previous uses; otherwise the request is a replay.
+	 * @param nonceID The ID of the nonce.
+	 * @param nonceCount The nonce count.
+	 * @return <code>true</code> if the nonce count is higher than any used before with the nonce, or <code>false</code> if the nonce count has already been used
+	 *         or the nonce is unknown.
+	 */
+	public boolean updateNonceCount(final String nonceID, final long nonceCount) {
+		final Entry entry = getEntry(nonceID);
+		if(entry == null) {
+			return false;
+		}
+		long highestNonceCount;
+		do {
+			highestNonceCount = entry.highestNonceCount.get();
+			if(nonceCount <= highestNonceCount) { //replay
+				return false;
+			}
+		} while(!entry.highestNonceCount.compareAndSet(highestNonceCount, nonceCount));
+		return true;
+	}
+
+	/**
+	 * Records a use of a nonce with a nonce count, storing the nonce if it is not already stored. This allows replays of nonces that were never stored, such as
+	 * stateless signed nonces, to be detected while the nonce remains in the store.
+	 * @param nonceID The ID of the nonce.
+	 * @param nonce The nonce, to be stored if it is not already stored.
+	 * @param nonceCount The nonce count.
+	 * @return <code>true</code> if the nonce count is higher than any used before with the nonce, or <code>false</code> if the nonce count has already been used
+	 *         or the nonce could not be stored because the store was full.
+	 * @throws NullPointerException if the given nonce ID and/or nonce is <code>null</code>.
+	 * @see #updateNonceCount(String, long)
+	 */
+	public boolean updateNonceCount(final String nonceID, final Nonce nonce, final long nonceCount) {
+		if(getEntry(nonceID) == null) {
+			final Generation generation = getCurrentGeneration();
+			if(!reserve()) {
+				return false;
+			}
+			if(generation.entries.putIfAbsent(nonceID, new Entry(requireNonNull(nonce))) == null) {
+				generation.size.incrementAndGet();
+			}
+		}
+		return updateNonceCount(nonceID, nonceCount);
+	}
+
+	/**
+	 * Associates a principal with a nonce. The association expires along with the current generation.
+	 * @param nonce The nonce with which a principal should be associated.
+	 * @param principalID The ID of the principal to associate with the nonce.
+	 * @throws NullPointerException if the given nonce and/or principal ID is <code>null</code>.
+	 */
+	public void setPrincipalID(final Nonce nonce, final String principalID) {
+		requireNonNull(nonce);
+		requireNonNull(principalID);
+		final Generation generation = getCurrentGeneration();
+		if(reserve() && generation.principalIDs.put(nonce, principalID) == null) {
+			generation.size.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Retrieves the principal associated with a nonce.
+	 * @param nonce The nonce for which a principal should be associated.
+	 * @return The ID of the principal associated with the given nonce, or <code>null</code> if there is no principal associated with the given nonce.
+	 */
+	public String getPrincipalID(final Nonce nonce) {
+		getCurrentGeneration(); //make sure expired generations are discarded
+		for(final Generation generation : generations) {
+			final String principalID = generation.principalIDs.get(nonce);
+			if(principalID != null) {
+				return principalID;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public String toString() {
+		return "nonces: " + size() + "/" + getMaxSize() + ", evictions: " + getEvictionCount() + ", item evictions: " + getItemEvictionCount() + ", refused: "
+				+ getRefusedCount();
+	}
+
+	/**
+	 * The nonces and principal associations stored during a single time slice.
+	 * @author Garret Wilson
+	 */
+	private static class Generation {
+
+		/** The number of the time slice, in units of generation duration since the epoch. */
+		private final long number;
+
+		/** The nonce entries, keyed to nonce ID. */
+		private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+		/** The IDs of principals, keyed to the nonces with which they are associated. */
+		private final ConcurrentMap<Nonce, String> principalIDs = new ConcurrentHashMap<Nonce, String>();
+
+		/** The number of nonces and principal associations in this generation. */
+		private final AtomicInteger size = new AtomicInteger(0);
+
+		/**
+		 * Constructor.
+		 * @param number The number of the time slice, in units of generation duration since the epoch.
+		 */
+		private Generation(final long number) {
+			this.number = number;
+		}
+	}
+
+	/**
+	 * A stored nonce along with the highest nonce count with which it has been used.
+	 * @author Garret Wilson
+	 */
+	private static class Entry {
+
+		/** The nonce. */
+		private final Nonce nonce;
+
+		/** The highest nonce count with which the nonce has been used. */
+		private final AtomicLong highestNonceCount = new AtomicLong(0);
+
+		/**
+		 * Constructor.
+		 * @param nonce The nonce.
+		 */
+		private Entry(final Nonce nonce) {
+			this.nonce = nonce;
+		}
+	}
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.io.IOException;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import static com.globalmentor.net.HTTP.*;
+
+/**
+ * A filter that pushes or preloads the sub-resources of pages using a {@link Preloader}, for pages not served by an {@link AbstractHTTPServlet}, such as
+ * views rendered by JavaServer Faces. The filter should be mapped both to pages and to their sub-resources, so that sub-resources can be learned. This filter
+ * supports the following initialization parameters:
+ * <dl>
+ * <dt>{@value #PRELOAD_MANIFEST_INIT_PARAMETER}</dt>
+ * <dd>The context-relative path of a manifest listing the sub-resources of pages.</dd>
+ * <dt>{@value #PRELOAD_LEARN_INIT_PARAMETER}</dt>
+ * <dd>Whether sub-resources should be learned from requests; should be "true" or "false". Defaults to "true".</dd>
+ * </dl>
+ * @author Garret Wilson
+ */
+public class PreloadFilter implements Filter {
+
+	/** The init parameter, {@value #PRELOAD_MANIFEST_INIT_PARAMETER}, used to specify the context-relative path of the manifest of page sub-resources. */
+	public static final String PRELOAD_MANIFEST_INIT_PARAMETER = "preloadManifest";
+
+	/** The init parameter, {@value #PRELOAD_LEARN_INIT_PARAMETER}, used to specify whether sub-resources are learned; should be "true" or "false". */
+	public static final String PRELOAD_LEARN_INIT_PARAMETER = "preloadLearn";
+
+	/** The preloader of page sub-resources, or <code>null</code> if the filter has not been initialized. */
+	private Preloader preloader = null;
+
+	/** @return The preloader of page sub-resources, or <code>null</code> if the filter has not been initialized. */
+	protected Preloader getPreloader() {
+		return preloader;
+	}
+
+	@Override
+	public void init(final FilterConfig filterConfig) throws ServletException {
+		final Preloader preloader = new Preloader(!Boolean.FALSE.toString().equalsIgnoreCase(filterConfig.getInitParameter(PRELOAD_LEARN_INIT_PARAMETER)));
+		final String manifestPath = filterConfig.getInitParameter(PRELOAD_MANIFEST_INIT_PARAMETER);
+		if(manifestPath != null) {
+			try {
+				preloader.loadManifest(filterConfig.getServletContext(), manifestPath);
+			} catch(final IOException ioException) {
+				throw new ServletException(ioException);
+			}
+		}
+		this.preloader = preloader;
+	}
+
+	/**
+	 * {@inheritDoc} This version preloads the sub-resources of requested pages before passing the request down the chain. Once the request has been serviced,
+	 * pages served successfully are recorded, and successful requests for sub-resources are learned from.
+	 */
+	@Override
+	public void doFilter(final ServletRequest request, final ServletResponse response, final FilterChain chain) throws IOException, ServletException {
+		if(request instanceof HttpServletRequest && response instanceof HttpServletResponse && GET_METHOD.equals(((HttpServletRequest)request).getMethod())) {
+			final HttpServletRequest httpRequest = (HttpServletRequest)request;
+			final HttpServletResponse httpResponse = (HttpServletResponse)response;
+			final String pathInfo = httpRequest.getPathInfo();
+			final String path = pathInfo != null ? httpRequest.getServletPath() + pathInfo : httpRequest.getServletPath();
+			final boolean isSubresource = Preloader.getDestination(path) != null;
+			if(!isSubresource) { //a page
+				preloader.preload(httpRequest, httpResponse);
+			}
+			chain.doFilter(request, response);
+			if(isFound(httpResponse.getStatus())) { //only learn about resources that exist
+				if(isSubresource) {
+					preloader.learn(httpRequest);
+				} else {
+					preloader.recordPage(httpRequest);
+				}
+			}
+		} else {
+			chain.doFilter(request, response);
+		}
+	}
+
+	/**
+	 * Determines whether a response status indicates that the requested resource was found.
+	 * @param status The status of the response.
+	 * @return <code>true</code> if the status is successful or indicates that the resource was not modified.
+	 */
+	private static boolean isFound(final int status) {
+		return (status >= 200 && status < 300) || status == HttpServletResponse.SC_NOT_MODIFIED;
+	}
+
+}
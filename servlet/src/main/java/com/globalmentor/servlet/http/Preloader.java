@@ -0,0 +1,345 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.*;
+
+import io.clogr.Clogged;
+
+import static com.globalmentor.servlet.http.HTTPServlets.*;
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * Tells clients about the sub-resources, such as style sheets and scripts, a page will need before the client discovers them in the page itself. For each
+ * page a list of sub-resources is kept, which may be configured in a manifest and/or learned from the <code>Referer</code> header of sub-resource requests. If
+ * the client supports HTTP/2 server push the sub-resources are pushed; otherwise <code>Link</code> headers with <code>rel=preload</code> are added.
+ * <p>
+ * As the <code>Referer</code> header is supplied by the client, sub-resources are only learned for pages that were actually served, as reported using
+ * {@link #recordPage(HttpServletRequest)}, and only from referrers with the same scheme, host, and port as the request. Only the most recently served pages
+ * are remembered for learning.
+ * </p>
+ * <p>
+ * To avoid pushing resources the client already has, a compact digest of the resources pushed is kept in a cookie, in the spirit of cache digests.
+ * </p>
+ * <p>
+ * The manifest lists a context-relative page path and a context-relative sub-resource path on each line, separated by whitespace. Blank lines and lines
+ * beginning with <code>#</code> are ignored.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class Preloader implements Clogged {
+
+	/** The name of the cookie holding the digest of resources already pushed to the client. */
+	public static final String DIGEST_COOKIE_NAME = "preloaded";
+
+	/** The number of seconds the client keeps the digest cookie. */
+	private static final int DIGEST_COOKIE_MAX_AGE = 24 * 60 * 60;
+
+	/** The maximum number of resources recorded in the digest cookie. */
+	private static final int MAX_DIGEST_SIZE = 32;
+
+	/** The maximum number of pages for which sub-resources are learned; the least recently served pages are forgotten first. */
+	private static final int MAX_PAGE_COUNT = 1000;
+
+	/** The maximum number of sub-resources tracked for each page. */
+	private static final int MAX_OBSERVED_RESOURCE_COUNT = 50;
+
+	/** The maximum number of sub-resources preloaded for each page. */
+	private static final int MAX_PRELOAD_COUNT = 10;
+
+	/** The number of times a sub-resource must be requested from a page before it is preloaded for that page. */
+	private static final int LEARN_THRESHOLD = 3;
+
+	/** The <code>Link</code> header. */
+	private static final String LINK_HEADER = "Link";
+
+	/** The preload destinations, keyed to lowercase filename extension. */
+	private static final Map<String, String> DESTINATIONS;
+
+	static {
+		final Map<String, String> destinations = new HashMap<String, String>();
+		destinations.put("css", "style");
+		destinations.put("js", "script");
+		destinations.put("mjs", "script");
+		for(final String extension : Arrays.asList("woff", "woff2", "ttf", "otf")) {
+			destinations.put(extension, "font");
+		}
+		for(final String extension : Arrays.asList("png", "jpg", "jpeg", "gif", "svg", "webp", "ico")) {
+			destinations.put(extension, "image");
+		}
+		DESTINATIONS = Collections.unmodifiableMap(destinations);
+	}
+
+	private final boolean learning;
+
+	/** @return Whether sub-resources are learned from requests. */
+	public boolean isLearning() {
+		return learning;
+	}
+
+	/** The sub-resources configured for pages, keyed to context-relative page path. */
+	private final ConcurrentMap<String, Set<String>> configuredPages = new ConcurrentHashMap<String, Set<String>>();
+
+	/** The number of times each sub-resource has been requested by recently served pages, keyed to context-relative page path, in order of last access. */
+	private final Map<String, ConcurrentMap<String, AtomicLong>> learnedPages = Collections
+			.synchronizedMap(new LinkedHashMap<String, ConcurrentMap<String, AtomicLong>>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, ConcurrentMap<String, AtomicLong>> eldest) {
+					return size() > MAX_PAGE_COUNT;
+				}
+			});
+
+	/**
+	 * Constructor.
+	 * @param learning Whether sub-resources should be learned from requests in addition to those configured.
+	 */
+	public Preloader(final boolean learning) {
+		this.learning = learning;
+	}
+
+	/**
+	 * Loads configured sub-resources from a manifest in the servlet context.
+	 * @param context The servlet context.
+	 * @param manifestPath The context-relative path of the manifest.
+	 * @throws IOException if there is an error reading the manifest.
+	 */
+	public void loadManifest(final ServletContext context, final String manifestPath) throws IOException {
+		try (final InputStream inputStream = context.getResourceAsStream(manifestPath)) {
+			if(inputStream == null) {
+				getLogger().warn("Preload manifest {} not found.", manifestPath);
+				return;
+			}
+			final BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, UTF_8));
+			String line;
+			while((line = reader.readLine()) != null) {
+				line = line.trim();
+				if(line.isEmpty() || line.charAt(0) == '#') {
+					continue;
+				}
+				final String[] paths = line.split("\\s+");
+				if(paths.length != 2) {
+					throw new IOException("Invalid preload manifest line: " + line);
+				}
+				addResource(paths[0], paths[1]);
+			}
+		}
+	}
+
+	/**
+	 * Configures a sub-resource to be preloaded for a page.
+	 * @param pagePath The context-relative path of the page.
+	 * @param resourcePath The context-relative path of the sub-resource.
+	 */
+	public void addResource(final String pagePath, final String resourcePath) {
+		configuredPages.computeIfAbsent(pagePath, __ -> new CopyOnWriteArraySet<String>()).add(resourcePath);
+	}
+
+	/**
+	 * Determines the sub-resources to preload for a page: all configured sub-resources, followed by those learned, most often requested first.
+	 * @param pagePath The context-relative path of the page.
+	 * @return The context-relative paths of the sub-resources to preload.
+	 */
+	public List<String> getResources(final String pagePath) {
+		final Set<String> configuredResources = configuredPages.getOrDefault(pagePath, Collections.<String>emptySet());
+		final ConcurrentMap<String, AtomicLong> observedResources = learnedPages.get(pagePath);
+		if(observedResources == null) {
+			return new ArrayList<String>(configuredResources);
+		}
+		final List<String> resources = new ArrayList<String>(configuredResources);
+		observedResources.entrySet().stream().filter(entry -> entry.getValue().get() >= LEARN_THRESHOLD)
+				.sorted((entry1, entry2) -> Long.compare(entry2.getValue().get(), entry1.getValue().get())).map(Map.Entry::getKey)
+				.filter(resource -> !configuredResources.contains(resource)).limit(Math.max(0, MAX_PRELOAD_COUNT - resources.size()))
+				.collect(Collectors.toCollection(() -> resources));
+		return resources;
+	}
+
+	/**
+	 * Determines the preload destination of a resource, such as <code>style</code> or <code>script</code>.
+	 * @param path The path of the resource.
+	 * @return The destination to use in the <code>as</code> attribute of a preload link, or <code>null</code> if the resource is not a known type of
+	 *         sub-resource.
+	 */
+	public static String getDestination(final String path) {
+		final int extensionIndex = path.lastIndexOf('.');
+		return extensionIndex >= 0 && extensionIndex > path.lastIndexOf('/') ? DESTINATIONS.get(path.substring(extensionIndex + 1).toLowerCase(Locale.ROOT))
+				: null;
+	}
+
+	/**
+	 * Determines the context-relative path of a request.
+	 * @param request The HTTP request.
+	 * @return The path of the request relative to the servlet context.
+	 */
+	private static String getContextRelativePath(final HttpServletRequest request) {
+		final String pathInfo = request.getPathInfo();
+		return pathInfo != null ? request.getServletPath() + pathInfo : request.getServletPath();
+	}
+
+	/**
+	 * Records that a page was served successfully, so that sub-resources requested from it may be learned. This method should only be called for resources that
+	 * exist, after they have been found.
+	 * @param request The HTTP request for a page.
+	 */
+	public void recordPage(final HttpServletRequest request) {
+		if(!isLearning()) {
+			return;
+		}
+		final String pagePath = getContextRelativePath(request);
+		learnedPages.computeIfAbsent(pagePath, __ -> new ConcurrentHashMap<String, AtomicLong>()); //also marks the page as recently served
+	}
+
+	/**
+	 * Determines whether a referrer has the same origin as a request, that is the same scheme, host, and port.
+	 * @param request The HTTP request.
+	 * @param refererURI The URI of the referring page.
+	 * @return <code>true</code> if the referrer is of the same origin as the request.
+	 */
+	private static boolean isSameOrigin(final HttpServletRequest request, final URI refererURI) {
+		final String scheme = request.getScheme();
+		if(!scheme.equalsIgnoreCase(refererURI.getScheme()) || !request.getServerName().equalsIgnoreCase(refererURI.getHost())) {
+			return false;
+		}
+		final int defaultPort = "https".equalsIgnoreCase(scheme) ? 443 : 80;
+		final int refererPort = refererURI.getPort();
+		return (refererPort >= 0 ? refererPort : defaultPort) == request.getServerPort();
+	}
+
+	/**
+	 * Learns from a request for a sub-resource, using the <code>Referer</code> header to determine the page that requested it. This method should only be
+	 * called for sub-resources that exist, after they have been found. Requests that are not for known types of sub-resources, that were referred from another
+	 * origin or context, or that were referred from pages not recently recorded as served are ignored.
+	 * @param request The HTTP request.
+	 * @see #recordPage(HttpServletRequest)
+	 */
+	public void learn(final HttpServletRequest request) {
+		if(!isLearning()) {
+			return;
+		}
+		final String resourcePath = getContextRelativePath(request);
+		if(getDestination(resourcePath) == null) {
+			return;
+		}
+		final String referer = getReferer(request);
+		if(referer == null) {
+			return;
+		}
+		final URI refererURI;
+		try {
+			refererURI = URI.create(referer);
+		} catch(final IllegalArgumentException illegalArgumentException) { //ignore invalid referrers
+			return;
+		}
+		final String contextPath = request.getContextPath();
+		final String refererPath = refererURI.getPath();
+		if(!isSameOrigin(request, refererURI) || refererPath == null || !refererPath.startsWith(contextPath)) {
+			return;
+		}
+		final String pagePath = refererPath.length() > contextPath.length() ? refererPath.substring(contextPath.length()) : "/";
+		if(getDestination(pagePath) != null) { //sub-resources of sub-resources, such as fonts requested by style sheets, are discovered by the client anyway
+			return;
+		}
+		final ConcurrentMap<String, AtomicLong> observedResources = learnedPages.get(pagePath);
+		if(observedResources == null) { //only learn about pages we actually served
+			return;
+		}
+		AtomicLong count = observedResources.get(resourcePath);
+		if(count == null) {
+			if(observedResources.size() >= MAX_OBSERVED_RESOURCE_COUNT) {
+				return;
+			}
+			count = observedResources.computeIfAbsent(resourcePath, __ -> new AtomicLong(0));
+		}
+		count.incrementAndGet();
+	}
+
+	/**
+	 * Tells the client about the sub-resources of the requested page. If the client supports server push, sub-resources not recorded in the digest cookie are
+	 * pushed and the cookie is updated; otherwise <code>Link</code> preload headers are added. This method must be called before the response is committed.
+	 * @param request The HTTP request for a page.
+	 * @param response The HTTP response.
+	 */
+	public void preload(final HttpServletRequest request, final HttpServletResponse response) {
+		final List<String> resources = getResources(getContextRelativePath(request));
+		if(resources.isEmpty()) {
+			return;
+		}
+		final String contextPath = request.getContextPath();
+		final PushBuilder pushBuilder = request.newPushBuilder(); //null if the client doesn't support push
+		if(pushBuilder == null) {
+			for(final String resource : resources) {
+				final String destination = getDestination(resource);
+				final StringBuilder link = new StringBuilder().append('<').append(contextPath).append(resource).append(">; rel=preload");
+				if(destination != null) {
+					link.append("; as=").append(destination);
+					if(destination.equals("font")) { //fonts are always fetched in CORS mode
+						link.append("; crossorigin");
+					}
+				}
+				response.addHeader(LINK_HEADER, link.toString());
+			}
+			return;
+		}
+		final Cookie digestCookie = Cookies.getCookie(request.getCookies(), DIGEST_COOKIE_NAME);
+		final LinkedHashSet<String> digest = new LinkedHashSet<String>();
+		if(digestCookie != null && digestCookie.getValue() != null && !digestCookie.getValue().isEmpty()) {
+			digest.addAll(Arrays.asList(digestCookie.getValue().split("\\.")));
+		}
+		boolean pushed = false;
+		for(final String resource : resources) {
+			final String hash = hash(resource);
+			if(digest.add(hash)) { //if the client doesn't already have this resource
+				pushBuilder.path(contextPath + resource).push();
+				pushed = true;
+			}
+		}
+		if(pushed) {
+			final List<String> hashes = new ArrayList<String>(digest);
+			final Cookie cookie = new Cookie(DIGEST_COOKIE_NAME, String.join(".", hashes.subList(Math.max(0, hashes.size() - MAX_DIGEST_SIZE), hashes.size())));
+			cookie.setPath(contextPath.isEmpty() ? "/" : contextPath);
+			cookie.setMaxAge(DIGEST_COOKIE_MAX_AGE);
+			cookie.setHttpOnly(true);
+			response.addCookie(cookie);
+		}
+	}
+
+	/**
+	 * Computes the short hash of a resource path recorded in the digest cookie.
+	 * @param resourcePath The path of the resource.
+	 * @return The hash of the path in a form suitable for a cookie value.
+	 */
+	private static String hash(final String resourcePath) {
+		final CRC32 crc32 = new CRC32();
+		crc32.update(resourcePath.getBytes(UTF_8));
+		return Long.toString(crc32.getValue(), Character.MAX_RADIX);
+	}
+
+}
@@ -83,9 +83,9 @@ protected void doMethod(final String method, final HttpServletRequest request, f
 			//get the boolean value of the permanent parameter
 			final boolean permanent = Boolean.parseBoolean(config.getInitParameter(PERMANENT_PARAMETER));
 			if(permanent) { //if this is a permanent redirect
-				throw new HTTPMovedPermanentlyException(redirectURI); //redirect permanently
+				sendRedirect(request, response, HttpServletResponse.SC_MOVED_PERMANENTLY, redirectURI); //redirect permanently
 			} else { //if the redirect is not permanent
-				throw new HTTPMovedTemporarilyException(redirectURI); //redirect temporarily				
+				sendRedirect(request, response, HttpServletResponse.SC_MOVED_TEMPORARILY, redirectURI); //redirect temporarily
 			}
 		} else { //if no redirect URI was configured
 			throw new HTTPInternalServerErrorException("No redirect URI initialization parameter is configured.");
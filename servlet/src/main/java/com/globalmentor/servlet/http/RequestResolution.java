@@ -0,0 +1,197 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.net.URI;
+import java.util.concurrent.*;
+
+import javax.servlet.http.HttpServletRequest;
+
+import static java.util.Objects.*;
+
+/**
+ * The resolutions made while servicing a single request, such as the canonical URI of the requested resource, the canonical URIs of other resources such as
+ * the destination of a copy, the resource objects themselves, and whether resources exist and are collections. A resolution context is stored as a request
+ * attribute, so that each resolution is only made once for the rest of the request, by whatever method needs it.
+ * <p>
+ * A resolution context belongs to a single servlet, as different servlets resolve resources differently; if a request is forwarded to another servlet, that
+ * servlet starts a new context. Resolved resources and their attributes should be invalidated whenever a resource changes during the request; resolved URIs
+ * are kept.
+ * </p>
+ * <p>
+ * This class is thread-safe, so that operations performed concurrently for a single request may share it.
+ * </p>
+ * @author Garret Wilson
+ */
+public class RequestResolution {
+
+	/** The request attribute in which the resolution context is stored. */
+	public static final String ATTRIBUTE = RequestResolution.class.getName();
+
+	/** The servlet making the resolutions. */
+	private final Object owner;
+
+	/** The canonical URI of the requested resource, or <code>null</code> if it has not yet been resolved. */
+	private volatile URI resourceURI = null;
+
+	/** @return The canonical URI of the requested resource, or <code>null</code> if it has not yet been resolved. */
+	public URI getResourceURI() {
+		return resourceURI;
+	}
+
+	/**
+	 * Records the canonical URI of the requested resource.
+	 * @param resourceURI The canonical URI of the requested resource.
+	 */
+	public void setResourceURI(final URI resourceURI) {
+		this.resourceURI = requireNonNull(resourceURI);
+	}
+
+	/** The canonical URIs resolved from requested URIs, keyed to the requested URI, method, and analogous URI. */
+	private final ConcurrentMap<String, URI> resolvedURIs = new ConcurrentHashMap<String, URI>();
+
+	/** The resource objects, keyed to canonical resource URI. */
+	private final ConcurrentMap<URI, Object> resources = new ConcurrentHashMap<URI, Object>();
+
+	/** Whether resources exist, keyed to canonical resource URI. */
+	private final ConcurrentMap<URI, Boolean> existences = new ConcurrentHashMap<URI, Boolean>();
+
+	/** Whether resources are collections, keyed to canonical resource URI. */
+	private final ConcurrentMap<URI, Boolean> collections = new ConcurrentHashMap<URI, Boolean>();
+
+	/**
+	 * Owner constructor.
+	 * @param owner The servlet making the resolutions.
+	 */
+	private RequestResolution(final Object owner) {
+		this.owner = requireNonNull(owner);
+	}
+
+	/**
+	 * Retrieves the resolution context of a request for a servlet, creating one if needed.
+	 * @param request The HTTP request.
+	 * @param owner The servlet making the resolutions.
+	 * @return The resolution context for the request and servlet.
+	 */
+	public static RequestResolution get(final HttpServletRequest request, final Object owner) {
+		final Object attribute = request.getAttribute(ATTRIBUTE);
+		if(attribute instanceof RequestResolution && ((RequestResolution)attribute).owner == owner) {
+			return (RequestResolution)attribute;
+		}
+		final RequestResolution resolution = new RequestResolution(owner);
+		request.setAttribute(ATTRIBUTE, resolution);
+		return resolution;
+	}
+
+	/**
+	 * Creates the key of a resolved URI.
+	 * @param requestedResourceURI The requested absolute URI of the resource.
+	 * @param method The HTTP request method.
+	 * @param analogousResourceURI The URI of a resource used by analogy, or <code>null</code> if no analogous resource is known.
+	 * @return The key under which to store the resolved URI.
+	 */
+	private static String getResolvedURIKey(final URI requestedResourceURI, final String method, final URI analogousResourceURI) {
+		return requestedResourceURI + "\n" + method + "\n" + analogousResourceURI;
+	}
+
+	/**
+	 * Retrieves a resolved canonical URI.
+	 * @param requestedResourceURI The requested absolute URI of the resource.
+	 * @param method The HTTP request method.
+	 * @param analogousResourceURI The URI of a resource used by analogy, or <code>null</code> if no analogous resource is known.
+	 * @return The canonical URI, or <code>null</code> if it has not yet been resolved.
+	 */
+	public URI getResolvedURI(final URI requestedResourceURI, final String method, final URI analogousResourceURI) {
+		return resolvedURIs.get(getResolvedURIKey(requestedResourceURI, method, analogousResourceURI));
+	}
+
+	/**
+	 * Records a resolved canonical URI.
+	 * @param requestedResourceURI The requested absolute URI of the resource.
+	 * @param method The HTTP request method.
+	 * @param analogousResourceURI The URI of a resource used by analogy, or <code>null</code> if no analogous resource is known.
+	 * @param resourceURI The canonical URI of the resource.
+	 */
+	public void setResolvedURI(final URI requestedResourceURI, final String method, final URI analogousResourceURI, final URI resourceURI) {
+		resolvedURIs.put(getResolvedURIKey(requestedResourceURI, method, analogousResourceURI), requireNonNull(resourceURI));
+	}
+
+	/**
+	 * Retrieves a resolved resource object.
+	 * @param resourceURI The canonical URI of the resource.
+	 * @return The resource object, or <code>null</code> if it has not yet been resolved.
+	 */
+	public Object getResource(final URI resourceURI) {
+		return resources.get(resourceURI);
+	}
+
+	/**
+	 * Records a resolved resource object.
+	 * @param resourceURI The canonical URI of the resource.
+	 * @param resource The resource object.
+	 */
+	public void setResource(final URI resourceURI, final Object resource) {
+		resources.put(resourceURI, requireNonNull(resource));
+	}
+
+	/**
+	 * Retrieves whether a resource exists.
+	 * @param resourceURI The canonical URI of the resource.
+	 * @return Whether the resource exists, or <code>null</code> if this has not yet been determined.
+	 */
+	public Boolean getExists(final URI resourceURI) {
+		return existences.get(resourceURI);
+	}
+
+	/**
+	 * Records whether a resource exists.
+	 * @param resourceURI The canonical URI of the resource.
+	 * @param exists Whether the resource exists.
+	 */
+	public void setExists(final URI resourceURI, final boolean exists) {
+		existences.put(resourceURI, Boolean.valueOf(exists));
+	}
+
+	/**
+	 * Retrieves whether a resource is a collection.
+	 * @param resourceURI The canonical URI of the resource.
+	 * @return Whether the resource is a collection, or <code>null</code> if this has not yet been determined.
+	 */
+	public Boolean getCollection(final URI resourceURI) {
+		return collections.get(resourceURI);
+	}
+
+	/**
+	 * Records whether a resource is a collection.
+	 * @param resourceURI The canonical URI of the resource.
+	 * @param collection Whether the resource is a collection.
+	 */
+	public void setCollection(final URI resourceURI, final boolean collection) {
+		collections.put(resourceURI, Boolean.valueOf(collection));
+	}
+
+	/**
+	 * Forgets all resolved resource objects and their attributes, because a resource has changed. A change to one resource may affect others, such as its
+	 * parent and children, so nothing is kept. Resolved URIs are kept.
+	 */
+	public void invalidateResources() {
+		resources.clear();
+		existences.clear();
+		collections.clear();
+	}
+
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.nio.ByteBuffer;
+import java.security.*;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+/**
+ * Creates and verifies signed session tokens, which vouch that a principal authenticated in a realm until an expiration time. A token can be verified by any
+ * server sharing the private key with a single MAC computation, without looking anything up.
+ * <p>
+ * The string form of a token is the URL-safe base64 encoding, without padding, of the expiration time, principal ID, and realm separated by newlines; followed
+ * by a period and the encoded HMAC of those bytes.
+ * </p>
+ * <p>
+ * The HMAC also covers the current epoch of the signer, which is not part of the token. Advancing the epoch using {@link #revokeAll()} therefore revokes all
+ * tokens issued so far. Servers sharing a private key must also share the epoch.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class SessionTokenSigner {
+
+	/** The HMAC algorithm used to sign tokens. */
+	public static final String HMAC_ALGORITHM = "HmacSHA256";
+
+	/** The string used to derive the signing key from the private key, so that tokens can never be mistaken for anything else signed with the same key. */
+	private static final String KEY_PURPOSE = "session-token:";
+
+	/** The number of random bytes in a generated private key. */
+	private static final int PRIVATE_KEY_LENGTH = 32;
+
+	/** The source of generated private keys. */
+	private static final SecureRandom RANDOM = new SecureRandom();
+
+	/** The MAC of each thread, as MAC instances are not thread-safe. */
+	private final ThreadLocal<Mac> macs;
+
+	/** The epoch covered by the signatures of valid tokens. */
+	private final AtomicLong epoch;
+
+	/** @return The epoch covered by the signatures of valid tokens. */
+	public long getEpoch() {
+		return epoch.get();
+	}
+
+	/**
+	 * Generates a random private key, for use by a single server. Tokens signed with the key cannot be verified by other servers, or after a restart.
+	 * @return A new private key.
+	 */
+	public static String generatePrivateKey() {
+		final byte[] bytes = new byte[PRIVATE_KEY_LENGTH];
+		RANDOM.nextBytes(bytes);
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	/**
+	 * Private key constructor with an initial epoch of zero.
+	 * @param privateKey The private key with which tokens are signed, which must be shared by all servers verifying the tokens.
+	 * @throws NullPointerException if the given private key is <code>null</code>.
+	 * @throws IllegalStateException if the {@value #HMAC_ALGORITHM} algorithm is not supported.
+	 */
+	public SessionTokenSigner(final String privateKey) {
+		this(privateKey, 0);
+	}
+
+	/**
+	 * Constructor.
+	 * @param privateKey The private key with which tokens are signed, which must be shared by all servers verifying the tokens.
+	 * @param epoch The initial epoch, which must be shared by all servers verifying the tokens.
+	 * @throws NullPointerException if the given private key is <code>null</code>.
+	 * @throws IllegalStateException if the {@value #HMAC_ALGORITHM} algorithm is not supported.
+	 */
+	public SessionTokenSigner(final String privateKey, final long epoch) {
+		this.epoch = new AtomicLong(epoch);
+		final SecretKeySpec key = new SecretKeySpec((KEY_PURPOSE + requireNonNull(privateKey)).getBytes(UTF_8), HMAC_ALGORITHM);
+		createMac(key); //make sure the algorithm is supported now rather than on the first request
+		this.macs = ThreadLocal.withInitial(() -> createMac(key));
+	}
+
+	/**
+	 * Creates a MAC for signing tokens.
+	 * @param key The key of the MAC.
+	 * @return A new MAC initialized with the key.
+	 * @throws IllegalStateException if the {@value #HMAC_ALGORITHM} algorithm is not supported.
+	 */
+	private static Mac createMac(final SecretKeySpec key) {
+		try {
+			final Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch(final NoSuchAlgorithmException | InvalidKeyException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	/**
+	 * Revokes all tokens issued so far by advancing the epoch.
+	 * @return The new epoch.
+	 */
+	public long revokeAll() {
+		return epoch.incrementAndGet();
+	}
+
+	/**
+	 * Signs the payload of a token.
+	 * @param payload The bytes of the token payload.
+	 * @return The HMAC of the current epoch and the payload.
+	 */
+	private byte[] sign(final byte[] payload) {
+		final Mac mac = macs.get();
+		mac.update(ByteBuffer.allocate(Long.BYTES).putLong(epoch.get()).array());
+		return mac.doFinal(payload);
+	}
+
+	/**
+	 * Creates a signed token.
+	 * @param principalID The ID of the authenticated principal.
+	 * @param realm The realm in which the principal authenticated.
+	 * @param expiration The time at which the token expires, in milliseconds since the epoch.
+	 * @return The string form of the signed token.
+	 * @throws NullPointerException if the given principal ID and/or realm is <code>null</code>.
+	 */
+	public String createToken(final String principalID, final String realm, final long expiration) {
+		final byte[] payload = (Long.toString(expiration) + '\n' + requireNonNull(principalID) + '\n' + requireNonNull(realm)).getBytes(UTF_8);
+		final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString(payload) + '.' + encoder.encodeToString(sign(payload));
+	}
+
+	/**
+	 * Verifies the signature and expiration of a token.
+	 * @param token The string form of the token.
+	 * @return The verified token, or <code>null</code> if the token is not signed with this signer's private key in the current epoch, or has expired.
+	 */
+	public Token verify(final String token) {
+		final int separatorIndex = token.indexOf('.');
+		if(separatorIndex < 0) {
+			return null;
+		}
+		final byte[] payload;
+		final byte[] signature;
+		try {
+			final Base64.Decoder decoder = Base64.getUrlDecoder();
+			payload = decoder.decode(token.substring(0, separatorIndex));
+			signature = decoder.decode(token.substring(separatorIndex + 1));
+		} catch(final IllegalArgumentException illegalArgumentException) {
+			return null;
+		}
+		if(!MessageDigest.isEqual(sign(payload), signature)) { //compare in constant time
+			return null;
+		}
+		final String[] fields = new String(payload, UTF_8).split("\n", -1);
+		if(fields.length != 3) {
+			return null;
+		}
+		final long expiration;
+		try {
+			expiration = Long.parseLong(fields[0]);
+		} catch(final NumberFormatException numberFormatException) {
+			return null;
+		}
+		if(System.currentTimeMillis() >= expiration) {
+			return null;
+		}
+		return new Token(fields[1], fields[2], expiration);
+	}
+
+	/**
+	 * A verified session token.
+	 * @author Garret Wilson
+	 */
+	public static class Token {
+
+		private final String principalID;
+
+		/** @return The ID of the authenticated principal. */
+		public String getPrincipalID() {
+			return principalID;
+		}
+
+		private final String realm;
+
+		/** @return The realm in which the principal authenticated. */
+		public String getRealm() {
+			return realm;
+		}
+
+		private final long expiration;
+
+		/** @return The time at which the token expires, in milliseconds since the epoch. */
+		public long getExpiration() {
+			return expiration;
+		}
+
+		/**
+		 * Constructor.
+		 * @param principalID The ID of the authenticated principal.
+		 * @param realm The realm in which the principal authenticated.
+		 * @param expiration The time at which the token expires, in milliseconds since the epoch.
+		 */
+		private Token(final String principalID, final String realm, final long expiration) {
+			this.principalID = principalID;
+			this.realm = realm;
+			this.expiration = expiration;
+		}
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.io.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.*;
+
+/**
+ * Coalesces concurrent loads of the same value, so that when several threads miss a cache for the same key at the same time, only one of them performs the
+ * load and the others wait for its result. A load is only shared while it is in flight; once it completes, the next load of the key starts afresh. This is
+ * useful when the result is then placed in a cache.
+ * <p>
+ * If the load fails, the same exception is thrown to every thread waiting for it, so that failures such as HTTP exceptions keep their type; the stack trace of
+ * each waiting thread is added to the exception as a suppressed exception. Waiting threads give up after a timeout, while the thread performing the load
+ * continues.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @param <K> The type of key identifying a value.
+ * @param <V> The type of value loaded.
+ * @author Garret Wilson
+ */
+public class SingleFlight<K, V> {
+
+	/** The default number of milliseconds to wait for an in-flight load. */
+	public static final long DEFAULT_TIMEOUT = 30 * 1000;
+
+	/** The loads in flight, keyed to the key of the value being loaded. */
+	private final ConcurrentMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<K, CompletableFuture<V>>();
+
+	private final long timeout;
+
+	/** @return The number of milliseconds to wait for an in-flight load. */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/** The number of loads performed. */
+	private final AtomicLong loadCount = new AtomicLong(0);
+
+	/** @return The number of loads performed. */
+	public long getLoadCount() {
+		return loadCount.get();
+	}
+
+	/** The number of times a thread waited for a load already in flight rather than loading the value itself. */
+	private final AtomicLong coalescedCount = new AtomicLong(0);
+
+	/** @return The number of times a thread waited for a load already in flight rather than loading the value itself. */
+	public long getCoalescedCount() {
+		return coalescedCount.get();
+	}
+
+	/** The number of times a waiting thread gave up because the load took too long. */
+	private final AtomicLong timeoutCount = new AtomicLong(0);
+
+	/** @return The number of times a waiting thread gave up because the load took too long. */
+	public long getTimeoutCount() {
+		return timeoutCount.get();
+	}
+
+	/** The number of loads that failed. */
+	private final AtomicLong failureCount = new AtomicLong(0);
+
+	/** @return The number of loads that failed. */
+	public long getFailureCount() {
+		return failureCount.get();
+	}
+
+	/** Default constructor with a timeout of {@value #DEFAULT_TIMEOUT} milliseconds. */
+	public SingleFlight() {
+		this(DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Timeout constructor.
+	 * @param timeout The number of milliseconds to wait for an in-flight load.
+	 * @throws IllegalArgumentException if the given timeout is negative.
+	 */
+	public SingleFlight(final long timeout) {
+		if(timeout < 0) {
+			throw new IllegalArgumentException("Invalid timeout " + timeout + ".");
+		}
+		this.timeout = timeout;
+	}
+
+	/** @return The number of loads currently in flight. */
+	public int getInFlightCount() {
+		return flights.size();
+	}
+
+	/**
+	 * Loads a value, or waits for the value being loaded if a load for the same key is already in flight. The load is performed in the calling thread.
+	 * @param key The key identifying the value.
+	 * @param loader The strategy for loading the value if no load is in flight.
+	 * @return The loaded value.
+	 * @throws NullPointerException if the given key and/or loader is <code>null</code>.
+	 * @throws InterruptedIOException if the wait for a load in flight timed out or was interrupted.
+	 * @throws IOException if the load failed, whether performed in this thread or another; a failure in another thread is rethrown as is.
+	 */
+	public V load(final K key, final Loader<V> loader) throws IOException {
+		requireNonNull(loader);
+		final CompletableFuture<V> flight = new CompletableFuture<V>();
+		final CompletableFuture<V> existingFlight = flights.putIfAbsent(requireNonNull(key), flight);
+		if(existingFlight != null) { //if someone else is already loading this value, wait for them
+			coalescedCount.incrementAndGet();
+			return await(key, existingFlight);
+		}
+		loadCount.incrementAndGet();
+		try {
+			final V value = loader.load();
+			flight.complete(value);
+			return value;
+		} catch(final IOException | RuntimeException | Error throwable) {
+			failureCount.incrementAndGet();
+			flight.completeExceptionally(throwable);
+			throw throwable;
+		} finally {
+			flights.remove(key, flight); //the next load will start afresh
+		}
+	}
+
+	/**
+	 * Waits for a load in flight.
+	 * @param key The key identifying the value.
+	 * @param flight The load in flight.
+	 * @return The loaded value.
+	 * @throws InterruptedIOException if the wait timed out or was interrupted.
+	 * @throws IOException if the load failed with an I/O exception, which is rethrown.
+	 * @throws RuntimeException if the load failed with an unchecked exception, which is rethrown.
+	 */
+	private V await(final K key, final CompletableFuture<V> flight) throws IOException {
+		try {
+			return flight.get(timeout, TimeUnit.MILLISECONDS);
+		} catch(final TimeoutException timeoutException) {
+			timeoutCount.incrementAndGet();
+			throw new InterruptedIOException("Timed out after " + timeout + "ms waiting for " + key + " to load.");
+		} catch(final InterruptedException interruptedException) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + key + " to load.");
+		} catch(final ExecutionException executionException) { //rethrow the failure itself, so that callers can respond to its type
+			final Throwable cause = executionException.getCause();
+			cause.addSuppressed(new IOException("Waited for " + key + " to load.")); //record where this thread was waiting
+			if(cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+			if(cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+			if(cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IOException("Loading " + key + " failed.", cause);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "loads: " + getLoadCount() + ", coalesced: " + getCoalescedCount() + ", timeouts: " + getTimeoutCount() + ", failures: " + getFailureCount();
+	}
+
+	/**
+	 * The strategy for loading a value.
+	 * @param <V> The type of value loaded.
+	 * @author Garret Wilson
+	 */
+	@FunctionalInterface
+	public interface Loader<V> {
+
+		/**
+		 * Loads a value.
+		 * @return The loaded value.
+		 * @throws IOException if there is an error loading the value.
+		 */
+		public V load() throws IOException;
+	}
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import static java.util.Objects.*;
+
+/**
+ * A bounded cache in which each value expires after its own maximum age. When the cache is full, the least recently used value is discarded. Values that
+ * indicate the absence of something, such as an empty {@link Optional}, may be cached as well, usually with a shorter maximum age.
+ * <p>
+ * Lookups take no lock; each only records the time it accessed a value. When a value is added to a full cache, expired values are removed and then the least
+ * recently used values, down to {@value #TRIM_PERCENT} percent below the maximum size, so that the cost of finding them is shared among many additions. The
+ * maximum size may briefly be exceeded while other threads are trimming the cache.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @param <K> The type of key.
+ * @param <V> The type of value cached.
+ * @author Garret Wilson
+ */
+public class TimedCache<K, V> {
+
+	/** The percentage of the maximum size by which the cache is reduced below the maximum size when it is trimmed. */
+	private static final int TRIM_PERCENT = 10;
+
+	private final int maxSize;
+
+	/** @return The maximum number of values cached. */
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	/** The number of values the cache is reduced to when it is trimmed. */
+	private final int trimSize;
+
+	/** The cached values, their expiration times, and their last access times. */
+	private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<K, Entry<V>>();
+
+	/** The lock allowing only one thread at a time to trim the cache. */
+	private final ReentrantLock trimLock = new ReentrantLock();
+
+	/** The number of lookups that found an unexpired value. */
+	private final AtomicLong hitCount = new AtomicLong(0);
+
+	/** @return The number of lookups that found an unexpired value. */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/** The number of lookups that found no value or an expired value. */
+	private final AtomicLong missCount = new AtomicLong(0);
+
+	/** @return The number of lookups that found no value or an expired value. */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/** The number of values discarded because the cache was full. */
+	private final AtomicLong evictionCount = new AtomicLong(0);
+
+	/** @return The number of values discarded because the cache was full. */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	/**
+	 * Constructor.
+	 * @param maxSize The maximum number of values cached.
+	 * @throws IllegalArgumentException if the given maximum size is not positive.
+	 */
+	public TimedCache(final int maxSize) {
+		if(maxSize <= 0) {
+			throw new IllegalArgumentException("Invalid maximum cache size " + maxSize + ".");
+		}
+		this.maxSize = maxSize;
+		this.trimSize = maxSize - maxSize * TRIM_PERCENT / 100;
+	}
+
+	/** @return The number of values cached, some of which may have expired. */
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Retrieves a cached value that has not expired.
+	 * @param key The key of the value.
+	 * @return The cached value, or <code>null</code> if no value is cached or the value has expired.
+	 */
+	public V get(final K key) {
+		final Entry<V> entry = entries.get(key);
+		if(entry != null) {
+			final long now = System.currentTimeMillis();
+			if(now < entry.expiration) {
+				entry.accessTime = now;
+				hitCount.incrementAndGet();
+				return entry.value;
+			}
+			entries.remove(key, entry);
+		}
+		missCount.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches a value.
+	 * @param key The key of the value.
+	 * @param value The value to cache.
+	 * @param maxAge The number of milliseconds after which the value expires.
+	 * @throws NullPointerException if the given key and/or value is <code>null</code>.
+	 */
+	public void put(final K key, final V value, final long maxAge) {
+		final long now = System.currentTimeMillis();
+		entries.put(requireNonNull(key), new Entry<V>(requireNonNull(value), now + maxAge, now));
+		if(entries.size() > maxSize) {
+			trim();
+		}
+	}
+
+	/**
+	 * Removes expired values and then the least recently used values until the cache is below its maximum size. If another thread is already trimming the
+	 * cache, this method returns immediately.
+	 */
+	private void trim() {
+		if(!trimLock.tryLock()) {
+			return;
+		}
+		try {
+			final long now = System.currentTimeMillis();
+			entries.values().removeIf(entry -> now >= entry.expiration);
+			final int excessCount = entries.size() - trimSize;
+			if(excessCount > 0) {
+				final List<Map.Entry<K, Entry<V>>> leastRecentlyUsed = new ArrayList<Map.Entry<K, Entry<V>>>(entries.entrySet());
+				leastRecentlyUsed.sort(Comparator.comparingLong(mapEntry -> mapEntry.getValue().accessTime));
+				for(final Map.Entry<K, Entry<V>> mapEntry : leastRecentlyUsed.subList(0, Math.min(excessCount, leastRecentlyUsed.size()))) {
+					if(entries.remove(mapEntry.getKey(), mapEntry.getValue())) {
+						evictionCount.incrementAndGet();
+					}
+				}
+			}
+		} finally {
+			trimLock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a value from the cache.
+	 * @param key The key of the value.
+	 */
+	public void invalidate(final K key) {
+		entries.remove(key);
+	}
+
+	/**
+	 * Removes the values with matching keys from the cache.
+	 * @param keyPredicate The predicate determining which keys to remove.
+	 */
+	public void invalidateIf(final Predicate<? super K> keyPredicate) {
+		entries.keySet().removeIf(keyPredicate);
+	}
+
+	/** Removes all values from the cache. */
+	public void invalidateAll() {
+		entries.clear();
+	}
+
+	@Override
+	public String toString() {
+		return "size: " + size() + "/" + getMaxSize() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + ", evictions: " + getEvictionCount();
+	}
+
+	/**
+	 * A cached value, its expiration time, and the time it was last accessed.
+	 * @param <V> The type of value cached.
+	 * @author Garret Wilson
+	 */
+	private static class Entry<V> {
+
+		/** The cached value. */
+		private final V value;
+
+		/** The time at which the value expires, in milliseconds since the epoch. */
+		private final long expiration;
+
+		/** The time at which the value was last accessed, in milliseconds since the epoch. */
+		private volatile long accessTime;
+
+		/**
+		 * Constructor.
+		 * @param value The cached value.
+		 * @param expiration The time at which the value expires, in milliseconds since the epoch.
+		 * @param accessTime The time at which the value was last accessed, in milliseconds since the epoch.
+		 */
+		private Entry(final V value, final long expiration, final long accessTime) {
+			this.value = value;
+			this.expiration = expiration;
+			this.accessTime = accessTime;
+		}
+	}
+
+}
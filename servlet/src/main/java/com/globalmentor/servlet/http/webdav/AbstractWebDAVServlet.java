@@ -19,9 +19,14 @@
 import java.io.*;
 import java.net.*;
 import java.security.Principal;
+import java.time.*;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 
 import javax.servlet.*;
+import javax.xml.XMLConstants;
 import javax.servlet.http.*;
 
 import com.globalmentor.collections.DecoratorIDedMappedList;
@@ -31,9 +36,12 @@
 
 import static com.globalmentor.net.HTTP.*;
 import static com.globalmentor.net.http.webdav.WebDAV.*;
+import static com.globalmentor.servlet.Servlets.*;
 import static com.globalmentor.servlet.http.HTTPServlets.*;
 
 import com.globalmentor.servlet.http.AbstractHTTPServlet;
+import com.globalmentor.servlet.http.HTTPMetrics;
+import com.globalmentor.servlet.http.SingleFlight;
 import com.globalmentor.xml.XmlDom;
 
 import org.w3c.dom.*;
@@ -41,15 +49,236 @@
 
 /**
  * The base servlet class for implementing a WebDAV server as defined by <a href="https://www.ietf.org/rfc/rfc2518.txt">RFC 2518</a>, "HTTP Extensions for
- * Distributed Authoring -- WEBDAV".
+ * Distributed Authoring -- WEBDAV". This servlet supports the following initialization parameters in addition to those of its parent classes:
+ * <dl>
+ * <dt>{@value #PROPFIND_CACHE_INIT_PARAMETER}</dt>
+ * <dd>Whether PROPFIND responses and live properties are cached; should be "true" or "false". Should only be enabled if the properties returned do not depend
+ * on the request, such as on the authenticated principal.</dd>
+ * <dt>{@value #PROPFIND_CACHE_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of PROPFIND responses to cache; live properties are cached for up to ten times as many resources.</dd>
+ * <dt>{@value #LOCKING_INIT_PARAMETER}</dt>
+ * <dd>Whether WebDAV LOCK and UNLOCK are supported using in-memory write locks; should be "true" or "false". Defaults to "true".</dd>
+ * <dt>{@value #BATCH_INIT_PARAMETER}</dt>
+ * <dd>Whether the {@value #BATCH_METHOD} method is supported for performing multiple MKCOL, PUT, and DELETE operations within a collection in a single
+ * request; should be "true" or "false".</dd>
+ * <dt>{@value #BATCH_PARALLELISM_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of batch operations performed concurrently across all batch requests.</dd>
+ * <dt>{@value #BATCH_MAX_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The maximum size in bytes of a batch request body.</dd>
+ * <dt>{@value #BATCH_MAX_OPERATIONS_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of operations in a single batch request.</dd>
+ * </dl>
  * @author Garret Wilson
  */
 public abstract class AbstractWebDAVServlet<R extends Resource> extends AbstractHTTPServlet<R> { //TODO address http://lists.w3.org/Archives/Public/w3c-dist-auth/1999OctDec/0343.html
 
 	private static final long serialVersionUID = 8486813460771286083L;
 
+	/** The init parameter, {@value #PROPFIND_CACHE_INIT_PARAMETER}, used to specify whether PROPFIND results are cached; should be "true" or "false". */
+	public static final String PROPFIND_CACHE_INIT_PARAMETER = "propfindCache";
+
+	/** The init parameter, {@value #PROPFIND_CACHE_SIZE_INIT_PARAMETER}, used to specify the maximum number of cached PROPFIND responses. */
+	public static final String PROPFIND_CACHE_SIZE_INIT_PARAMETER = "propfindCacheSize";
+
+	/** The default maximum number of cached PROPFIND responses. */
+	public static final int DEFAULT_PROPFIND_CACHE_SIZE = 1000;
+
+	/** The init parameter, {@value #SYNC_COLLECTION_INIT_PARAMETER}, used to specify whether changes are journaled for collection synchronization. */
+	public static final String SYNC_COLLECTION_INIT_PARAMETER = "syncCollection";
+
+	/** The init parameter, {@value #SYNC_JOURNAL_SIZE_INIT_PARAMETER}, used to specify the maximum number of changes retained for synchronization. */
+	public static final String SYNC_JOURNAL_SIZE_INIT_PARAMETER = "syncJournalSize";
+
+	/** The default maximum number of changes retained for synchronization. */
+	public static final int DEFAULT_SYNC_JOURNAL_SIZE = 10000;
+
+	/** The init parameter, {@value #LOCKING_INIT_PARAMETER}, used to specify whether WebDAV locking is supported; should be "true" or "false". */
+	public static final String LOCKING_INIT_PARAMETER = "locking";
+
+	/** The init parameter, {@value #BATCH_INIT_PARAMETER}, used to specify whether batch requests are supported; should be "true" or "false". */
+	public static final String BATCH_INIT_PARAMETER = "batch";
+
+	/** The init parameter, {@value #BATCH_PARALLELISM_INIT_PARAMETER}, used to specify the maximum number of batch operations performed concurrently. */
+	public static final String BATCH_PARALLELISM_INIT_PARAMETER = "batchParallelism";
+
+	/** The default maximum number of batch operations performed concurrently. */
+	public static final int DEFAULT_BATCH_PARALLELISM = 4;
+
+	/** The init parameter, {@value #BATCH_MAX_SIZE_INIT_PARAMETER}, used to specify the maximum size in bytes of a batch request body. */
+	public static final String BATCH_MAX_SIZE_INIT_PARAMETER = "batchMaxSize";
+
+	/** The default maximum size in bytes of a batch request body. */
+	public static final long DEFAULT_BATCH_MAX_SIZE = 64 * 1024 * 1024;
+
+	/** The init parameter, {@value #BATCH_MAX_OPERATIONS_INIT_PARAMETER}, used to specify the maximum number of operations in a batch request. */
+	public static final String BATCH_MAX_OPERATIONS_INIT_PARAMETER = "batchMaxOperations";
+
+	/** The default maximum number of operations in a batch request. */
+	public static final int DEFAULT_BATCH_MAX_OPERATIONS = 10000;
+
+	/** The method for performing a batch of operations on a collection. */
+	public static final String BATCH_METHOD = "BATCH";
+
+	/** The WebDAV <code>If</code> header. */
+	private static final String IF_HEADER = "If";
+
+	/** The WebDAV <code>Lock-Token</code> header. */
+	private static final String LOCK_TOKEN_HEADER = "Lock-Token";
+
+	/** The WebDAV <code>Timeout</code> header. */
+	private static final String TIMEOUT_HEADER = "Timeout";
+
+	/** The status code indicating that a resource is locked, defined by RFC 4918 11.3. */
+	private static final int SC_LOCKED = 423;
+
+	/** The REPORT method defined by RFC 3253. */
+	private static final String REPORT_METHOD = "REPORT";
+
+	/** The prefix of the opaque sync token URIs, followed by the journal epoch and sequence number. */
+	private static final String SYNC_TOKEN_PREFIX = "urn:globalmentor:sync:";
+
+	/** The WebDAV namespace. */
+	private static final String DAV_NAMESPACE = "DAV:";
+
+	/** The prefix used for live properties in the WebDAV namespace. */
+	private static final String DAV_NAMESPACE_PREFIX = "D";
+
+	/** The format for the <code>getlastmodified</code> property, an RFC 1123 date as required by RFC 2518 13.7. */
+	private static final DateTimeFormatter HTTP_DATE_FORMATTER = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+			.withZone(ZoneOffset.UTC);
+
+	/** The cached live properties, keyed to resource URIs, or <code>null</code> if PROPFIND caching is not enabled. */
+	private PathCache<URI, LiveProperties> livePropertiesCache = null;
+
+	/** The cached serialized multistatus responses, keyed to the collection, depth, and requested properties; or <code>null</code> if caching is not enabled. */
+	private PathCache<String, PropFindCacheEntry> propFindCache = null;
+
+	/** The number of live property lookups found in the cache. */
+	private final LongAdder livePropertiesCacheHitCount = new LongAdder();
+
+	/** The number of live property lookups not found in the cache or out of date. */
+	private final LongAdder livePropertiesCacheMissCount = new LongAdder();
+
+	/** The number of PROPFIND responses served from the cache. */
+	private final LongAdder propFindCacheHitCount = new LongAdder();
+
+	/** The number of cacheable PROPFIND responses not found in the cache or out of date. */
+	private final LongAdder propFindCacheMissCount = new LongAdder();
+
+	/** A counter updated on every invalidation, so that responses generated concurrently with a change will not be cached. */
+	private final AtomicLong propFindCacheGeneration = new AtomicLong(0);
+
+	/** The cacheable PROPFIND responses being generated, so that concurrent requests for the same uncached listing generate it only once. */
+	private SingleFlight<String, byte[]> propFindLoads = new SingleFlight<String, byte[]>();
+
+	/** @return The cacheable PROPFIND responses being generated, along with statistics about coalesced generation. */
+	protected SingleFlight<String, byte[]> getPropFindLoads() {
+		return propFindLoads;
+	}
+
+	/** The journal of changes for collection synchronization, or <code>null</code> if collection synchronization is not enabled. */
+	private ChangeJournal changeJournal = null;
+
+	/** @return The journal of changes for collection synchronization, or <code>null</code> if collection synchronization is not enabled. */
+	protected ChangeJournal getChangeJournal() {
+		return changeJournal;
+	}
+
+	/** The manager of WebDAV locks, or <code>null</code> if locking is not enabled. */
+	private WebDAVLockManager lockManager = null;
+
+	/** @return The manager of WebDAV locks, or <code>null</code> if locking is not enabled. */
+	protected WebDAVLockManager getLockManager() {
+		return lockManager;
+	}
+
+	/** The executor performing batch operations, or <code>null</code> if batch requests are not enabled. */
+	private ExecutorService batchExecutor = null;
+
+	/** The maximum size in bytes of a batch request body. */
+	private long batchMaxSize = DEFAULT_BATCH_MAX_SIZE;
+
+	/** The maximum number of operations in a batch request. */
+	private int batchMaxOperations = DEFAULT_BATCH_MAX_OPERATIONS;
+
 	/**
-	 * Services an HTTP request based upon its method. This version provides support for WebDAV methods.
+	 * Initializes the servlet. This version configures PROPFIND caching, the change journal for collection synchronization, locking, and batch requests.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if there is a problem initializing.
+	 */
+	@Override
+	public void initialize(final ServletConfig servletConfig) throws ServletException, IllegalArgumentException, IllegalStateException {
+		super.initialize(servletConfig);
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, PROPFIND_CACHE_INIT_PARAMETER))) { //if PROPFIND caching is requested
+			final Long propFindCacheSize = getLongInitParameter(servletConfig, PROPFIND_CACHE_SIZE_INIT_PARAMETER);
+			final int maxEntries = propFindCacheSize != null ? propFindCacheSize.intValue() : DEFAULT_PROPFIND_CACHE_SIZE;
+			livePropertiesCache = new PathCache<URI, LiveProperties>(maxEntries * 10); //a single collection listing may hold many resources
+			propFindCache = new PathCache<String, PropFindCacheEntry>(maxEntries);
+			propFindLoads = new SingleFlight<String, byte[]>(getLoadTimeout());
+		}
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, SYNC_COLLECTION_INIT_PARAMETER))) { //if collection synchronization is requested
+			final Long syncJournalSize = getLongInitParameter(servletConfig, SYNC_JOURNAL_SIZE_INIT_PARAMETER);
+			changeJournal = new ChangeJournal(syncJournalSize != null ? syncJournalSize.intValue() : DEFAULT_SYNC_JOURNAL_SIZE);
+		}
+		if(!Boolean.FALSE.equals(getBooleanInitParameter(servletConfig, LOCKING_INIT_PARAMETER))) { //locking is enabled unless turned off
+			lockManager = new WebDAVLockManager();
+			lockManager.start();
+		}
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, BATCH_INIT_PARAMETER))) { //if batch requests are enabled
+			final Long batchParallelism = getLongInitParameter(servletConfig, BATCH_PARALLELISM_INIT_PARAMETER);
+			final Long batchMaxSize = getLongInitParameter(servletConfig, BATCH_MAX_SIZE_INIT_PARAMETER);
+			final Long batchMaxOperations = getLongInitParameter(servletConfig, BATCH_MAX_OPERATIONS_INIT_PARAMETER);
+			this.batchMaxSize = batchMaxSize != null ? batchMaxSize.longValue() : DEFAULT_BATCH_MAX_SIZE;
+			this.batchMaxOperations = batchMaxOperations != null ? batchMaxOperations.intValue() : DEFAULT_BATCH_MAX_OPERATIONS;
+			batchExecutor = Executors.newFixedThreadPool(batchParallelism != null ? batchParallelism.intValue() : DEFAULT_BATCH_PARALLELISM, runnable -> {
+				final Thread thread = new Thread(runnable, getClass().getSimpleName() + "-batch");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This version adds the statistics of the PROPFIND caches and of coalesced PROPFIND generation, if PROPFIND caching is enabled.
+	 */
+	@Override
+	protected void registerMetrics(final HTTPMetrics metrics) {
+		super.registerMetrics(metrics);
+		final PathCache<URI, LiveProperties> livePropertiesCache = this.livePropertiesCache;
+		if(livePropertiesCache != null) {
+			metrics.addGauge("livePropertiesCache.hits", livePropertiesCacheHitCount::sum);
+			metrics.addGauge("livePropertiesCache.misses", livePropertiesCacheMissCount::sum);
+			metrics.addGauge("livePropertiesCache.size", livePropertiesCache::size);
+		}
+		final PathCache<String, PropFindCacheEntry> propFindCache = this.propFindCache;
+		if(propFindCache != null) {
+			metrics.addGauge("propFindCache.hits", propFindCacheHitCount::sum);
+			metrics.addGauge("propFindCache.misses", propFindCacheMissCount::sum);
+			metrics.addGauge("propFindCache.size", propFindCache::size);
+			metrics.addGauge("propFindLoads.coalesced", () -> getPropFindLoads().getCoalescedCount());
+		}
+	}
+
+	/** {@inheritDoc} This version stops expiring locks and stops performing batch operations. */
+	@Override
+	public void destroy() {
+		if(propFindCache != null) {
+			getLogger().debug("PROPFIND generation for servlet {}: {}.", getServletConfig().getServletName(), getPropFindLoads());
+		}
+		final WebDAVLockManager lockManager = this.lockManager;
+		if(lockManager != null) {
+			lockManager.stop();
+		}
+		final ExecutorService batchExecutor = this.batchExecutor;
+		if(batchExecutor != null) {
+			batchExecutor.shutdownNow();
+		}
+		super.destroy();
+	}
+
+	/**
+	 * Services an HTTP request based upon its method. This version makes sure locks allow the request before the WebDAV methods registered in
+	 * {@link #registerMethodHandlers(Map)} are dispatched.
 	 * @param method The HTTP method being serviced.
 	 * @param request The HTTP request.
 	 * @param response The HTTP response.
@@ -57,28 +286,32 @@
 	 * @throws IOException if there is an error reading or writing data.
 	 */
 	protected void doMethod(final String method, final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
-		final WebDAVMethod webdavMethod;
-		try {
-			webdavMethod = WebDAVMethod.valueOf(method); //see which WebDAV method was requested
-		} catch(final IllegalArgumentException illegalArgumentException) { //if we don't understand the method
-			super.doMethod(method, request, response); //do the default servicing
-			return; //don't process the method further
-		}
-		switch(webdavMethod) { //see which WebDAV method this is
-			case COPY:
-				doCopy(request, response); //delegate to the copy method
-				break;
-			case MOVE:
-				doMove(request, response); //delegate to the move method
-				break;
-			case MKCOL:
-				doMkCol(request, response); //delegate to the mkcol method
-				break;
-			case PROPFIND:
-				doPropFind(request, response); //delegate to the propfind method
-				break;
-			default:
-				super.doMethod(method, request, response); //do the default servicing if we don't service the method
+		if(getLockManager() != null && !(REPORT_METHOD.equals(method) && getChangeJournal() != null) && !(BATCH_METHOD.equals(method) && batchExecutor != null)) { //make sure locks and the If header allow the request, except for synchronization reports and batches
+			checkLocks(method, request);
+		}
+		super.doMethod(method, request, response); //dispatch to the registered method handler
+	}
+
+	/**
+	 * {@inheritDoc} This version registers the WebDAV methods COPY, MOVE, MKCOL, and PROPFIND; LOCK and UNLOCK if locking is enabled; REPORT if synchronization is
+	 * enabled; and BATCH if batches are enabled.
+	 */
+	@Override
+	protected void registerMethodHandlers(final Map<String, MethodHandler> methodHandlers) {
+		super.registerMethodHandlers(methodHandlers);
+		if(getLockManager() != null) {
+			methodHandlers.put(LOCK_METHOD, this::doLock);
+			methodHandlers.put(UNLOCK_METHOD, this::doUnlock);
+		}
+		methodHandlers.put(COPY_METHOD, this::doCopy);
+		methodHandlers.put(MOVE_METHOD, this::doMove);
+		methodHandlers.put(MKCOL_METHOD, this::doMkCol);
+		methodHandlers.put(PROPFIND_METHOD, this::doPropFind);
+		if(getChangeJournal() != null) { //REPORT is not a WebDAV method, and is only supported for collection synchronization
+			methodHandlers.put(REPORT_METHOD, this::doReport);
+		}
+		if(batchExecutor != null) { //BATCH is only supported if enabled
+			methodHandlers.put(BATCH_METHOD, this::doBatch);
 		}
 	}
 
@@ -105,22 +338,25 @@ public void doOptions(final HttpServletRequest request, final HttpServletRespons
 	public void doCopy(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
 		getLogger().trace("moving; checking to see if resource {} exists", resourceURI);
-		if(exists(request, resourceURI)) { //if this resource exists
+		if(existsCached(request, resourceURI)) { //if this resource exists
 			getLogger().trace("resource exists; getting resource");
-			final R resource = getResource(request, resourceURI); //get the resource information
+			final R resource = getResourceCached(request, resourceURI); //get the resource information
 			getLogger().trace("getting destination");
 			final URI requestedDestinationURI = getDestination(request); //get the destination URI for the operation
 			if(requestedDestinationURI != null) { //if a destination was given
 				getLogger().trace("requested destination: {}", requestedDestinationURI);
 				//get the canonical destination URI
-				final URI destinationURI = getResourceURI(request, requestedDestinationURI, request.getMethod(), resourceURI);
-				final boolean destinationExists = exists(request, destinationURI); //see whether the destination resource already exists
+				final URI destinationURI = getResourceURICached(request, requestedDestinationURI, request.getMethod(), resourceURI);
+				final boolean destinationExists = existsCached(request, destinationURI); //see whether the destination resource already exists
 				getLogger().trace("destination exists? {}", destinationExists);
 				final Depth depth = getDepth(request); //determine the requested depth
 				getLogger().trace("depth requested: {}", depth);
 				final boolean overwrite = isOverwrite(request); //see if we should overwrite an existing destination resource
 				getLogger().trace("is overwrite? {}", overwrite);
 				copyResource(request, resource, destinationURI, depth == Depth.INFINITY ? -1 : depth.ordinal(), overwrite); //copy the resource to its new location
+				final ResourceChange destinationChange = destinationExists ? ResourceChange.MODIFIED : ResourceChange.CREATED;
+				resourceChanged(request, destinationURI, destinationChange); //let caches and indexes know the destination changed
+				recordChanges(getDescendantJournalPaths(request, destinationURI), destinationChange); //synchronizing clients need to know what was copied
 				if(destinationExists) { //if the destination resource already existed
 					response.setStatus(HttpServletResponse.SC_NO_CONTENT); //indicate success by showing that there is no content to return
 					response.setContentLength(0); //TODO check; this seems to be needed---should we throw an HTTPException or set the response instead?
@@ -146,20 +382,26 @@ public void doCopy(final HttpServletRequest request, final HttpServletResponse r
 	public void doMove(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
 		getLogger().trace("moving; checking to see if resource {} exists", resourceURI);
-		if(exists(request, resourceURI)) { //if this resource exists
+		if(existsCached(request, resourceURI)) { //if this resource exists
 			getLogger().trace("resource exists; getting resource");
-			final R resource = getResource(request, resourceURI); //get the resource information
+			final R resource = getResourceCached(request, resourceURI); //get the resource information
 			getLogger().trace("getting destination");
 			final URI requestedDestinationURI = getDestination(request); //get the destination URI for the operation
 			if(requestedDestinationURI != null) { //if a destination was given
 				getLogger().trace("requested destination: {}", requestedDestinationURI);
 				//get the canonical destination URI
-				final URI destinationURI = getResourceURI(request, requestedDestinationURI, request.getMethod(), resourceURI);
-				final boolean destinationExists = exists(request, destinationURI); //see whether the destination resource already exists
+				final URI destinationURI = getResourceURICached(request, requestedDestinationURI, request.getMethod(), resourceURI);
+				final boolean destinationExists = existsCached(request, destinationURI); //see whether the destination resource already exists
 				getLogger().trace("destination exists? {}", destinationExists);
 				final boolean overwrite = isOverwrite(request); //see if we should overwrite an existing destination resource
 				getLogger().trace("is overwrite? {}", overwrite);
+				final List<String> movedPaths = getDescendantJournalPaths(request, resourceURI); //the source descendants can't be found after the move
 				moveResource(request, resource, destinationURI, overwrite); //move the resource to its new location
+				resourceChanged(request, resourceURI, ResourceChange.DELETED); //let caches and indexes know the source is gone
+				recordChanges(movedPaths, ResourceChange.DELETED);
+				final ResourceChange destinationChange = destinationExists ? ResourceChange.MODIFIED : ResourceChange.CREATED;
+				resourceChanged(request, destinationURI, destinationChange); //let caches and indexes know the destination changed
+				recordChanges(getDescendantJournalPaths(request, destinationURI), destinationChange); //synchronizing clients need to know what was moved
 				if(destinationExists) { //if the destination resource already existed
 					response.setStatus(HttpServletResponse.SC_NO_CONTENT); //indicate success by showing that there is no content to return
 					response.setContentLength(0); //TODO check; this seems to be needed---should we throw an HTTPException or set the response instead?
@@ -184,11 +426,12 @@ public void doMove(final HttpServletRequest request, final HttpServletResponse r
 	 */
 	public void doMkCol(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
-		final boolean exists = exists(request, resourceURI); //see whether the resource already exists
+		final boolean exists = existsCached(request, resourceURI); //see whether the resource already exists
 		final R resource; //we'll get the existing resource, if there is one
 		if(!exists) { //if the resource doesn't exist
 			try {
 				resource = createCollection(request, resourceURI); //create the resource
+				resourceChanged(request, resourceURI, ResourceChange.CREATED); //let caches and indexes know the collection was created
 			} catch(final IllegalArgumentException illegalArgumentException) { //if this is an invalid resource URI
 				throw new HTTPForbiddenException(illegalArgumentException); //forbid creation of resources with invalid URIs
 			}
@@ -197,6 +440,485 @@ public void doMkCol(final HttpServletRequest request, final HttpServletResponse
 		}
 	}
 
+	/**
+	 * Services the {@value #BATCH_METHOD} method, performing a series of MKCOL, PUT, and DELETE operations on resources within the requested collection and
+	 * reporting the status of each in a multistatus response. The request body is described by {@link BatchRequest}.
+	 * <p>
+	 * The batch request itself is authenticated normally; each operation is then authorized for the same principal on its own resource, however the principal
+	 * was authenticated. Each operation is performed using a {@link BatchOperationRequest} presenting its own method, content length, and content type.
+	 * Operations are performed in order, except that consecutive operations none of which affects the resource of another, or
+	 * any ancestor or descendant of it, are performed concurrently with bounded parallelism.
+	 * </p>
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 */
+	protected void doBatch(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
+		if(!existsCached(request, resourceURI) || !isCollectionCached(request, resourceURI)) { //batches are performed within an existing collection
+			throw new HTTPNotFoundException(resourceURI.toString());
+		}
+		final long contentLength = request.getContentLengthLong();
+		if(contentLength > batchMaxSize) {
+			throw new HTTPException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Batch exceeds " + batchMaxSize + " bytes.");
+		}
+		final ByteArrayOutputStream bodyOutputStream = new ByteArrayOutputStream(contentLength > 0 ? (int)contentLength : 8192);
+		try (final InputStream inputStream = request.getInputStream()) { //read the body, making sure it doesn't exceed the limit even if there was no content length
+			final byte[] buffer = new byte[8192];
+			int count;
+			while((count = inputStream.read(buffer)) >= 0) {
+				if(bodyOutputStream.size() + count > batchMaxSize) {
+					throw new HTTPException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Batch exceeds " + batchMaxSize + " bytes.");
+				}
+				bodyOutputStream.write(buffer, 0, count);
+			}
+		}
+		final WebDAVXMLGenerator webdavXMLGenerator = new WebDAVXMLGenerator(); //create a WebDAV XML generator
+		final BatchRequest batchRequest;
+		try {
+			batchRequest = BatchRequest.parse(bodyOutputStream.toByteArray(), request.getContentType(), webdavXMLGenerator.getDocumentBuilder());
+		} catch(final IllegalArgumentException illegalArgumentException) { //any problem with the batch is the client's fault
+			throw new HTTPBadRequestException(illegalArgumentException);
+		} catch(final SAXException saxException) {
+			throw new HTTPBadRequestException(saxException);
+		}
+		final List<BatchRequest.Operation> operations = batchRequest.getOperations();
+		if(operations.size() > batchMaxOperations) {
+			throw new HTTPException(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE, "Batch exceeds " + batchMaxOperations + " operations.");
+		}
+		final Principal principal = getAuthorizedPrincipal(request); //the principal was already authorized for the batch request itself
+		final String ifHeaderValue = request.getHeader(IF_HEADER);
+		final Set<String> tokens = ifHeaderValue != null ? parseIfHeader(ifHeaderValue, resourceURI).getStateTokens() : Collections.<String>emptySet();
+		final String collectionPath = getCollectionPath(resourceURI);
+		final URI[] operationURIs = new URI[operations.size()];
+		final int[] statuses = new int[operations.size()];
+		int segmentStart = 0;
+		while(segmentStart < operations.size()) { //perform each segment of independent operations concurrently, and the segments in order
+			int segmentEnd = segmentStart;
+			final List<String> segmentPaths = new ArrayList<String>();
+			while(segmentEnd < operations.size()) {
+				final BatchRequest.Operation operation = operations.get(segmentEnd);
+				URI operationURI;
+				try {
+					operationURI = resourceURI.resolve(new URI(operation.getHref()));
+				} catch(final URISyntaxException uriSyntaxException) {
+					operationURI = null;
+				}
+				if(operationURI != null) {
+					operationURI = getResourceURI(request, operationURI, operation.getMethod(), null); //get the canonical URI
+				}
+				if(operationURI == null || !Objects.equals(operationURI.getRawAuthority(), resourceURI.getRawAuthority())
+						|| !getCollectionPath(operationURI).startsWith(collectionPath) || getCollectionPath(operationURI).equals(collectionPath)) {
+					operationURIs[segmentEnd] = operationURI;
+					statuses[segmentEnd] = operationURI == null ? HttpServletResponse.SC_BAD_REQUEST : HttpServletResponse.SC_FORBIDDEN; //operations must be within the collection
+					++segmentEnd;
+					continue;
+				}
+				final String operationPath = getCollectionPath(operationURI);
+				boolean dependent = false;
+				for(final String segmentPath : segmentPaths) {
+					if(segmentPath.startsWith(operationPath) || operationPath.startsWith(segmentPath)) {
+						dependent = true;
+						break;
+					}
+				}
+				if(dependent) { //this operation must wait for the current segment to finish
+					break;
+				}
+				segmentPaths.add(operationPath);
+				operationURIs[segmentEnd] = operationURI;
+				++segmentEnd;
+			}
+			final List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+			final List<Integer> futureIndexes = new ArrayList<Integer>();
+			for(int i = segmentStart; i < segmentEnd; ++i) {
+				if(statuses[i] == 0) { //if the operation hasn't already been rejected
+					final BatchOperationRequest operationRequest = new BatchOperationRequest(request, operations.get(i)); //capture the request state on this thread
+					final URI operationURI = operationURIs[i];
+					futures.add(batchExecutor.submit(() -> performBatchOperation(operationRequest, operationURI, principal, tokens)));
+					futureIndexes.add(i);
+				}
+			}
+			for(int i = 0; i < futures.size(); ++i) {
+				try {
+					statuses[futureIndexes.get(i)] = futures.get(i).get();
+				} catch(final InterruptedException interruptedException) {
+					Thread.currentThread().interrupt();
+					throw new HTTPInternalServerErrorException(interruptedException);
+				} catch(final ExecutionException executionException) {
+					getLogger().error("Batch operation {} failed.", operations.get(futureIndexes.get(i)), executionException.getCause());
+					statuses[futureIndexes.get(i)] = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+				}
+			}
+			segmentStart = segmentEnd;
+		}
+		final Document multistatusDocument = webdavXMLGenerator.createMultistatusDocument(); //create a multistatus document
+		for(int i = 0; i < operations.size(); ++i) {
+			final Element responseElement = webdavXMLGenerator.addResponse(multistatusDocument.getDocumentElement());
+			if(operationURIs[i] != null) {
+				webdavXMLGenerator.addHref(responseElement, operationURIs[i]);
+			} else {
+				addLiveProperty(responseElement, "href", operations.get(i).getHref());
+			}
+			webdavXMLGenerator.addStatus(responseElement, getStatusLine(statuses[i]));
+		}
+		response.setStatus(SC_MULTI_STATUS); //show that we will be sending back multistatus content
+		setXML(request, response, multistatusDocument);
+	}
+
+	/**
+	 * Performs a single batch operation.
+	 * @param request The request for the operation to perform.
+	 * @param resourceURI The canonical URI of the resource on which the operation is performed.
+	 * @param principal The authorized principal, or <code>null</code> if the principal is not known.
+	 * @param tokens The lock tokens submitted with the batch.
+	 * @return The resulting HTTP status code.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	private int performBatchOperation(final BatchOperationRequest request, final URI resourceURI, final Principal principal, final Set<String> tokens)
+			throws IOException {
+		final BatchRequest.Operation operation = request.getOperation();
+		final String method = operation.getMethod();
+		try {
+			if(!isAuthorizedCached(request, resourceURI, method, principal, getRealm(resourceURI))) { //access to the collection doesn't imply access to its members
+				return HttpServletResponse.SC_FORBIDDEN;
+			}
+			final boolean exists = existsCached(request, resourceURI);
+			final WebDAVLockManager lockManager = getLockManager();
+			if(lockManager != null) {
+				final boolean isDelete = DELETE_METHOD.equals(method);
+				if(lockManager.findBlockingLock(getLockPath(resourceURI), tokens, isDelete || !exists, isDelete) != null) {
+					return SC_LOCKED;
+				}
+			}
+			if(MKCOL_METHOD.equals(method)) {
+				if(exists) {
+					return HttpServletResponse.SC_METHOD_NOT_ALLOWED;
+				}
+				createCollection(request, resourceURI);
+				resourceChanged(request, resourceURI, ResourceChange.CREATED);
+				return HttpServletResponse.SC_CREATED;
+			} else if(PUT_METHOD.equals(method)) {
+				try (final OutputStream outputStream = exists ? getOutputStream(request, getResource(request, resourceURI)) : createResource(request, resourceURI)) {
+					outputStream.write(operation.getContent());
+				}
+				resourceChanged(request, resourceURI, exists ? ResourceChange.MODIFIED : ResourceChange.CREATED);
+				return exists ? HttpServletResponse.SC_NO_CONTENT : HttpServletResponse.SC_CREATED;
+			} else { //DELETE
+				if(!exists) {
+					return HttpServletResponse.SC_NOT_FOUND;
+				}
+				deleteResource(request, getResource(request, resourceURI));
+				resourceChanged(request, resourceURI, ResourceChange.DELETED);
+				return HttpServletResponse.SC_NO_CONTENT;
+			}
+		} catch(final IllegalArgumentException illegalArgumentException) { //invalid resource URIs are forbidden
+			return HttpServletResponse.SC_FORBIDDEN;
+		} catch(final HTTPException httpException) {
+			return httpException.getStatusCode();
+		}
+	}
+
+	/**
+	 * Creates an HTTP status line for use in a multistatus response.
+	 * @param statusCode The HTTP status code.
+	 * @return A status line such as <code>HTTP/1.1 201 Created</code>.
+	 */
+	private static String getStatusLine(final int statusCode) {
+		final String reasonPhrase;
+		switch(statusCode) {
+			case HttpServletResponse.SC_CREATED:
+				reasonPhrase = "Created";
+				break;
+			case HttpServletResponse.SC_NO_CONTENT:
+				reasonPhrase = "No Content";
+				break;
+			case HttpServletResponse.SC_BAD_REQUEST:
+				reasonPhrase = "Bad Request";
+				break;
+			case HttpServletResponse.SC_FORBIDDEN:
+				reasonPhrase = "Forbidden";
+				break;
+			case HttpServletResponse.SC_NOT_FOUND:
+				reasonPhrase = "Not Found";
+				break;
+			case HttpServletResponse.SC_METHOD_NOT_ALLOWED:
+				reasonPhrase = "Method Not Allowed";
+				break;
+			case HttpServletResponse.SC_CONFLICT:
+				reasonPhrase = "Conflict";
+				break;
+			case SC_LOCKED:
+				reasonPhrase = "Locked";
+				break;
+			case HttpServletResponse.SC_INTERNAL_SERVER_ERROR:
+				reasonPhrase = "Internal Server Error";
+				break;
+			default:
+				reasonPhrase = "";
+		}
+		return "HTTP/1.1 " + statusCode + ' ' + reasonPhrase;
+	}
+
+	/**
+	 * Services the LOCK method defined by <a href="https://tools.ietf.org/html/rfc4918#section-9.10">RFC 4918 9.10</a>. Only write locks are supported. A request
+	 * with a body creates a new lock, creating an empty resource if the resource does not exist; a request with no body refreshes the lock identified in the
+	 * <code>If</code> header.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 * @see #getLockManager()
+	 */
+	protected void doLock(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
+		final WebDAVLockManager lockManager = getLockManager();
+		final String lockPath = getLockPath(resourceURI);
+		final long timeout = getTimeout(request);
+		final WebDAVXMLGenerator webdavXMLGenerator = new WebDAVXMLGenerator(); //create a WebDAV XML generator
+		final Document document;
+		try {
+			document = getXML(request, webdavXMLGenerator.getDocumentBuilder()); //get the XML from the request body
+		} catch(final DOMException domException) { //any XML problem here is the client's fault
+			throw new HTTPBadRequestException(domException);
+		} catch(final SAXException saxException) { //any XML problem here is the client's fault
+			throw new HTTPBadRequestException(saxException);
+		}
+		final WebDAVLockManager.Lock lock;
+		if(document == null) { //if there is no body, this is a lock refresh
+			final String ifHeaderValue = request.getHeader(IF_HEADER);
+			if(ifHeaderValue == null) {
+				throw new HTTPBadRequestException("Missing If header for lock refresh.");
+			}
+			WebDAVLockManager.Lock refreshedLock = null;
+			for(final String token : parseIfHeader(ifHeaderValue, resourceURI).getStateTokens()) {
+				if(lockManager.isLockedBy(lockPath, token)) {
+					refreshedLock = lockManager.refresh(token, timeout);
+					if(refreshedLock != null) {
+						break;
+					}
+				}
+			}
+			if(refreshedLock == null) {
+				throw new HTTPPreconditionFailedException("No lock to refresh for " + resourceURI + "."); //RFC 4918 9.10.2 DAV:lock-token-matches-request-uri
+			}
+			lock = refreshedLock;
+			response.setStatus(HttpServletResponse.SC_OK);
+		} else { //if there is a body, create a new lock
+			final Element lockInfoElement = document.getDocumentElement();
+			if(!DAV_NAMESPACE.equals(lockInfoElement.getNamespaceURI()) || !"lockinfo".equals(lockInfoElement.getLocalName())) {
+				throw new HTTPBadRequestException("Expected lockinfo but found " + lockInfoElement.getNodeName() + ".");
+			}
+			final Element lockScopeElement = getChildElement(lockInfoElement, "lockscope");
+			final Element lockTypeElement = getChildElement(lockInfoElement, "locktype");
+			if(lockScopeElement == null || lockTypeElement == null) {
+				throw new HTTPBadRequestException("Missing lockscope or locktype.");
+			}
+			final boolean exclusive = getChildElement(lockScopeElement, "exclusive") != null;
+			if(!exclusive && getChildElement(lockScopeElement, "shared") == null) {
+				throw new HTTPBadRequestException("Unrecognized lock scope.");
+			}
+			if(getChildElement(lockTypeElement, "write") == null) {
+				throw new HTTPBadRequestException("Only write locks are supported.");
+			}
+			final Depth depth = getDepth(request);
+			if(depth == Depth.ONE) { //RFC 4918 9.10.3
+				throw new HTTPBadRequestException("Lock depth must be 0 or infinity.");
+			}
+			final boolean exists = existsCached(request, resourceURI);
+			lock = lockManager.lock(lockPath, exclusive, depth == Depth.INFINITY, getChildElement(lockInfoElement, "owner"), timeout);
+			if(lock == null) {
+				throw new HTTPException(SC_LOCKED, "Resource " + resourceURI + " is already locked.");
+			}
+			if(!exists) { //lock an unmapped URL by creating an empty resource, RFC 4918 7.3
+				try {
+					createResource(request, resourceURI).close();
+				} catch(final IllegalArgumentException illegalArgumentException) { //if this is an invalid resource URI
+					lockManager.unlock(lockPath, lock.getToken());
+					throw new HTTPForbiddenException(illegalArgumentException);
+				} catch(final IOException ioException) {
+					lockManager.unlock(lockPath, lock.getToken());
+					throw ioException;
+				}
+				resourceChanged(request, resourceURI, ResourceChange.CREATED); //let caches and indexes know the resource was created
+				response.setStatus(HttpServletResponse.SC_CREATED);
+			} else {
+				invalidatePropFindCache(resourceURI); //the lock discovery information has changed
+				response.setStatus(HttpServletResponse.SC_OK);
+			}
+			response.setHeader(LOCK_TOKEN_HEADER, "<" + lock.getToken() + ">");
+		}
+		final Document lockDocument = webdavXMLGenerator.getDocumentBuilder().newDocument();
+		final Element propElement = lockDocument.createElementNS(DAV_NAMESPACE, DAV_NAMESPACE_PREFIX + ":prop");
+		propElement.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, XMLConstants.XMLNS_ATTRIBUTE + ':' + DAV_NAMESPACE_PREFIX, DAV_NAMESPACE);
+		lockDocument.appendChild(propElement);
+		addActiveLock(addLiveProperty(propElement, "lockdiscovery", null), resourceURI, lock);
+		setXML(request, response, lockDocument);
+	}
+
+	/**
+	 * Services the UNLOCK method defined by <a href="https://tools.ietf.org/html/rfc4918#section-9.11">RFC 4918 9.11</a>.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 * @see #getLockManager()
+	 */
+	protected void doUnlock(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
+		final String lockTokenHeaderValue = request.getHeader(LOCK_TOKEN_HEADER);
+		if(lockTokenHeaderValue == null) {
+			throw new HTTPBadRequestException("Missing Lock-Token header.");
+		}
+		String token = lockTokenHeaderValue.trim();
+		if(token.startsWith("<") && token.endsWith(">")) { //the token is a Coded-URL
+			token = token.substring(1, token.length() - 1);
+		}
+		if(!getLockManager().unlock(getLockPath(resourceURI), token)) {
+			throw new HTTPConflictException("Lock " + token + " does not apply to " + resourceURI + "."); //RFC 4918 9.11.1 DAV:lock-token-matches-request-uri
+		}
+		invalidatePropFindCache(resourceURI); //the lock discovery information has changed
+		response.setStatus(HttpServletResponse.SC_NO_CONTENT);
+	}
+
+	/**
+	 * Makes sure that a request modifying resources is permitted by the <code>If</code> header and by any existing locks, as described in
+	 * <a href="https://tools.ietf.org/html/rfc4918#section-7">RFC 4918 7</a>. The <code>If</code> header is evaluated for the requested resource and for any
+	 * destination resource; every lock applying to a resource being modified, including a lock on a parent collection the membership of which changes, must have
+	 * its token submitted in the <code>If</code> header. Requests that do not modify resources are not checked.
+	 * @param method The HTTP method being serviced.
+	 * @param request The HTTP request.
+	 * @throws HTTPBadRequestException if the <code>If</code> header is not valid.
+	 * @throws HTTPPreconditionFailedException if the <code>If</code> header evaluates to false.
+	 * @throws HTTPException with status 423 if a resource to be modified is locked.
+	 * @throws IOException if there is an error accessing the resources.
+	 */
+	protected void checkLocks(final String method, final HttpServletRequest request) throws IOException {
+		final boolean isCopy = COPY_METHOD.equals(method);
+		final boolean isMove = MOVE_METHOD.equals(method);
+		final boolean isDelete = DELETE_METHOD.equals(method);
+		final boolean isLock = LOCK_METHOD.equals(method);
+		if(!isCopy && !isMove && !isDelete && !isLock && !PUT_METHOD.equals(method) && !MKCOL_METHOD.equals(method)) { //only write methods are checked
+			return;
+		}
+		final WebDAVLockManager lockManager = getLockManager();
+		final String ifHeaderValue = request.getHeader(IF_HEADER);
+		if(ifHeaderValue == null && !lockManager.hasLocks()) { //the usual case: nothing to check
+			return;
+		}
+		final URI resourceURI = getResourceURI(request);
+		URI destinationURI = null;
+		if(isCopy || isMove) {
+			final URI requestedDestinationURI;
+			try {
+				requestedDestinationURI = getDestination(request);
+			} catch(final IllegalArgumentException illegalArgumentException) {
+				throw new HTTPBadRequestException(illegalArgumentException);
+			}
+			if(requestedDestinationURI != null) { //a missing destination will be reported by the method itself
+				destinationURI = getResourceURICached(request, requestedDestinationURI, method, resourceURI);
+			}
+		}
+		final Set<String> tokens;
+		if(ifHeaderValue != null) {
+			final IfHeader ifHeader = parseIfHeader(ifHeaderValue, resourceURI);
+			final IfHeader.Matcher stateTokenMatcher = (uri, token) -> lockManager.isLockedBy(getLockPath(uri), token);
+			final IfHeader.Matcher entityTagMatcher = (uri, eTag) -> existsCached(request, uri)
+					&& eTag.equals(getLiveProperties(request, getResourceCached(request, uri)).getETag());
+			if(!ifHeader.evaluate(resourceURI, resourceURI, stateTokenMatcher, entityTagMatcher)
+					|| (destinationURI != null && !ifHeader.evaluate(destinationURI, resourceURI, stateTokenMatcher, entityTagMatcher))) {
+				throw new HTTPPreconditionFailedException("If header precondition failed.");
+			}
+			tokens = ifHeader.getStateTokens();
+		} else {
+			tokens = Collections.emptySet();
+		}
+		if(isLock) { //conflicts between locks are determined by the lock manager
+			return;
+		}
+		WebDAVLockManager.Lock blockingLock = null;
+		if(!isCopy) { //copying doesn't modify the source
+			final boolean membership = isDelete || isMove || !existsCached(request, resourceURI); //PUT and MKCOL only change the parent if they create the resource
+			blockingLock = lockManager.findBlockingLock(getLockPath(resourceURI), tokens, membership, isDelete || isMove);
+		}
+		if(blockingLock == null && destinationURI != null) { //a destination may be replaced or created
+			blockingLock = lockManager.findBlockingLock(getLockPath(destinationURI), tokens, true, true);
+		}
+		if(blockingLock != null) {
+			throw new HTTPException(SC_LOCKED, "Resource " + blockingLock.getPath() + " is locked.");
+		}
+	}
+
+	/**
+	 * Parses an <code>If</code> header.
+	 * @param ifHeaderValue The value of the header.
+	 * @param resourceURI The URI of the requested resource.
+	 * @return The parsed header.
+	 * @throws HTTPBadRequestException if the header is not valid.
+	 */
+	private static IfHeader parseIfHeader(final String ifHeaderValue, final URI resourceURI) throws HTTPBadRequestException {
+		try {
+			return IfHeader.parse(ifHeaderValue, resourceURI);
+		} catch(final IllegalArgumentException illegalArgumentException) {
+			throw new HTTPBadRequestException(illegalArgumentException);
+		}
+	}
+
+	/**
+	 * Determines the path used to identify a resource to the lock manager.
+	 * @param resourceURI The URI of the resource.
+	 * @return The raw path of the resource.
+	 */
+	private static String getLockPath(final URI resourceURI) {
+		return resourceURI.getRawPath();
+	}
+
+	/**
+	 * Determines the requested lock timeout from the <code>Timeout</code> header, as described in
+	 * <a href="https://tools.ietf.org/html/rfc4918#section-10.7">RFC 4918 10.7</a>. The first recognized timeout is used.
+	 * @param request The HTTP request.
+	 * @return The requested timeout in seconds, or {@link WebDAVLockManager#DEFAULT_TIMEOUT} if no timeout was requested.
+	 */
+	protected long getTimeout(final HttpServletRequest request) {
+		final String timeoutHeaderValue = request.getHeader(TIMEOUT_HEADER);
+		if(timeoutHeaderValue != null) {
+			for(final String timeType : timeoutHeaderValue.split(",")) {
+				final String trimmedTimeType = timeType.trim();
+				if("Infinite".equalsIgnoreCase(trimmedTimeType)) {
+					return WebDAVLockManager.MAX_TIMEOUT;
+				} else if(trimmedTimeType.regionMatches(true, 0, "Second-", 0, 7)) {
+					try {
+						return Long.parseLong(trimmedTimeType.substring(7));
+					} catch(final NumberFormatException numberFormatException) { //ignore unrecognized timeouts
+					}
+				}
+			}
+		}
+		return WebDAVLockManager.DEFAULT_TIMEOUT;
+	}
+
+	/**
+	 * Adds an <code>activelock</code> element describing a lock.
+	 * @param lockDiscoveryElement The <code>lockdiscovery</code> element to which the lock should be added.
+	 * @param resourceURI The URI of a resource to which the lock applies, used to determine the URI of the lock root.
+	 * @param lock The lock to describe.
+	 * @throws DOMException if there is an error adding the element.
+	 */
+	private static void addActiveLock(final Element lockDiscoveryElement, final URI resourceURI, final WebDAVLockManager.Lock lock) throws DOMException {
+		final Element activeLockElement = addLiveProperty(lockDiscoveryElement, "activelock", null);
+		addLiveProperty(addLiveProperty(activeLockElement, "locktype", null), "write", null);
+		addLiveProperty(addLiveProperty(activeLockElement, "lockscope", null), lock.isExclusive() ? "exclusive" : "shared", null);
+		addLiveProperty(activeLockElement, "depth", lock.isInfinite() ? DEPTH_INFINITY : DEPTH_0);
+		if(lock.getOwner() != null) {
+			activeLockElement.appendChild(activeLockElement.getOwnerDocument().importNode(lock.getOwner(), true));
+		}
+		final long remainingSeconds = Math.max((lock.getExpiration() - System.currentTimeMillis()) / 1000, 0);
+		addLiveProperty(activeLockElement, "timeout", "Second-" + remainingSeconds);
+		addLiveProperty(addLiveProperty(activeLockElement, "locktoken", null), "href", lock.getToken());
+		addLiveProperty(addLiveProperty(activeLockElement, "lockroot", null), "href", resourceURI.resolve(lock.getPath()).toString());
+	}
+
 	/**
 	 * Services the PROPFIND method.
 	 * @param request The HTTP request.
@@ -208,7 +930,7 @@ protected void doPropFind(final HttpServletRequest request, final HttpServletRes
 		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
 		if(true/*TODO fix---is this valid for WebDAV? LIST_DIRECTORIES*/) //if we allow directory listing
 		{
-			if(exists(request, resourceURI)) { //if the resource exists
+			if(existsCached(request, resourceURI)) { //if the resource exists
 				final Depth depth = getDepth(request); //determine the requested depth
 				DecoratorIDedMappedList<URI, WebDAVPropertyName> propertyList = ALL_PROPERTIES; //default to listing all properties
 				final WebDAVXMLGenerator webdavXMLGenerator = new WebDAVXMLGenerator(); //create a WebDAV XML generator
@@ -224,33 +946,250 @@ protected void doPropFind(final HttpServletRequest request, final HttpServletRes
 				} catch(final SAXException saxException) { //any XML problem here is the client's fault
 					throw new HTTPBadRequestException(saxException); //show that the XML wasn't correct				
 				}
-				try {
-					final List<R> resourceList = getResources(resourceURI, depth == Depth.INFINITY ? -1 : depth.ordinal()); //get a list of resources
-					final Document multistatusDocument = webdavXMLGenerator.createMultistatusDocument(); //create a multistatus document
-					for(final R resource : resourceList) { //for each resource
-						final Element responseElement = webdavXMLGenerator.addResponse(multistatusDocument.getDocumentElement()); //add a response
-						webdavXMLGenerator.addHref(responseElement, resource.getURI()); //show this resource's URI
-						final Element propstatElement = webdavXMLGenerator.addPropstat(responseElement); //add a property container
-						final Element propElement = webdavXMLGenerator.addProp(propstatElement); //add a property element
-						findProperties(request, resource, propElement, propertyList, webdavXMLGenerator); //find the properties for this resource
-						webdavXMLGenerator.addStatus(propstatElement, "HTTP/1.1 200 OK"); //TODO use a real status here; use constants
-						//TODO add a response description here
+				final PathCache<String, PropFindCacheEntry> propFindCache = this.propFindCache;
+				final WebDAVLockManager lockManager = getLockManager();
+				//an infinite-depth listing can't be validated using the requested resource alone, and lock discovery information may expire at any time
+				final boolean cacheable = propFindCache != null && depth != Depth.INFINITY && (lockManager == null || !lockManager.hasLocks());
+				final String cacheKey;
+				final ResourceState resourceState;
+				final long childCount;
+				final long cacheGeneration = propFindCacheGeneration.get(); //note the generation before looking at the resource
+				if(cacheable) { //validate any cached response against the current state of the requested resource
+					final R resource = getResourceCached(request, resourceURI);
+					cacheKey = getPropFindCacheKey(resourceURI, depth, propertyList);
+					resourceState = getResourceState(request, resource);
+					childCount = depth == Depth.ONE && resourceState.isCollection() ? getChildCount(request, resource) : -1;
+					final PropFindCacheEntry cacheEntry = propFindCache.get(cacheKey);
+					if(cacheEntry != null && cacheEntry.isValid(resourceState, childCount)) { //if we've already generated this response for this state of the resource
+						propFindCacheHitCount.increment();
+						response.setStatus(SC_MULTI_STATUS); //show that we will be sending back multistatus content
+						setXML(request, response, cacheEntry.getBytes()); //send back the cached XML
+						return;
+					}
+					propFindCacheMissCount.increment();
+				} else {
+					cacheKey = null;
+					resourceState = null;
+					childCount = -1;
+				}
+				final DecoratorIDedMappedList<URI, WebDAVPropertyName> requestedProperties = propertyList;
+				final SingleFlight.Loader<byte[]> generator = () -> {
+					final byte[] bytes = getMultistatusBytes(request, resourceURI, depth, requestedProperties, webdavXMLGenerator);
+					if(cacheable && propFindCacheGeneration.get() == cacheGeneration) { //only cache the response if nothing changed while we were generating it
+						propFindCache.put(cacheKey, getCollectionPath(resourceURI), new PropFindCacheEntry(resourceURI, resourceState, childCount, bytes));
 					}
+					return bytes;
+				};
+				try {
+					//concurrent misses of the same listing in the same cache generation wait for a single generation of the response
+					final byte[] bytes = cacheable ? getPropFindLoads().load(cacheKey + '\n' + cacheGeneration, generator) : generator.load();
 					response.setStatus(SC_MULTI_STATUS); //show that we will be sending back multistatus content
-					getLogger().trace("Ready to send back XML: {}", XmlDom.toString(multistatusDocument));
-					setXML(request, response, multistatusDocument); //put the XML in our response and send it back, compressed if possible
+					setXML(request, response, bytes); //put the XML in our response and send it back, compressed if possible
 				} catch(final DOMException domException) { //any XML problem here is the server's fault
 					getLogger().error("XML DOM error.", domException); //report the error
 					throw new HTTPInternalServerErrorException(domException); //show that the XML wasn't correct
 				}
 			} else { //if the resource does not exist
-				throw new HTTPNotFoundException(resourceURI.toString()); //show that we didn't find a resource for which to find properties					
+				sendNotFound(request, response); //show that we didn't find a resource for which to find properties
 			}
 		} else { //if directory listing is not allowed
 			throw new HTTPMethodNotAllowedException(getAllowedMethods(request, resourceURI)); //report that we don't allow this method, indicating the methods we do allow for this resource
 		}
 	}
 
+	/**
+	 * Generates a serialized multistatus response listing the properties of a resource and, depending on the depth, its descendants.
+	 * @param request The HTTP request.
+	 * @param resourceURI The URI of the requested resource.
+	 * @param depth The requested depth.
+	 * @param propertyList The requested properties.
+	 * @param webdavXMLGenerator The generator of WebDAV XML.
+	 * @return The serialized multistatus document.
+	 * @throws DOMException if there is an error creating the XML.
+	 * @throws IOException if there is an error accessing the resources.
+	 */
+	private byte[] getMultistatusBytes(final HttpServletRequest request, final URI resourceURI, final Depth depth,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> propertyList, final WebDAVXMLGenerator webdavXMLGenerator) throws DOMException, IOException {
+		final List<R> resourceList = getResources(resourceURI, depth == Depth.INFINITY ? -1 : depth.ordinal()); //get a list of resources
+		final Document multistatusDocument = webdavXMLGenerator.createMultistatusDocument(); //create a multistatus document
+		for(final R resource : resourceList) { //for each resource
+			final Element responseElement = webdavXMLGenerator.addResponse(multistatusDocument.getDocumentElement()); //add a response
+			webdavXMLGenerator.addHref(responseElement, resource.getURI()); //show this resource's URI
+			final Element propstatElement = webdavXMLGenerator.addPropstat(responseElement); //add a property container
+			final Element propElement = webdavXMLGenerator.addProp(propstatElement); //add a property element
+			findProperties(request, resource, propElement, propertyList, webdavXMLGenerator); //find the properties for this resource
+			webdavXMLGenerator.addStatus(propstatElement, "HTTP/1.1 200 OK"); //TODO use a real status here; use constants
+			//TODO add a response description here
+		}
+		if(getLogger().isTraceEnabled()) {
+			getLogger().trace("Ready to send back XML: {}", XmlDom.toString(multistatusDocument));
+		}
+		return getXMLBytes(multistatusDocument); //serialize the response
+	}
+
+	/**
+	 * Services the REPORT method defined by <a href="https://tools.ietf.org/html/rfc3253">RFC 3253</a>. Only the <code>sync-collection</code> report of
+	 * <a href="https://tools.ietf.org/html/rfc6578">RFC 6578</a> is supported, and only if collection synchronization is enabled.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 * @see #getChangeJournal()
+	 */
+	protected void doReport(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final URI resourceURI = getResourceURI(request); //get the URI of the requested resource
+		if(!existsCached(request, resourceURI)) { //if the resource does not exist
+			throw new HTTPNotFoundException(resourceURI.toString());
+		}
+		if(!isCollectionCached(request, resourceURI)) { //only collections can be synchronized
+			throw new HTTPForbiddenException("Resource " + resourceURI + " is not a collection.");
+		}
+		final WebDAVXMLGenerator webdavXMLGenerator = new WebDAVXMLGenerator(); //create a WebDAV XML generator
+		final Element documentElement;
+		final DecoratorIDedMappedList<URI, WebDAVPropertyName> propertyList;
+		try {
+			final Document document = getXML(request, webdavXMLGenerator.getDocumentBuilder()); //get the XML from the request body
+			if(document == null) {
+				throw new HTTPBadRequestException("Missing REPORT body.");
+			}
+			documentElement = document.getDocumentElement();
+			if(!DAV_NAMESPACE.equals(documentElement.getNamespaceURI()) || !"sync-collection".equals(documentElement.getLocalName())) {
+				throw new HTTPForbiddenException("Unsupported report " + documentElement.getNodeName() + "."); //RFC 3253 3.6 DAV:supported-report
+			}
+			propertyList = WebDAVXMLProcessor.getPropfindProperties(documentElement); //sync-collection uses the same property element as PROPFIND
+		} catch(final DOMException domException) { //any XML problem here is the client's fault
+			throw new HTTPBadRequestException(domException);
+		} catch(final SAXException saxException) { //any XML problem here is the client's fault
+			throw new HTTPBadRequestException(saxException);
+		}
+		final String syncToken = getChildElementText(documentElement, "sync-token");
+		final boolean infinite = "infinite".equals(getChildElementText(documentElement, "sync-level")); //RFC 6578 6.3
+		final Element limitElement = getChildElement(documentElement, "limit");
+		final String nResultsText = limitElement != null ? getChildElementText(limitElement, "nresults") : null;
+		final int limit;
+		try {
+			limit = nResultsText != null ? Integer.parseInt(nResultsText) : Integer.MAX_VALUE;
+		} catch(final NumberFormatException numberFormatException) {
+			throw new HTTPBadRequestException(numberFormatException);
+		}
+		final ChangeJournal changeJournal = getChangeJournal();
+		final String collectionPath = ChangeJournal.normalizePath(getResourceContextAbsolutePath(resourceURI.getPath()));
+		final URI collectionURI = resourceURI.getRawPath().endsWith("/") ? resourceURI : URI.create(resourceURI.toString() + '/'); //base for resolving members
+		final Document multistatusDocument = webdavXMLGenerator.createMultistatusDocument(); //create a multistatus document
+		final Element multistatusElement = multistatusDocument.getDocumentElement();
+		long newSequence = changeJournal.getSequence(); //note the sequence before looking for changes, so that nothing is missed
+		if(syncToken == null || syncToken.isEmpty()) { //initial synchronization; report all members
+			for(final R resource : getResources(resourceURI, infinite ? -1 : 1)) {
+				if(!resource.getURI().equals(resourceURI)) {
+					addSyncResponse(request, multistatusElement, resource, propertyList, webdavXMLGenerator);
+				}
+			}
+		} else {
+			final long sinceSequence = getSyncTokenSequence(syncToken, changeJournal);
+			if(sinceSequence < 0 || !changeJournal.isValid(sinceSequence)) { //RFC 6578 3.2: report an invalid token as a DAV:valid-sync-token precondition failure
+				final Document errorDocument = webdavXMLGenerator.getDocumentBuilder().newDocument();
+				final Element errorElement = errorDocument.createElementNS(DAV_NAMESPACE, DAV_NAMESPACE_PREFIX + ":error");
+				errorDocument.appendChild(errorElement);
+				errorElement.appendChild(createDAVElement(errorElement, "valid-sync-token"));
+				response.setStatus(HttpServletResponse.SC_FORBIDDEN);
+				setXML(request, response, errorDocument);
+				return;
+			}
+			List<ChangeJournal.Change> changes = changeJournal.getChanges(collectionPath, sinceSequence, infinite);
+			if(changes.size() > limit) { //RFC 6578 3.6: return a partial result with a token marking how far we got
+				changes = changes.subList(0, limit);
+				newSequence = limit > 0 ? changes.get(limit - 1).getSequence() : sinceSequence;
+				final Element responseElement = webdavXMLGenerator.addResponse(multistatusElement);
+				webdavXMLGenerator.addHref(responseElement, resourceURI);
+				webdavXMLGenerator.addStatus(responseElement, "HTTP/1.1 507 Insufficient Storage");
+			}
+			for(final ChangeJournal.Change change : changes) {
+				final String relativePath = change.getPath().substring(collectionPath.length() + (collectionPath.endsWith("/") ? 0 : 1));
+				final URI memberURI;
+				try {
+					memberURI = collectionURI.resolve(new URI(null, null, relativePath, null)); //encode the path
+				} catch(final URISyntaxException uriSyntaxException) {
+					throw new HTTPInternalServerErrorException(uriSyntaxException);
+				}
+				if(change.getResourceChange() != ResourceChange.DELETED && exists(request, memberURI)) {
+					final URI canonicalMemberURI = isCollection(request, memberURI) && !memberURI.getRawPath().endsWith("/") ? URI.create(memberURI + "/") : memberURI;
+					addSyncResponse(request, multistatusElement, getResource(request, canonicalMemberURI), propertyList, webdavXMLGenerator);
+				} else { //the member is gone
+					final Element responseElement = webdavXMLGenerator.addResponse(multistatusElement);
+					webdavXMLGenerator.addHref(responseElement, memberURI);
+					webdavXMLGenerator.addStatus(responseElement, "HTTP/1.1 404 Not Found");
+				}
+			}
+		}
+		final Element syncTokenElement = createDAVElement(multistatusElement, "sync-token");
+		syncTokenElement.appendChild(multistatusDocument.createTextNode(SYNC_TOKEN_PREFIX + changeJournal.getEpoch() + ':' + newSequence));
+		multistatusElement.appendChild(syncTokenElement);
+		response.setStatus(SC_MULTI_STATUS); //show that we will be sending back multistatus content
+		setXML(request, response, multistatusDocument);
+	}
+
+	/**
+	 * Adds a response with the requested properties of a resource to a multistatus document.
+	 * @param request The HTTP request.
+	 * @param multistatusElement The multistatus element to which to add the response.
+	 * @param resource The resource to report.
+	 * @param propertyList The requested properties.
+	 * @param webdavXMLGenerator The generator for constructing XML to represent WebDAV information.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	private void addSyncResponse(final HttpServletRequest request, final Element multistatusElement, final R resource,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> propertyList, final WebDAVXMLGenerator webdavXMLGenerator) throws IOException {
+		final Element responseElement = webdavXMLGenerator.addResponse(multistatusElement); //add a response
+		webdavXMLGenerator.addHref(responseElement, resource.getURI()); //show this resource's URI
+		final Element propstatElement = webdavXMLGenerator.addPropstat(responseElement); //add a property container
+		final Element propElement = webdavXMLGenerator.addProp(propstatElement); //add a property element
+		findProperties(request, resource, propElement, propertyList, webdavXMLGenerator); //find the properties for this resource
+		webdavXMLGenerator.addStatus(propstatElement, "HTTP/1.1 200 OK");
+	}
+
+	/**
+	 * Determines the sequence number represented by a sync token.
+	 * @param syncToken The sync token provided by the client.
+	 * @param changeJournal The current change journal.
+	 * @return The sequence number of the sync token, or <code>-1</code> if the sync token was not issued by the given journal.
+	 */
+	private static long getSyncTokenSequence(final String syncToken, final ChangeJournal changeJournal) {
+		final String epochPrefix = SYNC_TOKEN_PREFIX + changeJournal.getEpoch() + ':';
+		if(syncToken.startsWith(epochPrefix)) { //tokens from earlier runs of the server are never valid
+			try {
+				return Long.parseLong(syncToken.substring(epochPrefix.length()));
+			} catch(final NumberFormatException numberFormatException) {
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Retrieves the first child element in the WebDAV namespace with the given local name.
+	 * @param parentElement The element the children of which to search.
+	 * @param localName The local name of the element to find.
+	 * @return The first matching child element, or <code>null</code> if there is no such element.
+	 */
+	private static Element getChildElement(final Element parentElement, final String localName) {
+		for(Node node = parentElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if(node.getNodeType() == Node.ELEMENT_NODE && DAV_NAMESPACE.equals(node.getNamespaceURI()) && localName.equals(node.getLocalName())) {
+				return (Element)node;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Retrieves the trimmed text of the first child element in the WebDAV namespace with the given local name.
+	 * @param parentElement The element the children of which to search.
+	 * @param localName The local name of the element to find.
+	 * @return The trimmed text of the first matching child element, or <code>null</code> if there is no such element.
+	 */
+	private static String getChildElementText(final Element parentElement, final String localName) {
+		final Element element = getChildElement(parentElement, localName);
+		return element != null ? element.getTextContent().trim() : null;
+	}
+
 	/**
 	 * Determines the requested depth.
 	 * @param request The HTTP request.
@@ -272,27 +1211,40 @@ protected Depth getDepth(final HttpServletRequest request) {
 	}
 
 	/**
-	 * Determines the HTTP methods allowed for the requested resource. This version adds support for WebDAV methods.
-	 * @param request The HTTP request indicating the requested resource.
-	 * @param resourceURI The URI of a resource for which options should be obtained.
-	 * @return A set of methods allowed for this resource.
-	 * @throws IOException if there is an error accessing the resource.
+	 * Determines the HTTP methods allowed for a resource in a particular state. This version adds support for WebDAV methods, leaving out those that would
+	 * modify resources if the servlet is read-only.
+	 * @param exists Whether the resource exists.
+	 * @param collection Whether the resource is a collection.
+	 * @param readOnly Whether the servlet is read-only.
+	 * @return A modifiable set of methods allowed for a resource in the given state, to which child classes may add methods.
 	 */
-	protected Set<String> getAllowedMethods(final HttpServletRequest request, final URI resourceURI) throws IOException {
-		final Set<String> allowedMethods = new HashSet<String>(super.getAllowedMethods(request, resourceURI)); //create a new set of method strings, initializing them with the default allowed methods
-		if(exists(request, resourceURI)) { //if the resource exists
-			allowedMethods.add(COPY_METHOD);
-			//  	TODO implement  		methodSet.add(WebDAVMethod.LOCK);
-			allowedMethods.add(MOVE_METHOD);
+	protected Set<String> getAllowedMethods(final boolean exists, final boolean collection, final boolean readOnly) {
+		final Set<String> allowedMethods = super.getAllowedMethods(exists, collection, readOnly); //start with the default allowed methods
+		if(exists) { //if the resource exists
+			if(!readOnly) {
+				allowedMethods.add(COPY_METHOD);
+				if(getLockManager() != null) {
+					allowedMethods.add(LOCK_METHOD);
+					allowedMethods.add(UNLOCK_METHOD);
+				}
+				allowedMethods.add(MOVE_METHOD);
+			}
 
 			if(true/*TODO fix---is this valid for WebDAV? LIST_DIRECTORIES*/) //if we allow directory listings
 			{
 				allowedMethods.add(PROPFIND_METHOD);
 			}
+			if(getChangeJournal() != null && collection) { //collections can be synchronized
+				allowedMethods.add(REPORT_METHOD);
+			}
+			if(batchExecutor != null && collection && !readOnly) { //batches are performed within collections
+				allowedMethods.add(BATCH_METHOD);
+			}
 			//  	TODO implement  		methodSet.add(PROPPATCH);
-			//  	TODO implement  		methodSet.add(UNLOCK);
-		} else { //if the resource does not exist
-			//  	TODO implement  		methodSet.add(LOCK);
+		} else if(!readOnly) { //if the resource does not exist
+			if(getLockManager() != null) { //locking an unmapped URL creates a resource
+				allowedMethods.add(LOCK_METHOD);
+			}
 			allowedMethods.add(MKCOL_METHOD);
 		}
 		return allowedMethods; //return the allowed methods
@@ -300,7 +1252,7 @@ protected Set<String> getAllowedMethods(final HttpServletRequest request, final
 
 	/**
 	 * Checks whether the given principal is authorized to invoke the given method on the given resource. This version restricts the WebDAV methods COPY, MOVE,
-	 * and MKCOL if the servlet is read-only. This version recognizes the COPY and MOVE WebDAV methods and correctly calls this method on their destination URIs.
+	 * MKCOL, LOCK, UNLOCK, and BATCH if the servlet is read-only. This version recognizes the COPY and MOVE WebDAV methods and correctly calls this method on their destination URIs.
 	 * Any child class must call this method.
 	 * @param request The HTTP request.
 	 * @param resourceURI The URI of the resource requested.
@@ -316,7 +1268,8 @@ protected boolean isAuthorized(final HttpServletRequest request, final URI resou
 		boolean isAuthorized = super.isAuthorized(request, resourceURI, method, principal, realm); //see if this principal passes the default authorization checks
 		if(isAuthorized) { //if this principal passes the default authorization checks
 			if(isReadOnly()) { //if this servlet is read-only
-				if(COPY_METHOD.equals(method) || MOVE_METHOD.equals(method) || MKCOL_METHOD.equals(method)) { //disallow the COPY, MOVE, and MKCOL methods
+				if(COPY_METHOD.equals(method) || MOVE_METHOD.equals(method) || MKCOL_METHOD.equals(method) || LOCK_METHOD.equals(method)
+						|| UNLOCK_METHOD.equals(method) || BATCH_METHOD.equals(method)) { //disallow the COPY, MOVE, MKCOL, LOCK, UNLOCK, and BATCH methods
 					return false; //don't allow write methods
 				}
 			}
@@ -325,7 +1278,7 @@ protected boolean isAuthorized(final HttpServletRequest request, final URI resou
 				if(requestedDestinationURI != null) { //if a destination was given (ignore missing destinations---a principal is authorized to copy or move a resource to nowhere)
 					getLogger().trace("checking authorization for requested destination {}", requestedDestinationURI);
 					//get the canonical destination URI
-					final URI destinationURI = getResourceURI(request, requestedDestinationURI, request.getMethod(), resourceURI);
+					final URI destinationURI = getResourceURICached(request, requestedDestinationURI, request.getMethod(), resourceURI);
 					//for COPY and MOVE, make sure the principal is authorized to do a PUT on the destination
 					isAuthorized = isAuthorized(request, destinationURI, PUT_METHOD, principal, realm);
 				}
@@ -334,6 +1287,292 @@ protected boolean isAuthorized(final HttpServletRequest request, final URI resou
 		return isAuthorized; //return whether the principal is authorized
 	}
 
+	/**
+	 * {@inheritDoc} This version never allows the COPY and MOVE methods to be cached, as their authorization depends on the destination. Any child class must
+	 * call this method.
+	 */
+	@Override
+	protected String getAuthorizationScope(final HttpServletRequest request, final URI resourceURI, final String method, final Principal principal,
+			final String realm) throws HTTPInternalServerErrorException {
+		if(COPY_METHOD.equals(method) || MOVE_METHOD.equals(method)) {
+			return null;
+		}
+		return super.getAuthorizationScope(request, resourceURI, method, principal, realm);
+	}
+
+	/**
+	 * {@inheritDoc} This version invalidates any cached PROPFIND information for the resource, its parent collection, and any child resources. This version
+	 * records the change to the resource itself in the change journal, if any; changes to descendants, such as those of a copied or moved collection, must be
+	 * recorded separately using {@link #recordChanges(List, ResourceChange)}. When a resource is deleted, any locks on it or its descendants are removed.
+	 */
+	@Override
+	protected void resourceChanged(final HttpServletRequest request, final URI resourceURI, final ResourceChange change) throws IOException {
+		super.resourceChanged(request, resourceURI, change);
+		invalidatePropFindCache(resourceURI);
+		final WebDAVLockManager lockManager = getLockManager();
+		if(lockManager != null && change == ResourceChange.DELETED) { //locks don't survive the resource
+			lockManager.removeTree(getLockPath(resourceURI));
+		}
+		final ChangeJournal changeJournal = getChangeJournal();
+		if(changeJournal != null) {
+			changeJournal.record(getResourceContextAbsolutePath(resourceURI.getPath()), change);
+		}
+	}
+
+	/**
+	 * Determines the journal paths of all the descendants of a resource, so that changes to an entire tree can be recorded. As this requires walking the tree,
+	 * this method should only be called for operations such as copy and move that affect the descendants.
+	 * @param request The HTTP request in response to which the descendants are being retrieved.
+	 * @param resourceURI The URI of the resource.
+	 * @return The context-absolute paths of the descendants of the resource, or an empty list if there is no journal or the resource is not a collection.
+	 * @throws IOException if there is an error accessing the resources.
+	 * @see #getChangeJournal()
+	 */
+	protected List<String> getDescendantJournalPaths(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		if(getChangeJournal() == null || !isCollection(request, resourceURI)) {
+			return Collections.emptyList();
+		}
+		final List<String> paths = new ArrayList<String>();
+		for(final R resource : getResources(resourceURI, -1)) {
+			if(!resource.getURI().equals(resourceURI)) {
+				paths.add(getResourceContextAbsolutePath(resource.getURI().getPath()));
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Records the same change to several resources in the change journal, if any.
+	 * @param paths The context-absolute paths of the resources that changed.
+	 * @param change The type of change.
+	 * @see #getChangeJournal()
+	 */
+	protected void recordChanges(final List<String> paths, final ResourceChange change) {
+		final ChangeJournal changeJournal = getChangeJournal();
+		if(changeJournal != null) {
+			for(final String path : paths) {
+				changeJournal.record(path, change);
+			}
+		}
+	}
+
+	/**
+	 * Removes any cached PROPFIND information for a resource, its parent collection, and any child resources. The caches are indexed by path, so only the
+	 * affected entries are examined.
+	 * @param resourceURI The URI of the resource that changed.
+	 */
+	protected void invalidatePropFindCache(final URI resourceURI) {
+		final PathCache<URI, LiveProperties> livePropertiesCache = this.livePropertiesCache;
+		final PathCache<String, PropFindCacheEntry> propFindCache = this.propFindCache;
+		if(propFindCache != null) {
+			propFindCacheGeneration.incrementAndGet(); //prevent responses being generated right now from being cached
+			final String path = getCollectionPath(resourceURI); //the path of the resource, treated as a prefix of any children
+			final String parentPath = getParentPath(path);
+			livePropertiesCache.removeTree(path);
+			propFindCache.removeTree(path);
+			if(parentPath != null) { //the listing of the parent collection includes the resource
+				propFindCache.remove(parentPath);
+			}
+		}
+	}
+
+	/**
+	 * Determines the path of a resource URI ending in a slash, so that it can be used as a prefix to identify child resources.
+	 * @param resourceURI The URI of the resource.
+	 * @return The raw path of the resource, with a trailing slash.
+	 */
+	private static String getCollectionPath(final URI resourceURI) {
+		final String path = resourceURI.getRawPath();
+		return path.endsWith("/") ? path : path + '/';
+	}
+
+	/**
+	 * Determines the path of the parent of the given collection path.
+	 * @param collectionPath A resource path ending with a slash.
+	 * @return The path of the parent collection ending with a slash, or <code>null</code> if the path has no parent.
+	 */
+	private static String getParentPath(final String collectionPath) {
+		final int index = collectionPath.lastIndexOf('/', collectionPath.length() - 2);
+		return index >= 0 ? collectionPath.substring(0, index + 1) : null;
+	}
+
+	/**
+	 * Determines the key under which a PROPFIND response is cached.
+	 * @param resourceURI The URI of the requested resource.
+	 * @param depth The requested depth.
+	 * @param properties The requested properties.
+	 * @return A key identifying the given PROPFIND request.
+	 */
+	protected String getPropFindCacheKey(final URI resourceURI, final Depth depth, final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties) {
+		final StringBuilder keyBuilder = new StringBuilder(resourceURI.toString()).append(' ').append(depth).append(' ');
+		if(properties == ALL_PROPERTIES) {
+			keyBuilder.append("allprop");
+		} else if(properties == PROPERTY_NAMES) {
+			keyBuilder.append("propname");
+		} else {
+			for(final WebDAVPropertyName propertyName : properties) {
+				keyBuilder.append(propertyName.getNamespace()).append(propertyName.getLocalName()).append(' ');
+			}
+		}
+		return keyBuilder.toString();
+	}
+
+	/**
+	 * Retrieves a snapshot of the attributes of a resource used to determine whether cached information about it is still valid. Child classes may override
+	 * this method to retrieve all the attributes with a single access to the underlying store.
+	 * @param request The HTTP request in response to which the attributes are being retrieved.
+	 * @param resource The resource the attributes of which should be retrieved.
+	 * @return The current state of the resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected ResourceState getResourceState(final HttpServletRequest request, final R resource) throws IOException {
+		final boolean isCollection = isCollection(request, resource.getURI());
+		final Date lastModifiedDate = getLastModifiedDate(request, resource);
+		return new ResourceState(isCollection, isCollection ? -1 : getContentLength(request, resource), lastModifiedDate != null ? lastModifiedDate.getTime() : -1);
+	}
+
+	/**
+	 * Determines the number of children of a collection. Child classes should override this method if there is a more efficient way to count children than
+	 * retrieving them.
+	 * @param request The HTTP request in response to which the children are being counted.
+	 * @param resource The collection resource.
+	 * @return The number of child resources.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	protected long getChildCount(final HttpServletRequest request, final R resource) throws IOException {
+		return getChildResources(request, resource).size();
+	}
+
+	/**
+	 * Determines the live properties of a resource, using cached values if the resource has not changed. The entity tag is the one returned by
+	 * {@link #getEntityTag(HttpServletRequest, Resource)}, if any.
+	 * @param request The HTTP request in response to which the properties are being retrieved.
+	 * @param resource The resource the properties of which should be retrieved.
+	 * @return The live properties of the resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 * @see #getResourceState(HttpServletRequest, Resource)
+	 */
+	protected LiveProperties getLiveProperties(final HttpServletRequest request, final R resource) throws IOException {
+		final ResourceState resourceState = getResourceState(request, resource);
+		final PathCache<URI, LiveProperties> livePropertiesCache = this.livePropertiesCache;
+		if(livePropertiesCache != null) {
+			final LiveProperties liveProperties = livePropertiesCache.get(resource.getURI());
+			if(liveProperties != null && liveProperties.getResourceState().equals(resourceState)) { //if the resource hasn't changed since we computed its properties
+				livePropertiesCacheHitCount.increment();
+				return liveProperties;
+			}
+			livePropertiesCacheMissCount.increment();
+		}
+		final LiveProperties liveProperties = new LiveProperties(resourceState, getEntityTag(request, resource));
+		if(livePropertiesCache != null) {
+			livePropertiesCache.put(resource.getURI(), getCollectionPath(resource.getURI()), liveProperties);
+		}
+		return liveProperties;
+	}
+
+	/**
+	 * Adds the requested live properties <code>getcontentlength</code>, <code>getlastmodified</code>, <code>resourcetype</code>, and <code>getetag</code> to the
+	 * given property XML element, along with <code>supportedlock</code> and <code>lockdiscovery</code> if locking is enabled. This is a convenience method to be called by implementations of
+	 * {@link #findProperties(HttpServletRequest, Resource, Element, DecoratorIDedMappedList, WebDAVXMLGenerator)}.
+	 * @param request The HTTP request in response to which properties are being retrieved.
+	 * @param resource The resource the properties of which should be found.
+	 * @param propertyElement The XML element which will receive a representation of the resource properties.
+	 * @param properties A list of all requested properties, or {@link WebDAV#ALL_PROPERTIES} or {@link WebDAV#PROPERTY_NAMES} indicating all properties or all
+	 *          property names, respectively.
+	 * @throws DOMException if there is an error updating the properties element.
+	 * @throws IOException if there is an error accessing the resource.
+	 * @see #getLiveProperties(HttpServletRequest, Resource)
+	 */
+	protected void findLiveProperties(final HttpServletRequest request, final R resource, final Element propertyElement,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties) throws DOMException, IOException {
+		final LiveProperties liveProperties = getLiveProperties(request, resource);
+		final boolean namesOnly = properties == PROPERTY_NAMES;
+		if(liveProperties.getContentLength() != null && isPropertyRequested(properties, "getcontentlength")) {
+			addLiveProperty(propertyElement, "getcontentlength", namesOnly ? null : liveProperties.getContentLength());
+		}
+		if(liveProperties.getLastModified() != null && isPropertyRequested(properties, "getlastmodified")) {
+			addLiveProperty(propertyElement, "getlastmodified", namesOnly ? null : liveProperties.getLastModified());
+		}
+		if(isPropertyRequested(properties, "resourcetype")) {
+			final Element resourceTypeElement = addLiveProperty(propertyElement, "resourcetype", null);
+			if(!namesOnly && liveProperties.getResourceState().isCollection()) {
+				addLiveProperty(resourceTypeElement, "collection", null);
+			}
+		}
+		if(liveProperties.getETag() != null && isPropertyRequested(properties, "getetag")) {
+			addLiveProperty(propertyElement, "getetag", namesOnly ? null : liveProperties.getETag());
+		}
+		final WebDAVLockManager lockManager = getLockManager();
+		if(lockManager != null) {
+			if(isPropertyRequested(properties, "supportedlock")) {
+				final Element supportedLockElement = addLiveProperty(propertyElement, "supportedlock", null);
+				if(!namesOnly) {
+					for(final String lockScope : new String[] {"exclusive", "shared"}) {
+						final Element lockEntryElement = addLiveProperty(supportedLockElement, "lockentry", null);
+						addLiveProperty(addLiveProperty(lockEntryElement, "lockscope", null), lockScope, null);
+						addLiveProperty(addLiveProperty(lockEntryElement, "locktype", null), "write", null);
+					}
+				}
+			}
+			if(isPropertyRequested(properties, "lockdiscovery")) {
+				final Element lockDiscoveryElement = addLiveProperty(propertyElement, "lockdiscovery", null);
+				if(!namesOnly) {
+					for(final WebDAVLockManager.Lock lock : lockManager.getLocks(getLockPath(resource.getURI()))) {
+						addActiveLock(lockDiscoveryElement, resource.getURI(), lock);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Determines whether a property in the WebDAV namespace was requested.
+	 * @param properties A list of all requested properties, or {@link WebDAV#ALL_PROPERTIES} or {@link WebDAV#PROPERTY_NAMES}.
+	 * @param localName The local name of the property in the WebDAV namespace.
+	 * @return <code>true</code> if the property should be included.
+	 */
+	protected static boolean isPropertyRequested(final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties, final String localName) {
+		if(properties == ALL_PROPERTIES || properties == PROPERTY_NAMES) {
+			return true;
+		}
+		for(final WebDAVPropertyName propertyName : properties) {
+			if(DAV_NAMESPACE.equals(propertyName.getNamespace()) && localName.equals(propertyName.getLocalName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Adds an element in the WebDAV namespace.
+	 * @param parentElement The element to which the property should be added.
+	 * @param localName The local name of the property.
+	 * @param value The text value of the property, or <code>null</code> if the element should be empty.
+	 * @return The added element.
+	 * @throws DOMException if there is an error adding the element.
+	 */
+	protected static Element addLiveProperty(final Element parentElement, final String localName, final String value) throws DOMException {
+		final Element element = createDAVElement(parentElement, localName);
+		if(value != null) {
+			element.appendChild(parentElement.getOwnerDocument().createTextNode(value));
+		}
+		parentElement.appendChild(element);
+		return element;
+	}
+
+	/**
+	 * Creates an element in the WebDAV namespace, using the same prefix as the given context element if it is in the WebDAV namespace.
+	 * @param contextElement The element near which the new element will be placed.
+	 * @param localName The local name of the element.
+	 * @return The new element, not yet added to the document.
+	 * @throws DOMException if there is an error creating the element.
+	 */
+	private static Element createDAVElement(final Element contextElement, final String localName) throws DOMException {
+		final String prefix = DAV_NAMESPACE.equals(contextElement.getNamespaceURI()) && contextElement.getPrefix() != null ? contextElement.getPrefix()
+				: DAV_NAMESPACE_PREFIX;
+		return contextElement.getOwnerDocument().createElementNS(DAV_NAMESPACE, prefix + ':' + localName);
+	}
+
 	/**
 	 * Copies all the requested resource properties to the given property XML element.
 	 * @param request The HTTP request in response to which properties are being retrieved.
@@ -389,4 +1628,178 @@ protected abstract void copyResource(final HttpServletRequest request, final R r
 	protected abstract void moveResource(final HttpServletRequest request, final R resource, final URI destinationURI, final boolean overwrite)
 			throws IllegalArgumentException, IOException, HTTPConflictException, HTTPPreconditionFailedException;
 
+	/**
+	 * An immutable snapshot of the resource attributes on which live properties depend.
+	 * @author Garret Wilson
+	 */
+	public static class ResourceState {
+
+		private final boolean collection;
+
+		/** @return Whether the resource is a collection. */
+		public boolean isCollection() {
+			return collection;
+		}
+
+		private final long contentLength;
+
+		/** @return The length of the resource content, or <code>-1</code> if not known. */
+		public long getContentLength() {
+			return contentLength;
+		}
+
+		private final long lastModified;
+
+		/** @return The time the resource was last modified, in milliseconds since the epoch, or <code>-1</code> if not known. */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Constructor.
+		 * @param collection Whether the resource is a collection.
+		 * @param contentLength The length of the resource content, or <code>-1</code> if not known.
+		 * @param lastModified The time the resource was last modified, in milliseconds since the epoch, or <code>-1</code> if not known.
+		 */
+		public ResourceState(final boolean collection, final long contentLength, final long lastModified) {
+			this.collection = collection;
+			this.contentLength = contentLength;
+			this.lastModified = lastModified;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(collection, contentLength, lastModified);
+		}
+
+		@Override
+		public boolean equals(final Object object) {
+			if(this == object) {
+				return true;
+			}
+			if(!(object instanceof ResourceState)) {
+				return false;
+			}
+			final ResourceState resourceState = (ResourceState)object;
+			return collection == resourceState.collection && contentLength == resourceState.contentLength && lastModified == resourceState.lastModified;
+		}
+
+		@Override
+		public String toString() {
+			return (collection ? "collection" : "resource") + " length " + contentLength + " modified " + lastModified;
+		}
+	}
+
+	/**
+	 * The formatted values of the live properties of a resource, computed from a snapshot of its state.
+	 * @author Garret Wilson
+	 */
+	public static class LiveProperties {
+
+		private final ResourceState resourceState;
+
+		/** @return The state of the resource from which the properties were computed. */
+		public ResourceState getResourceState() {
+			return resourceState;
+		}
+
+		private final String contentLength;
+
+		/** @return The <code>getcontentlength</code> value, or <code>null</code> if not known. */
+		public String getContentLength() {
+			return contentLength;
+		}
+
+		private final String lastModified;
+
+		/** @return The <code>getlastmodified</code> value, or <code>null</code> if not known. */
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		private final String eTag;
+
+		/** @return The <code>getetag</code> value, or <code>null</code> if no entity tag can be determined. */
+		public String getETag() {
+			return eTag;
+		}
+
+		/**
+		 * Resource state constructor.
+		 * @param resourceState The state of the resource from which the properties should be computed.
+		 * @throws NullPointerException if the given resource state is <code>null</code>.
+		 */
+		public LiveProperties(final ResourceState resourceState) {
+			this(resourceState, null);
+		}
+
+		/**
+		 * Resource state and entity tag constructor.
+		 * @param resourceState The state of the resource from which the properties should be computed.
+		 * @param eTag The entity tag of the resource, or <code>null</code> if an entity tag should be computed from the resource state.
+		 * @throws NullPointerException if the given resource state is <code>null</code>.
+		 */
+		public LiveProperties(final ResourceState resourceState, final String eTag) {
+			this.resourceState = Objects.requireNonNull(resourceState);
+			final long contentLength = resourceState.getContentLength();
+			final long lastModified = resourceState.getLastModified();
+			this.contentLength = contentLength >= 0 ? Long.toString(contentLength) : null;
+			this.lastModified = lastModified >= 0 ? HTTP_DATE_FORMATTER.format(Instant.ofEpochMilli(lastModified)) : null;
+			if(eTag != null) {
+				this.eTag = eTag;
+			} else {
+				this.eTag = lastModified >= 0 ? "\"" + Long.toHexString(Math.max(contentLength, 0)) + '-' + Long.toHexString(lastModified) + '"' : null; //like the entity tags of other common servers
+			}
+		}
+	}
+
+	/**
+	 * A cached serialized multistatus response, along with the state of the requested resource when the response was generated.
+	 * @author Garret Wilson
+	 */
+	private static class PropFindCacheEntry {
+
+		private final URI resourceURI;
+
+		/** @return The URI of the requested resource. */
+		public URI getResourceURI() {
+			return resourceURI;
+		}
+
+		private final ResourceState resourceState;
+
+		private final long childCount;
+
+		private final byte[] bytes;
+
+		/** @return The serialized multistatus response. */
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * Constructor.
+		 * @param resourceURI The URI of the requested resource.
+		 * @param resourceState The state of the requested resource.
+		 * @param childCount The number of children of the requested collection, or <code>-1</code> if children were not listed.
+		 * @param bytes The serialized multistatus response.
+		 */
+		public PropFindCacheEntry(final URI resourceURI, final ResourceState resourceState, final long childCount, final byte[] bytes) {
+			this.resourceURI = resourceURI;
+			this.resourceState = resourceState;
+			this.childCount = childCount;
+			this.bytes = bytes;
+		}
+
+		/**
+		 * Determines whether this response is still valid for the current state of the requested resource.
+		 * @param resourceState The current state of the requested resource.
+		 * @param childCount The current number of children of the requested collection, or <code>-1</code> if children are not being listed.
+		 * @return <code>true</code> if the resource has not changed since the response was generated.
+		 */
+		public boolean isValid(final ResourceState resourceState, final long childCount) {
+			return this.resourceState.equals(resourceState) && this.childCount == childCount;
+		}
+	}
+
 }
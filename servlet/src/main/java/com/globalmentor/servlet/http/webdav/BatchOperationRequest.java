@@ -0,0 +1,254 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.time.format.DateTimeFormatter.*;
+import static java.util.Objects.*;
+
+/**
+ * A request for a single operation of a batch, presenting the method, content length, content type, and content of the operation rather than those of the
+ * batch request that contains it. Other information, such as the request URI, is that of the batch request.
+ * <p>
+ * The attributes and headers of the batch request are copied when the operation request is created, so that operation requests may be used on other threads
+ * concurrently with each other and with the batch request. Attributes set on an operation request are not seen by the batch request or by other operations.
+ * </p>
+ * <p>
+ * This class is not thread-safe; each operation request should be used by one thread at a time.
+ * </p>
+ * @author Garret Wilson
+ */
+public class BatchOperationRequest extends HttpServletRequestWrapper {
+
+	/** The operation being performed. */
+	private final BatchRequest.Operation operation;
+
+	/** @return The operation being performed. */
+	public BatchRequest.Operation getOperation() {
+		return operation;
+	}
+
+	/** The request attributes, copied from the batch request. */
+	private final Map<String, Object> attributes = new HashMap<String, Object>();
+
+	/** The request headers other than those describing the content, copied from the batch request and keyed to header name regardless of case. */
+	private final Map<String, List<String>> headers = new TreeMap<String, List<String>>(String.CASE_INSENSITIVE_ORDER);
+
+	/**
+	 * Constructor. This constructor must be called on a thread that may access the batch request.
+	 * @param request The batch request containing the operation.
+	 * @param operation The operation being performed.
+	 * @throws NullPointerException if the given request and/or operation is <code>null</code>.
+	 */
+	public BatchOperationRequest(final HttpServletRequest request, final BatchRequest.Operation operation) {
+		super(request);
+		this.operation = requireNonNull(operation);
+		final Enumeration<String> attributeNames = request.getAttributeNames();
+		while(attributeNames.hasMoreElements()) {
+			final String attributeName = attributeNames.nextElement();
+			attributes.put(attributeName, request.getAttribute(attributeName));
+		}
+		final Enumeration<String> headerNames = request.getHeaderNames();
+		if(headerNames != null) { //some containers do not allow access to headers
+			while(headerNames.hasMoreElements()) {
+				final String headerName = headerNames.nextElement();
+				if(isContentHeader(headerName) || headers.containsKey(headerName)) {
+					continue;
+				}
+				headers.put(headerName, Collections.list(request.getHeaders(headerName)));
+			}
+		}
+		final String contentType = operation.getContentType();
+		if(contentType != null) {
+			headers.put("Content-Type", Collections.singletonList(contentType));
+		}
+		final long contentLength = getContentLengthLong();
+		if(contentLength >= 0) {
+			headers.put("Content-Length", Collections.singletonList(Long.toString(contentLength)));
+		}
+	}
+
+	/**
+	 * Determines whether a header describes the content of the batch request, and therefore does not apply to an operation.
+	 * @param headerName The name of the header.
+	 * @return <code>true</code> if the header describes the request content.
+	 */
+	protected static boolean isContentHeader(final String headerName) {
+		return headerName.regionMatches(true, 0, "Content-", 0, 8) || headerName.equalsIgnoreCase("Transfer-Encoding");
+	}
+
+	@Override
+	public String getMethod() {
+		return operation.getMethod();
+	}
+
+	@Override
+	public Object getAttribute(final String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNames() {
+		return Collections.enumeration(new ArrayList<String>(attributes.keySet()));
+	}
+
+	@Override
+	public void setAttribute(final String name, final Object value) {
+		if(value != null) {
+			attributes.put(name, value);
+		} else {
+			attributes.remove(name);
+		}
+	}
+
+	@Override
+	public void removeAttribute(final String name) {
+		attributes.remove(name);
+	}
+
+	@Override
+	public String getHeader(final String name) {
+		final List<String> values = headers.get(name);
+		return values != null && !values.isEmpty() ? values.get(0) : null;
+	}
+
+	@Override
+	public Enumeration<String> getHeaders(final String name) {
+		final List<String> values = headers.get(name);
+		return Collections.enumeration(values != null ? values : Collections.<String>emptyList());
+	}
+
+	@Override
+	public Enumeration<String> getHeaderNames() {
+		return Collections.enumeration(headers.keySet());
+	}
+
+	@Override
+	public int getIntHeader(final String name) {
+		final String value = getHeader(name);
+		return value != null ? Integer.parseInt(value) : -1;
+	}
+
+	@Override
+	public long getDateHeader(final String name) {
+		final String value = getHeader(name);
+		if(value == null) {
+			return -1;
+		}
+		try {
+			return ZonedDateTime.parse(value, RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch(final DateTimeParseException dateTimeParseException) {
+			throw new IllegalArgumentException(dateTimeParseException);
+		}
+	}
+
+	/** {@inheritDoc} This version returns the content type of the operation content, if known. */
+	@Override
+	public String getContentType() {
+		return operation.getContentType();
+	}
+
+	/** {@inheritDoc} This version returns <code>null</code>, as the character encoding of the operation content is not known. */
+	@Override
+	public String getCharacterEncoding() {
+		return null;
+	}
+
+	/** {@inheritDoc} This version returns the length of the operation content, or -1 if the operation has no content or the length is too large. */
+	@Override
+	public int getContentLength() {
+		final long contentLength = getContentLengthLong();
+		return contentLength <= Integer.MAX_VALUE ? (int)contentLength : -1;
+	}
+
+	/** {@inheritDoc} This version returns the length of the operation content, or -1 if the operation has no content. */
+	@Override
+	public long getContentLengthLong() {
+		final byte[] content = operation.getContent();
+		return content != null ? content.length : -1;
+	}
+
+	/** {@inheritDoc} This version returns a stream of the operation content, which is empty if the operation has no content. */
+	@Override
+	public ServletInputStream getInputStream() throws IOException {
+		final byte[] content = operation.getContent();
+		return new ContentInputStream(content != null ? content : new byte[0]);
+	}
+
+	/** {@inheritDoc} This version reads the operation content using ISO-8859-1, as its character encoding is not known. */
+	@Override
+	public BufferedReader getReader() throws IOException {
+		return new BufferedReader(new InputStreamReader(getInputStream(), ISO_8859_1));
+	}
+
+	/**
+	 * A servlet input stream of content already in memory.
+	 * @author Garret Wilson
+	 */
+	private static class ContentInputStream extends ServletInputStream {
+
+		/** The stream of the content. */
+		private final ByteArrayInputStream inputStream;
+
+		/**
+		 * Constructor.
+		 * @param content The content to read.
+		 */
+		public ContentInputStream(final byte[] content) {
+			inputStream = new ByteArrayInputStream(content);
+		}
+
+		@Override
+		public int read() {
+			return inputStream.read();
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) {
+			return inputStream.read(bytes, offset, length);
+		}
+
+		@Override
+		public int available() {
+			return inputStream.available();
+		}
+
+		@Override
+		public boolean isFinished() {
+			return inputStream.available() == 0;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public void setReadListener(final ReadListener readListener) {
+			throw new IllegalStateException("Operation content is not read asynchronously.");
+		}
+	}
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.util.*;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.w3c.dom.*;
+import org.xml.sax.SAXException;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+/**
+ * A parsed batch of WebDAV operations. The batch is described by an XML document in the {@value #NAMESPACE} namespace, in the form:
+ *
+ * <pre>
+ * {@code
+ * <batch xmlns="urn:globalmentor:webdav:batch">
+ *   <mkcol href="folder/"/>
+ *   <put href="folder/inline.txt">SGVsbG8=</put>
+ *   <put href="folder/part.bin" src="cid:part1"/>
+ *   <delete href="old.txt"/>
+ * </batch>
+ * }
+ * </pre>
+ * <p>
+ * PUT content is either included inline using base64 encoding, or, if the batch is sent as a <code>multipart</code> body, in a separate part identified by its
+ * <code>Content-ID</code>. In a multipart body the first part is the XML document, and the <code>Content-Type</code> of a content part, if any, is used as the
+ * content type of the operation.
+ * </p>
+ * @author Garret Wilson
+ */
+public class BatchRequest {
+
+	/** The namespace of batch request documents. */
+	public static final String NAMESPACE = "urn:globalmentor:webdav:batch";
+
+	/** The operations, in the order requested. */
+	private final List<Operation> operations;
+
+	/** @return The operations, in the order requested. */
+	public List<Operation> getOperations() {
+		return operations;
+	}
+
+	/**
+	 * Constructor.
+	 * @param operations The operations, in the order requested.
+	 */
+	private BatchRequest(final List<Operation> operations) {
+		this.operations = Collections.unmodifiableList(operations);
+	}
+
+	/**
+	 * Parses a batch request body.
+	 * @param body The bytes of the request body.
+	 * @param contentType The content type of the body, or <code>null</code> if not known, in which case the body is assumed to be XML.
+	 * @param documentBuilder The namespace-aware document builder for parsing the XML.
+	 * @return The parsed batch request.
+	 * @throws IllegalArgumentException if the body is not a valid batch request.
+	 * @throws SAXException if the XML could not be parsed.
+	 * @throws IOException if there is an error reading the body.
+	 */
+	public static BatchRequest parse(final byte[] body, final String contentType, final DocumentBuilder documentBuilder) throws SAXException, IOException {
+		final byte[] xml;
+		final Map<String, Part> parts = new HashMap<String, Part>(); //the content parts, keyed to content ID
+		if(contentType != null && contentType.regionMatches(true, 0, "multipart/", 0, 10)) {
+			final List<Part> multipartParts = parseMultipart(body, getBoundary(contentType));
+			if(multipartParts.isEmpty()) {
+				throw new IllegalArgumentException("Multipart batch has no parts.");
+			}
+			xml = multipartParts.get(0).getContent();
+			for(final Part part : multipartParts.subList(1, multipartParts.size())) {
+				String contentID = part.getHeader("content-id");
+				if(contentID != null) {
+					contentID = contentID.trim();
+					if(contentID.startsWith("<") && contentID.endsWith(">")) {
+						contentID = contentID.substring(1, contentID.length() - 1);
+					}
+					parts.put(contentID, part);
+				}
+			}
+		} else {
+			xml = body;
+		}
+		final Element batchElement = documentBuilder.parse(new ByteArrayInputStream(xml)).getDocumentElement();
+		if(!NAMESPACE.equals(batchElement.getNamespaceURI()) || !"batch".equals(batchElement.getLocalName())) {
+			throw new IllegalArgumentException("Expected batch but found " + batchElement.getNodeName() + ".");
+		}
+		final List<Operation> operations = new ArrayList<Operation>();
+		for(Node node = batchElement.getFirstChild(); node != null; node = node.getNextSibling()) {
+			if(node.getNodeType() != Node.ELEMENT_NODE || !NAMESPACE.equals(node.getNamespaceURI())) {
+				continue;
+			}
+			final Element operationElement = (Element)node;
+			final String method = operationElement.getLocalName().toUpperCase(Locale.ROOT);
+			final String href = operationElement.getAttribute("href");
+			if(href.isEmpty()) {
+				throw new IllegalArgumentException("Batch operation " + method + " missing href.");
+			}
+			byte[] content = null;
+			String operationContentType = null;
+			if("PUT".equals(method)) {
+				final String src = operationElement.getAttribute("src");
+				if(!src.isEmpty()) { //content in another part
+					if(!src.startsWith("cid:")) {
+						throw new IllegalArgumentException("Unsupported batch content source " + src + ".");
+					}
+					final Part part = parts.get(src.substring(4));
+					if(part == null) {
+						throw new IllegalArgumentException("Missing batch content part " + src + ".");
+					}
+					content = part.getContent();
+					operationContentType = part.getHeader("content-type");
+				} else { //inline content
+					content = Base64.getMimeDecoder().decode(operationElement.getTextContent().trim());
+				}
+			} else if(!"MKCOL".equals(method) && !"DELETE".equals(method)) {
+				throw new IllegalArgumentException("Unsupported batch operation " + method + ".");
+			}
+			operations.add(new Operation(method, href, content, operationContentType));
+		}
+		return new BatchRequest(operations);
+	}
+
+	/**
+	 * Determines the boundary of a multipart content type.
+	 * @param contentType The multipart content type.
+	 * @return The boundary.
+	 * @throws IllegalArgumentException if the content type has no boundary.
+	 */
+	private static String getBoundary(final String contentType) {
+		for(final String parameter : contentType.split(";")) {
+			final String trimmedParameter = parameter.trim();
+			if(trimmedParameter.regionMatches(true, 0, "boundary=", 0, 9)) {
+				String boundary = trimmedParameter.substring(9);
+				if(boundary.length() >= 2 && boundary.startsWith("\"") && boundary.endsWith("\"")) {
+					boundary = boundary.substring(1, boundary.length() - 1);
+				}
+				return boundary;
+			}
+		}
+		throw new IllegalArgumentException("Multipart content type missing boundary: " + contentType);
+	}
+
+	/**
+	 * Splits a multipart body into its parts, as described in <a href="https://tools.ietf.org/html/rfc2046#section-5.1">RFC 2046 5.1</a>.
+	 * @param body The multipart body.
+	 * @param boundary The boundary separating the parts.
+	 * @return The parts of the body.
+	 * @throws IllegalArgumentException if the body is not a valid multipart body.
+	 */
+	private static List<Part> parseMultipart(final byte[] body, final String boundary) {
+		final byte[] delimiter = ("--" + boundary).getBytes(US_ASCII);
+		final byte[] lineDelimiter = ("\r\n--" + boundary).getBytes(US_ASCII);
+		final byte[] headerEnd = "\r\n\r\n".getBytes(US_ASCII);
+		final List<Part> parts = new ArrayList<Part>();
+		int index = indexOf(body, delimiter, 0);
+		if(index < 0) {
+			throw new IllegalArgumentException("Multipart boundary not found.");
+		}
+		while(true) {
+			index += delimiter.length;
+			if(index + 1 < body.length && body[index] == '-' && body[index + 1] == '-') { //close delimiter
+				break;
+			}
+			final int lineEnd = indexOf(body, headerEnd, 0, 2, index); //the end of the delimiter line
+			if(lineEnd < 0) {
+				throw new IllegalArgumentException("Invalid multipart delimiter line.");
+			}
+			final int headersStart = lineEnd + 2;
+			final int headersEnd = indexOf(body, headerEnd, 0, headerEnd.length, lineEnd); //the delimiter line ending may also end an empty header block
+			if(headersEnd < 0) {
+				throw new IllegalArgumentException("Unterminated multipart headers.");
+			}
+			final Map<String, String> headers = new HashMap<String, String>();
+			if(headersEnd > headersStart) {
+				for(final String headerLine : new String(body, headersStart, headersEnd - headersStart, ISO_8859_1).split("\r\n")) {
+					final int colonIndex = headerLine.indexOf(':');
+					if(colonIndex > 0) {
+						headers.put(headerLine.substring(0, colonIndex).trim().toLowerCase(Locale.ROOT), headerLine.substring(colonIndex + 1).trim());
+					}
+				}
+			}
+			final int contentStart = headersEnd + headerEnd.length;
+			final int contentEnd = indexOf(body, lineDelimiter, contentStart);
+			if(contentEnd < 0) {
+				throw new IllegalArgumentException("Unterminated multipart body.");
+			}
+			parts.add(new Part(headers, Arrays.copyOfRange(body, contentStart, contentEnd)));
+			index = contentEnd + 2; //the CRLF preceding the delimiter belongs to the delimiter
+		}
+		return parts;
+	}
+
+	/**
+	 * Finds a sequence of bytes.
+	 * @param bytes The bytes to search.
+	 * @param sequence The sequence to find.
+	 * @param fromIndex The index at which to start searching.
+	 * @return The index of the sequence, or -1 if the sequence was not found.
+	 */
+	private static int indexOf(final byte[] bytes, final byte[] sequence, final int fromIndex) {
+		return indexOf(bytes, sequence, 0, sequence.length, fromIndex);
+	}
+
+	/**
+	 * Finds a subsequence of bytes.
+	 * @param bytes The bytes to search.
+	 * @param sequence The array containing the sequence to find.
+	 * @param sequenceStart The start of the sequence in the array.
+	 * @param sequenceLength The length of the sequence.
+	 * @param fromIndex The index at which to start searching.
+	 * @return The index of the sequence, or -1 if the sequence was not found.
+	 */
+	private static int indexOf(final byte[] bytes, final byte[] sequence, final int sequenceStart, final int sequenceLength, final int fromIndex) {
+		outer: for(int i = Math.max(fromIndex, 0); i <= bytes.length - sequenceLength; ++i) {
+			for(int j = 0; j < sequenceLength; ++j) {
+				if(bytes[i + j] != sequence[sequenceStart + j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * A single part of a multipart body.
+	 * @author Garret Wilson
+	 */
+	private static class Part {
+
+		/** The headers, keyed to lowercase header names. */
+		private final Map<String, String> headers;
+
+		/**
+		 * Retrieves a header.
+		 * @param name The lowercase header name.
+		 * @return The header value, or <code>null</code> if there is no such header.
+		 */
+		public String getHeader(final String name) {
+			return headers.get(name);
+		}
+
+		private final byte[] content;
+
+		/** @return The content of the part. */
+		public byte[] getContent() {
+			return content;
+		}
+
+		/**
+		 * Constructor.
+		 * @param headers The headers, keyed to lowercase header names.
+		 * @param content The content of the part.
+		 */
+		public Part(final Map<String, String> headers, final byte[] content) {
+			this.headers = headers;
+			this.content = content;
+		}
+	}
+
+	/**
+	 * A single operation in a batch.
+	 * @author Garret Wilson
+	 */
+	public static class Operation {
+
+		private final String method;
+
+		/** @return The HTTP method of the operation: <code>MKCOL</code>, <code>PUT</code>, or <code>DELETE</code>. */
+		public String getMethod() {
+			return method;
+		}
+
+		private final String href;
+
+		/** @return The reference to the target resource, possibly relative to the batch request URI. */
+		public String getHref() {
+			return href;
+		}
+
+		private final byte[] content;
+
+		/** @return The content to store for a PUT operation, or <code>null</code> for other operations. */
+		public byte[] getContent() {
+			return content;
+		}
+
+		private final String contentType;
+
+		/** @return The content type of the content to store for a PUT operation, or <code>null</code> if not known. */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * Constructor with no known content type.
+		 * @param method The HTTP method of the operation.
+		 * @param href The reference to the target resource, possibly relative to the batch request URI.
+		 * @param content The content to store for a PUT operation, or <code>null</code> for other operations.
+		 */
+		public Operation(final String method, final String href, final byte[] content) {
+			this(method, href, content, null);
+		}
+
+		/**
+		 * Constructor.
+		 * @param method The HTTP method of the operation.
+		 * @param href The reference to the target resource, possibly relative to the batch request URI.
+		 * @param content The content to store for a PUT operation, or <code>null</code> for other operations.
+		 * @param contentType The content type of the content, or <code>null</code> if not known.
+		 */
+		public Operation(final String method, final String href, final byte[] content, final String contentType) {
+			this.method = requireNonNull(method);
+			this.href = requireNonNull(href);
+			this.content = content;
+			this.contentType = contentType;
+		}
+
+		@Override
+		public String toString() {
+			return method + " " + href;
+		}
+	}
+
+}
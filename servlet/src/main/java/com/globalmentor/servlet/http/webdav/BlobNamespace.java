@@ -0,0 +1,634 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+/**
+ * A hierarchy of paths mapped to the hashes of blobs in a {@link BlobStore}. Copying a resource only adds references to the same blobs, without touching their
+ * content. Every change is appended to a journal so that the namespace survives an unclean shutdown; a clean shutdown compacts the journal into a snapshot.
+ * <p>
+ * Paths are absolute and must not contain tabs or line breaks, which is always the case for raw URI paths. A collection path has no trailing slash, except for
+ * the root collection <code>/</code>, which always exists.
+ * </p>
+ * <p>
+ * Lookups never block. Changes are serialized, but involve no blob content.
+ * </p>
+ * @author Garret Wilson
+ */
+public class BlobNamespace {
+
+	/** The path separator character. */
+	private static final char PATH_SEPARATOR = '/';
+
+	/** The root path. */
+	public static final String ROOT_PATH = "/";
+
+	/** The record type of a resource. */
+	private static final String RESOURCE_RECORD = "R";
+
+	/** The record type of a collection. */
+	private static final String COLLECTION_RECORD = "C";
+
+	/** The record type of a deletion. */
+	private static final String DELETE_RECORD = "D";
+
+	/** The record type of a copy. */
+	private static final String COPY_RECORD = "K";
+
+	/** The record type of a move. */
+	private static final String MOVE_RECORD = "M";
+
+	/** The store of the blobs referred to. */
+	private final BlobStore blobStore;
+
+	/** The file containing the snapshot of the namespace. */
+	private final File snapshotFile;
+
+	/** The file containing the changes since the snapshot. */
+	private final File journalFile;
+
+	/** The entries, keyed to normalized path. */
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/** The names of the children of each collection, keyed to normalized collection path. */
+	private final ConcurrentMap<String, Set<String>> childNames = new ConcurrentHashMap<String, Set<String>>();
+
+	/** The writer appending changes to the journal, or <code>null</code> if the namespace is not open. */
+	private Writer journalWriter = null;
+
+	/**
+	 * Constructor.
+	 * @param blobStore The store of the blobs referred to.
+	 * @param snapshotFile The file containing the snapshot of the namespace.
+	 * @param journalFile The file containing the changes since the snapshot.
+	 * @throws NullPointerException if the given blob store and/or files is <code>null</code>.
+	 */
+	public BlobNamespace(final BlobStore blobStore, final File snapshotFile, final File journalFile) {
+		this.blobStore = requireNonNull(blobStore);
+		this.snapshotFile = requireNonNull(snapshotFile);
+		this.journalFile = requireNonNull(journalFile);
+		putCollection(ROOT_PATH, System.currentTimeMillis());
+	}
+
+	/**
+	 * Normalizes a path by removing any trailing slash, except for the root path.
+	 * @param path The path to normalize.
+	 * @return The normalized path.
+	 */
+	public static String normalizePath(final String path) {
+		return CollectionSizeIndex.normalizePath(path);
+	}
+
+	/**
+	 * Determines the parent of a normalized path.
+	 * @param path The normalized path.
+	 * @return The normalized path of the parent collection, or <code>null</code> if the path is the root path.
+	 */
+	public static String getParentPath(final String path) {
+		return CollectionSizeIndex.getParentPath(path);
+	}
+
+	/**
+	 * Determines the name of a normalized path.
+	 * @param path The normalized path.
+	 * @return The last segment of the path, or the empty string for the root path.
+	 */
+	private static String getName(final String path) {
+		return path.substring(path.lastIndexOf(PATH_SEPARATOR) + 1);
+	}
+
+	/**
+	 * Determines the path of a child.
+	 * @param collectionPath The normalized path of the collection.
+	 * @param name The name of the child.
+	 * @return The normalized path of the child.
+	 */
+	private static String getChildPath(final String collectionPath, final String name) {
+		return ROOT_PATH.equals(collectionPath) ? collectionPath + name : collectionPath + PATH_SEPARATOR + name;
+	}
+
+	/**
+	 * Determines whether a path is the given path or one of its descendants.
+	 * @param path The normalized path to check.
+	 * @param ancestorPath The normalized path of the potential ancestor.
+	 * @return <code>true</code> if the path is the same as or within the given ancestor path.
+	 */
+	public static boolean isWithin(final String path, final String ancestorPath) {
+		return path.equals(ancestorPath) || ROOT_PATH.equals(ancestorPath)
+				|| (path.startsWith(ancestorPath) && path.length() > ancestorPath.length() && path.charAt(ancestorPath.length()) == PATH_SEPARATOR);
+	}
+
+	/**
+	 * Loads the namespace from its snapshot and journal, adds a reference in the blob store for every resource, and opens the journal for recording changes.
+	 * @throws IOException if there is an error reading the namespace or opening the journal.
+	 * @throws IllegalStateException if the namespace is already open.
+	 */
+	public synchronized void open() throws IOException {
+		if(journalWriter != null) {
+			throw new IllegalStateException("Namespace already open.");
+		}
+		if(snapshotFile.isFile()) {
+			replay(snapshotFile);
+		}
+		if(journalFile.isFile()) {
+			replay(journalFile);
+		}
+		for(final Entry entry : entries.values()) {
+			if(!entry.isCollection()) {
+				blobStore.retain(entry.getHash());
+			}
+		}
+		compact(); //start with an empty journal
+	}
+
+	/**
+	 * Compacts the namespace into a snapshot and closes the journal.
+	 * @throws IOException if there is an error storing the snapshot.
+	 */
+	public synchronized void close() throws IOException {
+		if(journalWriter != null) {
+			journalWriter.close();
+			journalWriter = null;
+			store(snapshotFile);
+			Files.deleteIfExists(journalFile.toPath());
+		}
+	}
+
+	/**
+	 * Stores a snapshot of the namespace and starts a new journal.
+	 * @throws IOException if there is an error storing the snapshot or opening the journal.
+	 */
+	public synchronized void compact() throws IOException {
+		if(journalWriter != null) {
+			journalWriter.close();
+		}
+		store(snapshotFile);
+		journalWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(journalFile), UTF_8)); //the snapshot makes the old journal redundant
+	}
+
+	/**
+	 * Stores a snapshot of the namespace, parents before children.
+	 * @param file The file in which to store the snapshot.
+	 * @throws IOException if there is an error writing the snapshot.
+	 */
+	private void store(final File file) throws IOException {
+		final File tempFile = new File(file.getPath() + ".tmp");
+		try (final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), UTF_8))) {
+			final Deque<String> paths = new ArrayDeque<String>();
+			paths.push(ROOT_PATH);
+			while(!paths.isEmpty()) {
+				final String path = paths.pop();
+				final Entry entry = entries.get(path);
+				if(entry != null) {
+					writeEntry(writer, path, entry);
+					if(entry.isCollection()) {
+						for(final String name : getChildNames(path)) {
+							paths.push(getChildPath(path, name));
+						}
+					}
+				}
+			}
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING); //don't leave a partial snapshot
+	}
+
+	/**
+	 * Writes an entry record.
+	 * @param writer The writer to which to write the record.
+	 * @param path The normalized path of the entry.
+	 * @param entry The entry.
+	 * @throws IOException if there is an error writing the record.
+	 */
+	private static void writeEntry(final Writer writer, final String path, final Entry entry) throws IOException {
+		if(entry.isCollection()) {
+			writeRecord(writer, COLLECTION_RECORD, path, Long.toString(entry.getLastModified()));
+		} else {
+			writeRecord(writer, RESOURCE_RECORD, path, entry.getHash(), Long.toString(entry.getSize()), Long.toString(entry.getLastModified()));
+		}
+	}
+
+	/**
+	 * Writes a record consisting of tab-separated fields.
+	 * @param writer The writer to which to write the record.
+	 * @param fields The fields of the record, the first of which is the record type.
+	 * @throws IOException if there is an error writing the record.
+	 */
+	private static void writeRecord(final Writer writer, final String... fields) throws IOException {
+		for(int i = 0; i < fields.length; ++i) {
+			if(i > 0) {
+				writer.write('\t');
+			}
+			writer.write(fields[i]);
+		}
+		writer.write('\n');
+	}
+
+	/**
+	 * Appends a change to the journal, if the namespace is open.
+	 * @param fields The fields of the record, the first of which is the record type.
+	 * @throws IOException if there is an error writing the record.
+	 */
+	private void journal(final String... fields) throws IOException {
+		if(journalWriter != null) {
+			writeRecord(journalWriter, fields);
+			journalWriter.flush();
+		}
+	}
+
+	/**
+	 * Applies the records in a snapshot or journal. A truncated final record, left by a crash while writing, is ignored.
+	 * @param file The file containing the records.
+	 * @throws IOException if there is an error reading the file or a record is invalid.
+	 */
+	private void replay(final File file) throws IOException {
+		try (final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8))) {
+			String line;
+			while((line = reader.readLine()) != null) {
+				final String[] fields = line.split("\t", -1);
+				try {
+					switch(fields[0]) {
+						case RESOURCE_RECORD:
+							putResource(fields[1], fields[2], Long.parseLong(fields[3]), Long.parseLong(fields[4]));
+							break;
+						case COLLECTION_RECORD:
+							putCollection(fields[1], Long.parseLong(fields[2]));
+							break;
+						case DELETE_RECORD:
+							removeTree(fields[1]);
+							break;
+						case COPY_RECORD:
+							copyTree(fields[1], fields[2], Integer.parseInt(fields[3]), Long.parseLong(fields[4]));
+							break;
+						case MOVE_RECORD:
+							moveTree(fields[1], fields[2]);
+							break;
+						default:
+							throw new IOException("Unknown namespace record " + fields[0] + " in " + file);
+					}
+				} catch(final ArrayIndexOutOfBoundsException | NumberFormatException exception) {
+					if(reader.ready()) { //only the last record may be incomplete
+						throw new IOException("Invalid namespace record in " + file + ": " + line, exception);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Retrieves an entry.
+	 * @param path The path of the entry.
+	 * @return The entry at the given path, or <code>null</code> if there is no such entry.
+	 */
+	public Entry get(final String path) {
+		return entries.get(normalizePath(path));
+	}
+
+	/**
+	 * Retrieves the names of the children of a collection.
+	 * @param path The path of the collection.
+	 * @return The names of the children in sorted order, which will be empty if the collection has no children or does not exist.
+	 */
+	public Collection<String> getChildNames(final String path) {
+		final Set<String> names = childNames.get(normalizePath(path));
+		return names != null ? names : Collections.<String>emptySet();
+	}
+
+	/**
+	 * Maps a path to a resource, taking over a reference to its blob that has already been added. Any resource previously at the path releases its reference.
+	 * @param path The path of the resource.
+	 * @param hash The hash of the blob containing the content.
+	 * @param size The size of the content.
+	 * @return The entry previously at the path, or <code>null</code> if there was no entry.
+	 * @throws IllegalArgumentException if the parent of the path is not a collection, or the path is a collection.
+	 * @throws IOException if there is an error recording the change.
+	 */
+	public synchronized Entry put(final String path, final String hash, final long size) throws IOException {
+		final String normalizedPath = normalizePath(path);
+		final long lastModified = System.currentTimeMillis();
+		final Entry oldEntry = putResource(normalizedPath, hash, size, lastModified);
+		journal(RESOURCE_RECORD, normalizedPath, hash, Long.toString(size), Long.toString(lastModified));
+		if(oldEntry != null) {
+			blobStore.release(oldEntry.getHash());
+		}
+		return oldEntry;
+	}
+
+	/**
+	 * Creates a collection.
+	 * @param path The path of the collection.
+	 * @return The new entry.
+	 * @throws IllegalArgumentException if the parent of the path is not a collection, or something already exists at the path.
+	 * @throws IOException if there is an error recording the change.
+	 */
+	public synchronized Entry mkcol(final String path) throws IOException {
+		final String normalizedPath = normalizePath(path);
+		if(entries.containsKey(normalizedPath)) {
+			throw new IllegalArgumentException("Resource already exists: " + normalizedPath);
+		}
+		final long lastModified = System.currentTimeMillis();
+		final Entry entry = putCollection(normalizedPath, lastModified);
+		journal(COLLECTION_RECORD, normalizedPath, Long.toString(lastModified));
+		return entry;
+	}
+
+	/**
+	 * Removes a resource or collection along with all its descendants, releasing their blob references.
+	 * @param path The path to remove.
+	 * @return <code>true</code> if anything was removed.
+	 * @throws IllegalArgumentException if the path is the root path.
+	 * @throws IOException if there is an error recording the change.
+	 */
+	public synchronized boolean delete(final String path) throws IOException {
+		final String normalizedPath = normalizePath(path);
+		final List<Entry> removedEntries = removeTree(normalizedPath);
+		if(removedEntries.isEmpty()) {
+			return false;
+		}
+		journal(DELETE_RECORD, normalizedPath);
+		for(final Entry entry : removedEntries) {
+			if(!entry.isCollection()) {
+				blobStore.release(entry.getHash());
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copies a resource or collection to a destination that does not exist, adding blob references for the copies. No content is copied.
+	 * @param sourcePath The path to copy.
+	 * @param destinationPath The path of the copy.
+	 * @param depth The zero-based depth of descendants to copy, or <code>-1</code> for all descendants.
+	 * @throws IllegalArgumentException if the source does not exist, the destination exists, the parent of the destination is not a collection, or the
+	 *           destination is within the source.
+	 * @throws IOException if there is an error recording the change.
+	 */
+	public synchronized void copy(final String sourcePath, final String destinationPath, final int depth) throws IOException {
+		final String normalizedSourcePath = normalizePath(sourcePath);
+		final String normalizedDestinationPath = normalizePath(destinationPath);
+		final long lastModified = System.currentTimeMillis();
+		final List<Entry> copiedEntries = copyTree(normalizedSourcePath, normalizedDestinationPath, depth, lastModified);
+		journal(COPY_RECORD, normalizedSourcePath, normalizedDestinationPath, Integer.toString(depth), Long.toString(lastModified));
+		for(final Entry entry : copiedEntries) {
+			if(!entry.isCollection()) {
+				blobStore.retain(entry.getHash());
+			}
+		}
+	}
+
+	/**
+	 * Moves a resource or collection to a destination that does not exist.
+	 * @param sourcePath The path to move.
+	 * @param destinationPath The new path.
+	 * @throws IllegalArgumentException if the source does not exist or is the root, the destination exists, the parent of the destination is not a collection,
+	 *           or the destination is within the source.
+	 * @throws IOException if there is an error recording the change.
+	 */
+	public synchronized void move(final String sourcePath, final String destinationPath) throws IOException {
+		final String normalizedSourcePath = normalizePath(sourcePath);
+		final String normalizedDestinationPath = normalizePath(destinationPath);
+		moveTree(normalizedSourcePath, normalizedDestinationPath);
+		journal(MOVE_RECORD, normalizedSourcePath, normalizedDestinationPath);
+	}
+
+	/**
+	 * Ensures that the parent of a path is an existing collection.
+	 * @param path The normalized path.
+	 * @return The normalized parent path.
+	 * @throws IllegalArgumentException if the path is the root path or its parent is not a collection.
+	 */
+	private String checkParent(final String path) {
+		final String parentPath = getParentPath(path);
+		if(parentPath == null) {
+			throw new IllegalArgumentException("The root collection cannot be replaced.");
+		}
+		final Entry parentEntry = entries.get(parentPath);
+		if(parentEntry == null || !parentEntry.isCollection()) {
+			throw new IllegalArgumentException("No parent collection for " + path);
+		}
+		return parentPath;
+	}
+
+	/**
+	 * Adds an entry and links it into its parent collection.
+	 * @param path The normalized path.
+	 * @param entry The entry to add.
+	 * @return The entry previously at the path, or <code>null</code> if there was no entry.
+	 */
+	private Entry link(final String path, final Entry entry) {
+		final String parentPath = getParentPath(path);
+		final Entry oldEntry = entries.put(path, entry);
+		if(entry.isCollection()) {
+			childNames.putIfAbsent(path, new ConcurrentSkipListSet<String>());
+		}
+		if(parentPath != null) {
+			childNames.get(parentPath).add(getName(path));
+		}
+		return oldEntry;
+	}
+
+	/**
+	 * Maps a path to a resource without recording the change.
+	 * @param path The normalized path.
+	 * @param hash The hash of the blob.
+	 * @param size The size of the content.
+	 * @param lastModified The modification time.
+	 * @return The entry previously at the path, or <code>null</code> if there was no entry.
+	 * @throws IllegalArgumentException if the parent of the path is not a collection, or the path is a collection.
+	 */
+	private Entry putResource(final String path, final String hash, final long size, final long lastModified) {
+		checkParent(path);
+		final Entry oldEntry = entries.get(path);
+		if(oldEntry != null && oldEntry.isCollection()) {
+			throw new IllegalArgumentException("Collection cannot be replaced by a resource: " + path);
+		}
+		return link(path, new Entry(requireNonNull(hash), size, lastModified));
+	}
+
+	/**
+	 * Creates a collection without recording the change.
+	 * @param path The normalized path.
+	 * @param lastModified The modification time.
+	 * @return The new entry.
+	 * @throws IllegalArgumentException if the parent of the path is not a collection.
+	 */
+	private Entry putCollection(final String path, final long lastModified) {
+		if(!ROOT_PATH.equals(path)) {
+			checkParent(path);
+		}
+		final Entry entry = new Entry(null, -1, lastModified);
+		link(path, entry);
+		return entry;
+	}
+
+	/**
+	 * Removes a tree without recording the change or releasing references.
+	 * @param path The normalized path.
+	 * @return The entries removed.
+	 * @throws IllegalArgumentException if the path is the root path.
+	 */
+	private List<Entry> removeTree(final String path) {
+		final String parentPath = getParentPath(path);
+		if(parentPath == null) {
+			throw new IllegalArgumentException("The root collection cannot be removed.");
+		}
+		final List<Entry> removedEntries = new ArrayList<Entry>();
+		final Set<String> parentChildNames = childNames.get(parentPath);
+		if(parentChildNames != null) {
+			parentChildNames.remove(getName(path));
+		}
+		final Deque<String> paths = new ArrayDeque<String>();
+		paths.push(path);
+		while(!paths.isEmpty()) {
+			final String removePath = paths.pop();
+			final Entry entry = entries.remove(removePath);
+			if(entry != null) {
+				removedEntries.add(entry);
+				final Set<String> names = childNames.remove(removePath);
+				if(names != null) {
+					for(final String name : names) {
+						paths.push(getChildPath(removePath, name));
+					}
+				}
+			}
+		}
+		return removedEntries;
+	}
+
+	/**
+	 * Copies a tree without recording the change or adding references.
+	 * @param sourcePath The normalized source path.
+	 * @param destinationPath The normalized destination path.
+	 * @param depth The zero-based depth of descendants to copy, or <code>-1</code> for all descendants.
+	 * @param lastModified The modification time of the copies.
+	 * @return The entries added.
+	 * @throws IllegalArgumentException if the copy is not possible.
+	 */
+	private List<Entry> copyTree(final String sourcePath, final String destinationPath, final int depth, final long lastModified) {
+		checkTransfer(sourcePath, destinationPath);
+		final List<Entry> copiedEntries = new ArrayList<Entry>();
+		copyTree(sourcePath, destinationPath, depth, lastModified, copiedEntries);
+		return copiedEntries;
+	}
+
+	/**
+	 * Recursively copies a tree.
+	 * @param sourcePath The normalized source path.
+	 * @param destinationPath The normalized destination path.
+	 * @param depth The remaining depth of descendants to copy, or <code>-1</code> for all descendants.
+	 * @param lastModified The modification time of the copies, or <code>-1</code> if the modification times of the originals should be kept.
+	 * @param copiedEntries The list to which to add the entries added.
+	 */
+	private void copyTree(final String sourcePath, final String destinationPath, final int depth, final long lastModified, final List<Entry> copiedEntries) {
+		final Entry sourceEntry = entries.get(sourcePath);
+		if(sourceEntry == null) {
+			return;
+		}
+		final Entry entry = new Entry(sourceEntry.getHash(), sourceEntry.getSize(), lastModified >= 0 ? lastModified : sourceEntry.getLastModified());
+		link(destinationPath, entry);
+		copiedEntries.add(entry);
+		if(sourceEntry.isCollection() && depth != 0) {
+			for(final String name : getChildNames(sourcePath)) {
+				copyTree(getChildPath(sourcePath, name), getChildPath(destinationPath, name), depth > 0 ? depth - 1 : depth, lastModified, copiedEntries);
+			}
+		}
+	}
+
+	/**
+	 * Moves a tree without recording the change.
+	 * @param sourcePath The normalized source path.
+	 * @param destinationPath The normalized destination path.
+	 * @throws IllegalArgumentException if the move is not possible.
+	 */
+	private void moveTree(final String sourcePath, final String destinationPath) {
+		checkTransfer(sourcePath, destinationPath);
+		copyTree(sourcePath, destinationPath, -1, -1, new ArrayList<Entry>()); //keep the modification times
+		removeTree(sourcePath);
+	}
+
+	/**
+	 * Ensures that a tree can be copied or moved.
+	 * @param sourcePath The normalized source path.
+	 * @param destinationPath The normalized destination path.
+	 * @throws IllegalArgumentException if the source does not exist or is the root, the destination exists, the parent of the destination is not a collection,
+	 *           or the destination is within the source.
+	 */
+	private void checkTransfer(final String sourcePath, final String destinationPath) {
+		if(ROOT_PATH.equals(sourcePath) || !entries.containsKey(sourcePath)) {
+			throw new IllegalArgumentException("Invalid source " + sourcePath);
+		}
+		if(entries.containsKey(destinationPath)) {
+			throw new IllegalArgumentException("Destination already exists: " + destinationPath);
+		}
+		if(isWithin(destinationPath, sourcePath)) {
+			throw new IllegalArgumentException("Cannot transfer " + sourcePath + " into itself.");
+		}
+		checkParent(destinationPath);
+	}
+
+	/**
+	 * An immutable description of a resource or collection in the namespace.
+	 * @author Garret Wilson
+	 */
+	public static class Entry {
+
+		private final String hash;
+
+		/** @return The hash of the blob containing the content, or <code>null</code> if this is a collection. */
+		public String getHash() {
+			return hash;
+		}
+
+		/** @return Whether this entry is a collection. */
+		public boolean isCollection() {
+			return hash == null;
+		}
+
+		private final long size;
+
+		/** @return The size of the content, or <code>-1</code> for a collection. */
+		public long getSize() {
+			return size;
+		}
+
+		private final long lastModified;
+
+		/** @return The time the entry was last modified, in milliseconds since the epoch. */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Constructor.
+		 * @param hash The hash of the blob containing the content, or <code>null</code> for a collection.
+		 * @param size The size of the content, or <code>-1</code> for a collection.
+		 * @param lastModified The time the entry was last modified, in milliseconds since the epoch.
+		 */
+		public Entry(final String hash, final long size, final long lastModified) {
+			this.hash = hash;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
+}
@@ -0,0 +1,344 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.*;
+import java.util.concurrent.*;
+
+import io.clogr.Clogged;
+
+import static java.util.Objects.*;
+
+/**
+ * A content-addressed store of immutable blobs on the local file system, each identified by the hex-encoded {@value #DIGEST_ALGORITHM} hash of its content.
+ * Identical content is stored only once. Each blob is reference-counted; blobs no longer referenced are deleted by {@link #collectGarbage()}.
+ * <p>
+ * Blobs are stored in the form <code><var>ab</var>/<var>cd</var>/<var>abcd...</var></code> to keep directories small. Content is first written to a temporary
+ * file while its hash is computed, and then moved into place, so that a blob file is never seen partially written. Any other files in the directory of the store
+ * are ignored, so that related data may be kept alongside the blobs.
+ * </p>
+ * <p>
+ * Reference counts are not persisted; they are expected to be restored on startup using {@link #retain(String)} from whatever refers to the blobs.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class BlobStore implements Clogged {
+
+	/** The algorithm used to hash blob content. */
+	public static final String DIGEST_ALGORITHM = "SHA-256";
+
+	/** The length of a hex-encoded hash. */
+	private static final int HASH_LENGTH = 64;
+
+	/** The hex digits used for encoding hashes. */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/** The root directory of the store. */
+	private final Path directory;
+
+	/** The directory holding content being written. */
+	private final Path tempDirectory;
+
+	/** The number of references to each blob, keyed to hash. A blob with no references may be collected. */
+	private final ConcurrentMap<String, Long> referenceCounts = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * Constructor.
+	 * @param directory The root directory of the store.
+	 * @throws NullPointerException if the given directory is <code>null</code>.
+	 */
+	public BlobStore(final Path directory) {
+		this.directory = requireNonNull(directory);
+		this.tempDirectory = directory.resolve("tmp");
+	}
+
+	/**
+	 * Prepares the store for use, removing any content left over from interrupted writes.
+	 * @throws IOException if there is an error preparing the directories.
+	 */
+	public void start() throws IOException {
+		Files.createDirectories(tempDirectory);
+		try (final DirectoryStream<Path> tempFiles = Files.newDirectoryStream(tempDirectory)) {
+			for(final Path tempFile : tempFiles) {
+				Files.deleteIfExists(tempFile);
+			}
+		}
+	}
+
+	/**
+	 * Determines the file of a blob.
+	 * @param hash The hash identifying the blob.
+	 * @return The path to the blob file, which may not exist.
+	 * @throws IllegalArgumentException if the given string is not a valid hash.
+	 */
+	public Path getFile(final String hash) {
+		if(hash.length() < 4) {
+			throw new IllegalArgumentException("Invalid blob hash " + hash);
+		}
+		for(int i = hash.length() - 1; i >= 0; --i) {
+			final char c = hash.charAt(i);
+			if(!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+				throw new IllegalArgumentException("Invalid blob hash " + hash);
+			}
+		}
+		return directory.resolve(hash.substring(0, 2)).resolve(hash.substring(2, 4)).resolve(hash);
+	}
+
+	/**
+	 * Determines the size of a blob.
+	 * @param hash The hash identifying the blob.
+	 * @return The number of bytes in the blob.
+	 * @throws IOException if the blob does not exist or there is an error accessing it.
+	 */
+	public long getSize(final String hash) throws IOException {
+		return Files.size(getFile(hash));
+	}
+
+	/**
+	 * Opens a blob for reading.
+	 * @param hash The hash identifying the blob.
+	 * @return An input stream to the blob content.
+	 * @throws IOException if the blob does not exist or there is an error accessing it.
+	 */
+	public InputStream getInputStream(final String hash) throws IOException {
+		return Files.newInputStream(getFile(hash));
+	}
+
+	/**
+	 * Opens a stream for writing a new blob. The blob is stored when the stream is committed, and a reference to it is added at that time. If the stream is
+	 * closed without being committed, its content is discarded.
+	 * @return A new stream for writing a blob.
+	 * @throws IOException if there is an error creating the stream.
+	 */
+	public BlobOutputStream newOutputStream() throws IOException {
+		final Path tempFile = Files.createTempFile(tempDirectory, "blob", ".tmp");
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch(final NoSuchAlgorithmException noSuchAlgorithmException) { //every Java platform is required to support SHA-256
+			throw new AssertionError(noSuchAlgorithmException);
+		}
+		return new BlobOutputStream(tempFile, messageDigest);
+	}
+
+	/**
+	 * Adds a reference to a blob.
+	 * @param hash The hash identifying the blob.
+	 * @return The number of references to the blob after the reference was added.
+	 */
+	public long retain(final String hash) {
+		return referenceCounts.merge(hash, 1L, Long::sum);
+	}
+
+	/**
+	 * Removes a reference to a blob. The blob is not deleted until the next garbage collection.
+	 * @param hash The hash identifying the blob.
+	 * @return The number of references to the blob remaining.
+	 * @throws IllegalStateException if the blob has no references.
+	 */
+	public long release(final String hash) {
+		final Long referenceCount = referenceCounts.computeIfPresent(hash, (__, count) -> count - 1);
+		if(referenceCount == null || referenceCount < 0) {
+			throw new IllegalStateException("Blob " + hash + " has no references.");
+		}
+		return referenceCount;
+	}
+
+	/**
+	 * Determines the number of references to a blob.
+	 * @param hash The hash identifying the blob.
+	 * @return The number of references to the blob.
+	 */
+	public long getReferenceCount(final String hash) {
+		return referenceCounts.getOrDefault(hash, 0L);
+	}
+
+	/**
+	 * Determines whether a file is a blob file, named by a hash and located in the directory for that hash.
+	 * @param file The file to check, within the directory of the store.
+	 * @return <code>true</code> if the file is a blob file.
+	 */
+	protected boolean isBlobFile(final Path file) {
+		final String hash = file.getFileName().toString();
+		if(hash.length() != HASH_LENGTH) {
+			return false;
+		}
+		try {
+			return getFile(hash).equals(file);
+		} catch(final IllegalArgumentException illegalArgumentException) { //not a valid hash
+			return false;
+		}
+	}
+
+	/**
+	 * Deletes all blobs that are not referenced, including any blob files on disk for which no reference was ever recorded. Blobs stored or retained
+	 * concurrently are not affected, nor are files that are not blob files.
+	 * @return The number of blobs deleted.
+	 * @throws IOException if there is an error walking the store.
+	 */
+	public long collectGarbage() throws IOException {
+		final long[] deletedCount = new long[1];
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) throws IOException {
+				return dir.equals(tempDirectory) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+				if(!isBlobFile(file)) { //never delete anything else kept in the directory
+					return FileVisitResult.CONTINUE;
+				}
+				final String hash = file.getFileName().toString();
+				referenceCounts.compute(hash, (__, count) -> { //deleting within the map operation keeps a concurrent store of the same content from losing its file
+					if(count == null || count <= 0) {
+						try {
+							Files.deleteIfExists(file);
+							++deletedCount[0];
+						} catch(final IOException ioException) {
+							getLogger().warn("Unable to delete blob {}.", file, ioException);
+						}
+						return null;
+					}
+					return count;
+				});
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return deletedCount[0];
+	}
+
+	/**
+	 * Encodes a hash as lowercase hexadecimal.
+	 * @param bytes The hash bytes.
+	 * @return The hex-encoded hash.
+	 */
+	private static String toHex(final byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		for(int i = 0; i < bytes.length; ++i) {
+			chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * An output stream writing a new blob, computing its hash as content is written.
+	 * @author Garret Wilson
+	 */
+	public class BlobOutputStream extends FilterOutputStream {
+
+		private final Path tempFile;
+
+		private final MessageDigest messageDigest;
+
+		/** The number of bytes written. */
+		private long count = 0;
+
+		/** @return The number of bytes written. */
+		public long getCount() {
+			return count;
+		}
+
+		/** The hash of the content, or <code>null</code> if the blob has not been committed. */
+		private String hash = null;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * @param tempFile The temporary file to which content is written.
+		 * @param messageDigest The digest for computing the hash of the content.
+		 * @throws IOException if the temporary file could not be opened.
+		 */
+		private BlobOutputStream(final Path tempFile, final MessageDigest messageDigest) throws IOException {
+			super(new BufferedOutputStream(Files.newOutputStream(tempFile)));
+			this.tempFile = tempFile;
+			this.messageDigest = messageDigest;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			messageDigest.update((byte)b);
+			++count;
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			out.write(bytes, offset, length);
+			messageDigest.update(bytes, offset, length);
+			count += length;
+		}
+
+		/**
+		 * Stores the content written as a blob and adds a reference to it. If a blob with the same content already exists, the content written is discarded.
+		 * @return The hash identifying the blob.
+		 * @throws IOException if there is an error storing the blob.
+		 */
+		public String commit() throws IOException {
+			if(hash != null) {
+				return hash;
+			}
+			out.close();
+			closed = true;
+			final String hash = toHex(messageDigest.digest());
+			final Path file = getFile(hash);
+			Files.createDirectories(file.getParent());
+			try {
+				referenceCounts.compute(hash, (__, count) -> { //garbage collection can't delete the file while we're storing it
+					try {
+						if(Files.exists(file)) { //deduplicate
+							Files.delete(tempFile);
+						} else {
+							Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+						}
+					} catch(final IOException ioException) {
+						throw new UncheckedIOException(ioException);
+					}
+					return count != null ? count + 1 : 1;
+				});
+			} catch(final UncheckedIOException uncheckedIOException) {
+				Files.deleteIfExists(tempFile);
+				throw uncheckedIOException.getCause();
+			}
+			this.hash = hash;
+			return hash;
+		}
+
+		/** Closes the stream, discarding the content if it has not been committed. */
+		@Override
+		public void close() throws IOException {
+			if(!closed) {
+				closed = true;
+				try {
+					out.close();
+				} finally {
+					Files.deleteIfExists(tempFile);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,469 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.w3c.dom.*;
+
+import com.globalmentor.collections.DecoratorIDedMappedList;
+import com.globalmentor.net.DefaultResource;
+import com.globalmentor.net.http.*;
+import com.globalmentor.net.http.webdav.*;
+import static com.globalmentor.net.HTTP.*;
+import static com.globalmentor.servlet.Servlets.*;
+
+/**
+ * A WebDAV server that stores content in a deduplicating, content-addressed {@link BlobStore} on the local file system. The namespace of resources is kept by
+ * a {@link BlobNamespace}, which maps each resource path to the {@value BlobStore#DIGEST_ALGORITHM} hash of its content. The hash is computed while a PUT body
+ * is streamed to disk, and identical content uploaded to any number of locations is stored once. COPY and MOVE only change the namespace, regardless of the
+ * size of the content. The hash serves as a strong entity tag for GET, HEAD, and the <code>getetag</code> property.
+ * <p>
+ * Blobs no longer referenced by the namespace are deleted periodically in the background, at which time the namespace journal is also compacted.
+ * </p>
+ * <p>
+ * This servlet supports the following initialization parameters in addition to those of its parent classes:
+ * </p>
+ * <dl>
+ * <dt>{@value #BLOB_DIRECTORY_INIT_PARAMETER}</dt>
+ * <dd>The directory in which blobs and the namespace are stored; defaults to a <code>blobs</code> subdirectory of the data directory.</dd>
+ * <dt>{@value #BLOB_COLLECTION_INTERVAL_INIT_PARAMETER}</dt>
+ * <dd>The number of seconds between collections of unreferenced blobs, or zero if blobs should only be collected on startup.</dd>
+ * </dl>
+ * @author Garret Wilson
+ */
+public class BlobWebDAVServlet extends AbstractWebDAVServlet<BlobWebDAVServlet.BlobResource> {
+
+	private static final long serialVersionUID = 1734519385066302117L;
+
+	/** The init parameter, {@value #BLOB_DIRECTORY_INIT_PARAMETER}, used to specify the directory in which blobs and the namespace are stored. */
+	public static final String BLOB_DIRECTORY_INIT_PARAMETER = "blobDirectory";
+
+	/** The init parameter, {@value #BLOB_COLLECTION_INTERVAL_INIT_PARAMETER}, used to specify the number of seconds between collections of unreferenced blobs. */
+	public static final String BLOB_COLLECTION_INTERVAL_INIT_PARAMETER = "blobCollectionInterval";
+
+	/** The default number of seconds between collections of unreferenced blobs. */
+	public static final long DEFAULT_BLOB_COLLECTION_INTERVAL = 60 * 60;
+
+	/** The store of content, or <code>null</code> if the servlet has not been initialized. */
+	private BlobStore blobStore = null;
+
+	/** @return The store of content, or <code>null</code> if the servlet has not been initialized. */
+	protected BlobStore getBlobStore() {
+		return blobStore;
+	}
+
+	/** The namespace of resources, or <code>null</code> if the servlet has not been initialized. */
+	private BlobNamespace namespace = null;
+
+	/** @return The namespace of resources, or <code>null</code> if the servlet has not been initialized. */
+	protected BlobNamespace getNamespace() {
+		return namespace;
+	}
+
+	/** The executor collecting unreferenced blobs, or <code>null</code> if the servlet has not been initialized. */
+	private ScheduledExecutorService collector = null;
+
+	/**
+	 * Initializes the servlet. This version opens the blob store and namespace, and starts collecting unreferenced blobs in the background.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if there is a problem initializing.
+	 */
+	@Override
+	public void initialize(final ServletConfig servletConfig) throws ServletException, IllegalArgumentException, IllegalStateException {
+		super.initialize(servletConfig);
+		final File blobDirectory = getDataDirectory(getServletContext(), BLOB_DIRECTORY_INIT_PARAMETER, "blobs");
+		if(blobDirectory == null) {
+			throw new ServletException("No blob directory available.");
+		}
+		final BlobStore blobStore = new BlobStore(blobDirectory.toPath());
+		final BlobNamespace namespace = new BlobNamespace(blobStore, new File(blobDirectory, "namespace-" + servletConfig.getServletName() + ".txt"),
+				new File(blobDirectory, "namespace-" + servletConfig.getServletName() + ".journal"));
+		try {
+			blobStore.start();
+			namespace.open();
+		} catch(final IOException ioException) {
+			throw new ServletException(ioException);
+		}
+		this.blobStore = blobStore;
+		this.namespace = namespace;
+		final Long collectionInterval = getLongInitParameter(servletConfig, BLOB_COLLECTION_INTERVAL_INIT_PARAMETER);
+		final long collectionIntervalSeconds = collectionInterval != null ? collectionInterval.longValue() : DEFAULT_BLOB_COLLECTION_INTERVAL;
+		collector = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, getClass().getSimpleName());
+			thread.setDaemon(true);
+			return thread;
+		});
+		if(collectionIntervalSeconds > 0) {
+			collector.scheduleWithFixedDelay(this::collectGarbage, 0, collectionIntervalSeconds, TimeUnit.SECONDS);
+		} else {
+			collector.execute(this::collectGarbage); //still get rid of anything left unreferenced by the last run
+		}
+	}
+
+	/** Destroys the servlet. This version stops collecting unreferenced blobs and stores a snapshot of the namespace. */
+	@Override
+	public void destroy() {
+		if(collector != null) {
+			collector.shutdownNow();
+			collector = null;
+		}
+		if(namespace != null) {
+			try {
+				namespace.close();
+			} catch(final IOException ioException) {
+				getLogger().warn("Unable to store blob namespace.", ioException);
+			}
+			namespace = null;
+		}
+		super.destroy();
+	}
+
+	/** Compacts the namespace journal and deletes blobs that are no longer referenced. */
+	protected void collectGarbage() {
+		try {
+			namespace.compact();
+			final long deletedCount = blobStore.collectGarbage();
+			if(deletedCount > 0) {
+				getLogger().info("Collected {} unreferenced blobs.", deletedCount);
+			}
+		} catch(final IOException ioException) {
+			getLogger().warn("Error collecting unreferenced blobs.", ioException);
+		}
+	}
+
+	/**
+	 * Determines the path used to identify a resource in the namespace.
+	 * @param resourceURI The URI of the resource.
+	 * @return The raw absolute path of the resource relative to the servlet context, without any trailing slash.
+	 */
+	protected String getNamespacePath(final URI resourceURI) {
+		return BlobNamespace.normalizePath(getResourceContextAbsolutePath(resourceURI.getRawPath()));
+	}
+
+	@Override
+	protected boolean exists(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		return namespace.get(getNamespacePath(resourceURI)) != null;
+	}
+
+	@Override
+	protected boolean isCollection(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		final BlobNamespace.Entry entry = namespace.get(getNamespacePath(resourceURI));
+		return entry != null && entry.isCollection();
+	}
+
+	/**
+	 * {@inheritDoc} This version captures the current state of the resource, so that the content served corresponds to the entity tag reported.
+	 */
+	@Override
+	protected BlobResource getResource(final HttpServletRequest request, final URI resourceURI) throws IllegalArgumentException, IOException {
+		return new BlobResource(resourceURI, namespace.get(getNamespacePath(resourceURI)));
+	}
+
+	/**
+	 * Determines the entry of an existing resource.
+	 * @param resource The resource.
+	 * @return The entry of the resource.
+	 * @throws HTTPNotFoundException if the resource did not exist when it was retrieved.
+	 */
+	private static BlobNamespace.Entry getEntry(final BlobResource resource) throws HTTPNotFoundException {
+		final BlobNamespace.Entry entry = resource.getEntry();
+		if(entry == null) {
+			throw new HTTPNotFoundException(resource.getURI().toString());
+		}
+		return entry;
+	}
+
+	/**
+	 * {@inheritDoc} This version returns the hash of the content, which is a strong entity tag.
+	 */
+	@Override
+	protected String getEntityTag(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		final BlobNamespace.Entry entry = resource.getEntry();
+		return entry != null && !entry.isCollection() ? '"' + entry.getHash() + '"' : null;
+	}
+
+	@Override
+	protected long getContentLength(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		final BlobNamespace.Entry entry = resource.getEntry();
+		return entry != null ? entry.getSize() : -1;
+	}
+
+	@Override
+	protected Date getLastModifiedDate(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		final BlobNamespace.Entry entry = resource.getEntry();
+		return entry != null ? new Date(entry.getLastModified()) : null;
+	}
+
+	/**
+	 * {@inheritDoc} This version uses the state of the resource captured when the resource was retrieved.
+	 */
+	@Override
+	protected ResourceState getResourceState(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		final BlobNamespace.Entry entry = getEntry(resource);
+		return new ResourceState(entry.isCollection(), entry.getSize(), entry.getLastModified());
+	}
+
+	@Override
+	protected long getChildCount(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		return namespace.getChildNames(getNamespacePath(resource.getURI())).size();
+	}
+
+	@Override
+	protected InputStream getInputStream(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		final BlobNamespace.Entry entry = getEntry(resource);
+		if(entry.isCollection()) {
+			throw new IOException("Collection " + resource.getURI() + " has no content.");
+		}
+		return blobStore.getInputStream(entry.getHash());
+	}
+
+	@Override
+	protected OutputStream getOutputStream(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		return createResource(request, resource.getURI());
+	}
+
+	/**
+	 * {@inheritDoc} This version streams the content to a new blob while computing its hash, and maps the resource to the blob when the stream is closed. If the
+	 * request is a PUT indicating a content length and a different number of bytes was written, the content is discarded, the resource is left unchanged, and
+	 * closing the stream throws an {@link HTTPBadRequestException}.
+	 */
+	@Override
+	protected OutputStream createResource(final HttpServletRequest request, final URI resourceURI)
+			throws IllegalArgumentException, IOException, HTTPConflictException {
+		final String path = getNamespacePath(resourceURI);
+		final String parentPath = BlobNamespace.getParentPath(path);
+		final BlobNamespace.Entry parentEntry = parentPath != null ? namespace.get(parentPath) : null;
+		if(parentEntry == null || !parentEntry.isCollection()) { //if the parent is not an existing collection
+			throw new HTTPConflictException();
+		}
+		final BlobNamespace.Entry entry = namespace.get(path);
+		if(entry != null && entry.isCollection()) {
+			throw new HTTPConflictException("Collection " + resourceURI + " cannot be replaced by a resource.");
+		}
+		final long expectedLength = PUT_METHOD.equals(request.getMethod()) ? request.getContentLengthLong() : -1; //the content of other requests is not the resource content
+		return new NamespaceOutputStream(blobStore.newOutputStream(), path, expectedLength);
+	}
+
+	@Override
+	protected BlobResource createCollection(final HttpServletRequest request, final URI resourceURI)
+			throws IllegalArgumentException, IOException, HTTPConflictException {
+		try {
+			return new BlobResource(resourceURI, namespace.mkcol(getNamespacePath(resourceURI)));
+		} catch(final IllegalArgumentException illegalArgumentException) { //the parent is not an existing collection
+			throw new HTTPConflictException(illegalArgumentException);
+		}
+	}
+
+	@Override
+	protected void deleteResource(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		try {
+			namespace.delete(getNamespacePath(resource.getURI()));
+		} catch(final IllegalArgumentException illegalArgumentException) { //the root collection
+			throw new HTTPForbiddenException(illegalArgumentException);
+		}
+	}
+
+	@Override
+	protected List<BlobResource> getChildResources(final HttpServletRequest request, final BlobResource resource) throws IOException {
+		final String path = getNamespacePath(resource.getURI());
+		final String collectionURIString = resource.getURI().toString();
+		final String childURIPrefix = collectionURIString.endsWith("/") ? collectionURIString : collectionURIString + '/';
+		final List<BlobResource> childResources = new ArrayList<BlobResource>();
+		for(final String name : namespace.getChildNames(path)) {
+			final BlobNamespace.Entry childEntry = namespace.get(BlobNamespace.ROOT_PATH.equals(path) ? path + name : path + '/' + name);
+			if(childEntry != null) { //the child may have been removed in the meantime
+				childResources.add(new BlobResource(URI.create(childURIPrefix + name + (childEntry.isCollection() ? "/" : "")), childEntry));
+			}
+		}
+		return childResources;
+	}
+
+	@Override
+	protected List<BlobResource> getResources(final URI resourceURI, final int depth) throws IllegalArgumentException, IOException {
+		final List<BlobResource> resources = new ArrayList<BlobResource>();
+		final BlobNamespace.Entry entry = namespace.get(getNamespacePath(resourceURI));
+		if(entry != null) {
+			addResources(new BlobResource(resourceURI, entry), depth, resources);
+		}
+		return resources;
+	}
+
+	/**
+	 * Adds a resource and its descendants to a list.
+	 * @param resource The resource to add.
+	 * @param depth The zero-based depth of child resources to add, or <code>-1</code> if all progeny should be included.
+	 * @param resources The list to which resources should be added.
+	 * @throws IOException if there is an error accessing the resources.
+	 */
+	private void addResources(final BlobResource resource, final int depth, final List<BlobResource> resources) throws IOException {
+		resources.add(resource);
+		if(depth != 0 && resource.getEntry().isCollection()) {
+			for(final BlobResource childResource : getChildResources(null, resource)) {
+				addResources(childResource, depth > 0 ? depth - 1 : depth, resources);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This version only adds references to the existing blobs, without copying any content.
+	 */
+	@Override
+	protected void copyResource(final HttpServletRequest request, final BlobResource resource, final URI destinationURI, final int depth,
+			final boolean overwrite) throws IllegalArgumentException, IOException, HTTPConflictException, HTTPPreconditionFailedException {
+		final String sourcePath = getNamespacePath(resource.getURI());
+		final String destinationPath = prepareDestination(sourcePath, destinationURI, overwrite);
+		try {
+			namespace.copy(sourcePath, destinationPath, depth);
+		} catch(final IllegalArgumentException illegalArgumentException) { //the parent of the destination is not an existing collection
+			throw new HTTPConflictException(illegalArgumentException);
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This version only changes the namespace, without moving any content.
+	 */
+	@Override
+	protected void moveResource(final HttpServletRequest request, final BlobResource resource, final URI destinationURI, final boolean overwrite)
+			throws IllegalArgumentException, IOException, HTTPConflictException, HTTPPreconditionFailedException {
+		final String sourcePath = getNamespacePath(resource.getURI());
+		final String destinationPath = prepareDestination(sourcePath, destinationURI, overwrite);
+		try {
+			namespace.move(sourcePath, destinationPath);
+		} catch(final IllegalArgumentException illegalArgumentException) { //the parent of the destination is not an existing collection
+			throw new HTTPConflictException(illegalArgumentException);
+		}
+	}
+
+	/**
+	 * Verifies that a resource may be copied or moved to a destination, removing any existing resource at the destination.
+	 * @param sourcePath The namespace path of the resource being copied or moved.
+	 * @param destinationURI The destination URI.
+	 * @param overwrite <code>true</code> if any existing resource at the destination should be overwritten.
+	 * @return The namespace path of the destination.
+	 * @throws HTTPForbiddenException if the source and destination overlap.
+	 * @throws HTTPPreconditionFailedException if a resource already exists at the destination and <var>overwrite</var> is <code>false</code>.
+	 * @throws IOException if there is an error removing the existing resource.
+	 */
+	private String prepareDestination(final String sourcePath, final URI destinationURI, final boolean overwrite) throws IOException {
+		final String destinationPath = getNamespacePath(destinationURI);
+		if(BlobNamespace.isWithin(destinationPath, sourcePath) || BlobNamespace.isWithin(sourcePath, destinationPath)) {
+			throw new HTTPForbiddenException("Source " + sourcePath + " and destination " + destinationPath + " overlap.");
+		}
+		if(namespace.get(destinationPath) != null) {
+			if(!overwrite) {
+				throw new HTTPPreconditionFailedException();
+			}
+			namespace.delete(destinationPath);
+		}
+		return destinationPath;
+	}
+
+	@Override
+	protected void findProperties(final HttpServletRequest request, final BlobResource resource, final Element propertyElement,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties, final WebDAVXMLGenerator webdavXMLGenerator) throws DOMException, IOException {
+		findLiveProperties(request, resource, propertyElement, properties);
+	}
+
+	/**
+	 * An output stream to a new blob that maps a resource to the blob when closed.
+	 * @author Garret Wilson
+	 */
+	private class NamespaceOutputStream extends FilterOutputStream {
+
+		private final BlobStore.BlobOutputStream blobOutputStream;
+
+		private final String path;
+
+		/** The number of bytes expected, or <code>-1</code> if not known. */
+		private final long expectedLength;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * @param blobOutputStream The stream to the new blob.
+		 * @param path The namespace path of the resource.
+		 * @param expectedLength The number of bytes expected, or <code>-1</code> if not known.
+		 */
+		public NamespaceOutputStream(final BlobStore.BlobOutputStream blobOutputStream, final String path, final long expectedLength) {
+			super(blobOutputStream);
+			this.blobOutputStream = blobOutputStream;
+			this.path = path;
+			this.expectedLength = expectedLength;
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			out.write(bytes, offset, length); //FilterOutputStream would write one byte at a time
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			try {
+				if(expectedLength >= 0 && blobOutputStream.getCount() != expectedLength) { //don't store truncated uploads
+					throw new HTTPBadRequestException("Expected " + expectedLength + " bytes of content but received " + blobOutputStream.getCount() + ".");
+				}
+				final String hash = blobOutputStream.commit(); //this adds a reference for the namespace entry
+				try {
+					namespace.put(path, hash, blobOutputStream.getCount());
+				} catch(final IllegalArgumentException illegalArgumentException) { //the parent collection was removed while we were writing
+					blobStore.release(hash);
+					throw new HTTPConflictException(illegalArgumentException);
+				}
+			} finally {
+				blobOutputStream.close();
+			}
+		}
+	}
+
+	/**
+	 * A resource in the namespace, along with its state at the time it was retrieved.
+	 * @author Garret Wilson
+	 */
+	public static class BlobResource extends DefaultResource {
+
+		private final BlobNamespace.Entry entry;
+
+		/** @return The namespace entry of the resource at the time it was retrieved, or <code>null</code> if the resource did not exist. */
+		public BlobNamespace.Entry getEntry() {
+			return entry;
+		}
+
+		/**
+		 * Constructor.
+		 * @param uri The URI of the resource.
+		 * @param entry The namespace entry of the resource, or <code>null</code> if the resource does not exist.
+		 */
+		public BlobResource(final URI uri, final BlobNamespace.Entry entry) {
+			super(uri);
+			this.entry = entry;
+		}
+	}
+
+}
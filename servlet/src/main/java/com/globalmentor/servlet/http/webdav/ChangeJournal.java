@@ -0,0 +1,240 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import com.globalmentor.servlet.http.AbstractHTTPServlet.ResourceChange;
+
+import static java.util.Objects.*;
+
+/**
+ * A bounded, compacted journal of changes to resources, identified by path, for supporting <a href="https://tools.ietf.org/html/rfc6578">RFC 6578</a>
+ * collection synchronization. Each change is assigned an increasing sequence number; only the latest change for each path is retained, and the oldest changes
+ * are discarded when the journal is full. A sequence number is only usable for retrieving changes if no change after it has been discarded.
+ * <p>
+ * Because the journal is only kept in memory, each journal has a unique epoch so that sequence numbers from a previous run are not mistaken for current ones.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class ChangeJournal {
+
+	/** The path separator character. */
+	private static final char PATH_SEPARATOR = '/';
+
+	/** The identifier of this journal instance. */
+	private final long epoch;
+
+	/** @return The identifier of this journal instance, distinguishing its sequence numbers from those of other journals. */
+	public long getEpoch() {
+		return epoch;
+	}
+
+	/** The maximum number of changes to retain. */
+	private final int capacity;
+
+	/** @return The maximum number of changes to retain. */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/** The sequence number of the latest change. */
+	private final AtomicLong sequence = new AtomicLong(0);
+
+	/** @return The sequence number of the latest change, or zero if no changes have been recorded. */
+	public long getSequence() {
+		return sequence.get();
+	}
+
+	/** The highest sequence number discarded; changes after any earlier sequence number are no longer complete. */
+	private final AtomicLong floorSequence = new AtomicLong(0);
+
+	/** The retained changes, ordered by sequence number. */
+	private final ConcurrentNavigableMap<Long, Change> changes = new ConcurrentSkipListMap<Long, Change>();
+
+	/** The number of retained changes, as the size of a skip list is not a constant-time operation. */
+	private final AtomicInteger changeCount = new AtomicInteger(0);
+
+	/** The sequence number of the latest change for each path. */
+	private final ConcurrentMap<String, Long> pathSequences = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * Capacity constructor.
+	 * @param capacity The maximum number of changes to retain.
+	 * @throws IllegalArgumentException if the given capacity is not positive.
+	 */
+	public ChangeJournal(final int capacity) {
+		if(capacity <= 0) {
+			throw new IllegalArgumentException("Invalid change journal capacity: " + capacity);
+		}
+		this.capacity = capacity;
+		this.epoch = System.currentTimeMillis();
+	}
+
+	/**
+	 * Normalizes a path by removing any trailing slash, except for the root path.
+	 * @param path The path to normalize.
+	 * @return The normalized path.
+	 */
+	protected static String normalizePath(final String path) {
+		final int length = path.length();
+		return length > 1 && path.charAt(length - 1) == PATH_SEPARATOR ? path.substring(0, length - 1) : path;
+	}
+
+	/**
+	 * Records a change to a resource, discarding any earlier change to the same resource.
+	 * @param path The absolute path of the resource that changed.
+	 * @param resourceChange The type of change.
+	 * @return The sequence number of the change.
+	 * @throws NullPointerException if the given path and/or change is <code>null</code>.
+	 */
+	public long record(final String path, final ResourceChange resourceChange) {
+		final String normalizedPath = normalizePath(path);
+		final long changeSequence = sequence.incrementAndGet();
+		changes.put(changeSequence, new Change(normalizedPath, requireNonNull(resourceChange), changeSequence));
+		changeCount.incrementAndGet();
+		pathSequences.compute(normalizedPath, (__, previousSequence) -> { //compact the journal, keeping only the latest change for this path
+			if(previousSequence != null && previousSequence.longValue() > changeSequence) { //if a later change was recorded concurrently, ours is obsolete
+				discard(changeSequence);
+				return previousSequence;
+			}
+			if(previousSequence != null) {
+				discard(previousSequence.longValue());
+			}
+			return changeSequence;
+		});
+		while(changeCount.get() > capacity) { //trim the oldest changes if the journal is too large
+			final Map.Entry<Long, Change> oldestEntry = changes.pollFirstEntry();
+			if(oldestEntry == null) {
+				break;
+			}
+			changeCount.decrementAndGet();
+			final long oldestSequence = oldestEntry.getKey().longValue();
+			pathSequences.remove(oldestEntry.getValue().getPath(), oldestEntry.getKey());
+			floorSequence.accumulateAndGet(oldestSequence, Math::max); //anyone who hasn't seen this change can no longer be told about it
+		}
+		return changeSequence;
+	}
+
+	/**
+	 * Removes a change that has been superseded.
+	 * @param changeSequence The sequence number of the change to remove.
+	 */
+	private void discard(final long changeSequence) {
+		if(changes.remove(changeSequence) != null) {
+			changeCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Indicates that changes may have occurred that were not recorded, such as when a file system watcher loses events. All existing sequence numbers become
+	 * invalid, including the current one, requiring clients to perform a full synchronization. The sequence is advanced so that clients synchronizing afterwards
+	 * receive a sequence number that is valid.
+	 */
+	public void invalidate() {
+		floorSequence.accumulateAndGet(sequence.incrementAndGet(), Math::max); //the floor is strictly greater than any sequence number already handed out
+	}
+
+	/**
+	 * Determines whether changes since the given sequence number are still fully available.
+	 * @param sinceSequence The sequence number of the last synchronization.
+	 * @return <code>true</code> if no changes after the given sequence number have been discarded.
+	 */
+	public boolean isValid(final long sinceSequence) {
+		return sinceSequence >= floorSequence.get() && sinceSequence <= sequence.get();
+	}
+
+	/**
+	 * Retrieves the latest changes to the members of a collection made after the given sequence number. Changes are returned in order of sequence number.
+	 * @param collectionPath The absolute path of the collection.
+	 * @param sinceSequence The sequence number of the last synchronization; changes after this sequence will be returned.
+	 * @param infinite <code>true</code> if changes to all descendants should be returned, or <code>false</code> if only changes to immediate children should be
+	 *          returned.
+	 * @return The changes to members of the collection since the given sequence number.
+	 * @throws IllegalArgumentException if the given sequence number is no longer valid.
+	 * @see #isValid(long)
+	 */
+	public List<Change> getChanges(final String collectionPath, final long sinceSequence, final boolean infinite) {
+		if(!isValid(sinceSequence)) {
+			throw new IllegalArgumentException("Sequence " + sinceSequence + " is no longer valid.");
+		}
+		final String normalizedCollectionPath = normalizePath(collectionPath);
+		final String prefix = normalizedCollectionPath.endsWith(String.valueOf(PATH_SEPARATOR)) ? normalizedCollectionPath
+				: normalizedCollectionPath + PATH_SEPARATOR;
+		final List<Change> memberChanges = new ArrayList<Change>();
+		for(final Change change : changes.tailMap(sinceSequence, false).values()) {
+			final String path = change.getPath();
+			if(path.length() > prefix.length() && path.startsWith(prefix)) { //if this is a descendant
+				if(infinite || path.indexOf(PATH_SEPARATOR, prefix.length()) < 0) { //if this is a child, or we want all descendants
+					memberChanges.add(change);
+				}
+			}
+		}
+		return memberChanges;
+	}
+
+	/**
+	 * A change recorded in the journal.
+	 * @author Garret Wilson
+	 */
+	public static class Change {
+
+		private final String path;
+
+		/** @return The normalized absolute path of the resource that changed. */
+		public String getPath() {
+			return path;
+		}
+
+		private final ResourceChange resourceChange;
+
+		/** @return The type of change. */
+		public ResourceChange getResourceChange() {
+			return resourceChange;
+		}
+
+		private final long sequence;
+
+		/** @return The sequence number of the change. */
+		public long getSequence() {
+			return sequence;
+		}
+
+		/**
+		 * Constructor.
+		 * @param path The normalized absolute path of the resource that changed.
+		 * @param resourceChange The type of change.
+		 * @param sequence The sequence number of the change.
+		 */
+		public Change(final String path, final ResourceChange resourceChange, final long sequence) {
+			this.path = requireNonNull(path);
+			this.resourceChange = requireNonNull(resourceChange);
+			this.sequence = sequence;
+		}
+
+		@Override
+		public String toString() {
+			return sequence + " " + resourceChange + " " + path;
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+import com.globalmentor.servlet.http.AbstractHTTPServlet.ResourceChange;
+
+import io.clogr.Clogged;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+import static java.util.Objects.*;
+
+/**
+ * Watches a directory tree for changes made outside the servlet and records them in a {@link ChangeJournal}. Each file is recorded using its absolute path
+ * relative to the root directory, using forward slashes. If the file system reports that events were lost, the journal is invalidated so that clients will
+ * perform a full synchronization.
+ * <p>
+ * Changes made through the servlet will usually be recorded twice, once by the servlet and once by the watcher; the journal compacts these into a single change.
+ * </p>
+ * <p>
+ * Directories holding data that is not served, such as <code>WEB-INF</code> or a trash directory, may be excluded; they are neither watched nor recorded.
+ * </p>
+ * @author Garret Wilson
+ */
+public class ChangeJournalWatcher implements Clogged {
+
+	/** The root directory being watched. */
+	private final Path rootDirectory;
+
+	/** The journal into which changes are recorded. */
+	private final ChangeJournal changeJournal;
+
+	/** The absolute, normalized paths of the directories not to watch. */
+	private final Set<Path> excludedDirectories;
+
+	/** The watch service, or <code>null</code> if the watcher is not started. */
+	private WatchService watchService = null;
+
+	/** The thread processing watch events, or <code>null</code> if the watcher is not started. */
+	private Thread thread = null;
+
+	/**
+	 * Constructor.
+	 * @param rootDirectory The root directory to watch.
+	 * @param changeJournal The journal into which changes are recorded.
+	 * @throws NullPointerException if the given root directory and/or change journal is <code>null</code>.
+	 */
+	public ChangeJournalWatcher(final Path rootDirectory, final ChangeJournal changeJournal) {
+		this(rootDirectory, changeJournal, Collections.<Path>emptySet());
+	}
+
+	/**
+	 * Excluded directories constructor.
+	 * @param rootDirectory The root directory to watch.
+	 * @param changeJournal The journal into which changes are recorded.
+	 * @param excludedDirectories The directories within the root directory which, along with their descendants, should not be watched.
+	 * @throws NullPointerException if the given root directory, change journal, and/or excluded directories is <code>null</code>.
+	 */
+	public ChangeJournalWatcher(final Path rootDirectory, final ChangeJournal changeJournal, final Collection<Path> excludedDirectories) {
+		this.rootDirectory = requireNonNull(rootDirectory);
+		this.changeJournal = requireNonNull(changeJournal);
+		final Set<Path> normalizedExcludedDirectories = new HashSet<Path>();
+		for(final Path excludedDirectory : excludedDirectories) {
+			normalizedExcludedDirectories.add(excludedDirectory.toAbsolutePath().normalize());
+		}
+		this.excludedDirectories = Collections.unmodifiableSet(normalizedExcludedDirectories);
+	}
+
+	/**
+	 * Determines whether a file is in one of the excluded directories.
+	 * @param file The file to check.
+	 * @return <code>true</code> if the file is an excluded directory or one of its descendants.
+	 */
+	protected boolean isExcluded(final Path file) {
+		if(!excludedDirectories.isEmpty()) {
+			final Path normalizedFile = file.toAbsolutePath().normalize();
+			for(final Path excludedDirectory : excludedDirectories) {
+				if(normalizedFile.startsWith(excludedDirectory)) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Starts watching the directory tree.
+	 * @throws IOException if there is an error registering the directories to watch.
+	 * @throws IllegalStateException if the watcher is already started.
+	 */
+	public synchronized void start() throws IOException {
+		if(watchService != null) {
+			throw new IllegalStateException("Watcher already started.");
+		}
+		watchService = rootDirectory.getFileSystem().newWatchService();
+		registerAll(rootDirectory, false);
+		thread = new Thread(this::watch, getClass().getSimpleName());
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/** Stops watching the directory tree. */
+	public synchronized void stop() {
+		if(watchService != null) {
+			try {
+				watchService.close(); //this will also cause the thread to end
+			} catch(final IOException ioException) {
+				getLogger().warn("Error closing watch service.", ioException);
+			}
+			watchService = null;
+			thread = null;
+		}
+	}
+
+	/**
+	 * Registers a directory and all its subdirectories with the watch service.
+	 * @param directory The directory to register.
+	 * @param record <code>true</code> if everything found should be recorded as created, such as for a directory that has just appeared.
+	 * @throws IOException if there is an error registering the directories.
+	 */
+	private void registerAll(final Path directory, final boolean record) throws IOException {
+		final WatchService watchService = this.watchService;
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) throws IOException {
+				if(isExcluded(dir)) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+				if(record && !dir.equals(directory)) {
+					changeJournal.record(getPath(dir), ResourceChange.CREATED);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+				if(record) {
+					changeJournal.record(getPath(file), ResourceChange.CREATED);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Determines the journal path of a file.
+	 * @param file The file in the watched directory tree.
+	 * @return The absolute path of the file relative to the root directory, using forward slashes.
+	 */
+	protected String getPath(final Path file) {
+		final StringBuilder pathBuilder = new StringBuilder();
+		for(final Path segment : rootDirectory.relativize(file)) {
+			pathBuilder.append('/').append(segment.toString());
+		}
+		return pathBuilder.length() > 0 ? pathBuilder.toString() : "/";
+	}
+
+	/** Processes watch events until the watch service is closed. */
+	private void watch() {
+		final WatchService watchService;
+		synchronized(this) {
+			watchService = this.watchService;
+		}
+		try {
+			while(true) {
+				final WatchKey watchKey = watchService.take();
+				final Path directory = (Path)watchKey.watchable();
+				for(final WatchEvent<?> event : watchKey.pollEvents()) {
+					final WatchEvent.Kind<?> kind = event.kind();
+					if(kind == OVERFLOW) { //we lost events, so we have no idea what changed
+						getLogger().warn("File system events lost for {}; invalidating change journal.", rootDirectory);
+						changeJournal.invalidate();
+						continue;
+					}
+					final Path file = directory.resolve((Path)event.context());
+					if(isExcluded(file)) { //such as a collection being moved into a trash directory in the root
+						continue;
+					}
+					if(kind == ENTRY_DELETE) {
+						changeJournal.record(getPath(file), ResourceChange.DELETED);
+					} else if(kind == ENTRY_CREATE) {
+						changeJournal.record(getPath(file), ResourceChange.CREATED);
+						if(Files.isDirectory(file, LinkOption.NOFOLLOW_LINKS)) { //start watching new directories, and record anything already moved into them
+							try {
+								registerAll(file, true);
+							} catch(final IOException ioException) {
+								getLogger().warn("Unable to watch directory {}.", file, ioException);
+							}
+						}
+					} else {
+						changeJournal.record(getPath(file), ResourceChange.MODIFIED);
+					}
+				}
+				watchKey.reset(); //if the directory no longer exists the key becomes invalid, which is what we want
+			}
+		} catch(final InterruptedException | ClosedWatchServiceException exception) { //stopped
+		}
+	}
+
+}
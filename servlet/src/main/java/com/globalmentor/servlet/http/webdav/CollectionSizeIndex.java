@@ -0,0 +1,253 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.*;
+
+/**
+ * An incrementally maintained index of the total size of the files within each collection, identified by absolute path. Size changes to a resource are
+ * propagated to every ancestor collection using atomic counters, so that updates never block each other. The index can be persisted as a snapshot so that it
+ * need not be rebuilt by walking the entire tree on startup.
+ * <p>
+ * Changes to the same subtree made concurrently with structural operations such as {@link #moveTree(String, String)} may leave sizes slightly inaccurate until
+ * the next rebuild.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class CollectionSizeIndex {
+
+	/** The path separator character. */
+	private static final char PATH_SEPARATOR = '/';
+
+	/** The root path. */
+	private static final String ROOT_PATH = "/";
+
+	/** The total size of each collection, keyed to the normalized collection path. */
+	private final ConcurrentMap<String, AtomicLong> collectionSizes = new ConcurrentHashMap<String, AtomicLong>();
+
+	/**
+	 * Normalizes a path by removing any trailing slash, except for the root path.
+	 * @param path The path to normalize.
+	 * @return The normalized path.
+	 */
+	protected static String normalizePath(final String path) {
+		final int length = path.length();
+		return length > 1 && path.charAt(length - 1) == PATH_SEPARATOR ? path.substring(0, length - 1) : path;
+	}
+
+	/**
+	 * Determines the parent of a normalized path.
+	 * @param path The normalized path.
+	 * @return The normalized path of the parent collection, or <code>null</code> if the path is the root path.
+	 */
+	protected static String getParentPath(final String path) {
+		if(ROOT_PATH.equals(path)) {
+			return null;
+		}
+		final int index = path.lastIndexOf(PATH_SEPARATOR);
+		return index > 0 ? path.substring(0, index) : ROOT_PATH;
+	}
+
+	/**
+	 * Determines whether a path is the given collection path or one of its descendants.
+	 * @param path The normalized path to check.
+	 * @param collectionPath The normalized collection path.
+	 * @return <code>true</code> if the path is within the given collection.
+	 */
+	private static boolean isWithin(final String path, final String collectionPath) {
+		return path.equals(collectionPath) || ROOT_PATH.equals(collectionPath)
+				|| (path.startsWith(collectionPath) && path.length() > collectionPath.length() && path.charAt(collectionPath.length()) == PATH_SEPARATOR);
+	}
+
+	/**
+	 * Returns the total size of the files within a collection.
+	 * @param collectionPath The path of the collection.
+	 * @return The total size of all files within the collection and its descendants, or zero if the collection is not known.
+	 */
+	public long getSize(final String collectionPath) {
+		final AtomicLong size = collectionSizes.get(normalizePath(collectionPath));
+		return size != null ? size.get() : 0;
+	}
+
+	/**
+	 * Adjusts the size of every collection containing a resource.
+	 * @param path The path of the resource the size of which changed.
+	 * @param delta The number of bytes added, or negative for bytes removed.
+	 */
+	public void adjust(final String path, final long delta) {
+		if(delta == 0) {
+			return;
+		}
+		for(String collectionPath = getParentPath(normalizePath(path)); collectionPath != null; collectionPath = getParentPath(collectionPath)) {
+			collectionSizes.computeIfAbsent(collectionPath, __ -> new AtomicLong(0)).addAndGet(delta);
+		}
+	}
+
+	/**
+	 * Removes a collection and all its descendant collections from the index. The sizes of the ancestor collections are not changed.
+	 * @param collectionPath The path of the collection removed.
+	 * @return The size the collection had.
+	 * @see #adjust(String, long)
+	 */
+	public long removeTree(final String collectionPath) {
+		final String normalizedPath = normalizePath(collectionPath);
+		final long size = getSize(normalizedPath);
+		collectionSizes.keySet().removeIf(path -> isWithin(path, normalizedPath));
+		return size;
+	}
+
+	/**
+	 * Moves a collection and all its descendant collections to a new location in the index. The sizes of the ancestor collections are not changed.
+	 * @param sourcePath The path of the collection before the move.
+	 * @param destinationPath The path of the collection after the move.
+	 * @return The size of the collection.
+	 * @see #adjust(String, long)
+	 */
+	public long moveTree(final String sourcePath, final String destinationPath) {
+		final String normalizedSourcePath = normalizePath(sourcePath);
+		final String normalizedDestinationPath = normalizePath(destinationPath);
+		final long size = getSize(normalizedSourcePath);
+		for(final Map.Entry<String, AtomicLong> entry : collectionSizes.entrySet()) {
+			final String path = entry.getKey();
+			if(isWithin(path, normalizedSourcePath) && collectionSizes.remove(path, entry.getValue())) {
+				collectionSizes.put(normalizedDestinationPath + path.substring(normalizedSourcePath.length()), entry.getValue());
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Indexes a collection and all its descendant collections by walking the file system, replacing any existing entries. The sizes of the ancestor collections
+	 * are not changed.
+	 * @param collectionPath The path of the collection.
+	 * @param directory The directory in the file system corresponding to the collection.
+	 * @return The size of the collection.
+	 * @throws IOException if there is an error walking the file system.
+	 * @see #adjust(String, long)
+	 */
+	public long scanTree(final String collectionPath, final Path directory) throws IOException {
+		return scanTree(collectionPath, directory, Collections.<Path>emptySet());
+	}
+
+	/**
+	 * Indexes a collection and all its descendant collections by walking the file system, replacing any existing entries. The sizes of the ancestor collections
+	 * are not changed. Excluded directories, such as those holding data that is not served, are neither indexed nor counted in the sizes of their ancestors.
+	 * @param collectionPath The path of the collection.
+	 * @param directory The directory in the file system corresponding to the collection.
+	 * @param excludedDirectories The directories in the file system to skip.
+	 * @return The size of the collection.
+	 * @throws IOException if there is an error walking the file system.
+	 * @see #adjust(String, long)
+	 */
+	public long scanTree(final String collectionPath, final Path directory, final Collection<Path> excludedDirectories) throws IOException {
+		final Set<Path> normalizedExcludedDirectories = new HashSet<Path>();
+		for(final Path excludedDirectory : excludedDirectories) {
+			normalizedExcludedDirectories.add(excludedDirectory.toAbsolutePath().normalize());
+		}
+		final String normalizedPath = normalizePath(collectionPath);
+		final Map<String, AtomicLong> scannedSizes = new HashMap<String, AtomicLong>();
+		final Deque<AtomicLong> directorySizes = new ArrayDeque<AtomicLong>(); //the sizes of the directories currently being walked
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attributes) throws IOException {
+				if(!normalizedExcludedDirectories.isEmpty() && normalizedExcludedDirectories.contains(dir.toAbsolutePath().normalize())) {
+					return FileVisitResult.SKIP_SUBTREE;
+				}
+				final StringBuilder pathBuilder = new StringBuilder(ROOT_PATH.equals(normalizedPath) ? "" : normalizedPath);
+				for(final Path segment : directory.relativize(dir)) {
+					if(!segment.toString().isEmpty()) {
+						pathBuilder.append(PATH_SEPARATOR).append(segment.toString());
+					}
+				}
+				final AtomicLong size = new AtomicLong(0);
+				scannedSizes.put(pathBuilder.length() > 0 ? pathBuilder.toString() : ROOT_PATH, size);
+				directorySizes.push(size);
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+				for(final AtomicLong size : directorySizes) { //add the file to this directory and all the directories above it being walked
+					size.addAndGet(attributes.size());
+				}
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult postVisitDirectory(final Path dir, final IOException exception) throws IOException {
+				if(exception != null) {
+					throw exception;
+				}
+				directorySizes.pop();
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		removeTree(normalizedPath);
+		collectionSizes.putAll(scannedSizes);
+		return getSize(normalizedPath);
+	}
+
+	/**
+	 * Stores a snapshot of the index.
+	 * @param file The file in which to store the snapshot.
+	 * @throws IOException if there is an error writing the snapshot.
+	 */
+	public void store(final File file) throws IOException {
+		final Properties properties = new Properties();
+		for(final Map.Entry<String, AtomicLong> entry : collectionSizes.entrySet()) {
+			properties.setProperty(entry.getKey(), Long.toString(entry.getValue().get()));
+		}
+		final File tempFile = new File(file.getPath() + ".tmp");
+		try (final Writer writer = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(tempFile)), UTF_8)) {
+			properties.store(writer, "collection sizes");
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING); //don't leave a partial snapshot
+	}
+
+	/**
+	 * Replaces the index with a previously stored snapshot.
+	 * @param file The file containing the snapshot.
+	 * @throws IOException if there is an error reading the snapshot.
+	 */
+	public void load(final File file) throws IOException {
+		final Properties properties = new Properties();
+		try (final Reader reader = new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), UTF_8)) {
+			properties.load(reader);
+		}
+		final Map<String, AtomicLong> loadedSizes = new HashMap<String, AtomicLong>();
+		for(final String path : properties.stringPropertyNames()) {
+			try {
+				loadedSizes.put(path, new AtomicLong(Long.parseLong(properties.getProperty(path))));
+			} catch(final NumberFormatException numberFormatException) {
+				throw new IOException("Invalid size for " + path + " in " + file, numberFormatException);
+			}
+		}
+		collectionSizes.clear();
+		collectionSizes.putAll(loadedSizes);
+	}
+
+}
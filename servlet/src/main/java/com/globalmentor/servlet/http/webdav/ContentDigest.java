@@ -0,0 +1,248 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.security.*;
+import java.util.*;
+import java.util.zip.Adler32;
+
+import static java.nio.charset.StandardCharsets.*;
+import static java.util.Objects.*;
+
+/**
+ * The digest of the content of a file, along with the size and modification time of the file when the digest was computed. A digest is only valid for a file
+ * that still has the same size and modification time, so that changes made to the file by other means are detected without reading the file.
+ * <p>
+ * Digests are persisted in a user-defined extended attribute of the file if the file system supports it, or otherwise in a separate sidecar file.
+ * </p>
+ * @author Garret Wilson
+ */
+public class ContentDigest {
+
+	/** The name of the SHA-256 algorithm. */
+	public static final String SHA_256 = "SHA-256";
+
+	/** The name of the fast, non-cryptographic Adler-32 checksum algorithm. */
+	public static final String ADLER32 = "ADLER32";
+
+	/** The name of the extended attribute in which the digest is stored. */
+	private static final String ATTRIBUTE_NAME = "globalmentor.digest";
+
+	/** The hex digits used for encoding digests. */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	private final String algorithm;
+
+	/** @return The name of the digest algorithm, such as {@value #SHA_256}. */
+	public String getAlgorithm() {
+		return algorithm;
+	}
+
+	private final byte[] digest;
+
+	private final long size;
+
+	/** @return The size of the file when the digest was computed. */
+	public long getSize() {
+		return size;
+	}
+
+	private final long lastModified;
+
+	/** @return The modification time of the file when the digest was computed, in milliseconds since the epoch. */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Constructor.
+	 * @param algorithm The name of the digest algorithm.
+	 * @param digest The digest bytes.
+	 * @param size The size of the file when the digest was computed.
+	 * @param lastModified The modification time of the file when the digest was computed, in milliseconds since the epoch.
+	 * @throws NullPointerException if the given algorithm and/or digest is <code>null</code>.
+	 */
+	public ContentDigest(final String algorithm, final byte[] digest, final long size, final long lastModified) {
+		this.algorithm = requireNonNull(algorithm);
+		this.digest = digest.clone();
+		this.size = size;
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * Creates a message digest for an algorithm. In addition to the algorithms supported by {@link MessageDigest}, {@value #ADLER32} is supported.
+	 * @param algorithm The name of the digest algorithm.
+	 * @return A new message digest.
+	 * @throws NoSuchAlgorithmException if the algorithm is not supported.
+	 */
+	public static MessageDigest newMessageDigest(final String algorithm) throws NoSuchAlgorithmException {
+		if(ADLER32.equalsIgnoreCase(algorithm)) {
+			return new MessageDigest(ADLER32) {
+				private final Adler32 adler32 = new Adler32();
+
+				@Override
+				protected void engineUpdate(final byte input) {
+					adler32.update(input);
+				}
+
+				@Override
+				protected void engineUpdate(final byte[] input, final int offset, final int length) {
+					adler32.update(input, offset, length);
+				}
+
+				@Override
+				protected byte[] engineDigest() {
+					final byte[] bytes = ByteBuffer.allocate(4).putInt((int)adler32.getValue()).array();
+					adler32.reset();
+					return bytes;
+				}
+
+				@Override
+				protected void engineReset() {
+					adler32.reset();
+				}
+			};
+		}
+		return MessageDigest.getInstance(algorithm);
+	}
+
+	/** @return The digest encoded as lowercase hexadecimal. */
+	public String toHex() {
+		final char[] chars = new char[digest.length * 2];
+		for(int i = 0; i < digest.length; ++i) {
+			chars[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0f];
+			chars[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0f];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * Returns the digest as a strong entity tag. Even with a non-cryptographic algorithm the tag changes whenever the file is written, because the digest is then
+	 * recomputed.
+	 * @return The digest as a quoted entity tag.
+	 */
+	public String toETag() {
+		return '"' + toHex() + '"';
+	}
+
+	/**
+	 * Returns the value of the <code>Digest</code> header defined by <a href="https://tools.ietf.org/html/rfc3230">RFC 3230</a>. The Adler-32 checksum is
+	 * encoded in hexadecimal; other digests are encoded in base64.
+	 * @return The <code>Digest</code> header value.
+	 */
+	public String toDigestHeader() {
+		return ADLER32.equalsIgnoreCase(algorithm) ? "adler32=" + toHex() : algorithm + '=' + Base64.getEncoder().encodeToString(digest);
+	}
+
+	/**
+	 * Determines whether the digest still applies to a file.
+	 * @param attributes The current attributes of the file.
+	 * @param algorithm The algorithm of the digest desired.
+	 * @return <code>true</code> if the digest uses the given algorithm and the file has the same size and modification time as when the digest was computed.
+	 */
+	public boolean isValid(final BasicFileAttributes attributes, final String algorithm) {
+		return this.algorithm.equalsIgnoreCase(algorithm) && attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+	}
+
+	/** @return A string form of the digest suitable for persisting and later parsing. */
+	@Override
+	public String toString() {
+		return algorithm + ' ' + size + ' ' + lastModified + ' ' + toHex();
+	}
+
+	/**
+	 * Parses a digest from its string form.
+	 * @param string The string form of the digest.
+	 * @return The parsed digest.
+	 * @throws IllegalArgumentException if the string is not a valid digest.
+	 * @see #toString()
+	 */
+	public static ContentDigest parse(final String string) {
+		final String[] fields = string.trim().split(" ");
+		if(fields.length != 4 || fields[3].length() % 2 != 0) {
+			throw new IllegalArgumentException("Invalid content digest: " + string);
+		}
+		final byte[] digest = new byte[fields[3].length() / 2];
+		for(int i = 0; i < digest.length; ++i) {
+			digest[i] = (byte)Integer.parseInt(fields[3].substring(i * 2, i * 2 + 2), 16);
+		}
+		return new ContentDigest(fields[0], digest, Long.parseLong(fields[1]), Long.parseLong(fields[2]));
+	}
+
+	/**
+	 * Stores the digest of a file in an extended attribute, or in a sidecar file if extended attributes are not supported.
+	 * @param file The file the digest of which is being stored.
+	 * @param sidecarFile The file in which to store the digest if extended attributes are not supported, or <code>null</code> if there is no fallback.
+	 * @throws IOException if there is an error storing the digest.
+	 */
+	public void store(final Path file, final Path sidecarFile) throws IOException {
+		final byte[] bytes = toString().getBytes(US_ASCII);
+		final UserDefinedFileAttributeView attributeView = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+		if(attributeView != null) {
+			try {
+				attributeView.write(ATTRIBUTE_NAME, ByteBuffer.wrap(bytes));
+				return;
+			} catch(final UnsupportedOperationException | FileSystemException fileSystemException) { //the view may exist but not be supported by this particular file store
+			}
+		}
+		if(sidecarFile != null) {
+			Files.createDirectories(sidecarFile.getParent());
+			Files.write(sidecarFile, bytes);
+		}
+	}
+
+	/**
+	 * Loads the digest of a file from its extended attribute or sidecar file.
+	 * @param file The file the digest of which is being loaded.
+	 * @param sidecarFile The file in which the digest is stored if extended attributes are not supported, or <code>null</code> if there is no fallback.
+	 * @return The stored digest, which may no longer be valid, or <code>null</code> if no digest is stored or the stored digest is not valid.
+	 * @throws IOException if there is an error loading the digest.
+	 * @see #isValid(BasicFileAttributes, String)
+	 */
+	public static ContentDigest load(final Path file, final Path sidecarFile) throws IOException {
+		byte[] bytes = null;
+		final UserDefinedFileAttributeView attributeView = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+		if(attributeView != null) {
+			try {
+				final ByteBuffer buffer = ByteBuffer.allocate(attributeView.size(ATTRIBUTE_NAME));
+				attributeView.read(ATTRIBUTE_NAME, buffer);
+				bytes = Arrays.copyOf(buffer.array(), buffer.position());
+			} catch(final UnsupportedOperationException | FileSystemException fileSystemException) { //no attribute, or attributes not supported
+			}
+		}
+		if(bytes == null && sidecarFile != null) {
+			try {
+				bytes = Files.readAllBytes(sidecarFile);
+			} catch(final NoSuchFileException noSuchFileException) {
+				return null;
+			}
+		}
+		if(bytes == null) {
+			return null;
+		}
+		try {
+			return parse(new String(bytes, US_ASCII));
+		} catch(final IllegalArgumentException illegalArgumentException) { //ignore corrupt digests; they will be replaced on the next write
+			return null;
+		}
+	}
+
+}
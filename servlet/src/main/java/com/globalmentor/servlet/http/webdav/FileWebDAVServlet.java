@@ -18,24 +18,252 @@
 
 import java.io.*;
 import java.net.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.*;
 import java.util.*;
 
-import javax.servlet.http.HttpServletRequest;
+import javax.servlet.*;
+import javax.servlet.http.*;
 
+import org.w3c.dom.*;
+
+import com.globalmentor.collections.DecoratorIDedMappedList;
 import com.globalmentor.io.FileResource;
 import static com.globalmentor.io.Files.*;
-import com.globalmentor.net.http.HTTPConflictException;
+import com.globalmentor.net.http.*;
+import com.globalmentor.net.http.webdav.*;
+import static com.globalmentor.net.http.webdav.WebDAV.*;
+import static com.globalmentor.servlet.Servlets.*;
+import static com.globalmentor.servlet.http.HTTPServlets.*;
 
 /**
- * A WebDAV server that accesses resources from an underlying file system.
+ * A WebDAV server that accesses resources from an underlying file system. This servlet supports the following initialization parameters in addition to those
+ * of its parent classes:
+ * <dl>
+ * <dt>{@value #FAST_DELETE_INIT_PARAMETER}</dt>
+ * <dd>Whether collections are deleted by moving them to a trash directory to be reclaimed in the background; should be "true" or "false".</dd>
+ * <dt>{@value #TRASH_DIRECTORY_INIT_PARAMETER}</dt>
+ * <dd>The directory into which deleted collections are moved in fast delete mode; should be on the same file system as the served files; defaults to
+ * <code>trash</code> in the data directory.</dd>
+ * <dt>{@value #TRASH_REAP_RATE_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of files per second the background reaper will delete, or zero for no limit.</dd>
+ * <dt>{@value #WATCH_FILE_SYSTEM_INIT_PARAMETER}</dt>
+ * <dd>Whether changes made to the file system outside the servlet are recorded for collection synchronization; should be "true" or "false". Only used if
+ * {@value AbstractWebDAVServlet#SYNC_COLLECTION_INIT_PARAMETER} is enabled.</dd>
+ * <dt>{@value #SIZE_INDEX_INIT_PARAMETER}</dt>
+ * <dd>Whether the total size of each collection is indexed for reporting the RFC 4331 quota properties; should be "true" or "false".</dd>
+ * <dt>{@value #QUOTA_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of bytes that may be stored, enforced on PUT; implies {@value #SIZE_INDEX_INIT_PARAMETER}.</dd>
+ * <dt>{@value #CONTENT_DIGEST_INIT_PARAMETER}</dt>
+ * <dd>The algorithm, such as {@value ContentDigest#SHA_256} or the fast {@value ContentDigest#ADLER32}, of the digest computed while content is written by
+ * PUT and then served as a strong entity tag and in the <code>Digest</code> header. The digest is stored in an extended attribute of the file, or in the data
+ * directory if the file system does not support extended attributes.</dd>
+ * </dl>
  * @author Garret Wilson
  */
 public abstract class FileWebDAVServlet extends AbstractWebDAVServlet<FileResource> { //TODO finish implementing WebDAV-specific methods
 
 	private static final long serialVersionUID = 8114228458331897082L;
 
+	/** The init parameter, {@value #FAST_DELETE_INIT_PARAMETER}, used to specify whether collections are deleted in the background; should be "true" or "false". */
+	public static final String FAST_DELETE_INIT_PARAMETER = "fastDelete";
+
+	/** The init parameter, {@value #TRASH_DIRECTORY_INIT_PARAMETER}, used to specify the directory into which deleted collections are moved. */
+	public static final String TRASH_DIRECTORY_INIT_PARAMETER = "trashDirectory";
+
+	/** The init parameter, {@value #TRASH_REAP_RATE_INIT_PARAMETER}, used to specify the maximum number of files per second deleted from the trash. */
+	public static final String TRASH_REAP_RATE_INIT_PARAMETER = "trashReapRate";
+
+	/** The default maximum number of files per second deleted from the trash. */
+	public static final long DEFAULT_TRASH_REAP_RATE = 1000;
+
+	/** The init parameter, {@value #WATCH_FILE_SYSTEM_INIT_PARAMETER}, used to specify whether outside file system changes are journaled. */
+	public static final String WATCH_FILE_SYSTEM_INIT_PARAMETER = "watchFileSystem";
+
+	/** The init parameter, {@value #SIZE_INDEX_INIT_PARAMETER}, used to specify whether the size of collections is indexed; should be "true" or "false". */
+	public static final String SIZE_INDEX_INIT_PARAMETER = "sizeIndex";
+
+	/** The init parameter, {@value #QUOTA_INIT_PARAMETER}, used to specify the maximum number of bytes that may be stored. */
+	public static final String QUOTA_INIT_PARAMETER = "quota";
+
+	/** The init parameter, {@value #CONTENT_DIGEST_INIT_PARAMETER}, used to specify the algorithm of the digest computed for content written. */
+	public static final String CONTENT_DIGEST_INIT_PARAMETER = "contentDigest";
+
+	/** The 507 Insufficient Storage status code defined by RFC 4918. */
+	private static final int SC_INSUFFICIENT_STORAGE = 507;
+
+	/** The <code>ETag</code> header. */
+	private static final String ETAG_HEADER = "ETag";
+
+	/** The <code>Digest</code> header defined by RFC 3230. */
+	private static final String DIGEST_HEADER = "Digest";
+
+	/** The request attribute holding the digest of the content written by a PUT request. */
+	private static final String CONTENT_DIGEST_ATTRIBUTE = ContentDigest.class.getName();
+
+	/** The reaper reclaiming deleted collections, or <code>null</code> if fast delete is not enabled. */
+	private TrashReaper trashReaper = null;
+
+	/** @return The reaper reclaiming deleted collections in the background, or <code>null</code> if fast delete is not enabled. */
+	public TrashReaper getTrashReaper() {
+		return trashReaper;
+	}
+
+	/** The watcher recording file system changes in the change journal, or <code>null</code> if the file system is not being watched. */
+	private ChangeJournalWatcher changeJournalWatcher = null;
+
+	/** The index of collection sizes, or <code>null</code> if collection sizes are not being indexed. */
+	private CollectionSizeIndex sizeIndex = null;
+
+	/** @return The index of collection sizes, or <code>null</code> if collection sizes are not being indexed. */
+	protected CollectionSizeIndex getSizeIndex() {
+		return sizeIndex;
+	}
+
+	/** The file in which the size index snapshot is stored, or <code>null</code> if the size index is not persisted. */
+	private File sizeIndexFile = null;
+
+	/** The maximum number of bytes that may be stored, or <code>-1</code> if there is no quota. */
+	private long quota = -1;
+
+	/** The algorithm of the digest computed for content written, or <code>null</code> if digests are not computed. */
+	private String contentDigestAlgorithm = null;
+
+	/** @return The algorithm of the digest computed for content written, or <code>null</code> if digests are not computed. */
+	protected String getContentDigestAlgorithm() {
+		return contentDigestAlgorithm;
+	}
+
+	/** The directory in which digests are stored if extended attributes are not supported, or <code>null</code> if there is no such directory. */
+	private Path contentDigestDirectory = null;
+
 	//TODO fix checks for WEB-INF
 
+	/**
+	 * Initializes the servlet. This version starts the trash reaper if fast delete is enabled. This version starts watching the file system if requested and
+	 * collection synchronization is enabled. This version loads the collection size index from its snapshot, or builds it if there is no snapshot. This version
+	 * verifies the content digest algorithm, if any.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if there is a problem initializing.
+	 */
+	@Override
+	public void initialize(final ServletConfig servletConfig) throws ServletException, IllegalArgumentException, IllegalStateException {
+		super.initialize(servletConfig);
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, FAST_DELETE_INIT_PARAMETER))) { //if fast delete is requested
+			final File trashDirectory = getDataDirectory(servletConfig, TRASH_DIRECTORY_INIT_PARAMETER, "trash");
+			if(trashDirectory != null) {
+				final Long trashReapRate = getLongInitParameter(servletConfig, TRASH_REAP_RATE_INIT_PARAMETER);
+				final TrashReaper trashReaper = new TrashReaper(trashDirectory.toPath(), trashReapRate != null ? trashReapRate.longValue() : DEFAULT_TRASH_REAP_RATE);
+				try {
+					trashReaper.start(); //this also resumes reclaiming anything left in the trash from a previous run
+				} catch(final IOException ioException) {
+					throw new ServletException(ioException);
+				}
+				this.trashReaper = trashReaper;
+			} else {
+				getLogger().warn("No trash directory available; fast delete disabled.");
+			}
+		}
+		final ChangeJournal changeJournal = getChangeJournal();
+		if(changeJournal != null && Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, WATCH_FILE_SYSTEM_INIT_PARAMETER))) {
+			final String rootRealPath = getServletContext().getRealPath("/");
+			if(rootRealPath != null) {
+				final Path rootDirectory = new File(rootRealPath).toPath();
+				final ChangeJournalWatcher changeJournalWatcher = new ChangeJournalWatcher(rootDirectory, changeJournal, getUnservedDirectories(rootDirectory));
+				try {
+					changeJournalWatcher.start();
+				} catch(final IOException ioException) {
+					throw new ServletException(ioException);
+				}
+				this.changeJournalWatcher = changeJournalWatcher;
+			} else {
+				getLogger().warn("No real path available; file system will not be watched.");
+			}
+		}
+		final Long quota = getLongInitParameter(servletConfig, QUOTA_INIT_PARAMETER);
+		this.quota = quota != null ? quota.longValue() : -1;
+		if(quota != null || Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, SIZE_INDEX_INIT_PARAMETER))) {
+			final String rootRealPath = getServletContext().getRealPath("/");
+			if(rootRealPath != null) {
+				final CollectionSizeIndex sizeIndex = new CollectionSizeIndex();
+				final File dataDirectory = getDataDirectory(getServletContext());
+				sizeIndexFile = dataDirectory != null ? new File(dataDirectory, "sizeIndex-" + servletConfig.getServletName() + ".properties") : null;
+				try {
+					if(sizeIndexFile != null && sizeIndexFile.isFile()) { //if we have a snapshot from a clean shutdown, use it
+						sizeIndex.load(sizeIndexFile);
+						Files.delete(sizeIndexFile.toPath()); //if we don't shut down cleanly, the next start will rebuild the index
+					} else {
+						getLogger().info("Building collection size index for {}.", rootRealPath);
+						final Path rootDirectory = new File(rootRealPath).toPath();
+						sizeIndex.scanTree("/", rootDirectory, getUnservedDirectories(rootDirectory));
+					}
+				} catch(final IOException ioException) {
+					throw new ServletException(ioException);
+				}
+				this.sizeIndex = sizeIndex;
+			} else {
+				getLogger().warn("No real path available; collection sizes will not be indexed.");
+			}
+		}
+		final String contentDigestAlgorithm = servletConfig.getInitParameter(CONTENT_DIGEST_INIT_PARAMETER);
+		if(contentDigestAlgorithm != null) {
+			try {
+				ContentDigest.newMessageDigest(contentDigestAlgorithm); //make sure the algorithm is supported
+			} catch(final NoSuchAlgorithmException noSuchAlgorithmException) {
+				throw new ServletException(noSuchAlgorithmException);
+			}
+			this.contentDigestAlgorithm = contentDigestAlgorithm;
+			final File dataDirectory = getDataDirectory(getServletContext());
+			contentDigestDirectory = dataDirectory != null ? new File(new File(dataDirectory, "digests"), servletConfig.getServletName()).toPath() : null;
+		}
+	}
+
+	/**
+	 * Determines the directories that may be within the served directory tree but that hold data that is not served, such as <code>WEB-INF</code> and the trash
+	 * directory, if any. These directories are not watched for changes, and their contents do not count against the quota.
+	 * @param rootDirectory The root directory of the served files.
+	 * @return The directories holding data that is not served; some of them may not be within the root directory or may not exist.
+	 */
+	protected Set<Path> getUnservedDirectories(final Path rootDirectory) {
+		final Set<Path> unservedDirectories = new HashSet<Path>();
+		unservedDirectories.add(rootDirectory.resolve(WEB_INF_DIRECTORY_NAME));
+		final TrashReaper trashReaper = getTrashReaper();
+		if(trashReaper != null) {
+			unservedDirectories.add(trashReaper.getTrashDirectory());
+		}
+		return unservedDirectories;
+	}
+
+	/**
+	 * Destroys the servlet. This version stops the trash reaper, if any; unreclaimed entries are reclaimed on the next start. This version stops watching the file
+	 * system. This version stores a snapshot of the collection size index.
+	 */
+	@Override
+	public void destroy() {
+		if(sizeIndex != null && sizeIndexFile != null) {
+			try {
+				sizeIndex.store(sizeIndexFile);
+			} catch(final IOException ioException) {
+				getLogger().warn("Unable to store collection size index.", ioException);
+			}
+		}
+		if(changeJournalWatcher != null) {
+			changeJournalWatcher.stop();
+			changeJournalWatcher = null;
+		}
+		final TrashReaper trashReaper = this.trashReaper;
+		if(trashReaper != null) {
+			trashReaper.stop();
+			getLogger().info("Stopped trash reaper {}.", trashReaper);
+			this.trashReaper = null;
+		}
+		super.destroy();
+	}
+
 	/**
 	 * Determines if the resource at a given URI exists.
 	 * @param request The HTTP request in response to which existence of the resource is being determined.
@@ -94,6 +322,28 @@ protected Date getLastModifiedDate(final HttpServletRequest request, final FileR
 		return lastModified > 0 ? new Date(lastModified) : null; //return the last modified date, if we have that information (File returns 0 an error)
 	}
 
+	/**
+	 * {@inheritDoc} This version retrieves all the attributes with a single file system access.
+	 */
+	@Override
+	protected ResourceState getResourceState(final HttpServletRequest request, final FileResource resource) throws IOException {
+		final BasicFileAttributes attributes = Files.readAttributes(resource.getFile().toPath(), BasicFileAttributes.class);
+		final boolean isDirectory = attributes.isDirectory();
+		return new ResourceState(isDirectory, isDirectory ? -1 : attributes.size(), attributes.lastModifiedTime().toMillis());
+	}
+
+	/**
+	 * {@inheritDoc} This version counts the directory entries without creating resources for them.
+	 */
+	@Override
+	protected long getChildCount(final HttpServletRequest request, final FileResource resource) throws IOException {
+		final String[] filenames = resource.getFile().list();
+		if(filenames == null) {
+			throw new IOException("Unable to list directory " + resource.getFile());
+		}
+		return filenames.length;
+	}
+
 	/**
 	 * Retrieves an input stream to the given resource.
 	 * @param request The HTTP request in response to which the input stream is being retrieved.
@@ -113,7 +363,8 @@ protected InputStream getInputStream(final HttpServletRequest request, final Fil
 	 * @throws IOException Thrown if there is an error accessing the resource.
 	 */
 	protected OutputStream getOutputStream(final HttpServletRequest request, final FileResource resource) throws IOException {
-		return new FileOutputStream(resource.getFile()); //return an output stream to the file		
+		final File file = resource.getFile();
+		return trackDigest(request, file, openOutputStream(request, resource.getURI(), file)); //return an output stream to the file
 	}
 
 	/**
@@ -135,7 +386,7 @@ protected OutputStream createResource(final HttpServletRequest request, final UR
 		if(!file.getParentFile().isDirectory()) { //if the file's parent is not an existing directory
 			throw new HTTPConflictException(); //indicate the conflict with the parent resource TODO report the URI at some point, which is not the same as the URI of the parent file
 		}
-		return new FileOutputStream(file); //return a new file output stream to the file
+		return trackDigest(request, file, openOutputStream(request, resourceURI, file)); //return a new file output stream to the file
 	}
 
 	/**
@@ -160,13 +411,341 @@ protected FileResource createCollection(final HttpServletRequest request, final
 	}
 
 	/**
-	 * Deletes a resource.
+	 * Deletes a resource. If fast delete is enabled, a collection is atomically moved to the trash directory and reclaimed in the background; if the collection
+	 * cannot be moved atomically to the trash, it is deleted immediately.
 	 * @param request The HTTP request in response to which a resource is being deleted.
 	 * @param resource The resource to delete.
 	 * @throws IOException Thrown if the resource could not be deleted.
+	 * @see #getTrashReaper()
 	 */
 	protected void deleteResource(final HttpServletRequest request, final FileResource resource) throws IOException {
-		delete(resource.getFile(), true); //recursively delete the resource
+		final File file = resource.getFile();
+		final CollectionSizeIndex sizeIndex = getSizeIndex();
+		if(sizeIndex != null) { //update the index before the file disappears
+			final String path = getIndexPath(resource.getURI());
+			sizeIndex.adjust(path, file.isDirectory() ? -sizeIndex.removeTree(path) : -file.length());
+		}
+		final TrashReaper trashReaper = getTrashReaper();
+		if(trashReaper != null && file.isDirectory()) { //single files are cheap enough to delete directly
+			try {
+				trashReaper.discard(file.toPath());
+				return;
+			} catch(final AtomicMoveNotSupportedException atomicMoveNotSupportedException) { //the trash is probably on another file system
+				getLogger().warn("Unable to move {} to trash; deleting immediately.", file, atomicMoveNotSupportedException);
+			}
+		}
+		delete(file, true); //recursively delete the resource
+	}
+
+	/**
+	 * Services the PUT method. This version rejects content that would exceed the available quota, if the size of the content is known in advance. If a content
+	 * digest was computed, it is returned in the <code>ETag</code> and <code>Digest</code> headers.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 */
+	@Override
+	public void doPut(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final long contentLength = request.getContentLengthLong();
+		if(getSizeIndex() != null && contentLength >= 0) {
+			final URI resourceURI = getResourceURI(request);
+			final File file = getResource(resourceURI).getFile();
+			final long availableBytes = getQuotaAvailableBytes(getIndexPath(resourceURI));
+			if(availableBytes >= 0 && contentLength - (file.isFile() ? file.length() : 0) > availableBytes) {
+				throw new HTTPException(SC_INSUFFICIENT_STORAGE, "Quota exceeded."); //RFC 4331 6: DAV:quota-not-exceeded precondition
+			}
+		}
+		super.doPut(request, response);
+		final ContentDigest contentDigest = (ContentDigest)request.getAttribute(CONTENT_DIGEST_ATTRIBUTE);
+		if(contentDigest != null && !response.isCommitted()) {
+			response.setHeader(ETAG_HEADER, contentDigest.toETag());
+			response.setHeader(DIGEST_HEADER, contentDigest.toDigestHeader());
+		}
+	}
+
+	/**
+	 * Serves a resource. This version adds the <code>Digest</code> header if a valid content digest is stored for the resource.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @param resource The resource being served.
+	 * @param serveContent <code>true</code> if the contents of the resource should be returned.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 */
+	@Override
+	protected void serveResource(final HttpServletRequest request, final HttpServletResponse response, final FileResource resource, final boolean serveContent)
+			throws ServletException, IOException {
+		final ContentDigest contentDigest = getContentDigest(resource);
+		if(contentDigest != null) {
+			response.setHeader(DIGEST_HEADER, contentDigest.toDigestHeader());
+		}
+		super.serveResource(request, response, resource, serveContent);
+	}
+
+	/**
+	 * {@inheritDoc} This version returns the stored content digest, if it is still valid, as a strong entity tag.
+	 * @see #getContentDigest(FileResource)
+	 */
+	@Override
+	protected String getEntityTag(final HttpServletRequest request, final FileResource resource) throws IOException {
+		final ContentDigest contentDigest = getContentDigest(resource);
+		return contentDigest != null ? contentDigest.toETag() : null;
+	}
+
+	/**
+	 * Retrieves the digest stored for the content of a file, without reading the file itself.
+	 * @param resource The resource the digest of which should be retrieved.
+	 * @return The digest of the resource content, or <code>null</code> if digests are not enabled, the resource is not a file, or no digest is stored for the
+	 *         current content of the file.
+	 * @throws IOException if there is an error accessing the file.
+	 */
+	protected ContentDigest getContentDigest(final FileResource resource) throws IOException {
+		final String contentDigestAlgorithm = getContentDigestAlgorithm();
+		if(contentDigestAlgorithm == null) {
+			return null;
+		}
+		final Path file = resource.getFile().toPath();
+		final BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(file, BasicFileAttributes.class);
+		} catch(final java.nio.file.NoSuchFileException noSuchFileException) {
+			return null;
+		}
+		if(!attributes.isRegularFile()) {
+			return null;
+		}
+		final ContentDigest contentDigest = ContentDigest.load(file, getContentDigestSidecarFile(resource.getFile()));
+		return contentDigest != null && contentDigest.isValid(attributes, contentDigestAlgorithm) ? contentDigest : null;
+	}
+
+	/**
+	 * Determines the file in which the digest of a file is stored if the file system does not support extended attributes.
+	 * @param file The file the content of which is digested.
+	 * @return The sidecar file, or <code>null</code> if there is no place to store sidecar files.
+	 */
+	private Path getContentDigestSidecarFile(final File file) {
+		final String rootRealPath = getServletContext().getRealPath("/");
+		if(contentDigestDirectory == null || rootRealPath == null) {
+			return null;
+		}
+		final Path relativePath = new File(rootRealPath).toPath().toAbsolutePath().relativize(file.toPath().toAbsolutePath());
+		return contentDigestDirectory.resolve(relativePath.toString() + ".digest");
+	}
+
+	/**
+	 * Services the COPY method. This version updates the collection size index for the new content at the destination.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 */
+	@Override
+	public void doCopy(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final CollectionSizeIndex sizeIndex = getSizeIndex();
+		final URI destinationURI = sizeIndex != null ? getIndexedDestinationURI(request) : null;
+		if(destinationURI == null) { //if we aren't indexing, or there is no destination to index
+			super.doCopy(request, response);
+			return;
+		}
+		final String destinationPath = getIndexPath(destinationURI);
+		final File destinationFile = getResource(destinationURI).getFile();
+		final long oldDestinationSize = getIndexedSize(destinationPath, destinationFile);
+		super.doCopy(request, response);
+		if(destinationFile.isDirectory()) {
+			sizeIndex.removeTree(destinationPath);
+			sizeIndex.adjust(destinationPath, sizeIndex.scanTree(destinationPath, destinationFile.toPath()) - oldDestinationSize);
+		} else {
+			sizeIndex.adjust(destinationPath, destinationFile.length() - oldDestinationSize);
+		}
+	}
+
+	/**
+	 * Services the MOVE method. This version moves the indexed sizes of the resource to the destination.
+	 * @param request The HTTP request.
+	 * @param response The HTTP response.
+	 * @throws ServletException if there is a problem servicing the request.
+	 * @throws IOException if there is an error reading or writing data.
+	 */
+	@Override
+	public void doMove(final HttpServletRequest request, final HttpServletResponse response) throws ServletException, IOException {
+		final CollectionSizeIndex sizeIndex = getSizeIndex();
+		final URI destinationURI = sizeIndex != null ? getIndexedDestinationURI(request) : null;
+		if(destinationURI == null) { //if we aren't indexing, or there is no destination to index
+			super.doMove(request, response);
+			return;
+		}
+		final URI resourceURI = getResourceURI(request);
+		final String sourcePath = getIndexPath(resourceURI);
+		final File sourceFile = getResource(resourceURI).getFile();
+		final boolean isSourceDirectory = sourceFile.isDirectory();
+		final long sourceSize = getIndexedSize(sourcePath, sourceFile);
+		final String destinationPath = getIndexPath(destinationURI);
+		final File destinationFile = getResource(destinationURI).getFile();
+		final long oldDestinationSize = getIndexedSize(destinationPath, destinationFile);
+		super.doMove(request, response);
+		if(destinationFile.isDirectory() || isSourceDirectory) {
+			sizeIndex.removeTree(destinationPath);
+		}
+		if(isSourceDirectory) {
+			sizeIndex.moveTree(sourcePath, destinationPath);
+		}
+		sizeIndex.adjust(sourcePath, -sourceSize);
+		sizeIndex.adjust(destinationPath, sourceSize - oldDestinationSize);
+	}
+
+	/**
+	 * Determines the destination of a COPY or MOVE request for updating the size index.
+	 * @param request The HTTP request.
+	 * @return The canonical destination URI, or <code>null</code> if no destination was given.
+	 * @throws IOException if there is an error determining the destination.
+	 */
+	private URI getIndexedDestinationURI(final HttpServletRequest request) throws IOException {
+		final URI requestedDestinationURI = getDestination(request); //get the destination URI for the operation
+		return requestedDestinationURI != null ? getResourceURI(request, requestedDestinationURI, request.getMethod(), getResourceURI(request)) : null;
+	}
+
+	/**
+	 * Determines the path used to identify a resource in the size index.
+	 * @param resourceURI The URI of the resource.
+	 * @return The absolute path of the resource relative to the servlet context.
+	 */
+	protected String getIndexPath(final URI resourceURI) {
+		return getResourceContextAbsolutePath(resourceURI.getPath());
+	}
+
+	/**
+	 * Determines the number of bytes a resource contributes to its collections.
+	 * @param path The index path of the resource.
+	 * @param file The file of the resource.
+	 * @return The indexed size of the directory, the length of the file, or zero if the file does not exist.
+	 */
+	private long getIndexedSize(final String path, final File file) {
+		return file.isDirectory() ? getSizeIndex().getSize(path) : file.length(); //File.length() returns zero for missing files
+	}
+
+	/**
+	 * Determines the quota applying to a collection. This version returns the configured {@value #QUOTA_INIT_PARAMETER} for the root collection.
+	 * @param collectionPath The index path of the collection.
+	 * @return The maximum number of bytes the collection may contain, or <code>-1</code> if the collection itself has no quota.
+	 * @see #getIndexPath(URI)
+	 */
+	protected long getQuota(final String collectionPath) {
+		return "/".equals(collectionPath) ? quota : -1;
+	}
+
+	/**
+	 * Determines the number of bytes that may still be stored in a collection, taking into account the quotas of all its ancestors.
+	 * @param path The index path of the collection or of a resource to be stored in it.
+	 * @return The number of bytes available, or <code>-1</code> if no quota applies or the size index is not enabled.
+	 * @see #getQuota(String)
+	 */
+	protected long getQuotaAvailableBytes(final String path) {
+		final CollectionSizeIndex sizeIndex = getSizeIndex();
+		long availableBytes = -1;
+		if(sizeIndex != null) {
+			for(String collectionPath = CollectionSizeIndex.normalizePath(path); collectionPath != null; collectionPath = CollectionSizeIndex
+					.getParentPath(collectionPath)) {
+				final long collectionQuota = getQuota(collectionPath);
+				if(collectionQuota >= 0) {
+					final long collectionAvailableBytes = Math.max(collectionQuota - sizeIndex.getSize(collectionPath), 0);
+					availableBytes = availableBytes >= 0 ? Math.min(availableBytes, collectionAvailableBytes) : collectionAvailableBytes;
+				}
+			}
+		}
+		return availableBytes;
+	}
+
+	/**
+	 * {@inheritDoc} This version adds the live properties and, for collections, the quota properties.
+	 * @see #findLiveProperties(HttpServletRequest, com.globalmentor.net.Resource, Element, DecoratorIDedMappedList)
+	 * @see #findQuotaProperties(HttpServletRequest, FileResource, Element, DecoratorIDedMappedList)
+	 */
+	@Override
+	protected void findProperties(final HttpServletRequest request, final FileResource resource, final Element propertyElement,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties, final WebDAVXMLGenerator webdavXMLGenerator) throws DOMException, IOException {
+		findLiveProperties(request, resource, propertyElement, properties);
+		findQuotaProperties(request, resource, propertyElement, properties);
+	}
+
+	/**
+	 * Adds the requested <code>quota-used-bytes</code> and <code>quota-available-bytes</code> properties defined by
+	 * <a href="https://tools.ietf.org/html/rfc4331">RFC 4331</a> for a collection, if the size index is enabled. As RFC 4331 requires, these properties are not
+	 * included in a request for all properties.
+	 * @param request The HTTP request in response to which properties are being retrieved.
+	 * @param resource The resource the properties of which should be found.
+	 * @param propertyElement The XML element which will receive a representation of the resource properties.
+	 * @param properties A list of all requested properties, or {@link WebDAV#ALL_PROPERTIES} or {@link WebDAV#PROPERTY_NAMES} indicating all properties or all
+	 *          property names, respectively.
+	 * @throws DOMException if there is an error updating the properties element.
+	 */
+	protected void findQuotaProperties(final HttpServletRequest request, final FileResource resource, final Element propertyElement,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties) throws DOMException {
+		final CollectionSizeIndex sizeIndex = getSizeIndex();
+		if(sizeIndex != null && properties != ALL_PROPERTIES && resource.getFile().isDirectory()) {
+			final boolean namesOnly = properties == PROPERTY_NAMES;
+			final String path = getIndexPath(resource.getURI());
+			if(isPropertyRequested(properties, "quota-used-bytes")) {
+				addLiveProperty(propertyElement, "quota-used-bytes", namesOnly ? null : Long.toString(sizeIndex.getSize(path)));
+			}
+			final long availableBytes = getQuotaAvailableBytes(path);
+			if(availableBytes >= 0 && isPropertyRequested(properties, "quota-available-bytes")) {
+				addLiveProperty(propertyElement, "quota-available-bytes", namesOnly ? null : Long.toString(availableBytes));
+			}
+		}
+	}
+
+	/**
+	 * Opens an output stream to a file, replacing its contents. If the size index is enabled, the index is updated when the stream is closed. If a quota applies,
+	 * it is enforced while writing; as the write may then be refused part way through, the content is written to a temporary file in the same directory which
+	 * only replaces the file when the stream is closed after a successful write, so that a refused write leaves any existing content intact.
+	 * @param request The HTTP request in response to which the output stream is being retrieved.
+	 * @param resourceURI The URI of the resource being written.
+	 * @param file The file being written.
+	 * @return An output stream to the file.
+	 * @throws IOException if there is an error opening the file.
+	 */
+	protected OutputStream openOutputStream(final HttpServletRequest request, final URI resourceURI, final File file) throws IOException {
+		final CollectionSizeIndex sizeIndex = getSizeIndex();
+		if(sizeIndex == null) {
+			return new FileOutputStream(file);
+		}
+		final long originalLength = file.length(); //note the length before the file is replaced; File.length() returns zero for missing files
+		final String path = getIndexPath(resourceURI);
+		final long availableBytes = getQuotaAvailableBytes(path);
+		if(availableBytes < 0) { //without a quota, the write can't be refused
+			return new SizeTrackingOutputStream(new FileOutputStream(file), sizeIndex, path, file, null, originalLength, Long.MAX_VALUE);
+		}
+		final Path tempFile = Files.createTempFile(file.getParentFile().toPath(), "." + file.getName() + ".", ".tmp");
+		try {
+			return new SizeTrackingOutputStream(Files.newOutputStream(tempFile), sizeIndex, path, file, tempFile, originalLength, availableBytes);
+		} catch(final IOException ioException) {
+			Files.deleteIfExists(tempFile);
+			throw ioException;
+		}
+	}
+
+	/**
+	 * Wraps an output stream to a file so that a digest of the content is computed as it is written, and stored when the stream is closed. The digest is also
+	 * recorded in the request so that it can be reported in the response.
+	 * @param request The HTTP request in response to which the output stream is being retrieved.
+	 * @param file The file being written.
+	 * @param outputStream The output stream to the file.
+	 * @return An output stream that computes the digest of the content, or the given output stream if content digests are not enabled.
+	 * @throws IOException if the digest algorithm is not available.
+	 */
+	protected OutputStream trackDigest(final HttpServletRequest request, final File file, final OutputStream outputStream) throws IOException {
+		final String contentDigestAlgorithm = getContentDigestAlgorithm();
+		if(contentDigestAlgorithm == null) {
+			return outputStream;
+		}
+		final MessageDigest messageDigest;
+		try {
+			messageDigest = ContentDigest.newMessageDigest(contentDigestAlgorithm);
+		} catch(final NoSuchAlgorithmException noSuchAlgorithmException) { //we checked the algorithm on initialization
+			throw new IOException(noSuchAlgorithmException);
+		}
+		return new DigestingOutputStream(outputStream, messageDigest, request, file);
 	}
 
 	/**
@@ -180,4 +759,189 @@ protected List<FileResource> getChildResources(final HttpServletRequest request,
 		return resource.getChildResources(); //return the child resources of this file resource
 	}
 
+	/**
+	 * An output stream to a file that computes a digest of the content written and stores it with the file when closed. Because the digest covers exactly the
+	 * bytes written, it is correct even if the upload was interrupted.
+	 * @author Garret Wilson
+	 */
+	private class DigestingOutputStream extends FilterOutputStream {
+
+		private final MessageDigest messageDigest;
+
+		private final HttpServletRequest request;
+
+		private final File file;
+
+		/** Whether writing failed, in which case the content written does not represent the file. */
+		private boolean failed = false;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * @param outputStream The output stream to the file.
+		 * @param messageDigest The digest to update with the content written.
+		 * @param request The HTTP request in which the computed digest should be recorded.
+		 * @param file The file being written.
+		 */
+		public DigestingOutputStream(final OutputStream outputStream, final MessageDigest messageDigest, final HttpServletRequest request, final File file) {
+			super(outputStream);
+			this.messageDigest = messageDigest;
+			this.request = request;
+			this.file = file;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			try {
+				out.write(b);
+			} catch(final IOException ioException) {
+				failed = true;
+				throw ioException;
+			}
+			messageDigest.update((byte)b);
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			try {
+				out.write(bytes, offset, length); //don't use the byte-at-a-time version in FilterOutputStream
+			} catch(final IOException ioException) {
+				failed = true;
+				throw ioException;
+			}
+			messageDigest.update(bytes, offset, length);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(!closed) {
+				closed = true;
+				super.close();
+				if(failed) { //the file may still have its original content
+					return;
+				}
+				final BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class); //capture the state the digest applies to
+				final ContentDigest contentDigest = new ContentDigest(messageDigest.getAlgorithm(), messageDigest.digest(), attributes.size(),
+						attributes.lastModifiedTime().toMillis());
+				contentDigest.store(file.toPath(), getContentDigestSidecarFile(file));
+				if(request != null) {
+					request.setAttribute(CONTENT_DIGEST_ATTRIBUTE, contentDigest);
+				}
+			}
+		}
+	}
+
+	/**
+	 * An output stream to a file that updates the collection size index when closed, and refuses to write more bytes than allowed. If a temporary file is being
+	 * written, it replaces the file when the stream is closed, unless writing failed, in which case it is deleted.
+	 * @author Garret Wilson
+	 */
+	private static class SizeTrackingOutputStream extends FilterOutputStream {
+
+		private final CollectionSizeIndex sizeIndex;
+
+		private final String path;
+
+		private final File file;
+
+		/** The temporary file actually being written, or <code>null</code> if the file is being written directly. */
+		private final Path tempFile;
+
+		/** The length of the file before it was opened for writing, which is what the index still reflects. */
+		private final long originalLength;
+
+		/** The number of additional bytes that may be written beyond the original length. */
+		private final long availableBytes;
+
+		/** The number of bytes written. */
+		private long count = 0;
+
+		/** Whether writing failed, such as because the quota would have been exceeded. */
+		private boolean failed = false;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * @param outputStream The output stream to the file or to the temporary file.
+		 * @param sizeIndex The index to update.
+		 * @param path The index path of the file.
+		 * @param file The file being written.
+		 * @param tempFile The temporary file to replace the file when closed, or <code>null</code> if the file is being written directly.
+		 * @param originalLength The length of the file before it was opened for writing.
+		 * @param availableBytes The number of additional bytes that may be written beyond the original length.
+		 */
+		public SizeTrackingOutputStream(final OutputStream outputStream, final CollectionSizeIndex sizeIndex, final String path, final File file,
+				final Path tempFile, final long originalLength, final long availableBytes) {
+			super(outputStream);
+			this.sizeIndex = sizeIndex;
+			this.path = path;
+			this.file = file;
+			this.tempFile = tempFile;
+			this.originalLength = originalLength;
+			this.availableBytes = availableBytes;
+		}
+
+		/**
+		 * Makes sure the given number of bytes may be written.
+		 * @param length The number of bytes about to be written.
+		 * @throws HTTPException if writing the bytes would exceed the quota.
+		 */
+		private void ensureAvailable(final int length) throws HTTPException {
+			if(count + length - originalLength > availableBytes) {
+				failed = true;
+				throw new HTTPException(SC_INSUFFICIENT_STORAGE, "Quota exceeded.");
+			}
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			ensureAvailable(1);
+			try {
+				out.write(b);
+			} catch(final IOException ioException) {
+				failed = true;
+				throw ioException;
+			}
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			ensureAvailable(length);
+			try {
+				out.write(bytes, offset, length); //don't use the byte-at-a-time version in FilterOutputStream
+			} catch(final IOException ioException) {
+				failed = true;
+				throw ioException;
+			}
+			count += length;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(!closed) {
+				closed = true;
+				try {
+					out.close(); //FilterOutputStream.close() would hide flush errors
+				} catch(final IOException ioException) {
+					failed = true;
+					throw ioException;
+				} finally {
+					if(tempFile != null) {
+						if(failed) { //leave the original content intact
+							Files.deleteIfExists(tempFile);
+						} else {
+							Files.move(tempFile, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+						}
+					}
+					sizeIndex.adjust(path, file.length() - originalLength);
+				}
+			}
+		}
+	}
+
 }
@@ -0,0 +1,264 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.IOException;
+import java.net.*;
+import java.util.*;
+
+import static java.util.Objects.*;
+
+/**
+ * A parsed WebDAV <code>If</code> header as defined by <a href="https://tools.ietf.org/html/rfc4918#section-10.4">RFC 4918 10.4</a>, consisting of either
+ * untagged lists applying to the request URI or lists tagged with the resource to which they apply. Each list contains conditions matching state tokens such as
+ * lock tokens, or entity tags, either of which may be negated.
+ * @author Garret Wilson
+ */
+public class IfHeader {
+
+	/** The tag used to indicate lists not tagged with a resource. */
+	private static final URI UNTAGGED = URI.create("");
+
+	/** The condition lists, keyed to the resource tags, or to {@link #UNTAGGED} for untagged lists. */
+	private final Map<URI, List<List<Condition>>> taggedLists;
+
+	/** All state tokens mentioned in the header. */
+	private final Set<String> stateTokens;
+
+	/** @return All the state tokens, such as lock tokens, mentioned in the header, which the client is considered to have submitted. */
+	public Set<String> getStateTokens() {
+		return stateTokens;
+	}
+
+	/**
+	 * Constructor.
+	 * @param taggedLists The condition lists, keyed to the resource tags, or to {@link #UNTAGGED} for untagged lists.
+	 */
+	private IfHeader(final Map<URI, List<List<Condition>>> taggedLists) {
+		this.taggedLists = taggedLists;
+		final Set<String> stateTokens = new HashSet<String>();
+		for(final List<List<Condition>> lists : taggedLists.values()) {
+			for(final List<Condition> list : lists) {
+				for(final Condition condition : list) {
+					if(condition.getStateToken() != null) {
+						stateTokens.add(condition.getStateToken());
+					}
+				}
+			}
+		}
+		this.stateTokens = Collections.unmodifiableSet(stateTokens);
+	}
+
+	/**
+	 * Parses an <code>If</code> header.
+	 * @param header The value of the header.
+	 * @param requestURI The URI of the request, against which resource tags are resolved.
+	 * @return The parsed header.
+	 * @throws IllegalArgumentException if the header is not syntactically correct.
+	 */
+	public static IfHeader parse(final String header, final URI requestURI) {
+		final Map<URI, List<List<Condition>>> taggedLists = new LinkedHashMap<URI, List<List<Condition>>>();
+		final int length = header.length();
+		URI tag = null;
+		Boolean tagged = null; //we don't know yet whether this header uses tagged or untagged lists
+		int index = skipWhitespace(header, 0);
+		while(index < length) {
+			final char c = header.charAt(index);
+			if(c == '<') { //resource tag
+				if(Boolean.FALSE.equals(tagged)) {
+					throw new IllegalArgumentException("If header cannot mix tagged and untagged lists: " + header);
+				}
+				tagged = Boolean.TRUE;
+				final int end = indexOf(header, '>', index);
+				try {
+					tag = requestURI.resolve(new URI(header.substring(index + 1, end)));
+				} catch(final URISyntaxException uriSyntaxException) {
+					throw new IllegalArgumentException("Invalid resource tag in If header: " + header, uriSyntaxException);
+				}
+				index = end + 1;
+			} else if(c == '(') { //list
+				if(tagged == null) {
+					tagged = Boolean.FALSE;
+				}
+				if(tagged && tag == null) {
+					throw new IllegalArgumentException("Missing resource tag in If header: " + header);
+				}
+				final List<Condition> list = new ArrayList<Condition>();
+				index = skipWhitespace(header, index + 1);
+				while(index < length && header.charAt(index) != ')') {
+					boolean not = false;
+					if(header.regionMatches(true, index, "Not", 0, 3)) {
+						not = true;
+						index = skipWhitespace(header, index + 3);
+					}
+					if(index >= length) {
+						break;
+					}
+					final char conditionChar = header.charAt(index);
+					if(conditionChar == '<') { //state token
+						final int end = indexOf(header, '>', index);
+						list.add(new Condition(not, header.substring(index + 1, end), null));
+						index = end + 1;
+					} else if(conditionChar == '[') { //entity tag
+						final int end = indexOf(header, ']', index);
+						list.add(new Condition(not, null, header.substring(index + 1, end).trim()));
+						index = end + 1;
+					} else {
+						throw new IllegalArgumentException("Invalid condition in If header: " + header);
+					}
+					index = skipWhitespace(header, index);
+				}
+				if(index >= length || list.isEmpty()) {
+					throw new IllegalArgumentException("Invalid list in If header: " + header);
+				}
+				taggedLists.computeIfAbsent(tagged ? tag : UNTAGGED, __ -> new ArrayList<List<Condition>>()).add(list);
+				index = index + 1; //skip the ')'
+			} else {
+				throw new IllegalArgumentException("Invalid If header: " + header);
+			}
+			index = skipWhitespace(header, index);
+		}
+		if(taggedLists.isEmpty()) {
+			throw new IllegalArgumentException("Empty If header.");
+		}
+		return new IfHeader(taggedLists);
+	}
+
+	/**
+	 * Skips whitespace.
+	 * @param string The string being parsed.
+	 * @param index The current index.
+	 * @return The index of the next non-whitespace character, or the length of the string.
+	 */
+	private static int skipWhitespace(final String string, int index) {
+		while(index < string.length() && Character.isWhitespace(string.charAt(index))) {
+			++index;
+		}
+		return index;
+	}
+
+	/**
+	 * Finds a required delimiter.
+	 * @param string The string being parsed.
+	 * @param delimiter The delimiter to find.
+	 * @param index The current index.
+	 * @return The index of the delimiter.
+	 * @throws IllegalArgumentException if the delimiter is not present.
+	 */
+	private static int indexOf(final String string, final char delimiter, final int index) {
+		final int delimiterIndex = string.indexOf(delimiter, index);
+		if(delimiterIndex < 0) {
+			throw new IllegalArgumentException("Missing '" + delimiter + "' in If header: " + string);
+		}
+		return delimiterIndex;
+	}
+
+	/**
+	 * Evaluates the header for a resource. Untagged lists apply to the request URI; tagged lists apply only to the resource with which they are tagged. The
+	 * header is true for a resource if no list applies to it, or if all the conditions of any list applying to it are true.
+	 * @param resourceURI The URI of the resource being evaluated.
+	 * @param requestURI The URI of the request.
+	 * @param stateTokenMatcher The matcher determining whether a state token, such as a lock token, applies to a resource.
+	 * @param entityTagMatcher The matcher determining whether an entity tag matches the current entity tag of a resource.
+	 * @return <code>true</code> if the header is satisfied for the given resource.
+	 * @throws IOException if there is an error accessing the resource.
+	 */
+	public boolean evaluate(final URI resourceURI, final URI requestURI, final Matcher stateTokenMatcher, final Matcher entityTagMatcher) throws IOException {
+		final List<List<Condition>> lists;
+		if(taggedLists.containsKey(UNTAGGED)) {
+			lists = resourceURI.equals(requestURI) ? taggedLists.get(UNTAGGED) : null;
+		} else {
+			lists = taggedLists.get(resourceURI);
+		}
+		if(lists == null) { //if no list applies to this resource, the header is not a precondition for it
+			return true;
+		}
+		for(final List<Condition> list : lists) {
+			boolean listMatches = true;
+			for(final Condition condition : list) {
+				final boolean matches = condition.getStateToken() != null ? stateTokenMatcher.matches(resourceURI, condition.getStateToken())
+						: entityTagMatcher.matches(resourceURI, condition.getEntityTag());
+				if(matches == condition.isNot()) {
+					listMatches = false;
+					break;
+				}
+			}
+			if(listMatches) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Strategy for determining whether a condition value applies to a resource.
+	 * @author Garret Wilson
+	 */
+	@FunctionalInterface
+	public interface Matcher {
+
+		/**
+		 * Determines whether a value applies to a resource.
+		 * @param resourceURI The URI of the resource.
+		 * @param value The state token or entity tag.
+		 * @return <code>true</code> if the value applies to the resource.
+		 * @throws IOException if there is an error accessing the resource.
+		 */
+		public boolean matches(final URI resourceURI, final String value) throws IOException;
+	}
+
+	/**
+	 * A single condition in a list.
+	 * @author Garret Wilson
+	 */
+	private static class Condition {
+
+		private final boolean not;
+
+		/** @return Whether the condition is negated. */
+		public boolean isNot() {
+			return not;
+		}
+
+		private final String stateToken;
+
+		/** @return The state token URI, or <code>null</code> if this is an entity tag condition. */
+		public String getStateToken() {
+			return stateToken;
+		}
+
+		private final String entityTag;
+
+		/** @return The entity tag, including quotes, or <code>null</code> if this is a state token condition. */
+		public String getEntityTag() {
+			return entityTag;
+		}
+
+		/**
+		 * Constructor.
+		 * @param not Whether the condition is negated.
+		 * @param stateToken The state token URI, or <code>null</code> if this is an entity tag condition.
+		 * @param entityTag The entity tag, or <code>null</code> if this is a state token condition.
+		 */
+		public Condition(final boolean not, final String stateToken, final String entityTag) {
+			this.not = not;
+			this.stateToken = stateToken;
+			this.entityTag = stateToken == null ? requireNonNull(entityTag) : entityTag;
+		}
+	}
+
+}
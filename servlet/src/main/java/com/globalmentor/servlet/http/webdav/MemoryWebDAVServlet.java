@@ -0,0 +1,737 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.servlet.*;
+import javax.servlet.http.*;
+
+import org.w3c.dom.*;
+
+import com.globalmentor.collections.DecoratorIDedMappedList;
+import com.globalmentor.io.IOStreams;
+import com.globalmentor.net.DefaultResource;
+import com.globalmentor.net.http.*;
+import com.globalmentor.net.http.webdav.*;
+import static com.globalmentor.net.HTTP.*;
+import static com.globalmentor.servlet.Servlets.*;
+
+/**
+ * A WebDAV server that keeps all resources in memory, with content stored outside the Java heap in an {@link OffHeapStore} so that large amounts of content
+ * put no pressure on the garbage collector. Resource metadata is kept in a concurrent tree; lookups never block, while changes to the tree are serialized.
+ * Because content is immutable and reference-counted, COPY shares the content of the original resources, and MOVE only relinks the moved subtree.
+ * <p>
+ * This servlet is useful for scratch areas and for measuring the performance of the servlet stack without any disk access. By default all resources are lost
+ * when the servlet is destroyed, but a snapshot may be stored and restored on the next start.
+ * </p>
+ * <p>
+ * This servlet supports the following initialization parameters in addition to those of its parent classes:
+ * </p>
+ * <dl>
+ * <dt>{@value #MEMORY_BLOCK_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The size in bytes of the blocks in which content is allocated.</dd>
+ * <dt>{@value #MEMORY_SLAB_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The size in bytes of each slab of memory reserved from the operating system.</dd>
+ * <dt>{@value #MEMORY_MAX_SIZE_INIT_PARAMETER}</dt>
+ * <dd>The maximum number of bytes of memory to reserve for content; PUT requests beyond this limit fail with 507 Insufficient Storage.</dd>
+ * <dt>{@value #MEMORY_SNAPSHOT_INIT_PARAMETER}</dt>
+ * <dd>Whether the resources are stored in the data directory when the servlet is destroyed and restored when it is initialized; should be "true" or
+ * "false".</dd>
+ * </dl>
+ * @author Garret Wilson
+ */
+public class MemoryWebDAVServlet extends AbstractWebDAVServlet<MemoryWebDAVServlet.MemoryResource> {
+
+	private static final long serialVersionUID = 6203870427312568849L;
+
+	/** The init parameter, {@value #MEMORY_BLOCK_SIZE_INIT_PARAMETER}, used to specify the size in bytes of content blocks. */
+	public static final String MEMORY_BLOCK_SIZE_INIT_PARAMETER = "memoryBlockSize";
+
+	/** The default size in bytes of content blocks. */
+	public static final long DEFAULT_MEMORY_BLOCK_SIZE = 16 * 1024;
+
+	/** The init parameter, {@value #MEMORY_SLAB_SIZE_INIT_PARAMETER}, used to specify the size in bytes of each slab of memory. */
+	public static final String MEMORY_SLAB_SIZE_INIT_PARAMETER = "memorySlabSize";
+
+	/** The default size in bytes of each slab of memory. */
+	public static final long DEFAULT_MEMORY_SLAB_SIZE = 64 * 1024 * 1024;
+
+	/** The init parameter, {@value #MEMORY_MAX_SIZE_INIT_PARAMETER}, used to specify the maximum number of bytes of memory reserved for content. */
+	public static final String MEMORY_MAX_SIZE_INIT_PARAMETER = "memoryMaxSize";
+
+	/** The default maximum number of bytes of memory reserved for content. */
+	public static final long DEFAULT_MEMORY_MAX_SIZE = 1024L * 1024 * 1024;
+
+	/** The init parameter, {@value #MEMORY_SNAPSHOT_INIT_PARAMETER}, used to specify whether resources survive a restart; should be "true" or "false". */
+	public static final String MEMORY_SNAPSHOT_INIT_PARAMETER = "memorySnapshot";
+
+	/** The 507 Insufficient Storage status code defined by RFC 4918. */
+	private static final int SC_INSUFFICIENT_STORAGE = 507;
+
+	/** The value identifying a snapshot file. */
+	private static final int SNAPSHOT_MAGIC = 0x4d454d31;
+
+	/** The snapshot record type of a collection. */
+	private static final byte COLLECTION_RECORD = 'C';
+
+	/** The snapshot record type of a resource. */
+	private static final byte RESOURCE_RECORD = 'R';
+
+	/** The snapshot record type marking the end of the snapshot. */
+	private static final byte END_RECORD = 0;
+
+	/** The store of content, or <code>null</code> if the servlet has not been initialized. */
+	private OffHeapStore store = null;
+
+	/** @return The store of content, or <code>null</code> if the servlet has not been initialized. */
+	protected OffHeapStore getStore() {
+		return store;
+	}
+
+	/** The root collection. */
+	private final Node root = new Node(new ConcurrentSkipListMap<String, Node>(), null, System.currentTimeMillis());
+
+	/** The lock serializing changes to the tree. */
+	private final Object treeLock = new Object();
+
+	/** The file in which resources are stored when the servlet is destroyed, or <code>null</code> if resources are not kept across restarts. */
+	private File snapshotFile = null;
+
+	/**
+	 * Initializes the servlet. This version creates the off-heap store and restores a snapshot if requested.
+	 * @param servletConfig The servlet configuration.
+	 * @throws ServletException if there is a problem initializing.
+	 */
+	@Override
+	public void initialize(final ServletConfig servletConfig) throws ServletException, IllegalArgumentException, IllegalStateException {
+		super.initialize(servletConfig);
+		final Long blockSize = getLongInitParameter(servletConfig, MEMORY_BLOCK_SIZE_INIT_PARAMETER);
+		final Long slabSize = getLongInitParameter(servletConfig, MEMORY_SLAB_SIZE_INIT_PARAMETER);
+		final Long maxSize = getLongInitParameter(servletConfig, MEMORY_MAX_SIZE_INIT_PARAMETER);
+		store = new OffHeapStore((int)(blockSize != null ? blockSize.longValue() : DEFAULT_MEMORY_BLOCK_SIZE),
+				(int)(slabSize != null ? slabSize.longValue() : DEFAULT_MEMORY_SLAB_SIZE), maxSize != null ? maxSize.longValue() : DEFAULT_MEMORY_MAX_SIZE);
+		if(Boolean.TRUE.equals(getBooleanInitParameter(servletConfig, MEMORY_SNAPSHOT_INIT_PARAMETER))) {
+			final File dataDirectory = getDataDirectory(getServletContext());
+			if(dataDirectory != null) {
+				snapshotFile = new File(dataDirectory, "memory-" + servletConfig.getServletName() + ".snapshot");
+				if(snapshotFile.isFile()) {
+					try {
+						loadSnapshot(snapshotFile);
+					} catch(final IOException ioException) {
+						throw new ServletException(ioException);
+					}
+				}
+			} else {
+				getLogger().warn("No data directory available; memory snapshot disabled.");
+			}
+		}
+	}
+
+	/**
+	 * Destroys the servlet. This version stores a snapshot of the resources if requested, and frees all content.
+	 */
+	@Override
+	public void destroy() {
+		synchronized(treeLock) {
+			if(snapshotFile != null) {
+				try {
+					storeSnapshot(snapshotFile);
+				} catch(final IOException ioException) {
+					getLogger().warn("Unable to store memory snapshot.", ioException);
+				}
+			}
+			for(final Node child : root.getChildren().values()) {
+				release(child);
+			}
+			root.getChildren().clear();
+		}
+		super.destroy();
+	}
+
+	/**
+	 * Stores a snapshot of all resources, parents before children.
+	 * @param file The file in which to store the snapshot.
+	 * @throws IOException if there is an error writing the snapshot.
+	 */
+	private void storeSnapshot(final File file) throws IOException {
+		final File tempFile = new File(file.getPath() + ".tmp");
+		try (final DataOutputStream outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+			outputStream.writeInt(SNAPSHOT_MAGIC);
+			storeSnapshot(outputStream, "", root);
+			outputStream.writeByte(END_RECORD);
+		}
+		Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING); //don't leave a partial snapshot
+	}
+
+	/**
+	 * Recursively writes the children of a collection to a snapshot.
+	 * @param outputStream The snapshot output stream.
+	 * @param path The raw path of the collection, without a trailing slash.
+	 * @param collection The collection node.
+	 * @throws IOException if there is an error writing the snapshot.
+	 */
+	private void storeSnapshot(final DataOutputStream outputStream, final String path, final Node collection) throws IOException {
+		for(final Map.Entry<String, Node> childEntry : collection.getChildren().entrySet()) {
+			final String childPath = path + '/' + childEntry.getKey();
+			final Node child = childEntry.getValue();
+			if(child.isCollection()) {
+				outputStream.writeByte(COLLECTION_RECORD);
+				outputStream.writeUTF(childPath);
+				outputStream.writeLong(child.getLastModified());
+				storeSnapshot(outputStream, childPath, child);
+			} else {
+				outputStream.writeByte(RESOURCE_RECORD);
+				outputStream.writeUTF(childPath);
+				outputStream.writeLong(child.getLastModified());
+				outputStream.writeLong(child.getContent().getLength());
+				try (final InputStream inputStream = child.getContent().newInputStream()) {
+					IOStreams.copy(inputStream, outputStream);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Restores resources from a snapshot.
+	 * @param file The file containing the snapshot.
+	 * @throws IOException if there is an error reading the snapshot or the snapshot is invalid.
+	 */
+	private void loadSnapshot(final File file) throws IOException {
+		try (final DataInputStream inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(inputStream.readInt() != SNAPSHOT_MAGIC) {
+				throw new IOException("Invalid memory snapshot " + file);
+			}
+			final byte[] buffer = new byte[store.getBlockSize()];
+			byte recordType;
+			while((recordType = inputStream.readByte()) != END_RECORD) {
+				final String path = inputStream.readUTF();
+				final long lastModified = inputStream.readLong();
+				final Node parent = findNode(getParentPath(path));
+				if(parent == null || !parent.isCollection()) {
+					throw new IOException("Missing parent collection of " + path + " in memory snapshot " + file);
+				}
+				final Node node;
+				if(recordType == COLLECTION_RECORD) {
+					node = new Node(new ConcurrentSkipListMap<String, Node>(), null, lastModified);
+				} else if(recordType == RESOURCE_RECORD) {
+					long remaining = inputStream.readLong();
+					final OffHeapStore.ContentOutputStream contentOutputStream = store.newOutputStream();
+					try {
+						while(remaining > 0) {
+							final int count = (int)Math.min(buffer.length, remaining);
+							inputStream.readFully(buffer, 0, count);
+							contentOutputStream.write(buffer, 0, count);
+							remaining -= count;
+						}
+						node = new Node(null, contentOutputStream.seal(), lastModified);
+					} finally {
+						contentOutputStream.close();
+					}
+				} else {
+					throw new IOException("Invalid record type " + recordType + " in memory snapshot " + file);
+				}
+				parent.getChildren().put(getName(path), node);
+			}
+		}
+	}
+
+	/**
+	 * Determines the raw path of a resource relative to the servlet context.
+	 * @param resourceURI The URI of the resource.
+	 * @return The raw absolute path of the resource relative to the servlet context, without any trailing slash.
+	 */
+	protected String getTreePath(final URI resourceURI) {
+		return BlobNamespace.normalizePath(getResourceContextAbsolutePath(resourceURI.getRawPath()));
+	}
+
+	/**
+	 * Determines the parent of a tree path.
+	 * @param path The tree path.
+	 * @return The path of the parent, or <code>null</code> if the path is the root path.
+	 */
+	private static String getParentPath(final String path) {
+		return BlobNamespace.getParentPath(path);
+	}
+
+	/**
+	 * Determines the name of a tree path.
+	 * @param path The tree path.
+	 * @return The last segment of the path.
+	 */
+	private static String getName(final String path) {
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	/**
+	 * Finds the node at a path, without locking.
+	 * @param path The tree path, or <code>null</code>.
+	 * @return The node at the path, or <code>null</code> if there is no node at the given path or the path is <code>null</code>.
+	 */
+	private Node findNode(final String path) {
+		if(path == null) {
+			return null;
+		}
+		Node node = root;
+		int index = 1; //skip the initial slash
+		while(node != null && index < path.length()) {
+			if(!node.isCollection()) {
+				return null;
+			}
+			int end = path.indexOf('/', index);
+			if(end < 0) {
+				end = path.length();
+			}
+			node = node.getChildren().get(path.substring(index, end));
+			index = end + 1;
+		}
+		return node;
+	}
+
+	/**
+	 * Finds the collection that is the parent of a path, without locking.
+	 * @param path The tree path.
+	 * @return The parent collection node, or <code>null</code> if the parent does not exist or is not a collection.
+	 */
+	private Node findParent(final String path) {
+		final Node parent = findNode(getParentPath(path));
+		return parent != null && parent.isCollection() ? parent : null;
+	}
+
+	/**
+	 * Releases the content of a node and all its descendants.
+	 * @param node The node no longer in the tree.
+	 */
+	private static void release(final Node node) {
+		if(node.isCollection()) {
+			for(final Node child : node.getChildren().values()) {
+				release(child);
+			}
+		} else {
+			node.getContent().release();
+		}
+	}
+
+	/**
+	 * Creates a copy of a node that shares the content of the original.
+	 * @param node The node to copy.
+	 * @param depth The zero-based depth of descendants to copy, or <code>-1</code> for all descendants.
+	 * @param lastModified The modification time of the copies.
+	 * @return The copy of the node.
+	 */
+	private static Node copy(final Node node, final int depth, final long lastModified) {
+		if(!node.isCollection()) {
+			if(!node.getContent().retain()) {
+				throw new IllegalStateException("Content of node in tree was already freed.");
+			}
+			return new Node(null, node.getContent(), lastModified);
+		}
+		final ConcurrentNavigableMap<String, Node> children = new ConcurrentSkipListMap<String, Node>();
+		if(depth != 0) {
+			for(final Map.Entry<String, Node> childEntry : node.getChildren().entrySet()) {
+				children.put(childEntry.getKey(), copy(childEntry.getValue(), depth > 0 ? depth - 1 : depth, lastModified));
+			}
+		}
+		return new Node(children, null, lastModified);
+	}
+
+	@Override
+	protected boolean exists(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		return findNode(getTreePath(resourceURI)) != null;
+	}
+
+	@Override
+	protected boolean isCollection(final HttpServletRequest request, final URI resourceURI) throws IOException {
+		final Node node = findNode(getTreePath(resourceURI));
+		return node != null && node.isCollection();
+	}
+
+	/**
+	 * {@inheritDoc} This version captures the current state of the resource, so that the content served corresponds to the properties reported.
+	 */
+	@Override
+	protected MemoryResource getResource(final HttpServletRequest request, final URI resourceURI) throws IllegalArgumentException, IOException {
+		return new MemoryResource(resourceURI, findNode(getTreePath(resourceURI)));
+	}
+
+	/**
+	 * Determines the node of an existing resource.
+	 * @param resource The resource.
+	 * @return The node of the resource.
+	 * @throws HTTPNotFoundException if the resource did not exist when it was retrieved.
+	 */
+	private static Node getNode(final MemoryResource resource) throws HTTPNotFoundException {
+		final Node node = resource.getNode();
+		if(node == null) {
+			throw new HTTPNotFoundException(resource.getURI().toString());
+		}
+		return node;
+	}
+
+	@Override
+	protected long getContentLength(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final Node node = resource.getNode();
+		return node != null && !node.isCollection() ? node.getContent().getLength() : -1;
+	}
+
+	@Override
+	protected Date getLastModifiedDate(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final Node node = resource.getNode();
+		return node != null ? new Date(node.getLastModified()) : null;
+	}
+
+	/**
+	 * {@inheritDoc} This version uses the state of the resource captured when the resource was retrieved.
+	 */
+	@Override
+	protected ResourceState getResourceState(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final Node node = getNode(resource);
+		return new ResourceState(node.isCollection(), node.isCollection() ? -1 : node.getContent().getLength(), node.getLastModified());
+	}
+
+	@Override
+	protected long getChildCount(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final Node node = getNode(resource);
+		return node.isCollection() ? node.getChildren().size() : 0;
+	}
+
+	@Override
+	protected InputStream getInputStream(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final Node node = getNode(resource);
+		if(node.isCollection()) {
+			throw new IOException("Collection " + resource.getURI() + " has no content.");
+		}
+		return node.getContent().newInputStream(); //if the resource was replaced in the meantime, this will fail rather than return the wrong content
+	}
+
+	@Override
+	protected OutputStream getOutputStream(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		return createResource(request, resource.getURI());
+	}
+
+	/**
+	 * {@inheritDoc} This version writes the content into newly allocated off-heap blocks, and replaces the resource in the tree when the stream is closed. If the
+	 * request is a PUT indicating a content length and a different number of bytes was written, the content is discarded, the resource is left unchanged, and
+	 * closing the stream throws an {@link HTTPBadRequestException}.
+	 */
+	@Override
+	protected OutputStream createResource(final HttpServletRequest request, final URI resourceURI)
+			throws IllegalArgumentException, IOException, HTTPConflictException {
+		final String path = getTreePath(resourceURI);
+		if(findParent(path) == null) { //if the parent is not an existing collection
+			throw new HTTPConflictException();
+		}
+		final Node node = findNode(path);
+		if(node != null && node.isCollection()) {
+			throw new HTTPConflictException("Collection " + resourceURI + " cannot be replaced by a resource.");
+		}
+		final long expectedLength = PUT_METHOD.equals(request.getMethod()) ? request.getContentLengthLong() : -1; //the content of other requests is not the resource content
+		return new TreeOutputStream(store.newOutputStream(), path, expectedLength);
+	}
+
+	@Override
+	protected MemoryResource createCollection(final HttpServletRequest request, final URI resourceURI)
+			throws IllegalArgumentException, IOException, HTTPConflictException {
+		final String path = getTreePath(resourceURI);
+		synchronized(treeLock) {
+			final Node parent = findParent(path);
+			if(parent == null) {
+				throw new HTTPConflictException();
+			}
+			final Node node = new Node(new ConcurrentSkipListMap<String, Node>(), null, System.currentTimeMillis());
+			if(parent.getChildren().putIfAbsent(getName(path), node) != null) {
+				throw new IllegalArgumentException("Resource " + resourceURI + " already exists.");
+			}
+			return new MemoryResource(resourceURI, node);
+		}
+	}
+
+	@Override
+	protected void deleteResource(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final String path = getTreePath(resource.getURI());
+		synchronized(treeLock) {
+			final Node parent = findParent(path);
+			final Node node = parent != null ? parent.getChildren().remove(getName(path)) : null;
+			if(node == null) {
+				throw new HTTPNotFoundException(resource.getURI().toString());
+			}
+			release(node);
+		}
+	}
+
+	@Override
+	protected List<MemoryResource> getChildResources(final HttpServletRequest request, final MemoryResource resource) throws IOException {
+		final Node node = getNode(resource);
+		final List<MemoryResource> childResources = new ArrayList<MemoryResource>();
+		if(node.isCollection()) {
+			final String collectionURIString = resource.getURI().toString();
+			final String childURIPrefix = collectionURIString.endsWith("/") ? collectionURIString : collectionURIString + '/';
+			for(final Map.Entry<String, Node> childEntry : node.getChildren().entrySet()) {
+				final Node child = childEntry.getValue();
+				childResources.add(new MemoryResource(URI.create(childURIPrefix + childEntry.getKey() + (child.isCollection() ? "/" : "")), child));
+			}
+		}
+		return childResources;
+	}
+
+	@Override
+	protected List<MemoryResource> getResources(final URI resourceURI, final int depth) throws IllegalArgumentException, IOException {
+		final List<MemoryResource> resources = new ArrayList<MemoryResource>();
+		final Node node = findNode(getTreePath(resourceURI));
+		if(node != null) {
+			addResources(new MemoryResource(resourceURI, node), depth, resources);
+		}
+		return resources;
+	}
+
+	/**
+	 * Adds a resource and its descendants to a list.
+	 * @param resource The resource to add.
+	 * @param depth The zero-based depth of child resources to add, or <code>-1</code> if all progeny should be included.
+	 * @param resources The list to which resources should be added.
+	 * @throws IOException if there is an error accessing the resources.
+	 */
+	private void addResources(final MemoryResource resource, final int depth, final List<MemoryResource> resources) throws IOException {
+		resources.add(resource);
+		if(depth != 0 && resource.getNode().isCollection()) {
+			for(final MemoryResource childResource : getChildResources(null, resource)) {
+				addResources(childResource, depth > 0 ? depth - 1 : depth, resources);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This version shares the content of the original resources rather than copying it.
+	 */
+	@Override
+	protected void copyResource(final HttpServletRequest request, final MemoryResource resource, final URI destinationURI, final int depth,
+			final boolean overwrite) throws IllegalArgumentException, IOException, HTTPConflictException, HTTPPreconditionFailedException {
+		final String sourcePath = getTreePath(resource.getURI());
+		final String destinationPath = getTreePath(destinationURI);
+		synchronized(treeLock) {
+			final Node node = findNode(sourcePath);
+			if(node == null) {
+				throw new HTTPNotFoundException(resource.getURI().toString());
+			}
+			final Node destinationParent = prepareDestination(sourcePath, destinationPath, overwrite);
+			destinationParent.getChildren().put(getName(destinationPath), copy(node, depth, System.currentTimeMillis()));
+		}
+	}
+
+	/**
+	 * {@inheritDoc} This version relinks the resource in the tree without touching its content or descendants.
+	 */
+	@Override
+	protected void moveResource(final HttpServletRequest request, final MemoryResource resource, final URI destinationURI, final boolean overwrite)
+			throws IllegalArgumentException, IOException, HTTPConflictException, HTTPPreconditionFailedException {
+		final String sourcePath = getTreePath(resource.getURI());
+		final String destinationPath = getTreePath(destinationURI);
+		synchronized(treeLock) {
+			final Node sourceParent = findParent(sourcePath);
+			final Node node = sourceParent != null ? sourceParent.getChildren().get(getName(sourcePath)) : null;
+			if(node == null) {
+				throw new HTTPNotFoundException(resource.getURI().toString());
+			}
+			final Node destinationParent = prepareDestination(sourcePath, destinationPath, overwrite);
+			destinationParent.getChildren().put(getName(destinationPath), node); //add to the destination first so that the resource never disappears
+			sourceParent.getChildren().remove(getName(sourcePath), node);
+		}
+	}
+
+	/**
+	 * Verifies that a resource may be copied or moved to a destination, removing any existing resource at the destination. Must be called while holding the tree
+	 * lock.
+	 * @param sourcePath The tree path of the resource being copied or moved.
+	 * @param destinationPath The tree path of the destination.
+	 * @param overwrite <code>true</code> if any existing resource at the destination should be overwritten.
+	 * @return The collection node that is to contain the destination.
+	 * @throws HTTPForbiddenException if the source and destination overlap.
+	 * @throws HTTPPreconditionFailedException if a resource already exists at the destination and <var>overwrite</var> is <code>false</code>.
+	 * @throws HTTPConflictException if the parent of the destination is not an existing collection.
+	 */
+	private Node prepareDestination(final String sourcePath, final String destinationPath, final boolean overwrite) throws HTTPException {
+		if(BlobNamespace.isWithin(destinationPath, sourcePath) || BlobNamespace.isWithin(sourcePath, destinationPath)) {
+			throw new HTTPForbiddenException("Source " + sourcePath + " and destination " + destinationPath + " overlap.");
+		}
+		final Node destinationParent = findParent(destinationPath);
+		if(destinationParent == null) {
+			throw new HTTPConflictException();
+		}
+		final Node oldNode = destinationParent.getChildren().get(getName(destinationPath));
+		if(oldNode != null) {
+			if(!overwrite) {
+				throw new HTTPPreconditionFailedException();
+			}
+			destinationParent.getChildren().remove(getName(destinationPath));
+			release(oldNode);
+		}
+		return destinationParent;
+	}
+
+	@Override
+	protected void findProperties(final HttpServletRequest request, final MemoryResource resource, final Element propertyElement,
+			final DecoratorIDedMappedList<URI, WebDAVPropertyName> properties, final WebDAVXMLGenerator webdavXMLGenerator) throws DOMException, IOException {
+		findLiveProperties(request, resource, propertyElement, properties);
+	}
+
+	/**
+	 * An output stream to new content that replaces a resource in the tree when closed.
+	 * @author Garret Wilson
+	 */
+	private class TreeOutputStream extends FilterOutputStream {
+
+		private final OffHeapStore.ContentOutputStream contentOutputStream;
+
+		private final String path;
+
+		/** The number of bytes expected, or <code>-1</code> if not known. */
+		private final long expectedLength;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * @param contentOutputStream The stream to the new content.
+		 * @param path The tree path of the resource.
+		 * @param expectedLength The number of bytes expected, or <code>-1</code> if not known.
+		 */
+		public TreeOutputStream(final OffHeapStore.ContentOutputStream contentOutputStream, final String path, final long expectedLength) {
+			super(contentOutputStream);
+			this.contentOutputStream = contentOutputStream;
+			this.path = path;
+			this.expectedLength = expectedLength;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			try {
+				out.write(b);
+			} catch(final OffHeapStore.CapacityExceededException capacityExceededException) {
+				throw new HTTPException(SC_INSUFFICIENT_STORAGE, capacityExceededException.getMessage());
+			}
+		}
+
+		@Override
+		public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+			try {
+				out.write(bytes, offset, length);
+			} catch(final OffHeapStore.CapacityExceededException capacityExceededException) {
+				throw new HTTPException(SC_INSUFFICIENT_STORAGE, capacityExceededException.getMessage());
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			if(expectedLength >= 0 && contentOutputStream.getCount() != expectedLength) { //don't store truncated uploads
+				contentOutputStream.close();
+				throw new HTTPBadRequestException("Expected " + expectedLength + " bytes of content but received " + contentOutputStream.getCount() + ".");
+			}
+			final OffHeapStore.Content content = contentOutputStream.seal();
+			synchronized(treeLock) {
+				final Node parent = findParent(path);
+				final Node oldNode = parent != null ? parent.getChildren().get(getName(path)) : null;
+				if(parent == null || (oldNode != null && oldNode.isCollection())) { //the tree changed while we were writing
+					content.release();
+					throw new HTTPConflictException();
+				}
+				parent.getChildren().put(getName(path), new Node(null, content, System.currentTimeMillis()));
+				if(oldNode != null) {
+					oldNode.getContent().release(); //readers still holding the old content keep it alive until they are finished
+				}
+			}
+		}
+	}
+
+	/**
+	 * A node in the resource tree. A node is immutable except for the children of a collection; replacing a resource replaces its node.
+	 * @author Garret Wilson
+	 */
+	private static class Node {
+
+		private final ConcurrentNavigableMap<String, Node> children;
+
+		/** @return The child nodes keyed to their raw names, or <code>null</code> if this is not a collection. */
+		public ConcurrentNavigableMap<String, Node> getChildren() {
+			return children;
+		}
+
+		/** @return Whether this node is a collection. */
+		public boolean isCollection() {
+			return children != null;
+		}
+
+		private final OffHeapStore.Content content;
+
+		/** @return The content of the resource, or <code>null</code> if this is a collection. */
+		public OffHeapStore.Content getContent() {
+			return content;
+		}
+
+		private final long lastModified;
+
+		/** @return The time the node was last modified, in milliseconds since the epoch. */
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		/**
+		 * Constructor.
+		 * @param children The child nodes of a collection, or <code>null</code> for a resource.
+		 * @param content The content of a resource, or <code>null</code> for a collection.
+		 * @param lastModified The time the node was last modified, in milliseconds since the epoch.
+		 */
+		public Node(final ConcurrentNavigableMap<String, Node> children, final OffHeapStore.Content content, final long lastModified) {
+			this.children = children;
+			this.content = content;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * A resource in the tree, along with its state at the time it was retrieved.
+	 * @author Garret Wilson
+	 */
+	public static class MemoryResource extends DefaultResource {
+
+		private final Node node;
+
+		/** @return The node of the resource at the time it was retrieved, or <code>null</code> if the resource did not exist. */
+		private Node getNode() {
+			return node;
+		}
+
+		/**
+		 * Constructor.
+		 * @param uri The URI of the resource.
+		 * @param node The node of the resource, or <code>null</code> if the resource does not exist.
+		 */
+		private MemoryResource(final URI uri, final Node node) {
+			super(uri);
+			this.node = node;
+		}
+	}
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A store of content kept outside the Java heap. Memory is reserved from the operating system in large direct {@link ByteBuffer} slabs, which are divided
+ * into fixed-size blocks handed out from a free list. Slabs are only added as needed, up to a maximum, and are never returned; freed blocks are reused.
+ * <p>
+ * Each piece of {@link Content} is immutable once written, and is reference-counted so that it can be shared, such as by copies of a resource, and read while it
+ * is being replaced. Its blocks return to the free list when the last reference is released.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class OffHeapStore {
+
+	/** The number of bytes in each block. */
+	private final int blockSize;
+
+	/** @return The number of bytes in each block. */
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/** The number of blocks in each slab. */
+	private final int blocksPerSlab;
+
+	/** The maximum number of slabs. */
+	private final int maxSlabCount;
+
+	/** The slabs allocated so far; replaced rather than modified so that it can be read without locking. */
+	private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+
+	/** The stack of free block numbers. */
+	private int[] freeBlocks = new int[0];
+
+	/** The number of free blocks on the stack. */
+	private int freeBlockCount = 0;
+
+	/**
+	 * Constructor.
+	 * @param blockSize The number of bytes in each block.
+	 * @param slabSize The number of bytes in each slab, which will be rounded down to a multiple of the block size.
+	 * @param maxSize The maximum number of bytes to reserve.
+	 * @throws IllegalArgumentException if the block size is not positive or the slab size is smaller than the block size.
+	 */
+	public OffHeapStore(final int blockSize, final int slabSize, final long maxSize) {
+		if(blockSize <= 0 || slabSize < blockSize) {
+			throw new IllegalArgumentException("Invalid block size " + blockSize + " for slab size " + slabSize);
+		}
+		this.blockSize = blockSize;
+		this.blocksPerSlab = slabSize / blockSize;
+		this.maxSlabCount = (int)Math.min(Math.max(maxSize / ((long)blocksPerSlab * blockSize), 1), Integer.MAX_VALUE / blocksPerSlab);
+	}
+
+	/** @return The total number of bytes reserved from the operating system. */
+	public long getReservedSize() {
+		return (long)slabs.length * blocksPerSlab * blockSize;
+	}
+
+	/** @return The number of bytes in blocks currently in use. */
+	public synchronized long getUsedSize() {
+		return ((long)slabs.length * blocksPerSlab - freeBlockCount) * blockSize;
+	}
+
+	/** @return The maximum number of bytes that can be stored. */
+	public long getMaxSize() {
+		return (long)maxSlabCount * blocksPerSlab * blockSize;
+	}
+
+	/**
+	 * Takes a block from the free list, reserving a new slab if necessary.
+	 * @return The number of the allocated block.
+	 * @throws CapacityExceededException if the maximum number of slabs has been reached and there are no free blocks.
+	 */
+	private synchronized int allocateBlock() throws CapacityExceededException {
+		if(freeBlockCount == 0) {
+			final ByteBuffer[] slabs = this.slabs;
+			if(slabs.length >= maxSlabCount) {
+				throw new CapacityExceededException("Off-heap store capacity of " + getMaxSize() + " bytes exceeded.");
+			}
+			final ByteBuffer[] newSlabs = Arrays.copyOf(slabs, slabs.length + 1);
+			newSlabs[slabs.length] = ByteBuffer.allocateDirect(blocksPerSlab * blockSize);
+			if(freeBlocks.length < blocksPerSlab) {
+				freeBlocks = new int[blocksPerSlab];
+			}
+			final int firstBlock = slabs.length * blocksPerSlab;
+			for(int i = 0; i < blocksPerSlab; ++i) { //push in reverse so that blocks are handed out in order
+				freeBlocks[freeBlockCount++] = firstBlock + blocksPerSlab - 1 - i;
+			}
+			this.slabs = newSlabs;
+		}
+		return freeBlocks[--freeBlockCount];
+	}
+
+	/**
+	 * Returns blocks to the free list.
+	 * @param blocks The array containing the numbers of the blocks to free.
+	 * @param count The number of blocks in the array to free.
+	 */
+	private synchronized void freeBlocks(final int[] blocks, final int count) {
+		if(freeBlocks.length < freeBlockCount + count) {
+			freeBlocks = Arrays.copyOf(freeBlocks, Math.max(freeBlockCount + count, freeBlocks.length * 2));
+		}
+		System.arraycopy(blocks, 0, freeBlocks, freeBlockCount, count);
+		freeBlockCount += count;
+	}
+
+	/**
+	 * Returns a view of a block. The view has its own position and limit, so the underlying slab is never modified by a reader.
+	 * @param block The number of the block.
+	 * @return A buffer positioned at the start of the block with its limit at the end of the block.
+	 */
+	private ByteBuffer getBlock(final int block) {
+		final ByteBuffer buffer = slabs[block / blocksPerSlab].duplicate();
+		final int offset = (block % blocksPerSlab) * blockSize;
+		buffer.limit(offset + blockSize).position(offset);
+		return buffer;
+	}
+
+	/**
+	 * Opens a stream for writing new content. The content becomes available when the stream is sealed; if the stream is closed without being sealed, its blocks
+	 * are freed.
+	 * @return A new stream for writing content.
+	 */
+	public ContentOutputStream newOutputStream() {
+		return new ContentOutputStream();
+	}
+
+	/**
+	 * Indicates that there is not enough room in the store for more content.
+	 * @author Garret Wilson
+	 */
+	public static class CapacityExceededException extends IOException {
+
+		private static final long serialVersionUID = 5190836117540629573L;
+
+		/**
+		 * Message constructor.
+		 * @param message The detail message.
+		 */
+		public CapacityExceededException(final String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * Immutable, reference-counted content stored in blocks. The content starts with a single reference held by whoever sealed it.
+	 * @author Garret Wilson
+	 */
+	public class Content {
+
+		/** The numbers of the blocks holding the content, in order. */
+		private final int[] blocks;
+
+		private final long length;
+
+		/** @return The number of bytes of content. */
+		public long getLength() {
+			return length;
+		}
+
+		/** The number of references to the content; once zero, the blocks have been freed. */
+		private final AtomicInteger referenceCount = new AtomicInteger(1);
+
+		/**
+		 * Constructor.
+		 * @param blocks The numbers of the blocks holding the content, in order.
+		 * @param length The number of bytes of content.
+		 */
+		private Content(final int[] blocks, final long length) {
+			this.blocks = blocks;
+			this.length = length;
+		}
+
+		/**
+		 * Adds a reference to the content, if the content has not already been freed.
+		 * @return <code>true</code> if a reference was added, or <code>false</code> if the content is no longer available.
+		 */
+		public boolean retain() {
+			int count;
+			do {
+				count = referenceCount.get();
+				if(count <= 0) {
+					return false;
+				}
+			} while(!referenceCount.compareAndSet(count, count + 1));
+			return true;
+		}
+
+		/** Removes a reference to the content, freeing its blocks if there are no more references. */
+		public void release() {
+			final int count = referenceCount.decrementAndGet();
+			if(count == 0) {
+				freeBlocks(blocks, blocks.length);
+			} else if(count < 0) {
+				throw new IllegalStateException("Content released too many times.");
+			}
+		}
+
+		/**
+		 * Opens the content for reading. The stream holds its own reference to the content, which is released when the stream is closed.
+		 * @return An input stream to the content.
+		 * @throws IOException if the content has already been freed.
+		 */
+		public InputStream newInputStream() throws IOException {
+			if(!retain()) {
+				throw new FileNotFoundException("Content no longer available.");
+			}
+			return new ContentInputStream(this);
+		}
+	}
+
+	/**
+	 * An input stream reading content from its blocks.
+	 * @author Garret Wilson
+	 */
+	private class ContentInputStream extends InputStream {
+
+		private final Content content;
+
+		/** The number of bytes read. */
+		private long position = 0;
+
+		/** The view of the current block, or <code>null</code> if no block has been read. */
+		private ByteBuffer buffer = null;
+
+		/** Whether the stream has been closed. */
+		private boolean closed = false;
+
+		/**
+		 * Constructor.
+		 * @param content The content to read, to which a reference has already been added for this stream.
+		 */
+		public ContentInputStream(final Content content) {
+			this.content = content;
+		}
+
+		/**
+		 * Ensures that the current block has bytes remaining to be read.
+		 * @return <code>true</code> if there are bytes to read, or <code>false</code> if the end of the content has been reached.
+		 * @throws IOException if the stream has been closed.
+		 */
+		private boolean fill() throws IOException {
+			if(closed) {
+				throw new IOException("Stream closed.");
+			}
+			if(position >= content.getLength()) {
+				return false;
+			}
+			if(buffer == null || !buffer.hasRemaining()) {
+				buffer = getBlock(content.blocks[(int)(position / blockSize)]);
+				final long remaining = content.getLength() - position;
+				if(remaining < blockSize) { //the last block is only partially used
+					buffer.limit(buffer.position() + (int)remaining);
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if(!fill()) {
+				return -1;
+			}
+			++position;
+			return buffer.get() & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+			if(length == 0) {
+				return 0;
+			}
+			if(!fill()) {
+				return -1;
+			}
+			final int count = Math.min(length, buffer.remaining());
+			buffer.get(bytes, offset, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return closed ? 0 : (int)Math.min(content.getLength() - position, Integer.MAX_VALUE);
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(!closed) {
+				closed = true;
+				content.release();
+			}
+		}
+	}
+
+	/**
+	 * An output stream writing new content into blocks allocated as needed.
+	 * @author Garret Wilson
+	 */
+	public class ContentOutputStream extends OutputStream {
+
+		/** The numbers of the blocks allocated so far. */
+		private int[] blocks = new int[4];
+
+		/** The number of blocks allocated. */
+		private int blockCount = 0;
+
+		/** The number of bytes written. */
+		private long count = 0;
+
+		/** @return The number of bytes written. */
+		public long getCount() {
+			return count;
+		}
+
+		/** The view of the block being written, or <code>null</code> if no block has been allocated. */
+		private ByteBuffer buffer = null;
+
+		/** Whether the stream has been sealed or closed. */
+		private boolean closed = false;
+
+		/**
+		 * Ensures that the current block has room for more bytes.
+		 * @throws IOException if the stream has been closed or the store is full.
+		 */
+		private void ensureRoom() throws IOException {
+			if(closed) {
+				throw new IOException("Stream closed.");
+			}
+			if(buffer == null || !buffer.hasRemaining()) {
+				final int block = allocateBlock();
+				if(blockCount == blocks.length) {
+					blocks = Arrays.copyOf(blocks, blocks.length * 2);
+				}
+				blocks[blockCount++] = block;
+				buffer = getBlock(block);
+			}
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			ensureRoom();
+			buffer.put((byte)b);
+			++count;
+		}
+
+		@Override
+		public void write(final byte[] bytes, int offset, int length) throws IOException {
+			while(length > 0) {
+				ensureRoom();
+				final int writeCount = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, writeCount);
+				offset += writeCount;
+				length -= writeCount;
+				count += writeCount;
+			}
+		}
+
+		/**
+		 * Finishes writing and makes the content available.
+		 * @return The content written, with a single reference held by the caller.
+		 * @throws IOException if the stream has already been closed.
+		 */
+		public Content seal() throws IOException {
+			if(closed) {
+				throw new IOException("Stream closed.");
+			}
+			closed = true;
+			return new Content(Arrays.copyOf(blocks, blockCount), count);
+		}
+
+		/** Closes the stream, freeing the blocks if the content has not been sealed. */
+		@Override
+		public void close() throws IOException {
+			if(!closed) {
+				closed = true;
+				freeBlocks(blocks, blockCount);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.util.*;
+
+import static java.util.Objects.*;
+
+/**
+ * A bounded cache of values relating to resources, with the least recently used entries discarded when the cache is full. Each entry is indexed by the path of
+ * the resource to which it relates, so that the entries for a resource and all its descendants can be removed without examining the other entries.
+ * <p>
+ * Paths are compared as strings; a path should end with a slash so that it is a prefix of the paths of its descendants and of no other paths.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @param <K> The type of key.
+ * @param <V> The type of value.
+ * @author Garret Wilson
+ */
+public class PathCache<K, V> {
+
+	/** The maximum number of entries. */
+	private final int maxEntries;
+
+	/** @return The maximum number of entries. */
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/** The cached entries in access order, each holding its value and the path by which it is indexed. */
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	/** The keys of the cached entries, keyed to resource path. */
+	private final NavigableMap<String, Set<K>> pathKeys = new TreeMap<String, Set<K>>();
+
+	/**
+	 * Constructor.
+	 * @param maxEntries The maximum number of entries.
+	 * @throws IllegalArgumentException if the given maximum number of entries is not positive.
+	 */
+	public PathCache(final int maxEntries) {
+		if(maxEntries <= 0) {
+			throw new IllegalArgumentException("Invalid maximum number of cache entries: " + maxEntries);
+		}
+		this.maxEntries = maxEntries;
+		entries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<K, Entry<V>> eldest) {
+				if(size() > PathCache.this.maxEntries) {
+					unindex(eldest.getValue().getPath(), eldest.getKey());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/** @return The number of cached entries. */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Retrieves a cached value.
+	 * @param key The key of the value.
+	 * @return The cached value, or <code>null</code> if there is no value cached for the key.
+	 */
+	public synchronized V get(final K key) {
+		final Entry<V> entry = entries.get(key);
+		return entry != null ? entry.getValue() : null;
+	}
+
+	/**
+	 * Caches a value, replacing any value already cached for the key.
+	 * @param key The key of the value.
+	 * @param path The path of the resource to which the value relates.
+	 * @param value The value to cache.
+	 * @throws NullPointerException if the given key, path, and/or value is <code>null</code>.
+	 */
+	public synchronized void put(final K key, final String path, final V value) {
+		requireNonNull(key);
+		final Entry<V> oldEntry = entries.put(key, new Entry<V>(requireNonNull(path), requireNonNull(value)));
+		if(oldEntry != null) {
+			if(oldEntry.getPath().equals(path)) {
+				return; //the key is already indexed under the path
+			}
+			unindex(oldEntry.getPath(), key);
+		}
+		pathKeys.computeIfAbsent(path, p -> new HashSet<K>()).add(key);
+	}
+
+	/**
+	 * Removes all cached values relating to the resource with the given path.
+	 * @param path The path of the resource.
+	 */
+	public synchronized void remove(final String path) {
+		final Set<K> keys = pathKeys.remove(path);
+		if(keys != null) {
+			entries.keySet().removeAll(keys);
+		}
+	}
+
+	/**
+	 * Removes all cached values relating to the resource with the given path and to all its descendants.
+	 * @param path The path of the resource, ending with a slash.
+	 */
+	public synchronized void removeTree(final String path) {
+		final NavigableMap<String, Set<K>> treePathKeys = pathKeys.subMap(path, true, path + Character.MAX_VALUE, false);
+		for(final Set<K> keys : treePathKeys.values()) {
+			entries.keySet().removeAll(keys);
+		}
+		treePathKeys.clear();
+	}
+
+	/**
+	 * Removes a key from the index of the given path.
+	 * @param path The path under which the key is indexed.
+	 * @param key The key to remove from the index.
+	 */
+	private void unindex(final String path, final K key) {
+		final Set<K> keys = pathKeys.get(path);
+		if(keys != null && keys.remove(key) && keys.isEmpty()) {
+			pathKeys.remove(path);
+		}
+	}
+
+	/**
+	 * A cached value along with the path by which it is indexed.
+	 * @param <V> The type of value.
+	 * @author Garret Wilson
+	 */
+	private static class Entry<V> {
+
+		private final String path;
+
+		/** @return The path of the resource to which the value relates. */
+		public String getPath() {
+			return path;
+		}
+
+		private final V value;
+
+		/** @return The cached value. */
+		public V getValue() {
+			return value;
+		}
+
+		/**
+		 * Constructor.
+		 * @param path The path of the resource to which the value relates.
+		 * @param value The cached value.
+		 */
+		public Entry(final String path, final V value) {
+			this.path = path;
+			this.value = value;
+		}
+	}
+
+}
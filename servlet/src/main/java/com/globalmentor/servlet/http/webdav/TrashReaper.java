@@ -0,0 +1,269 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.clogr.Clogged;
+
+import static java.util.Objects.*;
+
+/**
+ * Reclaims space from a trash directory in the background. Resources are discarded by atomically renaming them into the trash directory, after which a single
+ * daemon thread deletes their contents at a throttled rate so that the file system is not saturated. Any entries left in the trash directory, such as those
+ * remaining after a restart, are reclaimed when the reaper starts.
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class TrashReaper implements Clogged {
+
+	/** The directory into which discarded files are moved. */
+	private final Path trashDirectory;
+
+	/** @return The directory into which discarded files are moved. */
+	public Path getTrashDirectory() {
+		return trashDirectory;
+	}
+
+	/** The maximum number of files to delete each second, or zero if deletion is not throttled. */
+	private final long maxDeletesPerSecond;
+
+	/** @return The maximum number of files to delete each second, or zero if deletion is not throttled. */
+	public long getMaxDeletesPerSecond() {
+		return maxDeletesPerSecond;
+	}
+
+	/** The trash entries waiting to be reclaimed. */
+	private final BlockingQueue<Path> pendingEntries = new LinkedBlockingQueue<Path>();
+
+	/** The number of trash entries discarded since the reaper started, including those found in the trash on startup. */
+	private final AtomicLong discardedEntryCount = new AtomicLong(0);
+
+	/** The number of trash entries fully reclaimed. */
+	private final AtomicLong reclaimedEntryCount = new AtomicLong(0);
+
+	/** The number of files and directories deleted. */
+	private final AtomicLong deletedFileCount = new AtomicLong(0);
+
+	/** The number of bytes reclaimed. */
+	private final AtomicLong reclaimedByteCount = new AtomicLong(0);
+
+	/** The number of errors encountered while reclaiming. */
+	private final AtomicLong errorCount = new AtomicLong(0);
+
+	/** The thread performing reclamation, or <code>null</code> if the reaper is not started. */
+	private volatile Thread thread = null;
+
+	/**
+	 * Trash directory and throttle constructor.
+	 * @param trashDirectory The directory into which discarded files are moved; should be on the same file system as the files being discarded.
+	 * @param maxDeletesPerSecond The maximum number of files to delete each second, or zero if deletion should not be throttled.
+	 * @throws NullPointerException if the given trash directory is <code>null</code>.
+	 * @throws IllegalArgumentException if the given maximum number of deletes is negative.
+	 */
+	public TrashReaper(final Path trashDirectory, final long maxDeletesPerSecond) {
+		this.trashDirectory = requireNonNull(trashDirectory);
+		if(maxDeletesPerSecond < 0) {
+			throw new IllegalArgumentException("Invalid maximum deletes per second: " + maxDeletesPerSecond);
+		}
+		this.maxDeletesPerSecond = maxDeletesPerSecond;
+	}
+
+	/**
+	 * Starts the reaper. The trash directory is created if needed, and any entries already in the trash directory are scheduled for reclamation.
+	 * @throws IOException if there is an error accessing the trash directory.
+	 * @throws IllegalStateException if the reaper is already started.
+	 */
+	public synchronized void start() throws IOException {
+		if(thread != null) {
+			throw new IllegalStateException("Trash reaper already started.");
+		}
+		Files.createDirectories(trashDirectory); //make sure the trash directory exists
+		try (final DirectoryStream<Path> entries = Files.newDirectoryStream(trashDirectory)) { //resume reclaiming anything left over from a previous run
+			for(final Path entry : entries) {
+				schedule(entry);
+			}
+		}
+		if(!pendingEntries.isEmpty()) {
+			getLogger().info("Resuming reclamation of {} trash entries in {}.", pendingEntries.size(), trashDirectory);
+		}
+		final Thread thread = new Thread(this::reap, getClass().getSimpleName() + "-" + trashDirectory.getFileName());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY); //reclamation should never compete with serving requests
+		this.thread = thread;
+		thread.start();
+	}
+
+	/**
+	 * Stops the reaper. Entries not yet reclaimed remain in the trash directory and will be reclaimed the next time a reaper is started.
+	 */
+	public synchronized void stop() {
+		final Thread thread = this.thread;
+		if(thread != null) {
+			this.thread = null;
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Discards a file or directory by atomically moving it into the trash directory, where it will later be reclaimed in the background.
+	 * @param path The file or directory to discard.
+	 * @throws AtomicMoveNotSupportedException if the file cannot be moved atomically to the trash directory, such as when it resides on another file system.
+	 * @throws IOException if there is an error moving the file to the trash directory.
+	 */
+	public void discard(final Path path) throws IOException {
+		final Path trashEntry = trashDirectory.resolve(System.currentTimeMillis() + "-" + UUID.randomUUID()); //make a unique name so that discarded resources never collide
+		Files.move(path, trashEntry, StandardCopyOption.ATOMIC_MOVE); //from the client's point of view, the resource is now gone
+		schedule(trashEntry);
+	}
+
+	/**
+	 * Schedules a trash entry for reclamation.
+	 * @param trashEntry The entry in the trash directory to reclaim.
+	 */
+	protected void schedule(final Path trashEntry) {
+		discardedEntryCount.incrementAndGet();
+		pendingEntries.add(trashEntry);
+	}
+
+	/** @return The number of trash entries waiting to be reclaimed, including any entry currently being reclaimed. */
+	public long getPendingEntryCount() {
+		return discardedEntryCount.get() - reclaimedEntryCount.get();
+	}
+
+	/** @return The number of trash entries discarded since the reaper started, including those found in the trash on startup. */
+	public long getDiscardedEntryCount() {
+		return discardedEntryCount.get();
+	}
+
+	/** @return The number of trash entries fully reclaimed. */
+	public long getReclaimedEntryCount() {
+		return reclaimedEntryCount.get();
+	}
+
+	/** @return The number of files and directories deleted. */
+	public long getDeletedFileCount() {
+		return deletedFileCount.get();
+	}
+
+	/** @return The number of bytes reclaimed. */
+	public long getReclaimedByteCount() {
+		return reclaimedByteCount.get();
+	}
+
+	/** @return The number of errors encountered while reclaiming. */
+	public long getErrorCount() {
+		return errorCount.get();
+	}
+
+	/** The time, in nanoseconds, at which the next delete is allowed to occur. */
+	private long nextDeleteTime = System.nanoTime();
+
+	/**
+	 * Waits if needed so that deletions do not exceed the configured rate. Only called from the reaper thread.
+	 * @throws InterruptedException if the thread was interrupted while waiting.
+	 */
+	private void throttle() throws InterruptedException {
+		if(maxDeletesPerSecond > 0) {
+			final long now = System.nanoTime();
+			if(nextDeleteTime - now > 0) { //if we're ahead of schedule, wait
+				TimeUnit.NANOSECONDS.sleep(nextDeleteTime - now);
+			} else { //don't let idle time build up a burst allowance
+				nextDeleteTime = now;
+			}
+			nextDeleteTime += TimeUnit.SECONDS.toNanos(1) / maxDeletesPerSecond;
+		}
+	}
+
+	/** Reclaims trash entries until the reaper is stopped. */
+	private void reap() {
+		try {
+			while(thread == Thread.currentThread()) {
+				final Path trashEntry = pendingEntries.take();
+				try {
+					reclaim(trashEntry);
+					reclaimedEntryCount.incrementAndGet();
+				} catch(final IOException ioException) { //leave the entry in the trash; it will be retried on the next start
+					errorCount.incrementAndGet();
+					reclaimedEntryCount.incrementAndGet(); //it is no longer pending in this run
+					getLogger().warn("Unable to reclaim trash entry {}.", trashEntry, ioException);
+				}
+			}
+		} catch(final InterruptedException interruptedException) { //stopped; anything left will be picked up on the next start
+		}
+	}
+
+	/**
+	 * Recursively deletes a trash entry, throttling each deletion.
+	 * @param trashEntry The entry in the trash directory to reclaim.
+	 * @throws IOException if there is an error deleting the entry.
+	 * @throws InterruptedException if the reaper was stopped while reclaiming.
+	 */
+	protected void reclaim(final Path trashEntry) throws IOException, InterruptedException {
+		try {
+			Files.walkFileTree(trashEntry, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+					delete(file, attributes.size());
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult postVisitDirectory(final Path directory, final IOException exception) throws IOException {
+					if(exception != null) {
+						throw exception;
+					}
+					delete(directory, 0);
+					return FileVisitResult.CONTINUE;
+				}
+
+				/**
+				 * Deletes a single file after waiting for the throttle.
+				 * @param path The file or empty directory to delete.
+				 * @param size The number of bytes reclaimed by deleting the file.
+				 * @throws IOException if there is an error deleting the file, or if the reaper was interrupted.
+				 */
+				private void delete(final Path path, final long size) throws IOException {
+					try {
+						throttle();
+					} catch(final InterruptedException interruptedException) {
+						throw new InterruptedIOException("Trash reaper stopped.");
+					}
+					Files.deleteIfExists(path);
+					deletedFileCount.incrementAndGet();
+					reclaimedByteCount.addAndGet(size);
+				}
+			});
+		} catch(final InterruptedIOException interruptedIOException) {
+			throw new InterruptedException(interruptedIOException.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d pending, %d reclaimed, %d files, %d bytes, %d errors", trashDirectory, getPendingEntryCount(), getReclaimedEntryCount(),
+				getDeletedFileCount(), getReclaimedByteCount(), getErrorCount());
+	}
+
+}
@@ -0,0 +1,731 @@
+/*
+ * Copyright © 1996-2026 GlobalMentor, Inc. <https://www.globalmentor.com/>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.globalmentor.servlet.http.webdav;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Element;
+
+import static java.util.Objects.*;
+
+/**
+ * An in-memory manager of WebDAV write locks as defined by <a href="https://tools.ietf.org/html/rfc4918">RFC 4918</a>, with resources identified by absolute
+ * path.
+ * <p>
+ * Locks are kept in a table keyed by lock token and in a trie of path segments, so that determining the locks that apply to a resource requires only visiting
+ * its ancestors. Each trie node keeps a count of the locks held by its descendants, so that subtrees without locks are never searched. Locks expire using a
+ * hashed timer wheel, and are additionally checked for expiration whenever they are consulted.
+ * </p>
+ * <p>
+ * Checking locks never blocks. Creating and removing locks only synchronize on the individual trie nodes involved. A new lock is published before being checked
+ * for conflicts and withdrawn if a conflict is found, so that two concurrent conflicting lock requests can never both succeed, although both may fail.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ * @author Garret Wilson
+ */
+public class WebDAVLockManager {
+
+	/** The URI scheme prefix of generated lock tokens. */
+	public static final String LOCK_TOKEN_PREFIX = "opaquelocktoken:";
+
+	/** The default lock timeout, in seconds, if none is requested. */
+	public static final long DEFAULT_TIMEOUT = 3600;
+
+	/** The maximum lock timeout, in seconds, granted even if an infinite timeout is requested. */
+	public static final long MAX_TIMEOUT = 7 * 24 * 60 * 60;
+
+	/** The duration of each timer wheel tick, in milliseconds. */
+	private static final long TICK_MILLIS = 1000;
+
+	/** The number of slots in the timer wheel. */
+	private static final int WHEEL_SIZE = 512;
+
+	/** The root node of the path trie. */
+	private final Node root = new Node(null, "");
+
+	/** The active locks, keyed to lock tokens. */
+	private final ConcurrentMap<String, Lock> locks = new ConcurrentHashMap<String, Lock>();
+
+	/** The timer wheel slots, each containing the locks that may expire at that slot. */
+	private final List<Queue<Lock>> wheel;
+
+	/** The executor ticking the timer wheel, or <code>null</code> if the manager is not started. */
+	private ScheduledExecutorService timer = null;
+
+	/** Default constructor. */
+	public WebDAVLockManager() {
+		final List<Queue<Lock>> wheel = new ArrayList<Queue<Lock>>(WHEEL_SIZE);
+		for(int i = 0; i < WHEEL_SIZE; ++i) {
+			wheel.add(new ConcurrentLinkedQueue<Lock>());
+		}
+		this.wheel = wheel;
+	}
+
+	/** Starts expiring locks in the background. */
+	public synchronized void start() {
+		if(timer == null) {
+			timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				final Thread thread = new Thread(runnable, getClass().getSimpleName());
+				thread.setDaemon(true);
+				return thread;
+			});
+			timer.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** Stops expiring locks in the background. */
+	public synchronized void stop() {
+		if(timer != null) {
+			timer.shutdownNow();
+			timer = null;
+		}
+	}
+
+	/** @return Whether there are any active locks. */
+	public boolean hasLocks() {
+		return !locks.isEmpty();
+	}
+
+	/**
+	 * Retrieves an active lock.
+	 * @param token The lock token.
+	 * @return The lock with the given token, or <code>null</code> if there is no such active lock.
+	 */
+	public Lock getLock(final String token) {
+		final Lock lock = locks.get(token);
+		return lock != null && !isExpired(lock) ? lock : null;
+	}
+
+	/**
+	 * Splits a path into its segments.
+	 * @param path The absolute path, with or without a trailing slash.
+	 * @return The non-empty segments of the path.
+	 */
+	protected static List<String> getSegments(final String path) {
+		final List<String> segments = new ArrayList<String>();
+		int start = 0;
+		final int length = path.length();
+		while(start < length) {
+			int end = path.indexOf('/', start);
+			if(end < 0) {
+				end = length;
+			}
+			if(end > start) {
+				segments.add(path.substring(start, end));
+			}
+			start = end + 1;
+		}
+		return segments;
+	}
+
+	/**
+	 * Finds the trie node for a path without creating any nodes.
+	 * @param segments The segments of the path.
+	 * @return The node for the path, or <code>null</code> if there is no node for the path.
+	 */
+	private Node findNode(final List<String> segments) {
+		Node node = root;
+		for(final String segment : segments) {
+			node = node.children.get(segment);
+			if(node == null) {
+				break;
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Creates a lock on a resource.
+	 * @param path The absolute path of the resource to lock.
+	 * @param exclusive <code>true</code> for an exclusive lock, or <code>false</code> for a shared lock.
+	 * @param infinite <code>true</code> if the lock applies to all descendants as well, or <code>false</code> for a lock of depth zero.
+	 * @param owner The owner information provided by the client, or <code>null</code> if there is no owner information.
+	 * @param timeout The requested timeout, in seconds; will be limited to {@link #MAX_TIMEOUT}.
+	 * @return The new lock, or <code>null</code> if the lock conflicts with an existing lock.
+	 * @throws NullPointerException if the given path is <code>null</code>.
+	 */
+	public Lock lock(final String path, final boolean exclusive, final boolean infinite, final Element owner, final long timeout) {
+		final List<String> segments = getSegments(requireNonNull(path));
+		final Lock lock = new Lock(LOCK_TOKEN_PREFIX + UUID.randomUUID(), segments, exclusive, infinite, owner != null ? (Element)owner.cloneNode(true) : null);
+		lock.setTimeout(timeout);
+		Node node;
+		do { //insert the lock into the trie, retrying if a node on the way was concurrently pruned
+			node = root;
+			for(final String segment : segments) {
+				node = node.getOrCreateChild(segment);
+				if(node == null) {
+					break;
+				}
+			}
+		} while(node == null || !node.addLock(lock));
+		if(hasConflict(lock)) { //now that the lock is visible to others, see if it conflicts with anything
+			release(lock);
+			return null;
+		}
+		locks.put(lock.getToken(), lock);
+		schedule(lock);
+		return lock;
+	}
+
+	/**
+	 * Determines whether a newly published lock conflicts with any other lock.
+	 * @param lock The new lock.
+	 * @return <code>true</code> if another lock conflicts with the given lock.
+	 */
+	private boolean hasConflict(final Lock lock) {
+		Node node = root;
+		final List<String> segments = lock.getSegments();
+		for(int i = 0; node != null; ++i) {
+			final boolean isTarget = i == segments.size();
+			for(final Lock otherLock : node.locks) {
+				if(otherLock != lock && (isTarget || otherLock.isInfinite()) && !isExpired(otherLock) && (lock.isExclusive() || otherLock.isExclusive())) {
+					return true;
+				}
+			}
+			if(isTarget) { //check the descendants of the target only if the new lock covers them and there are locks there
+				return lock.isInfinite() && node.descendantLockCount.get() > 0 && hasConflictingDescendant(node, lock);
+			}
+			node = node.children.get(segments.get(i));
+		}
+		return false;
+	}
+
+	/**
+	 * Determines whether any descendant of a node holds a lock conflicting with the given lock.
+	 * @param node The node the descendants of which to search.
+	 * @param lock The lock being checked.
+	 * @return <code>true</code> if a descendant lock conflicts with the given lock.
+	 */
+	private boolean hasConflictingDescendant(final Node node, final Lock lock) {
+		for(final Node child : node.children.values()) {
+			for(final Lock otherLock : child.locks) {
+				if(otherLock != lock && !isExpired(otherLock) && (lock.isExclusive() || otherLock.isExclusive())) {
+					return true;
+				}
+			}
+			if(child.descendantLockCount.get() > 0 && hasConflictingDescendant(child, lock)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Refreshes the timeout of a lock.
+	 * @param token The lock token.
+	 * @param timeout The requested timeout, in seconds; will be limited to {@link #MAX_TIMEOUT}.
+	 * @return The refreshed lock, or <code>null</code> if there is no such active lock.
+	 */
+	public Lock refresh(final String token, final long timeout) {
+		final Lock lock = getLock(token);
+		if(lock != null) {
+			lock.setTimeout(timeout); //the timer wheel will notice the new expiration time when it next visits the lock
+		}
+		return lock;
+	}
+
+	/**
+	 * Removes a lock.
+	 * @param path The absolute path of the resource being unlocked.
+	 * @param token The lock token.
+	 * @return <code>true</code> if the lock was removed, or <code>false</code> if there is no such active lock applying to the given resource.
+	 */
+	public boolean unlock(final String path, final String token) {
+		final Lock lock = getLock(token);
+		if(lock == null || !lock.appliesTo(getSegments(path))) {
+			return false;
+		}
+		release(lock);
+		return true;
+	}
+
+	/**
+	 * Removes all locks on a resource and its descendants, such as when the resource has been deleted.
+	 * @param path The absolute path of the resource.
+	 */
+	public void removeTree(final String path) {
+		final Node node = findNode(getSegments(path));
+		if(node != null) {
+			removeTree(node);
+		}
+	}
+
+	/**
+	 * Removes all locks on a node and its descendants.
+	 * @param node The node from which to remove locks.
+	 */
+	private void removeTree(final Node node) {
+		for(final Lock lock : node.locks) {
+			release(lock);
+		}
+		for(final Node child : node.children.values()) {
+			removeTree(child);
+		}
+	}
+
+	/**
+	 * Removes a lock from the lock table and the trie, pruning any nodes no longer needed.
+	 * @param lock The lock to remove.
+	 */
+	private void release(final Lock lock) {
+		locks.remove(lock.getToken(), lock);
+		final Node node = lock.getNode();
+		if(node != null && node.removeLock(lock)) {
+			for(Node prunable = node; prunable != null && prunable.parent != null && prunable.prune(); prunable = prunable.parent) {
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the active locks applying to a resource, including depth-infinity locks on its ancestors.
+	 * @param path The absolute path of the resource.
+	 * @return The locks applying to the resource.
+	 */
+	public List<Lock> getLocks(final String path) {
+		final List<Lock> appliedLocks = new ArrayList<Lock>();
+		final List<String> segments = getSegments(path);
+		Node node = root;
+		for(int i = 0; node != null; ++i) {
+			final boolean isTarget = i == segments.size();
+			for(final Lock lock : node.locks) {
+				if((isTarget || lock.isInfinite()) && !isExpired(lock)) {
+					appliedLocks.add(lock);
+				}
+			}
+			if(isTarget) {
+				break;
+			}
+			node = node.children.get(segments.get(i));
+		}
+		return appliedLocks;
+	}
+
+	/**
+	 * Determines whether the lock with the given token applies to the given resource.
+	 * @param path The absolute path of the resource.
+	 * @param token The lock token.
+	 * @return <code>true</code> if there is an active lock with the given token that applies to the resource.
+	 */
+	public boolean isLockedBy(final String path, final String token) {
+		final Lock lock = getLock(token);
+		return lock != null && lock.appliesTo(getSegments(path));
+	}
+
+	/**
+	 * Finds a lock that would prevent a resource from being modified by a client holding the given lock tokens. Both exclusive and shared locks prevent
+	 * modification by clients not submitting a lock token. As RFC 4918 7.5 requires, each resource being modified is only blocked if locks cover it and no token
+	 * of any of those locks was submitted; a client sharing a resource with other shared lock holders need only submit its own token.
+	 * @param path The absolute path of the resource to modify.
+	 * @param tokens The lock tokens submitted by the client.
+	 * @param membership <code>true</code> if the membership of the parent collection will change, such as when creating or deleting the resource, in which case a
+	 *          depth-zero lock on the parent collection applies.
+	 * @param descendants <code>true</code> if the descendants of the resource will be modified as well, such as when deleting or replacing a collection.
+	 * @return A lock preventing the modification, or <code>null</code> if the resource may be modified.
+	 */
+	public Lock findBlockingLock(final String path, final Set<String> tokens, final boolean membership, final boolean descendants) {
+		if(locks.isEmpty()) { //the usual case
+			return null;
+		}
+		final List<String> segments = getSegments(path);
+		final InheritedLocks inheritedLocks = new InheritedLocks(); //the infinite-depth locks of the ancestors, which cover every resource below them
+		Node node = root;
+		for(int i = 0; node != null; ++i) {
+			final boolean isTarget = i == segments.size();
+			final boolean isParent = i == segments.size() - 1;
+			if(isTarget || (isParent && membership)) { //if this resource is being modified, it needs a token for one of the locks covering it
+				final Lock lock = findUnsubmittedLock(node.locks, inheritedLocks, tokens);
+				if(lock != null) {
+					return lock;
+				}
+			}
+			if(isTarget) {
+				return descendants && node.descendantLockCount.get() > 0 ? findBlockingDescendantLock(node, inheritedLocks.inherit(node.locks, tokens), tokens) : null;
+			}
+			inheritedLocks.add(node.locks, tokens);
+			node = node.children.get(segments.get(i));
+		}
+		return findUnsubmittedLock(Collections.<Lock>emptySet(), inheritedLocks, tokens); //the resource has no locks of its own, but its ancestors may
+	}
+
+	/**
+	 * Finds a lock held by a descendant of a node, for a descendant covered by no lock for which a token was submitted.
+	 * @param node The node the descendants of which to search.
+	 * @param inheritedLocks The infinite-depth locks of the node and its ancestors.
+	 * @param tokens The lock tokens submitted by the client.
+	 * @return A lock preventing the modification, or <code>null</code> if the descendants may be modified.
+	 */
+	private Lock findBlockingDescendantLock(final Node node, final InheritedLocks inheritedLocks, final Set<String> tokens) {
+		for(final Node child : node.children.values()) {
+			final Lock lock = findUnsubmittedLock(child.locks, inheritedLocks, tokens);
+			if(lock != null) {
+				return lock;
+			}
+			if(child.descendantLockCount.get() > 0) {
+				final Lock descendantLock = findBlockingDescendantLock(child, inheritedLocks.inherit(child.locks, tokens), tokens);
+				if(descendantLock != null) {
+					return descendantLock;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds a lock covering a resource if no token was submitted for any of the locks covering it.
+	 * @param resourceLocks The locks on the resource itself.
+	 * @param inheritedLocks The infinite-depth locks of the ancestors of the resource.
+	 * @param tokens The lock tokens submitted by the client.
+	 * @return A lock covering the resource, or <code>null</code> if no locks cover the resource or a token was submitted for one of them.
+	 */
+	private Lock findUnsubmittedLock(final Set<Lock> resourceLocks, final InheritedLocks inheritedLocks, final Set<String> tokens) {
+		if(inheritedLocks.isSubmitted()) {
+			return null;
+		}
+		Lock unsubmittedLock = inheritedLocks.getUnsubmittedLock();
+		for(final Lock lock : resourceLocks) {
+			if(!isExpired(lock)) {
+				if(tokens.contains(lock.getToken())) {
+					return null;
+				}
+				if(unsubmittedLock == null) {
+					unsubmittedLock = lock;
+				}
+			}
+		}
+		return unsubmittedLock;
+	}
+
+	/**
+	 * The infinite-depth locks covering a resource from its ancestors, tracking only what is needed to determine whether the resource is blocked.
+	 * @author Garret Wilson
+	 */
+	private final class InheritedLocks {
+
+		/** Whether a token was submitted for one of the locks. */
+		private boolean submitted = false;
+
+		/** @return Whether a token was submitted for one of the locks. */
+		public boolean isSubmitted() {
+			return submitted;
+		}
+
+		/** One of the locks for which no token was submitted, or <code>null</code> if there are no such locks. */
+		private Lock unsubmittedLock = null;
+
+		/** @return One of the locks for which no token was submitted, or <code>null</code> if there are no such locks. */
+		public Lock getUnsubmittedLock() {
+			return unsubmittedLock;
+		}
+
+		/**
+		 * Adds the infinite-depth locks of a resource, as they cover its descendants.
+		 * @param resourceLocks The locks on the resource.
+		 * @param tokens The lock tokens submitted by the client.
+		 */
+		public void add(final Set<Lock> resourceLocks, final Set<String> tokens) {
+			for(final Lock lock : resourceLocks) {
+				if(lock.isInfinite() && !isExpired(lock)) {
+					if(tokens.contains(lock.getToken())) {
+						submitted = true;
+					} else if(unsubmittedLock == null) {
+						unsubmittedLock = lock;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Determines the locks inherited by the children of a resource.
+		 * @param resourceLocks The locks on the resource.
+		 * @param tokens The lock tokens submitted by the client.
+		 * @return New inherited locks including these locks and the infinite-depth locks of the resource.
+		 */
+		public InheritedLocks inherit(final Set<Lock> resourceLocks, final Set<String> tokens) {
+			final InheritedLocks inheritedLocks = new InheritedLocks();
+			inheritedLocks.submitted = submitted;
+			inheritedLocks.unsubmittedLock = unsubmittedLock;
+			inheritedLocks.add(resourceLocks, tokens);
+			return inheritedLocks;
+		}
+	}
+
+	/**
+	 * Determines whether a lock has expired, removing it if so.
+	 * @param lock The lock to check.
+	 * @return <code>true</code> if the lock has expired.
+	 */
+	private boolean isExpired(final Lock lock) {
+		if(lock.getExpiration() - System.currentTimeMillis() <= 0) {
+			release(lock);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Places a lock in the timer wheel slot corresponding to its expiration time.
+	 * @param lock The lock to schedule.
+	 */
+	private void schedule(final Lock lock) {
+		wheel.get((int)((lock.getExpiration() / TICK_MILLIS) % WHEEL_SIZE)).add(lock);
+	}
+
+	/** Advances the timer wheel, expiring locks in the current slot and rescheduling those that have been refreshed or are due in a later round. */
+	private void tick() {
+		final Queue<Lock> slot = wheel.get((int)((System.currentTimeMillis() / TICK_MILLIS) % WHEEL_SIZE));
+		final List<Lock> remainingLocks = new ArrayList<Lock>();
+		Lock lock;
+		while((lock = slot.poll()) != null) {
+			if(lock.getNode() != null && !isExpired(lock)) { //released locks are simply dropped
+				remainingLocks.add(lock);
+			}
+		}
+		for(final Lock remainingLock : remainingLocks) {
+			schedule(remainingLock);
+		}
+	}
+
+	/**
+	 * A node in the path trie.
+	 * @author Garret Wilson
+	 */
+	private static final class Node {
+
+		/** The parent node, or <code>null</code> if this is the root node. */
+		private final Node parent;
+
+		/** The path segment of this node. */
+		private final String segment;
+
+		/** The child nodes, keyed to path segments. */
+		private final ConcurrentMap<String, Node> children = new ConcurrentHashMap<String, Node>();
+
+		/** The locks on the resource identified by this node. */
+		private final Set<Lock> locks = ConcurrentHashMap.newKeySet();
+
+		/** The number of locks held by descendants of this node; may temporarily be higher than the actual number, but never lower. */
+		private final AtomicInteger descendantLockCount = new AtomicInteger(0);
+
+		/** Whether this node has been removed from the trie; guarded by this node's monitor. */
+		private boolean removed = false;
+
+		/**
+		 * Constructor.
+		 * @param parent The parent node, or <code>null</code> if this is the root node.
+		 * @param segment The path segment of this node.
+		 */
+		public Node(final Node parent, final String segment) {
+			this.parent = parent;
+			this.segment = segment;
+		}
+
+		/**
+		 * Retrieves or creates a child node.
+		 * @param segment The path segment of the child.
+		 * @return The child node, or <code>null</code> if this node has been pruned from the trie.
+		 */
+		public synchronized Node getOrCreateChild(final String segment) {
+			return !removed ? children.computeIfAbsent(segment, __ -> new Node(this, segment)) : null;
+		}
+
+		/**
+		 * Adds a lock to this node.
+		 * @param lock The lock to add.
+		 * @return <code>true</code> if the lock was added, or <code>false</code> if this node has been pruned from the trie.
+		 */
+		public boolean addLock(final Lock lock) {
+			for(Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) { //count the lock before it appears, so the counts are never too low
+				ancestor.descendantLockCount.incrementAndGet();
+			}
+			synchronized(this) {
+				if(!removed) {
+					locks.add(lock);
+					lock.setNode(this);
+					return true;
+				}
+			}
+			for(Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+				ancestor.descendantLockCount.decrementAndGet();
+			}
+			return false;
+		}
+
+		/**
+		 * Removes a lock from this node.
+		 * @param lock The lock to remove.
+		 * @return <code>true</code> if the lock was removed, or <code>false</code> if it had already been removed.
+		 */
+		public boolean removeLock(final Lock lock) {
+			final boolean removedLock;
+			synchronized(this) {
+				removedLock = locks.remove(lock);
+				if(removedLock) {
+					lock.setNode(null);
+				}
+			}
+			if(removedLock) {
+				for(Node ancestor = parent; ancestor != null; ancestor = ancestor.parent) {
+					ancestor.descendantLockCount.decrementAndGet();
+				}
+			}
+			return removedLock;
+		}
+
+		/**
+		 * Removes this node from its parent if it holds no locks and has no children.
+		 * @return <code>true</code> if this node was removed.
+		 */
+		public boolean prune() {
+			synchronized(parent) { //prevent new children from being added to the parent while we check
+				synchronized(this) {
+					if(!removed && locks.isEmpty() && children.isEmpty()) {
+						removed = true;
+						parent.children.remove(segment, this);
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * An active WebDAV write lock.
+	 * @author Garret Wilson
+	 */
+	public static class Lock {
+
+		private final String token;
+
+		/** @return The lock token URI. */
+		public String getToken() {
+			return token;
+		}
+
+		private final List<String> segments;
+
+		/** @return The segments of the path of the locked resource. */
+		protected List<String> getSegments() {
+			return segments;
+		}
+
+		/** @return The absolute path of the locked resource, with no trailing slash. */
+		public String getPath() {
+			final StringBuilder pathBuilder = new StringBuilder();
+			for(final String segment : segments) {
+				pathBuilder.append('/').append(segment);
+			}
+			return pathBuilder.length() > 0 ? pathBuilder.toString() : "/";
+		}
+
+		private final boolean exclusive;
+
+		/** @return <code>true</code> if this is an exclusive lock, or <code>false</code> if this is a shared lock. */
+		public boolean isExclusive() {
+			return exclusive;
+		}
+
+		private final boolean infinite;
+
+		/** @return <code>true</code> if the lock applies to all descendants, or <code>false</code> if the lock has a depth of zero. */
+		public boolean isInfinite() {
+			return infinite;
+		}
+
+		private final Element owner;
+
+		/** @return The owner information provided by the client, or <code>null</code> if there is no owner information. */
+		public Element getOwner() {
+			return owner;
+		}
+
+		private volatile long timeout;
+
+		/** @return The granted timeout, in seconds. */
+		public long getTimeout() {
+			return timeout;
+		}
+
+		private volatile long expiration;
+
+		/** @return The time at which the lock expires, in milliseconds since the epoch. */
+		public long getExpiration() {
+			return expiration;
+		}
+
+		/**
+		 * Sets the timeout of the lock, starting now.
+		 * @param timeout The requested timeout, in seconds; will be limited to {@link #MAX_TIMEOUT}.
+		 */
+		void setTimeout(final long timeout) {
+			this.timeout = timeout > 0 ? Math.min(timeout, MAX_TIMEOUT) : DEFAULT_TIMEOUT;
+			this.expiration = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(this.timeout);
+		}
+
+		/** The trie node holding this lock, or <code>null</code> if the lock has been released. */
+		private volatile Node node = null;
+
+		/** @return The trie node holding this lock, or <code>null</code> if the lock has been released. */
+		Node getNode() {
+			return node;
+		}
+
+		/**
+		 * Sets the trie node holding this lock.
+		 * @param node The trie node, or <code>null</code> if the lock has been released.
+		 */
+		void setNode(final Node node) {
+			this.node = node;
+		}
+
+		/**
+		 * Constructor.
+		 * @param token The lock token URI.
+		 * @param segments The segments of the path of the locked resource.
+		 * @param exclusive <code>true</code> for an exclusive lock, or <code>false</code> for a shared lock.
+		 * @param infinite <code>true</code> if the lock applies to all descendants, or <code>false</code> for a lock of depth zero.
+		 * @param owner The owner information provided by the client, or <code>null</code> if there is no owner information.
+		 */
+		protected Lock(final String token, final List<String> segments, final boolean exclusive, final boolean infinite, final Element owner) {
+			this.token = requireNonNull(token);
+			this.segments = Collections.unmodifiableList(new ArrayList<String>(segments));
+			this.exclusive = exclusive;
+			this.infinite = infinite;
+			this.owner = owner;
+		}
+
+		/**
+		 * Determines whether this lock applies to a resource.
+		 * @param resourceSegments The segments of the path of the resource.
+		 * @return <code>true</code> if the resource is the locked resource, or is a descendant and the lock is of infinite depth.
+		 */
+		protected boolean appliesTo(final List<String> resourceSegments) {
+			return resourceSegments.equals(segments)
+					|| (infinite && resourceSegments.size() > segments.size() && resourceSegments.subList(0, segments.size()).equals(segments));
+		}
+
+		@Override
+		public String toString() {
+			return token + " " + (exclusive ? "exclusive" : "shared") + " " + (infinite ? "infinity" : "0") + " " + getPath();
+		}
+	}
+
+}